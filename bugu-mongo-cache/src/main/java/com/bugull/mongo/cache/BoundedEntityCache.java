@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.DefaultDBEncoder;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.zookeeper.CreateMode;
+
+/**
+ * EntityCache with bounded size, LRU eviction and TTL. 
+ * 
+ * <p>Documents are stored as BSON bytes, so the size in bytes is exact, and every read gets a new copy. 
+ * The cache is bounded by entry count, and optionally by total bytes.</p>
+ * 
+ * <p>If BuguCache is initialized with ZooKeeper, the invalidated ids are sent to other JVMs through ZooKeeper. 
+ * When some messages are missed, the whole cache is cleared.</p>
+ * 
+ * <pre>
+ * public class UserDao extends BuguDao&lt;User&gt; {
+ *     public UserDao(){
+ *         super(User.class);
+ *         setEntityCache(new BoundedEntityCache(User.class).setMaxEntries(10000).setTtl(60000L));
+ *     }
+ * }
+ * </pre>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class BoundedEntityCache implements EntityCache {
+    
+    public final static String ZK_ENTITY_PREFIX = BuguCache.ZK_PREFIX + "entity:";
+    
+    //send invalidate all, instead of too many ids
+    private final static int MAX_IDS_PER_MESSAGE = 1000;
+    
+    //number of invalidation counters, the ids are mapped to them by hash
+    private final static int STRIPES = 256;
+    
+    private final static String KEY_IDS = "ids";
+    private final static String KEY_ALL = "all";
+    
+    private int maxEntries = 10000;
+    private long maxBytes;  //default value is zero, no limit
+    private long ttl;  //in milliseconds, default value is zero, never expire
+    
+    private final LinkedHashMap<String, Item> map = new LinkedHashMap<>(16, 0.75f, true);  //access order
+    private long totalBytes;
+    
+    //invalidation count of the ids by hash, a document read before its id is invalidated is not put
+    private final long[] generations = new long[STRIPES];
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    private final String zkPath;
+    private int lastVersion = -1;
+    
+    public BoundedEntityCache(Class<?> clazz){
+        CuratorFramework zkClient = BuguCache.getInstance().getZkClient();
+        if(zkClient == null){
+            zkPath = null;
+            return;
+        }
+        zkPath = ZK_ENTITY_PREFIX + clazz.getName();
+        try {
+            if(zkClient.checkExists().forPath(zkPath) == null){
+                zkClient.create().withMode(CreateMode.PERSISTENT).forPath(zkPath);
+            }
+        } catch (Exception ex) {
+            throw new BuguCacheException(ex.getMessage());
+        }
+        final NodeCache nodeCache = new NodeCache(zkClient, zkPath);
+        try {
+            nodeCache.start(true);
+        } catch (Exception ex) {
+            throw new BuguCacheException(ex.getMessage());
+        }
+        ChildData initial = nodeCache.getCurrentData();
+        if(initial != null){
+            lastVersion = initial.getStat().getVersion();
+        }
+        nodeCache.getListenable().addListener(new NodeCacheListener(){
+            @Override
+            public void nodeChanged() throws Exception {
+                ChildData data = nodeCache.getCurrentData();
+                if(data != null){
+                    received(data.getStat().getVersion(), data.getData());
+                }
+            }
+        });
+    }
+    
+    @Override
+    public DBObject get(String id) {
+        byte[] bytes;
+        synchronized(this){
+            Item item = map.get(id);
+            if(item == null){
+                missCount.incrementAndGet();
+                return null;
+            }
+            if(item.expireAt > 0 && item.expireAt < System.currentTimeMillis()){
+                removeItem(id);
+                missCount.incrementAndGet();
+                return null;
+            }
+            bytes = item.bytes;
+        }
+        hitCount.incrementAndGet();
+        return new DefaultDBDecoder().decode(bytes, (DBCollection)null);
+    }
+
+    @Override
+    public void put(String id, DBObject dbo) {
+        byte[] bytes = new DefaultDBEncoder().encode(dbo);
+        long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+        synchronized(this){
+            putItem(id, new Item(bytes, expireAt));
+        }
+    }
+    
+    @Override
+    public synchronized long getToken(String id) {
+        return generations[stripe(id)];
+    }
+
+    @Override
+    public void putIfNotInvalidatedSince(String id, long token, DBObject dbo) {
+        byte[] bytes = new DefaultDBEncoder().encode(dbo);
+        long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+        synchronized(this){
+            if(generations[stripe(id)] == token){
+                putItem(id, new Item(bytes, expireAt));
+            }
+        }
+    }
+    
+    private static int stripe(String id){
+        return (id.hashCode() & 0x7fffffff) % STRIPES;
+    }
+    
+    private void putItem(String id, Item item){
+        Item old = map.put(id, item);
+        if(old != null){
+            totalBytes -= old.bytes.length;
+        }
+        totalBytes += item.bytes.length;
+        evict();
+    }
+    
+    private void evict(){
+        Iterator<Map.Entry<String, Item>> it = map.entrySet().iterator();
+        while(it.hasNext() && (map.size() > maxEntries || (maxBytes > 0 && totalBytes > maxBytes))){
+            Map.Entry<String, Item> eldest = it.next();
+            totalBytes -= eldest.getValue().bytes.length;
+            it.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+    
+    private void removeItem(String id){
+        generations[stripe(id)]++;
+        Item old = map.remove(id);
+        if(old != null){
+            totalBytes -= old.bytes.length;
+        }
+    }
+
+    @Override
+    public void invalidate(String id) {
+        synchronized(this){
+            removeItem(id);
+        }
+        BasicDBList ids = new BasicDBList();
+        ids.add(id);
+        publish(new BasicDBObject(KEY_IDS, ids));
+    }
+
+    @Override
+    public void invalidate(Collection<String> ids) {
+        synchronized(this){
+            for(String id : ids){
+                removeItem(id);
+            }
+        }
+        if(ids.size() > MAX_IDS_PER_MESSAGE){
+            publish(new BasicDBObject(KEY_ALL, Boolean.TRUE));
+        }else{
+            BasicDBList list = new BasicDBList();
+            list.addAll(ids);
+            publish(new BasicDBObject(KEY_IDS, list));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        clearLocal();
+        publish(new BasicDBObject(KEY_ALL, Boolean.TRUE));
+    }
+    
+    private synchronized void clearLocal(){
+        for(int i=0; i<STRIPES; i++){
+            generations[i]++;
+        }
+        map.clear();
+        totalBytes = 0;
+    }
+    
+    /**
+     * Send the invalidated ids to other JVMs.
+     */
+    private void publish(DBObject message){
+        if(zkPath == null){
+            return;
+        }
+        CuratorFramework zkClient = BuguCache.getInstance().getZkClient();
+        try {
+            zkClient.setData().inBackground().forPath(zkPath, message.toString().getBytes("UTF-8"));
+        } catch (Exception ex) {
+            throw new BuguCacheException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Invalidate the ids sent by other JVMs, or by this JVM itself.
+     */
+    private void received(int version, byte[] data) throws Exception {
+        boolean missed;
+        synchronized(this){
+            //NodeCache only keeps the latest data, so some messages maybe missed
+            missed = lastVersion >= 0 && version > lastVersion + 1;
+            lastVersion = version;
+        }
+        if(missed || data == null || data.length == 0){
+            clearLocal();
+            return;
+        }
+        DBObject message = BasicDBObject.parse(new String(data, "UTF-8"));
+        if(message.containsField(KEY_ALL)){
+            clearLocal();
+            return;
+        }
+        List ids = (List)message.get(KEY_IDS);
+        if(ids != null){
+            synchronized(this){
+                for(Object id : ids){
+                    removeItem(id.toString());
+                }
+            }
+        }
+    }
+    
+    public BoundedEntityCache setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public BoundedEntityCache setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Set the time to live of every entry.
+     * @param ttl in milliseconds
+     * @return 
+     */
+    public BoundedEntityCache setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+    
+    public synchronized int size(){
+        return map.size();
+    }
+    
+    public synchronized long getTotalBytes(){
+        return totalBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    private static class Item {
+        
+        final byte[] bytes;
+        final long expireAt;  //zero means never expire
+        
+        Item(byte[] bytes, long expireAt){
+            this.bytes = bytes;
+            this.expireAt = expireAt;
+        }
+        
+    }
+    
+}
@@ -16,9 +16,19 @@
 package com.bugull.mongo.cache;
 
 import com.bugull.mongo.utils.StringUtil;
+import com.bugull.mongo.utils.ThreadUtil;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
@@ -27,16 +37,48 @@ import org.apache.curator.utils.CloseableUtils;
 /**
  * Singleton object, which to configure cache behavior and hold cache data. 
  * 
+ * <p>Cached data can be bounded by CachePolicy. When the total is over the limit, the least recently used data is evicted, 
+ * unless the new data is used less frequently than it (TinyLFU admission). Evicted and expired data is loaded again on next read.</p>
+ * 
+ * <p>Data which is not admitted is still returned for rejectedRetention, out of the limits, 
+ * so a reader doesn't load it again on every read.</p>
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 public class BuguCache {
     
+    private static final Logger LOGGER = Logger.getLogger("com.bugull.mongo");
+    
     public final static String ZK_PREFIX = "/bugu:cache:";
     
     private String zkConnectString;
     private CuratorFramework zkClient;
     
-    private final Map<String, List> data = new ConcurrentHashMap<>();
+    private CacheTransport transport;
+    
+    private final Map<String, CacheEntry> data = new ConcurrentHashMap<>();
+    
+    //data not admitted, kept for a short time
+    private final Map<String, CacheEntry> rejected = new ConcurrentHashMap<>();
+    private long rejectedRetention = 10000L;
+    private final Set<String> loggedRejects = ConcurrentHashMap.newKeySet();
+    
+    private CachePolicy policy = new CachePolicy();
+    private final Map<String, CachePolicy> keyPolicies = new ConcurrentHashMap<>();
+    private boolean admission = true;
+    private final FrequencySketch sketch = new FrequencySketch(256);
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+    
+    private long totalEntries;
+    private long totalBytes;
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    
+    //shared by all CacheableDao, to reload data
+    private ScheduledExecutorService scheduler;
     
     private BuguCache(){
         
@@ -62,9 +104,24 @@ public class BuguCache {
         } catch (InterruptedException ex) {
             throw new BuguCacheException(ex.getMessage());
         }
+        //ZooKeeper is the default transport in cluster
+        if(transport == null){
+            transport = new ZkCacheTransport(zkClient);
+        }
     }
     
     public void destroy(){
+        synchronized(this){
+            ThreadUtil.safeClose(scheduler);
+            scheduler = null;
+        }
+        if(transport != null){
+            transport.close();
+            //created by init()
+            if(transport instanceof ZkCacheTransport){
+                transport = null;
+            }
+        }
         if(StringUtil.isEmpty(zkConnectString)){
             return;
         }
@@ -73,12 +130,330 @@ public class BuguCache {
         }
     }
 
+    /**
+     * Read the cached data. Expired data is removed, and null is returned.
+     * @param key
+     * @return 
+     */
     public List getValue(String key) {
-        return data.get(key);
+        sketch.increment(key);
+        CacheEntry entry = data.get(key);
+        if(entry != null){
+            long now = System.currentTimeMillis();
+            if(isExpired(key, entry, now)){
+                removeExpired(key, entry);
+            }else{
+                entry.accessTime = now;
+                hitCount.incrementAndGet();
+                return entry.value;
+            }
+        }
+        List value = getRejected(key);
+        if(value != null){
+            hitCount.incrementAndGet();
+            return value;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+    
+    private List getRejected(String key){
+        CacheEntry entry = rejected.get(key);
+        if(entry == null){
+            return null;
+        }
+        if(System.currentTimeMillis() - entry.createTime > rejectedRetention){
+            rejected.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+    
+    /**
+     * Read the cached data, without counting it as an access.
+     * @param key
+     * @return 
+     */
+    public List peekValue(String key) {
+        CacheEntry entry = data.get(key);
+        return entry == null ? getRejected(key) : entry.value;
     }
 
+    /**
+     * Cache the data. If the total is over the limit of CachePolicy, other data is evicted, or this data is not cached.
+     * @param key
+     * @param value 
+     */
     public void setValue(String key, List value) {
-        data.put(key, value);
+        List<Eviction> evicted = new ArrayList<>();
+        synchronized(this){
+            long now = System.currentTimeMillis();
+            CacheEntry entry = new CacheEntry(value, estimateBytes(key, value), now);
+            CacheEntry old = data.get(key);
+            //the replaced data is not evicted
+            if(old != null){
+                remove(key, old);
+            }
+            rejected.remove(key);
+            removeOldRejected(now);
+            CachePolicy keyPolicy = keyPolicies.get(key);
+            if(keyPolicy != null && (over(keyPolicy.getMaxEntries(), entry.entries) || over(keyPolicy.getMaxBytes(), entry.bytes))){
+                evicted.add(new Eviction(key, value, EvictionCause.REJECTED));
+            }
+            else if(makeRoom(key, entry, old == null, now, evicted)){
+                data.put(key, entry);
+                totalEntries += entry.entries;
+                totalBytes += entry.bytes;
+            }
+            for(Eviction item : evicted){
+                if(item.cause == EvictionCause.REJECTED && item.key.equals(key)){
+                    rejected(key, entry);
+                }
+            }
+        }
+        notifyEvicted(evicted);
+    }
+    
+    private void rejected(String key, CacheEntry entry){
+        rejectedCount.incrementAndGet();
+        if(rejectedRetention > 0){
+            rejected.put(key, entry);
+        }
+        if(loggedRejects.add(key)){
+            LOGGER.log(Level.WARNING, "The cache data of {0} is not admitted by the cache policy, it''s kept for {1} ms only, then loaded again", 
+                    new Object[]{key, rejectedRetention});
+        }
+    }
+    
+    private void removeOldRejected(long now){
+        for(Map.Entry<String, CacheEntry> e : rejected.entrySet()){
+            if(now - e.getValue().createTime > rejectedRetention){
+                rejected.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+    
+    /**
+     * Remove expired and least recently used data, until the new entry fits.
+     * @return false if the new entry is not admitted
+     */
+    private boolean makeRoom(String key, CacheEntry entry, boolean isNew, long now, List<Eviction> evicted){
+        for(Map.Entry<String, CacheEntry> e : data.entrySet()){
+            if(isExpired(e.getKey(), e.getValue(), now)){
+                remove(e.getKey(), e.getValue());
+                evicted.add(new Eviction(e.getKey(), e.getValue().value, EvictionCause.EXPIRED));
+            }
+        }
+        long maxEntries = policy.getMaxEntries();
+        long maxBytes = policy.getMaxBytes();
+        if(over(maxEntries, entry.entries) || over(maxBytes, entry.bytes)){
+            evicted.add(new Eviction(key, entry.value, EvictionCause.REJECTED));
+            return false;
+        }
+        while(over(maxEntries, totalEntries + entry.entries) || over(maxBytes, totalBytes + entry.bytes)){
+            String victimKey = null;
+            CacheEntry victim = null;
+            for(Map.Entry<String, CacheEntry> e : data.entrySet()){
+                if(victim == null || e.getValue().accessTime < victim.accessTime){
+                    victimKey = e.getKey();
+                    victim = e.getValue();
+                }
+            }
+            //new data that is used less than the victim is not admitted; reloaded data of existing key is always kept
+            if(admission && isNew && sketch.frequency(key) <= sketch.frequency(victimKey)){
+                evicted.add(new Eviction(key, entry.value, EvictionCause.REJECTED));
+                return false;
+            }
+            remove(victimKey, victim);
+            evicted.add(new Eviction(victimKey, victim.value, EvictionCause.SIZE));
+        }
+        return true;
+    }
+    
+    private boolean isExpired(String key, CacheEntry entry, long now){
+        CachePolicy keyPolicy = keyPolicies.get(key);
+        long ttl = (keyPolicy != null && keyPolicy.getTtl() > 0) ? keyPolicy.getTtl() : policy.getTtl();
+        long tti = (keyPolicy != null && keyPolicy.getTti() > 0) ? keyPolicy.getTti() : policy.getTti();
+        return (ttl > 0 && now - entry.createTime > ttl) || (tti > 0 && now - entry.accessTime > tti);
+    }
+    
+    private void removeExpired(String key, CacheEntry entry){
+        boolean removed;
+        synchronized(this){
+            removed = remove(key, entry);
+        }
+        if(removed){
+            List<Eviction> evicted = new ArrayList<>();
+            evicted.add(new Eviction(key, entry.value, EvictionCause.EXPIRED));
+            notifyEvicted(evicted);
+        }
+    }
+    
+    /**
+     * Remove the cached data. It's loaded again on next read.
+     * @param key 
+     */
+    public synchronized void removeValue(String key) {
+        rejected.remove(key);
+        CacheEntry entry = data.get(key);
+        if(entry != null){
+            remove(key, entry);
+        }
+    }
+    
+    /**
+     * Remove all cached data.
+     */
+    public synchronized void clear() {
+        data.clear();
+        rejected.clear();
+        totalEntries = 0;
+        totalBytes = 0;
+    }
+    
+    private boolean remove(String key, CacheEntry entry){
+        if(!data.remove(key, entry)){
+            return false;
+        }
+        totalEntries -= entry.entries;
+        totalBytes -= entry.bytes;
+        return true;
+    }
+    
+    private void notifyEvicted(List<Eviction> evicted){
+        for(Eviction item : evicted){
+            evictionCount.incrementAndGet();
+            for(EvictionListener listener : evictionListeners){
+                listener.dataEvicted(item.key, item.value, item.cause);
+            }
+        }
+    }
+    
+    private static boolean over(long limit, long value){
+        return limit > 0 && value > limit;
+    }
+    
+    private long estimateBytes(String key, List value){
+        CachePolicy keyPolicy = keyPolicies.get(key);
+        if(policy.getMaxBytes() <= 0 && (keyPolicy == null || keyPolicy.getMaxBytes() <= 0)){
+            //not used
+            return 0;
+        }
+        if(value instanceof CacheSnapshot){
+            return ((CacheSnapshot)value).estimateBytes();
+        }
+        return CacheSnapshot.estimateBytes(value);
+    }
+    
+    public CachePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set the limit of all cached data, and the default expiration.
+     * @param policy 
+     */
+    public void setPolicy(CachePolicy policy) {
+        this.policy = policy;
+    }
+    
+    /**
+     * Set the limit and expiration of one key.
+     * @param key
+     * @param policy 
+     */
+    public void setPolicy(String key, CachePolicy policy) {
+        if(policy == null){
+            keyPolicies.remove(key);
+        }else{
+            keyPolicies.put(key, policy);
+        }
+    }
+    
+    /**
+     * @param admission if false, the least recently used data is always evicted for new data. Default is true.
+     */
+    public void setAdmission(boolean admission) {
+        this.admission = admission;
+    }
+    
+    public void addEvictionListener(EvictionListener listener){
+        evictionListeners.add(listener);
+    }
+    
+    public void removeEvictionListener(EvictionListener listener){
+        evictionListeners.remove(listener);
+    }
+    
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    /**
+     * @return count of data not admitted by the cache policy, it's also counted in getEvictionCount()
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    
+    public long getRejectedRetention() {
+        return rejectedRetention;
+    }
+    
+    /**
+     * Set how long the data not admitted is still returned. Default is 10 seconds. 
+     * @param rejectedRetention in milliseconds, zero means the data not admitted is not kept
+     */
+    public void setRejectedRetention(long rejectedRetention) {
+        this.rejectedRetention = rejectedRetention;
+    }
+    
+    /**
+     * @return count of cached entities of all keys
+     */
+    public synchronized long getTotalEntries() {
+        return totalEntries;
+    }
+    
+    /**
+     * @return estimated bytes of all keys, only counted when maxBytes is set
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    public synchronized ScheduledExecutorService getScheduler() {
+        if(scheduler == null){
+            scheduler = new ScheduledThreadPoolExecutor(2, new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "bugu-cache-reload");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return scheduler;
+    }
+    
+    public CacheTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set how data changes are sent to all JVMs in cluster. If it's not set, ZooKeeper is used when zkConnectString is set.
+     * @param transport such as ChangeStreamCacheTransport, CappedCollectionCacheTransport
+     */
+    public void setTransport(CacheTransport transport) {
+        this.transport = transport;
     }
     
     public void setZkConnectString(String zkConnectString) {
@@ -89,4 +464,36 @@ public class BuguCache {
         return zkClient;
     }
     
+    private static final class Eviction {
+        
+        final String key;
+        final List value;
+        final EvictionCause cause;
+        
+        Eviction(String key, List value, EvictionCause cause){
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+        
+    }
+    
+    private static final class CacheEntry {
+        
+        final List value;
+        final long entries;
+        final long bytes;
+        final long createTime;
+        volatile long accessTime;
+        
+        CacheEntry(List value, long bytes, long now){
+            this.value = value;
+            this.entries = value.size();
+            this.bytes = bytes;
+            this.createTime = now;
+            this.accessTime = now;
+        }
+        
+    }
+    
 }
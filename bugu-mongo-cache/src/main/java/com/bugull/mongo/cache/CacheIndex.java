@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.exception.FieldException;
+import com.bugull.mongo.mapper.EntityCodecPlan;
+import com.bugull.mongo.mapper.EntityComparator;
+import com.bugull.mongo.mapper.FieldPlan;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable index over one field of the cached data. It's built together with the cached data, and replaced when the data changes.
+ * 
+ * <p>The index holds handles of the entities, not the entities themselves, so it works for both heap and off-heap storage. 
+ * The handle is resolved to entity by CacheSnapshot.</p>
+ * 
+ * <p>If the field is a collection or an array, every element of it is indexed. Null value is not indexed. 
+ * For UNIQUE index, if more than one entity has the same value, the first one is returned. 
+ * The others are still held, so the value is not lost when the first one is removed.</p>
+ * 
+ * <p>The keys are split into buckets: HASH and UNIQUE index by the hash of key, SORTED index by the range of key. 
+ * A change copies only the buckets it touches, not the whole index.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+final class CacheIndex {
+    
+    private final static Comparator<Object> VALUE_COMPARATOR = new Comparator<Object>(){
+        @Override
+        public int compare(Object o1, Object o2) {
+            return EntityComparator.compareValue(o1, o2);
+        }
+    };
+    
+    private final static int MIN_SEGMENT_SIZE = 64;
+    
+    private final FieldPlan fp;
+    private final String field;
+    private final CacheIndexType type;
+    
+    //HASH and UNIQUE index, key to handles, the bucket is chosen by hash of key
+    private final Map<Object, List<Object>>[] buckets;
+    
+    //SORTED index, each segment holds a range of keys, and is found by its lowest key
+    private final NavigableMap<Object, NavigableMap<Object, List<Object>>> segments;
+    private final int segmentSize;
+    
+    /**
+     * Build index for entities, the entity itself is the handle.
+     */
+    CacheIndex(Class<?> clazz, String field, CacheIndexType type, List<?> entities){
+        this(clazz, field, type, entities, entities);
+    }
+    
+    /**
+     * @param entities
+     * @param handles the handle of each entity, in the same order
+     */
+    CacheIndex(Class<?> clazz, String field, CacheIndexType type, List<?> entities, List<?> handles){
+        this.fp = getFieldPlan(clazz, field);
+        this.field = field;
+        this.type = type;
+        int size = entities.size();
+        Map<Object, List<Object>> map;
+        if(type == CacheIndexType.SORTED){
+            map = new TreeMap<>(VALUE_COMPARATOR);
+        }else{
+            map = new HashMap<>(size * 4 / 3 + 1);
+        }
+        for(int i=0; i<size; i++){
+            add(map, entities.get(i), handles.get(i));
+        }
+        if(type == CacheIndexType.SORTED){
+            this.buckets = null;
+            this.segmentSize = Math.max(MIN_SEGMENT_SIZE, (int)Math.sqrt(size));
+            this.segments = new TreeMap<>(VALUE_COMPARATOR);
+            NavigableMap<Object, List<Object>> segment = null;
+            for(Map.Entry<Object, List<Object>> entry : map.entrySet()){
+                if(segment == null || segment.size() == segmentSize){
+                    segment = new TreeMap<>(VALUE_COMPARATOR);
+                    segments.put(entry.getKey(), segment);
+                }
+                segment.put(entry.getKey(), entry.getValue());
+            }
+        }else{
+            this.segments = null;
+            this.segmentSize = 0;
+            this.buckets = newBuckets(size);
+            for(Map.Entry<Object, List<Object>> entry : map.entrySet()){
+                buckets[bucketOf(buckets, entry.getKey())].put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    private CacheIndex(CacheIndex source, Map<Object, List<Object>>[] buckets, NavigableMap<Object, NavigableMap<Object, List<Object>>> segments){
+        this.fp = source.fp;
+        this.field = source.field;
+        this.type = source.type;
+        this.segmentSize = source.segmentSize;
+        this.buckets = buckets;
+        this.segments = segments;
+    }
+    
+    static FieldPlan getFieldPlan(Class<?> clazz, String field){
+        EntityCodecPlan plan = CodecPlanCache.getInstance().get(clazz);
+        FieldPlan fp = plan.getField(field);
+        if(fp == null){
+            fp = plan.getFieldByColumn(field);
+        }
+        if(fp == null){
+            throw new FieldException("Can not index the field " + field + ": no such field in " + clazz.getName());
+        }
+        return fp;
+    }
+    
+    /**
+     * About sqrt(size) buckets, so both the bucket array and a bucket are small to copy.
+     */
+    private static Map<Object, List<Object>>[] newBuckets(int size){
+        int count = 1;
+        while((long)count * count < size){
+            count <<= 1;
+        }
+        Map<Object, List<Object>>[] result = new Map[count];
+        for(int i=0; i<count; i++){
+            result[i] = new HashMap<>();
+        }
+        return result;
+    }
+    
+    private static int bucketOf(Map<Object, List<Object>>[] buckets, Object key){
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & (buckets.length - 1);
+    }
+    
+    /**
+     * Get the index keys of the entity.
+     */
+    private List<Object> keysOf(Object entity){
+        Object value = fp.getAccessor().get(entity);
+        if(value == null){
+            return Collections.emptyList();
+        }
+        List<Object> keys = new ArrayList<>();
+        if(value instanceof Collection){
+            for(Object item : (Collection)value){
+                if(item != null){
+                    keys.add(toKey(item));
+                }
+            }
+        }
+        else if(value.getClass().isArray()){
+            int len = Array.getLength(value);
+            for(int i=0; i<len; i++){
+                Object item = Array.get(value, i);
+                if(item != null){
+                    keys.add(toKey(item));
+                }
+            }
+        }
+        else{
+            keys.add(toKey(value));
+        }
+        return keys;
+    }
+    
+    private void add(Map<Object, List<Object>> map, Object entity, Object handle){
+        for(Object key : keysOf(entity)){
+            List<Object> handles = map.get(key);
+            if(handles == null){
+                handles = new ArrayList<>(1);
+                map.put(key, handles);
+            }
+            //an entity is indexed only once, even if its array contains the value many times
+            if(handles.isEmpty() || handles.get(handles.size() - 1) != handle){
+                handles.add(handle);
+            }
+        }
+    }
+    
+    /**
+     * Create a new index, with the old entity removed and the new entity added. This index is not changed.
+     * @param oldEntity null if nothing is removed
+     * @param oldHandle
+     * @param newEntity null if nothing is added
+     * @param newHandle
+     * @return 
+     */
+    CacheIndex change(Object oldEntity, Object oldHandle, Object newEntity, Object newHandle){
+        Delta delta = type == CacheIndexType.SORTED ? new SegmentDelta() : new BucketDelta();
+        if(oldEntity != null){
+            for(Object key : keysOf(oldEntity)){
+                if(find(key) == null){
+                    continue;
+                }
+                Map<Object, List<Object>> bucket = delta.bucketForWrite(key);
+                List<Object> found = bucket.get(key);
+                if(found == null){
+                    continue;
+                }
+                //copy on write, the list is shared with the old index
+                List<Object> handles = new ArrayList<>(found);
+                removeHandle(handles, oldHandle);
+                if(handles.isEmpty()){
+                    bucket.remove(key);
+                }else{
+                    bucket.put(key, handles);
+                }
+            }
+        }
+        if(newEntity != null){
+            for(Object key : keysOf(newEntity)){
+                Map<Object, List<Object>> bucket = delta.bucketForWrite(key);
+                List<Object> found = bucket.get(key);
+                List<Object> handles = found == null ? new ArrayList<>(1) : new ArrayList<>(found);
+                if(handles.isEmpty() || handles.get(handles.size() - 1) != newHandle){
+                    handles.add(newHandle);
+                }
+                bucket.put(key, handles);
+            }
+        }
+        return delta.build();
+    }
+    
+    private void removeHandle(List<Object> handles, Object handle){
+        int size = handles.size();
+        for(int i=0; i<size; i++){
+            if(handles.get(i) == handle){
+                handles.remove(i);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * The buckets changed by one change(), each of them is copied at the first write.
+     */
+    private interface Delta {
+        
+        Map<Object, List<Object>> bucketForWrite(Object key);
+        
+        CacheIndex build();
+        
+    }
+    
+    private class BucketDelta implements Delta {
+        
+        private final Map<Object, List<Object>>[] newBuckets = buckets.clone();
+        private final boolean[] copied = new boolean[buckets.length];
+        
+        @Override
+        public Map<Object, List<Object>> bucketForWrite(Object key){
+            int i = bucketOf(newBuckets, key);
+            if(!copied[i]){
+                newBuckets[i] = new HashMap<>(newBuckets[i]);
+                copied[i] = true;
+            }
+            return newBuckets[i];
+        }
+        
+        @Override
+        public CacheIndex build(){
+            return new CacheIndex(CacheIndex.this, newBuckets, null);
+        }
+        
+    }
+    
+    private class SegmentDelta implements Delta {
+        
+        private final NavigableMap<Object, NavigableMap<Object, List<Object>>> newSegments = new TreeMap<>(segments);
+        //the copied segment, and its lowest key in newSegments
+        private final Map<NavigableMap<Object, List<Object>>, Object> copied = new IdentityHashMap<>();
+        
+        @Override
+        public Map<Object, List<Object>> bucketForWrite(Object key){
+            Map.Entry<Object, NavigableMap<Object, List<Object>>> entry = newSegments.floorEntry(key);
+            if(entry == null){
+                //smaller than any key, it goes to the first segment
+                entry = newSegments.firstEntry();
+            }
+            if(entry == null){
+                NavigableMap<Object, List<Object>> segment = new TreeMap<>(VALUE_COMPARATOR);
+                newSegments.put(key, segment);
+                copied.put(segment, key);
+                return segment;
+            }
+            NavigableMap<Object, List<Object>> segment = entry.getValue();
+            if(!copied.containsKey(segment)){
+                segment = new TreeMap<>(segment);
+                newSegments.put(entry.getKey(), segment);
+                copied.put(segment, entry.getKey());
+            }
+            return segment;
+        }
+        
+        @Override
+        public CacheIndex build(){
+            for(Map.Entry<NavigableMap<Object, List<Object>>, Object> entry : copied.entrySet()){
+                newSegments.remove(entry.getValue());
+            }
+            for(NavigableMap<Object, List<Object>> segment : copied.keySet()){
+                if(segment.isEmpty()){
+                    continue;
+                }
+                if(segment.size() <= segmentSize * 2){
+                    newSegments.put(segment.firstKey(), segment);
+                    continue;
+                }
+                //split the large segment
+                NavigableMap<Object, List<Object>> part = null;
+                for(Map.Entry<Object, List<Object>> entry : segment.entrySet()){
+                    if(part == null || part.size() == segmentSize){
+                        part = new TreeMap<>(VALUE_COMPARATOR);
+                        newSegments.put(entry.getKey(), part);
+                    }
+                    part.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new CacheIndex(CacheIndex.this, null, newSegments);
+        }
+        
+    }
+    
+    /**
+     * Create a new index, with every handle replaced by the mapped one.
+     * @param handleMap old handle to new handle
+     * @return 
+     */
+    CacheIndex remap(Map<Object, Object> handleMap){
+        if(type == CacheIndexType.SORTED){
+            NavigableMap<Object, NavigableMap<Object, List<Object>>> newSegments = new TreeMap<>(VALUE_COMPARATOR);
+            for(Map.Entry<Object, NavigableMap<Object, List<Object>>> entry : segments.entrySet()){
+                NavigableMap<Object, List<Object>> segment = new TreeMap<>(VALUE_COMPARATOR);
+                remap(entry.getValue(), segment, handleMap);
+                newSegments.put(entry.getKey(), segment);
+            }
+            return new CacheIndex(this, null, newSegments);
+        }
+        Map<Object, List<Object>>[] newBuckets = new Map[buckets.length];
+        for(int i=0; i<buckets.length; i++){
+            newBuckets[i] = new HashMap<>(buckets[i].size() * 4 / 3 + 1);
+            remap(buckets[i], newBuckets[i], handleMap);
+        }
+        return new CacheIndex(this, newBuckets, null);
+    }
+    
+    private void remap(Map<Object, List<Object>> source, Map<Object, List<Object>> target, Map<Object, Object> handleMap){
+        for(Map.Entry<Object, List<Object>> entry : source.entrySet()){
+            List<Object> handles = entry.getValue();
+            List<Object> mapped = new ArrayList<>(handles.size());
+            for(Object handle : handles){
+                mapped.add(handleMap.get(handle));
+            }
+            target.put(entry.getKey(), mapped);
+        }
+    }
+    
+    /**
+     * The hash key of number is not changed by the type, e.g. an int field can be found by a long value.
+     */
+    private Object toKey(Object value){
+        if(type == CacheIndexType.SORTED){
+            return value;
+        }
+        if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte){
+            return ((Number)value).longValue();
+        }
+        if(value instanceof Float){
+            return ((Float)value).doubleValue();
+        }
+        return value;
+    }
+    
+    /**
+     * @param key
+     * @return handles of the key, or null if not found
+     */
+    private List<Object> find(Object key){
+        if(type == CacheIndexType.SORTED){
+            Map.Entry<Object, NavigableMap<Object, List<Object>>> entry = segments.floorEntry(key);
+            return entry == null ? null : entry.getValue().get(key);
+        }
+        return buckets[bucketOf(buckets, key)].get(key);
+    }
+    
+    /**
+     * @param value
+     * @return handles of the entities
+     */
+    List<Object> get(Object value){
+        if(value == null){
+            return Collections.emptyList();
+        }
+        List<Object> found = find(toKey(value));
+        if(found == null){
+            return Collections.emptyList();
+        }
+        if(type == CacheIndexType.UNIQUE){
+            return Collections.singletonList(found.get(0));
+        }
+        return Collections.unmodifiableList(found);
+    }
+    
+    List<Object> getIn(Collection<?> values){
+        //the same entity may be found by different values
+        Set<Object> found = newIdentitySet();
+        List<Object> list = new ArrayList<>();
+        for(Object value : values){
+            for(Object handle : get(value)){
+                if(found.add(handle)){
+                    list.add(handle);
+                }
+            }
+        }
+        return list;
+    }
+    
+    /**
+     * @param from inclusive, null means no lower bound
+     * @param to inclusive, null means no upper bound
+     * @return handles of the entities, in the order of the field value
+     */
+    List<Object> getRange(Object from, Object to){
+        if(type != CacheIndexType.SORTED){
+            throw new BuguCacheException("The field " + field + " does not have a SORTED index");
+        }
+        if(from != null && to != null && VALUE_COMPARATOR.compare(from, to) > 0){
+            return Collections.emptyList();
+        }
+        NavigableMap<Object, NavigableMap<Object, List<Object>>> segs = segments;
+        if(from != null){
+            //the segment containing from starts before it
+            Object start = segs.floorKey(from);
+            if(start != null){
+                segs = segs.tailMap(start, true);
+            }
+        }
+        if(to != null){
+            segs = segs.headMap(to, true);
+        }
+        Set<Object> found = newIdentitySet();
+        List<Object> list = new ArrayList<>();
+        for(NavigableMap<Object, List<Object>> segment : segs.values()){
+            NavigableMap<Object, List<Object>> sub = segment;
+            if(from != null){
+                sub = sub.tailMap(from, true);
+            }
+            if(to != null){
+                sub = sub.headMap(to, true);
+            }
+            for(List<Object> handles : sub.values()){
+                for(Object handle : handles){
+                    if(found.add(handle)){
+                        list.add(handle);
+                    }
+                }
+            }
+        }
+        return list;
+    }
+    
+    private static Set<Object> newIdentitySet(){
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+
+    String getField() {
+        return field;
+    }
+
+    CacheIndexType getType() {
+        return type;
+    }
+    
+}
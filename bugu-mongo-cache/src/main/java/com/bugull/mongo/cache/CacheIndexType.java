@@ -14,27 +14,28 @@
  * limitations under the License.
  */
 
-package com.bugull.mongo.decoder;
-
-import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.utils.Operator;
-import com.mongodb.DBObject;
-import java.lang.reflect.Field;
+package com.bugull.mongo.cache;
 
 /**
- *
+ * Type of in-memory index over the cached data of CacheableDao.
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
-public class IdDecoder extends AbstractDecoder{
+public enum CacheIndexType {
+    
+    /**
+     * Hash index, one entity per value. Lookup by value in O(1).
+     */
+    UNIQUE,
     
-    public IdDecoder(Field field, DBObject dbo){
-        super(field);
-        value = dbo.get(Operator.ID);
-    }
+    /**
+     * Hash index, many entities per value. Lookup by value in O(1).
+     */
+    HASH,
     
-    @Override
-    public void decode(Object obj){
-        FieldUtil.set(obj, field, value.toString());
-    }
+    /**
+     * Sorted index, many entities per value. Lookup by value in O(log n), and lookup by range.
+     */
+    SORTED
     
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+/**
+ * Bounds and expiration of cached data in BuguCache.
+ * 
+ * <p>Set to BuguCache by setPolicy(policy), maxEntries and maxBytes bound the total of all keys, 
+ * and ttl/tti are the default of every key. Set to one key by setPolicy(key, policy) or CacheableDao.setCachePolicy(), 
+ * maxEntries and maxBytes bound that key only, and ttl/tti override the default.</p>
+ * 
+ * <p>Zero means no limit.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CachePolicy {
+    
+    private long maxEntries;
+    private long maxBytes;
+    private long ttl;
+    private long tti;
+    
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries max count of cached entities
+     * @return 
+     */
+    public CachePolicy setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes max estimated bytes of cached entities
+     * @return 
+     */
+    public CachePolicy setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @param ttl time to live in milliseconds, since the data is loaded
+     * @return 
+     */
+    public CachePolicy setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public long getTti() {
+        return tti;
+    }
+
+    /**
+     * @param tti time to idle in milliseconds, since the data is last read
+     * @return 
+     */
+    public CachePolicy setTti(long tti) {
+        this.tti = tti;
+        return this;
+    }
+    
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DefaultDBEncoder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable cached data of CacheableDao, together with the indexes built over it.
+ * 
+ * <p>A new snapshot is built completely before it's published, so readers always see a whole list, and indexes of the same list. 
+ * When one entity changes, a new snapshot is derived from the old one by change().</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+abstract class CacheSnapshot<T> extends AbstractList<T> implements RandomAccess {
+    
+    private final static int SAMPLE_SIZE = 16;
+    
+    protected final Map<String, CacheIndex> indexes;
+    
+    //id to position, built at the first use
+    private volatile Map<String, Integer> positions;
+    
+    protected CacheSnapshot(Map<String, CacheIndex> indexes){
+        this.indexes = indexes;
+    }
+    
+    /**
+     * The handle of the entity at the position, which is held by indexes.
+     * @param index
+     * @return 
+     */
+    abstract Object handleAt(int index);
+    
+    /**
+     * Get the entity by handle.
+     * @param handle
+     * @return 
+     */
+    abstract T resolve(Object handle);
+    
+    /**
+     * The id of the entity at the position.
+     * @param index
+     * @return 
+     */
+    abstract String idAt(int index);
+    
+    /**
+     * @param id
+     * @return the position of the entity, or -1 if not found
+     */
+    int indexOfId(String id){
+        Map<String, Integer> map = positions;
+        if(map == null){
+            int size = size();
+            map = new HashMap<>(size * 4 / 3 + 1);
+            for(int i=0; i<size; i++){
+                String key = idAt(i);
+                if(!map.containsKey(key)){
+                    map.put(key, i);
+                }
+            }
+            positions = map;
+        }
+        Integer index = map.get(id);
+        return index == null ? -1 : index;
+    }
+    
+    /**
+     * The changed snapshot keeps the id positions of this one, if the entity is replaced at the same position.
+     * @param changed the snapshot created by change()
+     * @param removeIndex
+     * @param newId the id of the inserted entity, null if nothing is inserted
+     * @param insertIndex
+     * @return the changed snapshot
+     */
+    protected CacheSnapshot<T> keepPositions(CacheSnapshot<T> changed, int removeIndex, String newId, int insertIndex){
+        Map<String, Integer> map = positions;
+        if(map != null && removeIndex >= 0 && removeIndex == insertIndex && newId != null && newId.equals(idAt(removeIndex))){
+            changed.positions = map;
+        }
+        return changed;
+    }
+    
+    /**
+     * Create a new snapshot: remove the entity at removeIndex, then insert the entity at insertIndex.
+     * @param removeIndex -1 if nothing is removed
+     * @param entity null if nothing is inserted
+     * @param insertIndex the position in the list after removal
+     * @return 
+     */
+    abstract CacheSnapshot<T> change(int removeIndex, T entity, int insertIndex);
+    
+    abstract CacheSnapshot<T> withIndexes(Map<String, CacheIndex> indexes);
+    
+    /**
+     * @return count of entity objects held in heap
+     */
+    abstract int getHeapEntryCount();
+    
+    /**
+     * @return bytes allocated out of heap
+     */
+    abstract long getOffHeapBytes();
+    
+    /**
+     * @return estimated bytes of the cached data
+     */
+    abstract long estimateBytes();
+    
+    CacheIndex getIndex(String field){
+        return indexes.get(field);
+    }
+    
+    List<T> resolveAll(List<Object> handles){
+        List<T> list = new ArrayList<>(handles.size());
+        for(Object handle : handles){
+            list.add(resolve(handle));
+        }
+        return list;
+    }
+    
+    /**
+     * Build indexes of all the entities again, e.g. a new index is added.
+     * @param clazz
+     * @param types
+     * @return 
+     */
+    CacheSnapshot<T> reindex(Class<?> clazz, Map<String, CacheIndexType> types){
+        List<Object> handles = new AbstractList<Object>(){
+            @Override
+            public Object get(int index) {
+                return handleAt(index);
+            }
+            @Override
+            public int size() {
+                return CacheSnapshot.this.size();
+            }
+        };
+        return withIndexes(buildIndexes(clazz, types, this, handles));
+    }
+    
+    protected Map<String, CacheIndex> changeIndexes(Object oldEntity, Object oldHandle, Object newEntity, Object newHandle){
+        if(indexes.isEmpty()){
+            return indexes;
+        }
+        Map<String, CacheIndex> result = new HashMap<>();
+        for(Map.Entry<String, CacheIndex> entry : indexes.entrySet()){
+            result.put(entry.getKey(), entry.getValue().change(oldEntity, oldHandle, newEntity, newHandle));
+        }
+        return result;
+    }
+    
+    /**
+     * Estimate the heap bytes of entities, by the BSON size of some samples. 
+     * Java objects are larger than BSON, so the BSON size is doubled.
+     * @param list
+     * @return 
+     */
+    static long estimateBytes(List<?> list){
+        int size = list.size();
+        if(size == 0){
+            return 0;
+        }
+        int step = Math.max(1, size / SAMPLE_SIZE);
+        long bytes = 0;
+        int count = 0;
+        DefaultDBEncoder encoder = new DefaultDBEncoder();
+        for(int i=0; i<size; i+=step){
+            bytes += encoder.encode(MapperUtil.toDBObject(list.get(i), true)).length;
+            count++;
+        }
+        return bytes * 2 * size / count;
+    }
+    
+    static Map<String, CacheIndex> buildIndexes(Class<?> clazz, Map<String, CacheIndexType> types, List<?> entities, List<?> handles){
+        if(types.isEmpty()){
+            return Collections.emptyMap();
+        }
+        Map<String, CacheIndex> result = new HashMap<>();
+        for(Map.Entry<String, CacheIndexType> entry : types.entrySet()){
+            String field = entry.getKey();
+            result.put(field, new CacheIndex(clazz, field, entry.getValue(), entities, handles));
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+/**
+ * Where CacheableDao keeps the cached entities.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public enum CacheStorage {
+    
+    /**
+     * Entities are kept in heap, as java objects.
+     */
+    HEAP,
+    
+    /**
+     * Entities are kept out of heap, as BSON bytes in direct ByteBuffer, and decoded on access. 
+     * Recently accessed entities can be kept in a small hot tier in heap.
+     */
+    OFF_HEAP
+    
+}
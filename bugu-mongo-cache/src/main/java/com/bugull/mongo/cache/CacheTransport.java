@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.mongodb.DBObject;
+
+/**
+ * Transport that sends the data change messages of CacheableDao to all JVMs.
+ * 
+ * <p>A message is a DBObject such as {type:"changed", id:"..."}. 
+ * The transport passes the received messages to CacheableDao.onMessage(), and calls CacheableDao.onMissed() 
+ * if some messages may be lost, then all data is reloaded.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface CacheTransport {
+    
+    public final static String KEY_TYPE = "type";
+    public final static String KEY_ID = "id";
+    
+    public final static String TYPE_CHANGED = "changed";
+    public final static String TYPE_DELETED = "deleted";
+    public final static String TYPE_RELOAD = "reload";
+    
+    /**
+     * Start receiving the messages of the DAO.
+     * @param dao 
+     */
+    public void subscribe(CacheableDao<?> dao);
+    
+    /**
+     * Send a message of the DAO. The sender JVM receives it too.
+     * @param dao
+     * @param message 
+     */
+    public void publish(CacheableDao<?> dao, DBObject message);
+    
+    /**
+     * Stop receiving messages, and release resources.
+     */
+    public void close();
+    
+}
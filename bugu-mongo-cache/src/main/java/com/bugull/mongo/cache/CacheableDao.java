@@ -16,56 +16,67 @@
 package com.bugull.mongo.cache;
 
 import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.BuguEntity;
 import com.bugull.mongo.BuguQuery;
+import com.bugull.mongo.mapper.EntityComparator;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.cache.NodeCache;
-import org.apache.curator.framework.recipes.cache.NodeCacheListener;
-import org.apache.zookeeper.CreateMode;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * DAO that can cache data.
  * 
+ * <p>When an entity is inserted, updated or deleted, only that entity is read again and applied to the cached data. 
+ * All data is reloaded on drop(), remove by condition, multi update, and periodic reconciliation.</p>
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 @SuppressWarnings("unchecked")
 public class CacheableDao <T> extends BuguDao<T> {
-
+    
     private BuguQuery<T> cacheQuery;
     
     private long reloadDelay;
     
+    private ScheduledFuture<?> reconcileFuture;
+    
+    //increased every time the cached data is changed
+    private final AtomicLong version = new AtomicLong();
+    
+    //a reload will read all the changes, so the delta before it can be skipped
+    private volatile boolean reloadPending;
+    
+    //at most one reload of this DAO is waiting in the scheduler, the other notifications are coalesced into it
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean();
+    
+    private final AtomicLong reloadCount = new AtomicLong();
+    private final AtomicLong reloadTotalTime = new AtomicLong();
+    private volatile long lastReloadTime;
+    private final AtomicLong coalescedCount = new AtomicLong();
+    
+    private final Map<String, CacheIndexType> indexTypes = new LinkedHashMap<>();
+    
+    private CacheStorage storage = CacheStorage.HEAP;
+    private int hotTierSize;
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeTime = new AtomicLong();
+    
     public CacheableDao(Class<T> clazz){
         super(clazz);
         super.addEntityListener(new DataChangeListener(this));
-        BuguCache cache = BuguCache.getInstance();
-        CuratorFramework zkClient = cache.getZkClient();
-        if(zkClient != null){
-            String path = BuguCache.ZK_PREFIX + clazz.getName();
-            //create node if not exists
-            try {
-                if(zkClient.checkExists().forPath(path) == null){
-                    zkClient.create().withMode(CreateMode.PERSISTENT).forPath(path);
-                }
-            } catch (Exception ex) {
-                throw new BuguCacheException(ex.getMessage());
-            }
-            //create and start NodeCache
-            NodeCache nodeCache = new NodeCache(zkClient, path);
-            try {
-                nodeCache.start();
-            } catch (Exception ex) {
-                throw new BuguCacheException(ex.getMessage());
-            }
-            //add NodeCache listener
-            nodeCache.getListenable().addListener(new NodeCacheListener(){
-                @Override
-                public void nodeChanged() throws Exception {
-                    reloadCacheData();
-                }
-            });
+        CacheTransport transport = BuguCache.getInstance().getTransport();
+        if(transport != null){
+            transport.subscribe(this);
         }
     }
 
@@ -77,75 +88,385 @@ public class CacheableDao <T> extends BuguDao<T> {
         this.reloadDelay = reloadDelay;
     }
     
+    /**
+     * Set the limit and expiration of the cached data. When it's evicted, it's loaded again on next read.
+     * @param policy 
+     */
+    protected void setCachePolicy(CachePolicy policy) {
+        BuguCache.getInstance().setPolicy(clazz.getName(), policy);
+    }
+    
+    /**
+     * Set where the cached entities are kept. It takes effect on the next reload.
+     * <p>With OFF_HEAP storage, entities are decoded on every access, except the ones in hot tier, 
+     * and the @Ref/@RefList fields with cascade read are loaded from database when decoded.</p>
+     * @param storage 
+     */
+    protected void setStorage(CacheStorage storage) {
+        this.storage = storage;
+    }
+    
+    /**
+     * Set the count of recently accessed entities kept in heap, for OFF_HEAP storage. Default is 0, no hot tier.
+     * @param hotTierSize 
+     */
+    protected void setHotTierSize(int hotTierSize) {
+        this.hotTierSize = hotTierSize;
+    }
+    
+    /**
+     * Index a field of the cached data, so it can be found by getCached(), getCachedIn() and getCachedRange().
+     * @param field the field name
+     * @param type 
+     */
+    protected synchronized void addCacheIndex(String field, CacheIndexType type) {
+        CacheIndex.getFieldPlan(clazz, field);
+        indexTypes.put(field, type);
+        CacheSnapshot<T> snapshot = (CacheSnapshot<T>)BuguCache.getInstance().peekValue(clazz.getName());
+        if(snapshot != null){
+            publishSnapshot(snapshot.reindex(clazz, indexTypes), false);
+        }
+    }
+    
+    /**
+     * Reload all data periodically, to correct the cached data if any change is missed.
+     * @param interval in milliseconds
+     */
+    protected synchronized void setReconcileInterval(long interval) {
+        if(reconcileFuture != null){
+            reconcileFuture.cancel(false);
+            reconcileFuture = null;
+        }
+        if(interval <= 0){
+            return;
+        }
+        reconcileFuture = BuguCache.getInstance().getScheduler().scheduleWithFixedDelay(new Runnable(){
+            @Override
+            public void run(){
+                reloadCacheData();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
     /**
      * Get data from cache. If not exists, will query from database.
-     * @return 
+     * 
+     * <p>Note: the returned list is an immutable snapshot of the cached data, shared by all the readers. 
+     * In version 3.8.4 and before, it was a mutable ArrayList. 
+     * Code that modifies the returned list must copy it first, e.g. new ArrayList&lt;&gt;(dao.getCacheData()), 
+     * otherwise UnsupportedOperationException is thrown.</p>
+     * @return an immutable list
      */
     public List<T> getCacheData(){
         BuguCache cache = BuguCache.getInstance();
         String key = clazz.getName();
         List<T> value = (List<T>)cache.getValue(key);
         if(value == null){
-            if(cacheQuery == null){
-                value = this.findAll();
-            }else{
-                value = cacheQuery.results();
+            synchronized(this){
+                value = (List<T>)cache.peekValue(key);
+                if(value == null){
+                    value = setCacheData(queryCacheData());
+                }
             }
-            cache.setValue(key, value);
         }
         return value;
     }
     
     /**
-     * used in DataChangeListener, call this to refresh cache data.
+     * Get the cached entities whose field equals to the value. If the field is a collection or an array, find the entities contain the value.
+     * @param field the indexed field
+     * @param value
+     * @return 
+     */
+    public List<T> getCached(String field, Object value){
+        CacheSnapshot<T> snapshot = (CacheSnapshot<T>)getCacheData();
+        return snapshot.resolveAll(getIndex(snapshot, field).get(value));
+    }
+    
+    /**
+     * Get the cached entities whose field equals to any of the values.
+     * @param field the indexed field
+     * @param values
+     * @return 
+     */
+    public List<T> getCachedIn(String field, Collection<?> values){
+        CacheSnapshot<T> snapshot = (CacheSnapshot<T>)getCacheData();
+        return snapshot.resolveAll(getIndex(snapshot, field).getIn(values));
+    }
+    
+    /**
+     * Get the cached entities whose field is between from and to, in the order of the field. The field must have a SORTED index.
+     * @param field the indexed field
+     * @param from inclusive, null means no lower bound
+     * @param to inclusive, null means no upper bound
+     * @return 
+     */
+    public List<T> getCachedRange(String field, Object from, Object to){
+        CacheSnapshot<T> snapshot = (CacheSnapshot<T>)getCacheData();
+        return snapshot.resolveAll(getIndex(snapshot, field).getRange(from, to));
+    }
+    
+    private CacheIndex getIndex(CacheSnapshot<T> snapshot, String field){
+        CacheIndex index = snapshot.getIndex(field);
+        if(index == null){
+            throw new BuguCacheException("The field " + field + " is not indexed in cache");
+        }
+        return index;
+    }
+    
+    /**
+     * Build the snapshot and its indexes from the query result.
+     */
+    private synchronized List<T> setCacheData(List<T> list){
+        CacheSnapshot<T> snapshot;
+        if(storage == CacheStorage.OFF_HEAP){
+            OffHeapStore<T> store = new OffHeapStore<>(clazz, OffHeapStore.DEFAULT_SLAB_SIZE, hotTierSize, decodeCount, decodeTime);
+            snapshot = OffHeapCacheSnapshot.create(clazz, store, list, indexTypes);
+        }else{
+            snapshot = HeapCacheSnapshot.create(clazz, list, indexTypes);
+        }
+        return publishSnapshot(snapshot, true);
+    }
+    
+    /**
+     * The snapshot is built completely, then published by one write, so readers never see a half-built list.
+     */
+    private List<T> publishSnapshot(CacheSnapshot<T> snapshot, boolean changed){
+        BuguCache.getInstance().setValue(clazz.getName(), snapshot);
+        if(changed){
+            version.incrementAndGet();
+        }
+        return snapshot;
+    }
+    
+    /**
+     * The version of cached data. It changes every time the cached data is changed, 
+     * so readers can check if the data they hold is stale.
+     * @return 
+     */
+    public long getCacheVersion(){
+        return version.get();
+    }
+    
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+    
+    /**
+     * @return total time of all reloads, in milliseconds
+     */
+    public long getReloadTotalTime() {
+        return reloadTotalTime.get();
+    }
+    
+    /**
+     * @return time of the last reload, in milliseconds
+     */
+    public long getLastReloadTime() {
+        return lastReloadTime;
+    }
+    
+    /**
+     * @return count of reload notifications merged into a reload already scheduled
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+    
+    /**
+     * @return count of cached entity objects held in heap. For OFF_HEAP storage, it's the count in hot tier.
+     */
+    public int getHeapEntryCount() {
+        CacheSnapshot<T> snapshot = (CacheSnapshot<T>)BuguCache.getInstance().peekValue(clazz.getName());
+        return snapshot == null ? 0 : snapshot.getHeapEntryCount();
+    }
+    
+    /**
+     * @return bytes allocated out of heap, for OFF_HEAP storage
+     */
+    public long getOffHeapBytes() {
+        CacheSnapshot<T> snapshot = (CacheSnapshot<T>)BuguCache.getInstance().peekValue(clazz.getName());
+        return snapshot == null ? 0 : snapshot.getOffHeapBytes();
+    }
+    
+    /**
+     * @return count of entities decoded from off-heap storage
+     */
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+    
+    /**
+     * @return total time of decoding from off-heap storage, in nanoseconds. Divided by getDecodeCount() is the average latency.
+     */
+    public long getDecodeTime() {
+        return decodeTime.get();
+    }
+    
+    /**
+     * used in DataChangeListener, call this to reload all cache data.
      */
     public void dataChanged(){
-        BuguCache cache = BuguCache.getInstance();
-        CuratorFramework zkClient = cache.getZkClient();
-        //process single JVM
-        if(zkClient == null){
-            reloadCacheData();
+        publish(new BasicDBObject(CacheTransport.KEY_TYPE, CacheTransport.TYPE_RELOAD));
+    }
+    
+    /**
+     * used in DataChangeListener, call this to apply the changed entity to cache data.
+     * @param entity
+     * @param deleted 
+     */
+    public void dataChanged(BuguEntity entity, boolean deleted){
+        if(entity == null || entity.getId() == null){
+            return;
         }
-        //process cluster JVM, by ZooKeeper/curator
-        else{
-            //set new value to ZK node, in order to trigger nodeChanged event
-            String path = BuguCache.ZK_PREFIX + clazz.getName();
-            String data = String.valueOf(System.currentTimeMillis());
-            try {
-                zkClient.setData().inBackground().forPath(path, data.getBytes());
-            } catch (Exception ex) {
-                throw new BuguCacheException(ex.getMessage());
-            }
+        DBObject message = new BasicDBObject(CacheTransport.KEY_TYPE, deleted ? CacheTransport.TYPE_DELETED : CacheTransport.TYPE_CHANGED);
+        message.put(CacheTransport.KEY_ID, entity.getId());
+        publish(message);
+    }
+    
+    @Override
+    protected void bulkChanged(){
+        dataChanged();
+    }
+    
+    /**
+     * In single JVM, process the change directly. In cluster, send it to all JVMs by the CacheTransport.
+     */
+    private void publish(DBObject message){
+        CacheTransport transport = BuguCache.getInstance().getTransport();
+        if(transport == null){
+            process(message);
+        }else{
+            transport.publish(this, message);
+        }
+    }
+    
+    /**
+     * used in CacheTransport, call this when a message is received.
+     * @param message 
+     */
+    public void onMessage(DBObject message){
+        //the document may be written by another node, so cached query results are invalid too
+        collectionChanged();
+        process(message);
+    }
+    
+    /**
+     * used in CacheTransport, call this when some messages may be lost, then all data is reloaded.
+     */
+    public void onMissed(){
+        collectionChanged();
+        reloadCacheData();
+    }
+    
+    private void process(DBObject message){
+        String type = (String)message.get(CacheTransport.KEY_TYPE);
+        Object id = message.get(CacheTransport.KEY_ID);
+        if(CacheTransport.TYPE_RELOAD.equals(type) || id == null){
+            reloadCacheData();
+        }else{
+            applyChange(id.toString(), CacheTransport.TYPE_DELETED.equals(type));
         }
     }
     
+    /**
+     * Schedule a reload in the shared scheduler of BuguCache. 
+     * The notifications within reloadDelay are coalesced into one reload.
+     */
     private void reloadCacheData(){
-        if(reloadDelay > 0){
-            final Timer timer = new Timer();
-            TimerTask task = new TimerTask(){
-                @Override
-                public void run(){
-                    doReload();
-                    timer.cancel();
-                }
-            };
-            timer.schedule(task, reloadDelay);
+        if(BuguCache.getInstance().peekValue(clazz.getName()) == null){
+            //not loaded yet
+            return;
         }
-        else{
-            doReload();
+        reloadPending = true;
+        if(!reloadScheduled.compareAndSet(false, true)){
+            coalescedCount.incrementAndGet();
+            return;
         }
+        BuguCache.getInstance().getScheduler().schedule(new Runnable(){
+            @Override
+            public void run(){
+                //the notifications after this point need another reload, which waits until this one finishes
+                reloadScheduled.set(false);
+                doReload();
+            }
+        }, reloadDelay, TimeUnit.MILLISECONDS);
     }
     
-    private void doReload() {
-        BuguCache cache = BuguCache.getInstance();
-        String key = clazz.getName();
-        List<T> value = null;
+    private synchronized void doReload() {
+        reloadPending = false;
+        long begin = System.currentTimeMillis();
+        List<T> value = queryCacheData();
+        setCacheData(value);
+        long time = System.currentTimeMillis() - begin;
+        lastReloadTime = time;
+        reloadTotalTime.addAndGet(time);
+        reloadCount.incrementAndGet();
+    }
+    
+    private List<T> queryCacheData(){
         if(cacheQuery == null){
-            value = this.findAll();
+            return this.findAll();
         }else{
-            value = cacheQuery.results();
+            return cacheQuery.results();
+        }
+    }
+    
+    /**
+     * Read the changed entity again, and apply it to the cached data.
+     * <p>The entity is always read from database, so the cached data is right even if the changes are processed out of order.</p>
+     */
+    private synchronized void applyChange(String id, boolean deleted){
+        BuguCache cache = BuguCache.getInstance();
+        String key = clazz.getName();
+        CacheSnapshot<T> current = (CacheSnapshot<T>)cache.peekValue(key);
+        if(current == null || reloadPending){
+            return;
+        }
+        //the change may move other entities into or out of the page
+        if(cacheQuery != null && cacheQuery.getPageNumber() > 0 && cacheQuery.getPageSize() > 0){
+            reloadCacheData();
+            return;
+        }
+        T entity = deleted ? null : findChanged(id);
+        int index = current.indexOfId(id);
+        if(entity == null && index < 0){
+            return;
+        }
+        //the position in the list after the old entity is removed
+        int pos = -1;
+        if(entity != null){
+            DBObject sort = cacheQuery == null ? null : cacheQuery.getSort();
+            if(sort == null){
+                pos = index >= 0 ? index : current.size();
+            }else{
+                pos = Collections.binarySearch(current, entity, new EntityComparator(sort));
+                if(pos < 0){
+                    pos = -pos - 1;
+                }
+                if(index >= 0 && pos > index){
+                    pos--;
+                }
+            }
+        }
+        //copy on write, the snapshot held by readers is not changed
+        publishSnapshot(current.change(index, entity, pos), true);
+    }
+    
+    /**
+     * Find the entity by id, only if it matches the cache query.
+     */
+    private T findChanged(String id){
+        BuguQuery<T> query = query().is(Operator.ID, id);
+        if(cacheQuery != null){
+            BasicDBList and = new BasicDBList();
+            and.add(cacheQuery.getCondition());
+            and.add(query.getCondition());
+            query = query();
+            query.setCondition(new BasicDBObject(Operator.AND, and));
         }
-        cache.setValue(key, value);
+        List<T> list = query.results();
+        return list.isEmpty() ? null : list.get(0);
     }
     
 }
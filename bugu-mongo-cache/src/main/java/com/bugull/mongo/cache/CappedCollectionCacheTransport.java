@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.BuguFramework;
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CursorType;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Send messages by a capped collection, for standalone mongoDB server that doesn't support change streams.
+ * 
+ * <p>The capped collection is in the same database as the entity collection. 
+ * Only the writes by CacheableDao are sent. Every DAO tails the capped collection in insertion order, 
+ * and continues after the last message it has read after failure, by skipping the messages until that one. 
+ * The message ids are generated by many JVMs, so they are compared for equality only, never for order. 
+ * If that message has been overwritten in the capped collection, all data is reloaded.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CappedCollectionCacheTransport extends TailingCacheTransport {
+    
+    public final static String DEFAULT_COLLECTION = "_bugu_cache_messages";
+    
+    private final static String KEY_NS = "ns";
+    
+    private final static String NATURAL = "$natural";
+    
+    private final String collectionName;
+    
+    private long cappedSize = 10L * 1024L * 1024L;
+    
+    private long maxAwaitTime = 1000L;
+    
+    public CappedCollectionCacheTransport(){
+        this(DEFAULT_COLLECTION);
+    }
+    
+    public CappedCollectionCacheTransport(String collectionName){
+        this.collectionName = collectionName;
+    }
+
+    @Override
+    protected Tailer createTailer(final CacheableDao<?> dao) {
+        ensureCollection(dao);
+        final String ns = dao.getCollection().getName();
+        //only the messages after subscribe are read
+        final ObjectId start = getLastId(dao, ns);
+        return new Tailer(){
+            
+            //the last message read, null if there was no message
+            private ObjectId lastId = start;
+            
+            @Override
+            public void tail() throws Exception {
+                MongoCollection<Document> coll = getMessageCollection(dao);
+                MongoCursor<Document> cursor = coll.find(Filters.eq(KEY_NS, ns))
+                        .cursorType(CursorType.TailableAwait)
+                        .maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS)
+                        .iterator();
+                //the cursor starts from the oldest message, skip the read ones
+                boolean skipping = lastId != null;
+                ObjectId skipped = null;
+                try{
+                    while(isRunning()){
+                        Document doc = cursor.tryNext();
+                        if(doc != null){
+                            ObjectId id = doc.getObjectId(Operator.ID);
+                            if(skipping){
+                                skipping = !id.equals(lastId);
+                                skipped = id;
+                                continue;
+                            }
+                            lastId = id;
+                            dao.onMessage(new BasicDBObject(doc));
+                            continue;
+                        }
+                        if(skipping){
+                            //all the messages are skipped, the last read one has been overwritten by newer messages
+                            skipping = false;
+                            lastId = skipped;
+                            dao.onMissed();
+                        }
+                        if(cursor.getServerCursor() == null){
+                            //the tailable cursor is dead, e.g. the capped collection was empty when it's opened
+                            Thread.sleep(getRetryInterval());
+                            return;
+                        }
+                    }
+                }finally{
+                    cursor.close();
+                }
+            }
+            
+        };
+    }
+    
+    private ObjectId getLastId(CacheableDao<?> dao, String ns){
+        Document last = getMessageCollection(dao).find(Filters.eq(KEY_NS, ns))
+                .sort(new Document(NATURAL, -1))
+                .limit(1)
+                .first();
+        return last == null ? null : last.getObjectId(Operator.ID);
+    }
+
+    @Override
+    public void publish(CacheableDao<?> dao, DBObject message) {
+        DBObject dbo = new BasicDBObject(Operator.ID, new ObjectId());
+        dbo.put(KEY_NS, dao.getCollection().getName());
+        dbo.putAll(message);
+        getCollection(dao).insert(dbo);
+    }
+    
+    private DBCollection getCollection(CacheableDao<?> dao){
+        return dao.getCollection().getDB().getCollection(collectionName);
+    }
+    
+    private MongoCollection<Document> getMessageCollection(CacheableDao<?> dao){
+        Entity entity = dao.getEntityClass().getAnnotation(Entity.class);
+        MongoDatabase db = BuguFramework.getInstance().getConnection(entity.connection()).getMongoDatabase();
+        return db.getCollection(collectionName);
+    }
+    
+    private void ensureCollection(CacheableDao<?> dao){
+        DB db = dao.getCollection().getDB();
+        if(db.collectionExists(collectionName)){
+            return;
+        }
+        DBObject options = new BasicDBObject("capped", true).append("size", cappedSize);
+        try{
+            db.createCollection(collectionName, options);
+        }catch(MongoCommandException ex){
+            //created by another JVM at the same time
+        }
+    }
+
+    public long getCappedSize() {
+        return cappedSize;
+    }
+
+    /**
+     * @param cappedSize the max size of the capped collection in bytes, only used when it's created
+     * @return 
+     */
+    public CappedCollectionCacheTransport setCappedSize(long cappedSize) {
+        this.cappedSize = cappedSize;
+        return this;
+    }
+
+    public long getMaxAwaitTime() {
+        return maxAwaitTime;
+    }
+
+    public CappedCollectionCacheTransport setMaxAwaitTime(long maxAwaitTime) {
+        this.maxAwaitTime = maxAwaitTime;
+        return this;
+    }
+    
+}
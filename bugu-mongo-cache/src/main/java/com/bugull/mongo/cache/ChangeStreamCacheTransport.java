@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+/**
+ * Receive data changes by MongoDB change streams, which needs a replica set or sharded cluster.
+ * 
+ * <p>All writes to the collection are received, including the writes from other applications, 
+ * so publish() does nothing. The stream is resumed by the last resume token after failure; 
+ * if it can't be resumed, all data is reloaded.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class ChangeStreamCacheTransport extends TailingCacheTransport {
+    
+    private long maxAwaitTime = 1000L;
+
+    @Override
+    protected Tailer createTailer(final CacheableDao<?> dao) {
+        return new Tailer(){
+            
+            private BsonDocument resumeToken;
+            
+            @Override
+            public void tail() throws Exception {
+                MongoCollection<Document> coll = dao.getMongoCollection().withDocumentClass(Document.class);
+                ChangeStreamIterable<Document> iterable = coll.watch().maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS);
+                MongoCursor<ChangeStreamDocument<Document>> cursor;
+                if(resumeToken == null){
+                    cursor = iterable.iterator();
+                }else{
+                    try{
+                        cursor = iterable.resumeAfter(resumeToken).iterator();
+                    }catch(MongoCommandException ex){
+                        //the token is out of the oplog, some changes are lost
+                        resumeToken = null;
+                        cursor = coll.watch().maxAwaitTime(maxAwaitTime, TimeUnit.MILLISECONDS).iterator();
+                        dao.onMissed();
+                    }
+                }
+                try{
+                    while(isRunning()){
+                        ChangeStreamDocument<Document> change = cursor.tryNext();
+                        if(change != null){
+                            resumeToken = change.getResumeToken();
+                            received(dao, change);
+                        }
+                    }
+                }finally{
+                    cursor.close();
+                }
+            }
+            
+        };
+    }
+    
+    private void received(CacheableDao<?> dao, ChangeStreamDocument<Document> change){
+        OperationType type = change.getOperationType();
+        BsonDocument key = change.getDocumentKey();
+        BsonValue id = key == null ? null : key.get("_id");
+        DBObject message;
+        if(id == null){
+            //drop, rename, invalidate, and so on
+            message = new BasicDBObject(KEY_TYPE, TYPE_RELOAD);
+        }
+        else if(type == OperationType.DELETE){
+            message = new BasicDBObject(KEY_TYPE, TYPE_DELETED).append(KEY_ID, toIdString(id));
+        }
+        else{
+            message = new BasicDBObject(KEY_TYPE, TYPE_CHANGED).append(KEY_ID, toIdString(id));
+        }
+        dao.onMessage(message);
+    }
+    
+    private String toIdString(BsonValue id){
+        switch(id.getBsonType()){
+            case OBJECT_ID:
+                return id.asObjectId().getValue().toString();
+            case INT64:
+                return String.valueOf(id.asInt64().getValue());
+            case INT32:
+                return String.valueOf(id.asInt32().getValue());
+            case STRING:
+                return id.asString().getValue();
+            default:
+                return id.toString();
+        }
+    }
+
+    /**
+     * Changes are received by the change stream, no need to send.
+     */
+    @Override
+    public void publish(CacheableDao<?> dao, DBObject message) {
+        
+    }
+
+    public long getMaxAwaitTime() {
+        return maxAwaitTime;
+    }
+
+    /**
+     * @param maxAwaitTime in milliseconds, how long the cursor waits for a change on server. It also decides how soon close() takes effect.
+     * @return 
+     */
+    public ChangeStreamCacheTransport setMaxAwaitTime(long maxAwaitTime) {
+        this.maxAwaitTime = maxAwaitTime;
+        return this;
+    }
+    
+}
@@ -16,13 +16,14 @@
 package com.bugull.mongo.cache;
 
 import com.bugull.mongo.BuguEntity;
-import com.bugull.mongo.listener.EntityListener;
+import com.bugull.mongo.listener.BatchDeleteListener;
+import java.util.List;
 
 /**
  *
  * @author Frank Wen(xbwen@hotmail.com)
  */
-public class DataChangeListener implements EntityListener {
+public class DataChangeListener implements BatchDeleteListener {
     
     private CacheableDao dao;
     
@@ -32,17 +33,30 @@ public class DataChangeListener implements EntityListener {
 
     @Override
     public void entityInserted(BuguEntity entity) {
-        dao.dataChanged();
+        dao.dataChanged(entity, false);
     }
 
     @Override
     public void entityUpdated(BuguEntity entity) {
-        dao.dataChanged();
+        dao.dataChanged(entity, false);
     }
 
     @Override
     public void entityDeleted(BuguEntity entity) {
-        dao.dataChanged();
+        dao.dataChanged(entity, true);
+    }
+
+    @Override
+    public String[] getDeleteFields() {
+        //only the id is used
+        return new String[0];
+    }
+
+    @Override
+    public void entitiesDeleted(List<BuguEntity> entities) {
+        for(BuguEntity entity : entities){
+            dao.dataChanged(entity, true);
+        }
     }
     
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+/**
+ * Why cached data is removed from BuguCache.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public enum EvictionCause {
+    
+    /**
+     * TTL or TTI is reached.
+     */
+    EXPIRED,
+    
+    /**
+     * Removed to make room for other data.
+     */
+    SIZE,
+    
+    /**
+     * New data is not admitted, because it's larger than the limit, or used less frequently than the data it would replace.
+     */
+    REJECTED
+    
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+/**
+ * Count-min sketch of access frequency, used by the TinyLFU admission of BuguCache.
+ * 
+ * <p>Counters are halved after a sample period, so old popularity fades. 
+ * Counters are not updated atomically; a lost increment only makes the estimate slightly lower.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class FrequencySketch {
+    
+    private final static int DEPTH = 4;
+    private final static int[] SEEDS = {0x97cb3127, 0xbe8e3d8f, 0xc2b2ae35, 0x27d4eb2f};
+    
+    private final int[][] table;
+    private final int mask;
+    private final int samplePeriod;
+    private int additions;
+    
+    FrequencySketch(int width){
+        int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        this.table = new int[DEPTH][size];
+        this.mask = size - 1;
+        this.samplePeriod = size * 10;
+    }
+    
+    void increment(Object key){
+        int hash = spread(key.hashCode());
+        for(int i=0; i<DEPTH; i++){
+            int index = indexOf(hash, i);
+            if(table[i][index] < Integer.MAX_VALUE){
+                table[i][index]++;
+            }
+        }
+        if(++additions >= samplePeriod){
+            reset();
+        }
+    }
+    
+    int frequency(Object key){
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for(int i=0; i<DEPTH; i++){
+            min = Math.min(min, table[i][indexOf(hash, i)]);
+        }
+        return min;
+    }
+    
+    private void reset(){
+        additions = 0;
+        for(int[] row : table){
+            for(int i=0; i<row.length; i++){
+                row[i] >>>= 1;
+            }
+        }
+    }
+    
+    private int indexOf(int hash, int i){
+        int h = (hash ^ SEEDS[i]) * SEEDS[i];
+        return (h ^ (h >>> 16)) & mask;
+    }
+    
+    private static int spread(int h){
+        h ^= (h >>> 17);
+        h *= 0xed5ad4bb;
+        return h ^ (h >>> 11);
+    }
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.BuguEntity;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached entities kept in heap as java objects. The entity itself is the handle in indexes.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+final class HeapCacheSnapshot<T> extends CacheSnapshot<T> {
+    
+    private final Object[] elements;
+    
+    private HeapCacheSnapshot(Object[] elements, Map<String, CacheIndex> indexes){
+        super(indexes);
+        this.elements = elements;
+    }
+    
+    static <T> HeapCacheSnapshot<T> create(Class<T> clazz, List<T> list, Map<String, CacheIndexType> types){
+        Object[] elements = list.toArray();
+        List<Object> entities = Arrays.asList(elements);
+        return new HeapCacheSnapshot<>(elements, buildIndexes(clazz, types, entities, entities));
+    }
+
+    @Override
+    public T get(int index) {
+        return (T)elements[index];
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    @Override
+    Object handleAt(int index) {
+        return elements[index];
+    }
+
+    @Override
+    T resolve(Object handle) {
+        return (T)handle;
+    }
+
+    @Override
+    String idAt(int index) {
+        return ((BuguEntity)elements[index]).getId();
+    }
+
+    @Override
+    CacheSnapshot<T> change(int removeIndex, T entity, int insertIndex) {
+        Object[] list = removeIndex >= 0 ? remove(elements, removeIndex) : elements;
+        if(entity != null){
+            list = insert(list, insertIndex, entity);
+        }
+        Object old = removeIndex >= 0 ? elements[removeIndex] : null;
+        HeapCacheSnapshot<T> changed = new HeapCacheSnapshot<>(list, changeIndexes(old, old, entity, entity));
+        return keepPositions(changed, removeIndex, entity == null ? null : ((BuguEntity)entity).getId(), insertIndex);
+    }
+    
+    static <E> E[] remove(E[] array, int index){
+        E[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+    
+    static <E> E[] insert(E[] array, int index, E element){
+        E[] result = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        result[index] = element;
+        return result;
+    }
+
+    @Override
+    CacheSnapshot<T> withIndexes(Map<String, CacheIndex> indexes) {
+        return new HeapCacheSnapshot<>(elements, indexes);
+    }
+
+    @Override
+    int getHeapEntryCount() {
+        return elements.length;
+    }
+
+    @Override
+    long getOffHeapBytes() {
+        return 0;
+    }
+
+    @Override
+    long estimateBytes() {
+        return estimateBytes(this);
+    }
+    
+}
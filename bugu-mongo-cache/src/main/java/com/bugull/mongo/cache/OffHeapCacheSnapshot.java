@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.BuguEntity;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached entities kept out of heap as BSON bytes. The address of the document is the handle in indexes.
+ * 
+ * <p>Every change appends the new document to the store, so the old bytes become garbage. 
+ * When garbage is more than the live data, the live documents are copied to a new store.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class OffHeapCacheSnapshot<T> extends CacheSnapshot<T> {
+    
+    private final OffHeapStore<T> store;
+    private final String[] ids;
+    private final Long[] addresses;
+    private final long liveBytes;
+    
+    private OffHeapCacheSnapshot(OffHeapStore<T> store, String[] ids, Long[] addresses, long liveBytes, Map<String, CacheIndex> indexes){
+        super(indexes);
+        this.store = store;
+        this.ids = ids;
+        this.addresses = addresses;
+        this.liveBytes = liveBytes;
+    }
+    
+    /**
+     * @param store an empty store
+     */
+    static <T> OffHeapCacheSnapshot<T> create(Class<T> clazz, OffHeapStore<T> store, List<T> list, Map<String, CacheIndexType> types){
+        int size = list.size();
+        String[] ids = new String[size];
+        Long[] addresses = new Long[size];
+        long live = 0;
+        for(int i=0; i<size; i++){
+            T entity = list.get(i);
+            ids[i] = ((BuguEntity)entity).getId();
+            addresses[i] = store.add(entity);
+            live += store.length(addresses[i]);
+        }
+        List<Object> handles = new ArrayList<Object>(size);
+        for(Long address : addresses){
+            handles.add(address);
+        }
+        return new OffHeapCacheSnapshot<>(store, ids, addresses, live, buildIndexes(clazz, types, list, handles));
+    }
+
+    @Override
+    public T get(int index) {
+        return store.get(addresses[index]);
+    }
+
+    @Override
+    public int size() {
+        return addresses.length;
+    }
+
+    @Override
+    Object handleAt(int index) {
+        return addresses[index];
+    }
+
+    @Override
+    T resolve(Object handle) {
+        return store.get((Long)handle);
+    }
+
+    @Override
+    String idAt(int index) {
+        return ids[index];
+    }
+
+    @Override
+    CacheSnapshot<T> change(int removeIndex, T entity, int insertIndex) {
+        String[] newIds = ids;
+        Long[] newAddresses = addresses;
+        long live = liveBytes;
+        T oldEntity = null;
+        Long oldAddress = null;
+        if(removeIndex >= 0){
+            oldAddress = addresses[removeIndex];
+            oldEntity = store.get(oldAddress);
+            live -= store.length(oldAddress);
+            newIds = HeapCacheSnapshot.remove(newIds, removeIndex);
+            newAddresses = HeapCacheSnapshot.remove(newAddresses, removeIndex);
+        }
+        Long newAddress = null;
+        if(entity != null){
+            newAddress = store.add(entity);
+            live += store.length(newAddress);
+            newIds = HeapCacheSnapshot.insert(newIds, insertIndex, ((BuguEntity)entity).getId());
+            newAddresses = HeapCacheSnapshot.insert(newAddresses, insertIndex, newAddress);
+        }
+        Map<String, CacheIndex> newIndexes = changeIndexes(oldEntity, oldAddress, entity, newAddress);
+        OffHeapCacheSnapshot<T> snapshot = new OffHeapCacheSnapshot<>(store, newIds, newAddresses, live, newIndexes);
+        if(store.getAllocatedBytes() > live * 2 + store.getSlabSize()){
+            snapshot = snapshot.compact();
+        }
+        return keepPositions(snapshot, removeIndex, entity == null ? null : ((BuguEntity)entity).getId(), insertIndex);
+    }
+    
+    /**
+     * Copy the live documents to a new store. They are copied as bytes, no need to decode.
+     */
+    private OffHeapCacheSnapshot<T> compact(){
+        OffHeapStore<T> newStore = store.newStore();
+        Long[] newAddresses = new Long[addresses.length];
+        Map<Object, Object> handleMap = new IdentityHashMap<>();
+        for(int i=0; i<addresses.length; i++){
+            newAddresses[i] = newStore.append(store.read(addresses[i]));
+            handleMap.put(addresses[i], newAddresses[i]);
+        }
+        Map<String, CacheIndex> newIndexes = new HashMap<>();
+        for(Map.Entry<String, CacheIndex> entry : indexes.entrySet()){
+            newIndexes.put(entry.getKey(), entry.getValue().remap(handleMap));
+        }
+        return new OffHeapCacheSnapshot<>(newStore, ids, newAddresses, liveBytes, newIndexes);
+    }
+
+    @Override
+    CacheSnapshot<T> withIndexes(Map<String, CacheIndex> indexes) {
+        return new OffHeapCacheSnapshot<>(store, ids, addresses, liveBytes, indexes);
+    }
+
+    @Override
+    int getHeapEntryCount() {
+        return store.getHotCount();
+    }
+
+    @Override
+    long getOffHeapBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    /**
+     * The bytes in direct buffers, the same as getOffHeapBytes().
+     */
+    @Override
+    long estimateBytes() {
+        return store.getAllocatedBytes();
+    }
+    
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.DefaultDBEncoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only storage of BSON documents in direct ByteBuffer slabs.
+ * 
+ * <p>A document is located by its address: the slab index in the high 32 bits, and the offset in the low 32 bits. 
+ * The length is read from the BSON document itself. Slabs are released by GC when no snapshot uses the store.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+final class OffHeapStore<T> {
+    
+    final static int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+    
+    private final Class<T> clazz;
+    private final int slabSize;
+    private final int hotTierSize;
+    
+    private final List<ByteBuffer> slabs = new CopyOnWriteArrayList<>();
+    private ByteBuffer current;  //the slab to write, used by writer only
+    private volatile long allocatedBytes;
+    
+    //recently accessed entities, by address
+    private final LinkedHashMap<Long, T> hotTier;
+    
+    private final AtomicLong decodeCount;
+    private final AtomicLong decodeTime;
+    
+    OffHeapStore(Class<T> clazz, int slabSize, int hotTierSize, AtomicLong decodeCount, AtomicLong decodeTime){
+        this.clazz = clazz;
+        this.slabSize = slabSize;
+        this.hotTierSize = hotTierSize;
+        this.decodeCount = decodeCount;
+        this.decodeTime = decodeTime;
+        this.hotTier = new LinkedHashMap<Long, T>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                return size() > OffHeapStore.this.hotTierSize;
+            }
+        };
+    }
+    
+    /**
+     * Create an empty store with the same settings and counters.
+     */
+    OffHeapStore<T> newStore(){
+        return new OffHeapStore<>(clazz, slabSize, hotTierSize, decodeCount, decodeTime);
+    }
+    
+    Long add(T entity){
+        //the referenced entities are not saved
+        DBObject dbo = MapperUtil.toDBObject(entity, true);
+        return append(new DefaultDBEncoder().encode(dbo));
+    }
+    
+    synchronized Long append(byte[] bytes){
+        if(current == null || current.remaining() < bytes.length){
+            current = ByteBuffer.allocateDirect(Math.max(slabSize, bytes.length));
+            slabs.add(current);
+            allocatedBytes += current.capacity();
+        }
+        long address = ((long)(slabs.size() - 1) << 32) | current.position();
+        current.put(bytes);
+        return address;
+    }
+    
+    byte[] read(long address){
+        ByteBuffer slab = slabs.get((int)(address >>> 32)).duplicate();
+        int offset = (int)address;
+        int length = slab.order(ByteOrder.LITTLE_ENDIAN).getInt(offset);
+        byte[] bytes = new byte[length];
+        slab.position(offset);
+        slab.get(bytes);
+        return bytes;
+    }
+    
+    int length(long address){
+        ByteBuffer slab = slabs.get((int)(address >>> 32)).duplicate();
+        return slab.order(ByteOrder.LITTLE_ENDIAN).getInt((int)address);
+    }
+    
+    T get(Long address){
+        if(hotTierSize > 0){
+            synchronized(hotTier){
+                T entity = hotTier.get(address);
+                if(entity != null){
+                    return entity;
+                }
+            }
+        }
+        long begin = System.nanoTime();
+        DBObject dbo = new DefaultDBDecoder().decode(read(address), (DBCollection)null);
+        T entity = MapperUtil.fromDBObject(clazz, dbo);
+        decodeTime.addAndGet(System.nanoTime() - begin);
+        decodeCount.incrementAndGet();
+        if(hotTierSize > 0){
+            synchronized(hotTier){
+                hotTier.put(address, entity);
+            }
+        }
+        return entity;
+    }
+    
+    int getHotCount(){
+        synchronized(hotTier){
+            return hotTier.size();
+        }
+    }
+    
+    long getAllocatedBytes(){
+        return allocatedBytes;
+    }
+    
+    int getSlabSize(){
+        return slabSize;
+    }
+    
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.utils.ThreadUtil;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport that reads messages from mongoDB by a long-running cursor, one thread per DAO.
+ * 
+ * <p>When the cursor fails, it's opened again after retryInterval, and continues from the last position it has read.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class TailingCacheTransport implements CacheTransport {
+    
+    private static final Logger LOGGER = Logger.getLogger("com.bugull.mongo");
+    
+    /**
+     * Read the messages of one DAO. It keeps the position it has read, so it can be called again after failure.
+     */
+    protected interface Tailer {
+        
+        /**
+         * Open a cursor and read messages, until the transport is closed.
+         * @throws Exception 
+         */
+        public void tail() throws Exception;
+        
+    }
+    
+    private ExecutorService executor;
+    
+    private volatile boolean running = true;
+    
+    private long retryInterval = 1000L;
+    
+    protected abstract Tailer createTailer(CacheableDao<?> dao);
+
+    @Override
+    public synchronized void subscribe(CacheableDao<?> dao) {
+        if(executor == null){
+            executor = Executors.newCachedThreadPool(new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "bugu-cache-tailing");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        final Tailer tailer = createTailer(dao);
+        executor.execute(new Runnable(){
+            @Override
+            public void run(){
+                while(running){
+                    try{
+                        tailer.tail();
+                    }catch(Exception ex){
+                        if(!running){
+                            break;
+                        }
+                        LOGGER.log(Level.WARNING, "Failed to read cache messages, retry later", ex);
+                        try{
+                            Thread.sleep(retryInterval);
+                        }catch(InterruptedException ie){
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        ThreadUtil.safeClose(executor);
+        executor = null;
+    }
+    
+    protected boolean isRunning() {
+        return running;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    public TailingCacheTransport setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+        return this;
+    }
+    
+}
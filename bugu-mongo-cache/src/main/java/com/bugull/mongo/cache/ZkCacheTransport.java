@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.NodeCache;
+import org.apache.curator.framework.recipes.cache.NodeCacheListener;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.zookeeper.CreateMode;
+
+/**
+ * Send messages by a ZooKeeper node per entity class. 
+ * 
+ * <p>NodeCache only keeps the latest data of the node, so if the node version is not continuous, all data is reloaded.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class ZkCacheTransport implements CacheTransport {
+    
+    private final CuratorFramework zkClient;
+    
+    private final List<NodeCache> nodeCaches = new ArrayList<>();
+    
+    public ZkCacheTransport(CuratorFramework zkClient){
+        this.zkClient = zkClient;
+    }
+
+    @Override
+    public void subscribe(final CacheableDao<?> dao) {
+        String path = getPath(dao);
+        //create node if not exists
+        try {
+            if(zkClient.checkExists().forPath(path) == null){
+                zkClient.create().withMode(CreateMode.PERSISTENT).forPath(path);
+            }
+        } catch (Exception ex) {
+            throw new BuguCacheException(ex.getMessage());
+        }
+        //create and start NodeCache
+        final NodeCache nodeCache = new NodeCache(zkClient, path);
+        try {
+            nodeCache.start(true);
+        } catch (Exception ex) {
+            throw new BuguCacheException(ex.getMessage());
+        }
+        ChildData initial = nodeCache.getCurrentData();
+        final AtomicInteger lastVersion = new AtomicInteger(initial == null ? -1 : initial.getStat().getVersion());
+        //add NodeCache listener
+        nodeCache.getListenable().addListener(new NodeCacheListener(){
+            @Override
+            public void nodeChanged() throws Exception {
+                ChildData data = nodeCache.getCurrentData();
+                if(data == null){
+                    return;
+                }
+                int version = data.getStat().getVersion();
+                int last = lastVersion.getAndSet(version);
+                boolean missed = last >= 0 && version > last + 1;
+                byte[] bytes = data.getData();
+                if(missed || bytes == null || bytes.length == 0 || bytes[0] != '{'){
+                    //the old version of message is a timestamp
+                    dao.onMissed();
+                }else{
+                    dao.onMessage(BasicDBObject.parse(new String(bytes, "UTF-8")));
+                }
+            }
+        });
+        synchronized(nodeCaches){
+            nodeCaches.add(nodeCache);
+        }
+    }
+
+    @Override
+    public void publish(CacheableDao<?> dao, DBObject message) {
+        //set new value to ZK node, in order to trigger nodeChanged event
+        try {
+            zkClient.setData().inBackground().forPath(getPath(dao), message.toString().getBytes("UTF-8"));
+        } catch (Exception ex) {
+            throw new BuguCacheException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized(nodeCaches){
+            for(NodeCache nodeCache : nodeCaches){
+                CloseableUtils.closeQuietly(nodeCache);
+            }
+            nodeCaches.clear();
+        }
+    }
+    
+    private String getPath(CacheableDao<?> dao){
+        return BuguCache.ZK_PREFIX + dao.getEntityClass().getName();
+    }
+    
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CacheIndexTest {
+    
+    private List<Category> createList(){
+        List<Category> list = new ArrayList<>();
+        String[] names = {"Books", "Food", "Food", "Computers", "Phones"};
+        for(int i=0; i<names.length; i++){
+            Category c = new Category();
+            c.setId("id" + i);
+            c.setName(names[i]);
+            c.setOrder(i + 1);
+            list.add(c);
+        }
+        return list;
+    }
+    
+    @Test
+    public void testHash(){
+        CacheIndex index = new CacheIndex(Category.class, "name", CacheIndexType.HASH, createList());
+        assertEquals(2, index.get("Food").size());
+        assertEquals(0, index.get("Toys").size());
+        assertEquals(3, index.getIn(Arrays.asList("Food", "Books", "Food")).size());
+    }
+    
+    @Test
+    public void testUnique(){
+        CacheIndex index = new CacheIndex(Category.class, "id", CacheIndexType.UNIQUE, createList());
+        assertEquals("Computers", ((Category)index.get("id3").get(0)).getName());
+        //the int field can be found by long value
+        index = new CacheIndex(Category.class, "order", CacheIndexType.UNIQUE, createList());
+        assertEquals("Books", ((Category)index.get(1L).get(0)).getName());
+    }
+    
+    @Test
+    public void testUniqueDuplicated(){
+        List<Category> list = createList();
+        CacheIndex index = new CacheIndex(Category.class, "name", CacheIndexType.UNIQUE, list);
+        assertSame(list.get(1), index.get("Food").get(0));
+        //the other entity with the same value is found after the first one is removed
+        CacheIndex changed = index.change(list.get(1), list.get(1), null, null);
+        assertSame(list.get(2), changed.get("Food").get(0));
+        changed = changed.change(list.get(2), list.get(2), null, null);
+        assertEquals(0, changed.get("Food").size());
+        //the old index is not changed
+        assertSame(list.get(1), index.get("Food").get(0));
+    }
+    
+    @Test
+    public void testChanges(){
+        //many entities, so there are many buckets and segments
+        Random random = new Random(1L);
+        List<Category> list = new ArrayList<>();
+        for(int i=0; i<2000; i++){
+            Category c = new Category();
+            c.setId("id" + i);
+            c.setName("name" + random.nextInt(500));
+            c.setOrder(random.nextInt(1000));
+            list.add(c);
+        }
+        CacheIndex hash = new CacheIndex(Category.class, "name", CacheIndexType.HASH, list);
+        CacheIndex sorted = new CacheIndex(Category.class, "order", CacheIndexType.SORTED, list);
+        for(int i=0; i<3000; i++){
+            int pos = random.nextInt(list.size());
+            Category old = list.get(pos);
+            Category c = new Category();
+            c.setId(old.getId());
+            c.setName("name" + random.nextInt(500));
+            //some values are out of the built range
+            c.setOrder(random.nextInt(1200) - 100);
+            list.set(pos, c);
+            hash = hash.change(old, old, c, c);
+            sorted = sorted.change(old, old, c, c);
+        }
+        //the same as the index built from the changed list
+        CacheIndex hashBuilt = new CacheIndex(Category.class, "name", CacheIndexType.HASH, list);
+        CacheIndex sortedBuilt = new CacheIndex(Category.class, "order", CacheIndexType.SORTED, list);
+        for(int i=0; i<500; i++){
+            assertEquals(new HashSet<>(hashBuilt.get("name" + i)), new HashSet<>(hash.get("name" + i)));
+        }
+        assertEquals(list.size(), sorted.getRange(null, null).size());
+        assertEquals(sortedBuilt.getRange(-50, 50).size(), sorted.getRange(-50, 50).size());
+        assertEquals(sortedBuilt.getRange(300, 700).size(), sorted.getRange(300, 700).size());
+        int last = Integer.MIN_VALUE;
+        for(Object o : sorted.getRange(null, null)){
+            int order = ((Category)o).getOrder();
+            assertTrue(order >= last);
+            last = order;
+        }
+        assertEquals(sortedBuilt.get(-100).size(), sorted.get(-100).size());
+    }
+    
+    @Test
+    public void testRange(){
+        CacheIndex index = new CacheIndex(Category.class, "order", CacheIndexType.SORTED, createList());
+        List<Object> list = index.getRange(2, 4);
+        assertEquals(3, list.size());
+        assertEquals(2, ((Category)list.get(0)).getOrder());
+        assertEquals(4, ((Category)list.get(2)).getOrder());
+        assertEquals(2, index.getRange(null, 2).size());
+        assertEquals(1, index.getRange(5, null).size());
+        assertEquals(0, index.getRange(4, 2).size());
+    }
+    
+    @Test(expected = BuguCacheException.class)
+    public void testRangeOnHash(){
+        CacheIndex index = new CacheIndex(Category.class, "name", CacheIndexType.HASH, createList());
+        index.getRange("A", "Z");
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshot(){
+        List<Category> list = createList();
+        Map<String, CacheIndexType> types = new HashMap<>();
+        types.put("name", CacheIndexType.HASH);
+        CacheSnapshot<Category> snapshot = HeapCacheSnapshot.create(Category.class, list, types);
+        //the snapshot is not changed with the source list
+        list.clear();
+        assertEquals(5, snapshot.size());
+        assertEquals(2, snapshot.getIndex("name").get("Food").size());
+        snapshot.add(new Category());
+    }
+    
+    @Test
+    public void testIndexOfId(){
+        List<Category> list = createList();
+        CacheSnapshot<Category> snapshot = HeapCacheSnapshot.create(Category.class, list, new HashMap<String, CacheIndexType>());
+        assertEquals(3, snapshot.indexOfId("id3"));
+        assertEquals(-1, snapshot.indexOfId("none"));
+        //replaced at the same position
+        Category c = new Category();
+        c.setId("id3");
+        c.setName("Toys");
+        snapshot = snapshot.change(3, c, 3);
+        assertEquals(3, snapshot.indexOfId("id3"));
+        assertEquals(4, snapshot.indexOfId("id4"));
+        //the positions after the removed one are moved
+        snapshot = snapshot.change(1, null, -1);
+        assertEquals(2, snapshot.indexOfId("id3"));
+        assertEquals(-1, snapshot.indexOfId("id1"));
+        //moved to the first
+        snapshot = snapshot.change(2, c, 0);
+        assertEquals(0, snapshot.indexOfId("id3"));
+        assertEquals(1, snapshot.indexOfId("id0"));
+    }
+    
+    @Test
+    public void testOffHeap(){
+        List<Category> list = createList();
+        for(Category c : list){
+            c.setId(new ObjectId().toString());
+        }
+        Map<String, CacheIndexType> types = new HashMap<>();
+        types.put("name", CacheIndexType.HASH);
+        types.put("order", CacheIndexType.SORTED);
+        AtomicLong decodeCount = new AtomicLong();
+        OffHeapStore<Category> store = new OffHeapStore<>(Category.class, 1024, 2, decodeCount, new AtomicLong());
+        CacheSnapshot<Category> snapshot = OffHeapCacheSnapshot.create(Category.class, store, list, types);
+        assertEquals(5, snapshot.size());
+        assertEquals("Computers", snapshot.get(3).getName());
+        assertEquals(2, snapshot.resolveAll(snapshot.getIndex("name").get("Food")).size());
+        
+        //update the entity at 1, and keep the order
+        Category c = new Category();
+        c.setId(list.get(1).getId());
+        c.setName("Toys");
+        c.setOrder(2);
+        snapshot = snapshot.change(1, c, 1);
+        assertEquals(1, snapshot.indexOfId(c.getId()));
+        assertEquals("Toys", snapshot.get(1).getName());
+        assertEquals(1, snapshot.getIndex("name").get("Food").size());
+        assertEquals("Toys", ((Category)snapshot.resolveAll(snapshot.getIndex("name").get("Toys")).get(0)).getName());
+        
+        //delete many times, so the store is compacted
+        for(int i=0; i<4; i++){
+            snapshot = snapshot.change(0, null, -1);
+        }
+        assertEquals(1, snapshot.size());
+        List<Category> range = snapshot.resolveAll(snapshot.getIndex("order").getRange(1, 10));
+        assertEquals(1, range.size());
+        assertEquals("Phones", range.get(0).getName());
+        //update many times, the garbage is more than live data, so the store is compacted
+        Category last = snapshot.get(0);
+        for(int i=0; i<100; i++){
+            last.setOrder(i);
+            snapshot = snapshot.change(0, last, 0);
+        }
+        assertTrue(snapshot.getOffHeapBytes() <= 2048);
+        assertEquals(99, snapshot.resolveAll(snapshot.getIndex("order").get(99)).get(0).getOrder());
+        assertTrue(decodeCount.get() > 0);
+        assertTrue(snapshot.getHeapEntryCount() <= 2);
+    }
+    
+    @Test
+    public void testOffHeapWithoutCascade(){
+        List<Shelf> list = new ArrayList<>();
+        for(Category c : createList()){
+            c.setId(new ObjectId().toString());
+            Shelf shelf = new Shelf();
+            shelf.setId(new ObjectId().toString());
+            shelf.setName(c.getName());
+            shelf.setCategory(c);
+            list.add(shelf);
+        }
+        //there is no connection, so a cascade save of the referenced category would fail
+        OffHeapStore<Shelf> store = new OffHeapStore<>(Shelf.class, 1024, 0, new AtomicLong(), new AtomicLong());
+        CacheSnapshot<Shelf> snapshot = OffHeapCacheSnapshot.create(Shelf.class, store, list, new HashMap<String, CacheIndexType>());
+        Shelf shelf = list.get(2);
+        shelf.setName("Toys");
+        snapshot = snapshot.change(2, shelf, 2);
+        assertEquals("Toys", snapshot.get(2).getName());
+        assertEquals(shelf.getCategory().getId(), snapshot.get(2).getCategory().getId());
+    }
+    
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.BuguFramework;
+import com.mongodb.BasicDBObject;
+import java.util.List;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+/**
+ * Change stream needs a replica set, capped collection works on a standalone mongod.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CacheTransportTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testChangeStream() throws Exception {
+        connectDB();
+        
+        BuguCache cache = BuguCache.getInstance();
+        cache.setTransport(new ChangeStreamCacheTransport());
+        cache.init();
+        
+        CategoryDao dao = new CategoryDao();
+        List<Category> list1 = dao.getCacheData();
+        System.out.println("list size: " + list1.size());
+        
+        //write by other application, not by the DAO
+        Category c = list1.get(0);
+        dao.getCollection().update(new BasicDBObject("_id", new ObjectId(c.getId())), 
+                new BasicDBObject("$set", new BasicDBObject("name", "Changed")));
+        
+        Thread.sleep(2000);
+        
+        List<Category> list2 = dao.getCacheData();
+        System.out.println("name: " + dao.getCached("name", "Changed").size());
+        System.out.println("cache version: " + dao.getCacheVersion());
+        System.out.println("list size: " + list2.size());
+        
+        cache.destroy();
+        
+        disconnectDB();
+    }
+    
+    //@Test
+    public void testCappedCollection() throws Exception {
+        BuguConnection conn = BuguFramework.getInstance().createConnection();
+        conn.setHost("127.0.0.1").setPort(27017).setDatabase("test").connect();
+        
+        BuguCache cache = BuguCache.getInstance();
+        cache.setTransport(new CappedCollectionCacheTransport());
+        cache.init();
+        
+        CategoryDao dao = new CategoryDao();
+        List<Category> list1 = dao.getCacheData();
+        System.out.println("list size: " + list1.size());
+        
+        Category c = new Category();
+        c.setName("Toys");
+        c.setOrder(6);
+        c.setValid(true);
+        dao.save(c);
+        
+        Thread.sleep(2000);
+        
+        List<Category> list2 = dao.getCacheData();
+        System.out.println("cache version: " + dao.getCacheVersion());
+        System.out.println("list size: " + list2.size());
+        
+        cache.destroy();
+        
+        disconnectDB();
+    }
+    
+}
@@ -29,6 +29,8 @@ public class CategoryDao extends CacheableDao<Category> {
         //comment the next line, will cache all data
         BuguQuery q = this.query().is("valid", Boolean.TRUE).sort(SortUtil.asc("order")).pageNumber(1).pageSize(50);
         this.setCacheQuery(q);
+        this.addCacheIndex("name", CacheIndexType.HASH);
+        this.addCacheIndex("order", CacheIndexType.SORTED);
     }
     
 }
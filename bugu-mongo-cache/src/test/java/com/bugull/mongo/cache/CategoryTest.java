@@ -15,6 +15,7 @@
  */
 package com.bugull.mongo.cache;
 
+import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
 
@@ -163,4 +164,26 @@ public class CategoryTest extends ReplicaSetBaseTest {
         disconnectDB();
     }
     
+    //@Test
+    public void testIndex(){
+        connectDB();
+        
+        BuguCache.getInstance().init();
+        
+        CategoryDao dao = new CategoryDao();
+        
+        List<Category> foods = dao.getCachedIn("name", Arrays.asList("Food", "Books"));
+        System.out.println("name in Food, Books: " + foods.size());
+        
+        List<Category> list = dao.getCachedRange("order", 2, 4);
+        for(Category c : list){
+            System.out.println("  name:" + c.getName());
+            System.out.println("  order:" + c.getOrder());
+        }
+        
+        BuguCache.getInstance().destroy();
+        
+        disconnectDB();
+    }
+    
 }
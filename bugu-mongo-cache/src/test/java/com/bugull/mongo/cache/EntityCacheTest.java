@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EntityCacheTest {
+    
+    @Test
+    public void testBounded(){
+        BoundedEntityCache cache = new BoundedEntityCache(Category.class).setMaxEntries(3);
+        for(int i=0; i<5; i++){
+            cache.put("id" + i, new BasicDBObject("_id", "id" + i).append("order", i));
+        }
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertNull(cache.get("id0"));
+        assertEquals(4, cache.get("id4").get("order"));
+        
+        cache.invalidate("id4");
+        assertNull(cache.get("id4"));
+        cache.invalidate(Arrays.asList("id2", "id3"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalBytes());
+    }
+    
+    @Test
+    public void testCopy(){
+        BoundedEntityCache cache = new BoundedEntityCache(Category.class);
+        cache.put("id", new BasicDBObject("_id", "id").append("list", Arrays.asList(1, 2)));
+        DBObject dbo = cache.get("id");
+        ((List)dbo.get("list")).add(3);
+        //the cached document can't be changed by application
+        assertEquals(2, ((List)cache.get("id").get("list")).size());
+    }
+    
+    @Test
+    public void testInvalidatedWhileReading(){
+        BoundedEntityCache cache = new BoundedEntityCache(Category.class);
+        long token = cache.getToken("id");
+        //the document is changed and invalidated, after the old one is read
+        cache.invalidate("id");
+        cache.putIfNotInvalidatedSince("id", token, new BasicDBObject("_id", "id").append("order", 1));
+        assertNull(cache.get("id"));
+        
+        token = cache.getToken("id");
+        cache.putIfNotInvalidatedSince("id", token, new BasicDBObject("_id", "id").append("order", 2));
+        assertEquals(2, cache.get("id").get("order"));
+        
+        token = cache.getToken("other");
+        cache.invalidateAll();
+        cache.putIfNotInvalidatedSince("other", token, new BasicDBObject("_id", "other"));
+        assertNull(cache.get("other"));
+    }
+    
+}
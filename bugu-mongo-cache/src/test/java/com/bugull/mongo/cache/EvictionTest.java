@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EvictionTest {
+    
+    private final List<EvictionCause> causes = new ArrayList<>();
+    
+    private final EvictionListener listener = new EvictionListener(){
+        @Override
+        public void dataEvicted(String key, List value, EvictionCause cause) {
+            causes.add(cause);
+        }
+    };
+    
+    @After
+    public void reset(){
+        BuguCache cache = BuguCache.getInstance();
+        cache.setPolicy(new CachePolicy());
+        cache.setAdmission(true);
+        cache.setRejectedRetention(10000L);
+        cache.removeEvictionListener(listener);
+        cache.clear();
+    }
+    
+    @Test
+    public void testSize(){
+        BuguCache cache = BuguCache.getInstance();
+        cache.setPolicy(new CachePolicy().setMaxEntries(4));
+        cache.setAdmission(false);
+        cache.setRejectedRetention(0);
+        cache.addEvictionListener(listener);
+        cache.setValue("size:a", Arrays.asList(1, 2));
+        cache.setValue("size:b", Arrays.asList(3, 4));
+        //a is used recently, so b is evicted
+        assertNotNull(cache.getValue("size:a"));
+        cache.setValue("size:c", Arrays.asList(5));
+        assertNull(cache.peekValue("size:b"));
+        assertNotNull(cache.peekValue("size:a"));
+        assertEquals(Arrays.asList(EvictionCause.SIZE), causes);
+        
+        //larger than the limit
+        cache.setValue("size:d", Arrays.asList(1, 2, 3, 4, 5));
+        assertNull(cache.peekValue("size:d"));
+        assertEquals(EvictionCause.REJECTED, causes.get(1));
+    }
+    
+    @Test
+    public void testAdmission(){
+        BuguCache cache = BuguCache.getInstance();
+        cache.setPolicy(new CachePolicy().setMaxEntries(2));
+        cache.setRejectedRetention(0);
+        cache.setValue("admit:hot", Arrays.asList(1, 2));
+        for(int i=0; i<5; i++){
+            cache.getValue("admit:hot");
+        }
+        //read once, less than the cached data
+        cache.getValue("admit:cold");
+        cache.setValue("admit:cold", Arrays.asList(3));
+        assertNull(cache.peekValue("admit:cold"));
+        assertNotNull(cache.peekValue("admit:hot"));
+    }
+    
+    @Test
+    public void testRejectedRetention() throws Exception {
+        BuguCache cache = BuguCache.getInstance();
+        cache.setPolicy("reject:a", new CachePolicy().setMaxEntries(2));
+        cache.setRejectedRetention(100);
+        long rejectedCount = cache.getRejectedCount();
+        List value = Arrays.asList(1, 2, 3);
+        cache.setValue("reject:a", value);
+        assertEquals(rejectedCount + 1, cache.getRejectedCount());
+        //not admitted, but still returned for a short time
+        assertSame(value, cache.getValue("reject:a"));
+        assertEquals(0, cache.getTotalEntries());
+        Thread.sleep(200);
+        assertNull(cache.getValue("reject:a"));
+        cache.setPolicy("reject:a", null);
+    }
+    
+    @Test
+    public void testExpire() throws Exception {
+        BuguCache cache = BuguCache.getInstance();
+        cache.setPolicy("expire:a", new CachePolicy().setTtl(100));
+        cache.addEvictionListener(listener);
+        cache.setValue("expire:a", Arrays.asList(1));
+        assertNotNull(cache.getValue("expire:a"));
+        Thread.sleep(200);
+        assertNull(cache.getValue("expire:a"));
+        assertEquals(Arrays.asList(EvictionCause.EXPIRED), causes);
+        cache.setPolicy("expire:a", null);
+    }
+    
+}
@@ -15,13 +15,17 @@
  */
 package com.bugull.mongo;
 
+import com.bugull.mongo.codec.EntityCodecProvider;
 import com.bugull.mongo.exception.BuguException;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
 import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
 import java.util.List;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 
 /**
  * Basic implement of BuguConnection, create by BuguFramework.
@@ -50,6 +54,7 @@ class BasicConnection implements BuguConnection {
     private String password;
     private MongoClient mongoClient;
     private DB db;
+    private MongoDatabase mongoDatabase;
     
     /**
      * connect to a single mongodb server without auth.
@@ -109,27 +114,30 @@ class BasicConnection implements BuguConnection {
         if(options == null){
             options = MongoClientOptions.builder().build();
         }
+        //register the codec of entity classes, used by MongoCollection<T>
+        CodecRegistry registry = CodecRegistries.fromRegistries(options.getCodecRegistry(), CodecRegistries.fromProviders(new EntityCodecProvider()));
+        MongoClientOptions clientOptions = MongoClientOptions.builder(options).codecRegistry(registry).build();
         if(host != null){
             ServerAddress sa = new ServerAddress(host, port);
             if(credentialList != null){
-                mongoClient = new MongoClient(sa, credentialList, options);
+                mongoClient = new MongoClient(sa, credentialList, clientOptions);
             }
             else if(credential != null){
-                mongoClient = new MongoClient(sa, credential, options);
+                mongoClient = new MongoClient(sa, credential, clientOptions);
             }
             else{
-                mongoClient = new MongoClient(sa, options);
+                mongoClient = new MongoClient(sa, clientOptions);
             }
         }
         else if(serverList != null){
             if(credentialList != null){
-                mongoClient = new MongoClient(serverList, credentialList, options);
+                mongoClient = new MongoClient(serverList, credentialList, clientOptions);
             }
             else if(credential != null){
-                mongoClient = new MongoClient(serverList, credential, options);
+                mongoClient = new MongoClient(serverList, credential, clientOptions);
             }
             else{
-                mongoClient = new MongoClient(serverList, options);
+                mongoClient = new MongoClient(serverList, clientOptions);
             }
         }
         else{
@@ -137,6 +145,7 @@ class BasicConnection implements BuguConnection {
         }
         //get the database
         db = mongoClient.getDB(database);
+        mongoDatabase = mongoClient.getDatabase(database);
     }
     
     @Override
@@ -201,6 +210,11 @@ class BasicConnection implements BuguConnection {
         return db;
     }
 
+    @Override
+    public MongoDatabase getMongoDatabase() {
+        return mongoDatabase;
+    }
+
     @Override
     public MongoClient getMongoClient() {
         return mongoClient;
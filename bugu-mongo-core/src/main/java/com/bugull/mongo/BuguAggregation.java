@@ -18,32 +18,47 @@ package com.bugull.mongo;
 
 import com.bugull.mongo.agg.GeoNearOptions;
 import com.bugull.mongo.agg.Lookup;
+import com.bugull.mongo.exception.DBQueryException;
 import com.bugull.mongo.parallel.Parallelable;
+import com.bugull.mongo.utils.BsonUtil;
 import com.bugull.mongo.utils.Operator;
 import com.bugull.mongo.utils.SortUtil;
 import com.bugull.mongo.utils.StringUtil;
 import com.mongodb.AggregationOptions;
 import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * Convenient class for creating aggregating operation.
  * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
+@SuppressWarnings("unchecked")
 public class BuguAggregation<T> implements Parallelable {
     
     private final DBCollection coll;
+    private final MongoCollection<T> mongoColl;
     private final List<DBObject> pipeline = new ArrayList<>();
     
     private AggregationOptions options;
     
     public BuguAggregation(DBCollection coll){
+        this(coll, null);
+    }
+    
+    public BuguAggregation(DBCollection coll, MongoCollection<T> mongoColl){
         this.coll = coll;
+        this.mongoColl = mongoColl;
     }
     
     public BuguAggregation setOptions(AggregationOptions options){
@@ -278,6 +293,82 @@ public class BuguAggregation<T> implements Parallelable {
         };
     }
     
+    /**
+     * Lazily iterate the results. Batch size can be set by AggregationOptions.
+     * @return 
+     */
+    public BuguCursor<DBObject> iterate(){
+        if(options == null){
+            options = AggregationOptions.builder().build();
+        }
+        Cursor cursor = coll.aggregate(pipeline, options);
+        return new BuguCursor<DBObject>(cursor, cursor){
+            @Override
+            protected DBObject convert(Object obj){
+                return (DBObject)obj;
+            }
+        };
+    }
+    
+    /**
+     * Lazily iterate the results, decoded by the codec registry of MongoClient.
+     * @param <R>
+     * @param resultClass an entity class, or Document, BasicDBObject and so on
+     * @return 
+     */
+    public <R> BuguCursor<R> iterate(Class<R> resultClass){
+        MongoCursor<R> cursor = typedAggregate(resultClass).iterator();
+        return new BuguCursor<R>(cursor, cursor){
+            @Override
+            protected R convert(Object obj){
+                return (R)obj;
+            }
+        };
+    }
+    
+    /**
+     * Lazily stream the results. The stream should be closed, if it's not consumed completely.
+     * @return 
+     */
+    public Stream<DBObject> stream(){
+        return iterate().stream();
+    }
+    
+    /**
+     * Get the results decoded by the codec registry of MongoClient, without creating DBObject for each document.
+     * @param <R>
+     * @param resultClass an entity class, or Document, BasicDBObject and so on
+     * @return 
+     */
+    public <R> Iterable<R> results(Class<R> resultClass){
+        return typedAggregate(resultClass);
+    }
+    
+    private <R> AggregateIterable<R> typedAggregate(Class<R> resultClass){
+        if(mongoColl == null){
+            throw new DBQueryException("The aggregation is not created by BuguDao, typed results are not supported");
+        }
+        AggregateIterable<R> iterable = mongoColl.aggregate(BsonUtil.toBsonList(pipeline), resultClass);
+        if(options != null){
+            if(options.getAllowDiskUse() != null){
+                iterable.allowDiskUse(options.getAllowDiskUse());
+            }
+            if(options.getBatchSize() != null){
+                iterable.batchSize(options.getBatchSize());
+            }
+            if(options.getMaxTime(TimeUnit.MILLISECONDS) > 0){
+                iterable.maxTime(options.getMaxTime(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+            }
+            if(options.getBypassDocumentValidation() != null){
+                iterable.bypassDocumentValidation(options.getBypassDocumentValidation());
+            }
+            if(options.getCollation() != null){
+                iterable.collation(options.getCollation());
+            }
+        }
+        return iterable;
+    }
+    
     @Override
     public String toString(){
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.utils.IdUtil;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
+import com.bugull.mongo.utils.StringUtil;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Convenient class for sending inserts, replaces, updates and removes to mongoDB in one round trip.
+ * 
+ * <p>The operations are split into batches of batchSize. Listeners are notified, and caches are invalidated, 
+ * after each batch is executed. If a batch fails, its listeners are not notified, and the remain batches are not executed.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class BuguBulk<T> {
+    
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+    
+    private final BuguDao<T> dao;
+    
+    private final boolean ordered;
+    
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    
+    private final List<Request> requests = new ArrayList<>();
+    
+    public BuguBulk(BuguDao<T> dao, boolean ordered){
+        this.dao = dao;
+        this.ordered = ordered;
+    }
+    
+    /**
+     * Insert an entity. The id is set to the entity after the batch is executed.
+     * @param t
+     * @return 
+     */
+    public BuguBulk<T> insert(T t){
+        return insert(t, MapperUtil.toDBObject(t));
+    }
+    
+    /**
+     * Insert an entity which is already converted to DBObject.
+     */
+    BuguBulk<T> insert(T t, DBObject document){
+        Request req = new Request(RequestType.INSERT);
+        req.entity = (BuguEntity)t;
+        req.document = document;
+        requests.add(req);
+        return this;
+    }
+    
+    public BuguBulk<T> insert(List<T> list){
+        for(T t : list){
+            insert(t);
+        }
+        return this;
+    }
+    
+    /**
+     * Replace an entity by id, or insert it if not exists. If no id in it, then insert the entity.
+     * @param t
+     * @return 
+     */
+    public BuguBulk<T> save(T t){
+        BuguEntity ent = (BuguEntity)t;
+        if(StringUtil.isEmpty(ent.getId())){
+            return insert(t);
+        }
+        //the lazy fields not returned by query should not be overwritten with null
+        if(ent instanceof LazyEntity){
+            ((LazyEntity)ent).loadLazy();
+        }
+        Request req = new Request(RequestType.REPLACE);
+        req.entity = ent;
+        req.id = ent.getId();
+        req.condition = idCondition(req.id);
+        req.document = MapperUtil.toDBObject(t);
+        req.upsert = true;
+        requests.add(req);
+        return this;
+    }
+    
+    public BuguBulk<T> save(List<T> list){
+        for(T t : list){
+            save(t);
+        }
+        return this;
+    }
+    
+    /**
+     * Update an entity by id with the modifier of updater.
+     * @param id
+     * @param updater
+     * @return 
+     */
+    public BuguBulk<T> update(String id, BuguUpdater<T> updater){
+        Request req = new Request(RequestType.UPDATE);
+        req.id = id;
+        req.condition = idCondition(id);
+        req.document = updater.getModifier();
+        req.upsert = updater.isUpsert();
+        requests.add(req);
+        return this;
+    }
+    
+    /**
+     * Update the entities match the query, with the modifier of updater. The multi and upsert option of updater are used.
+     * @param query
+     * @param updater
+     * @return 
+     */
+    public BuguBulk<T> update(BuguQuery<T> query, BuguUpdater<T> updater){
+        Request req = new Request(RequestType.UPDATE);
+        req.condition = query.getCondition();
+        req.document = updater.getModifier();
+        req.upsert = updater.isUpsert();
+        req.multi = updater.isMulti();
+        requests.add(req);
+        return this;
+    }
+    
+    public BuguBulk<T> remove(String id){
+        Request req = new Request(RequestType.REMOVE);
+        req.id = id;
+        req.condition = idCondition(id);
+        requests.add(req);
+        return this;
+    }
+    
+    public BuguBulk<T> remove(BuguQuery<T> query){
+        Request req = new Request(RequestType.REMOVE);
+        req.condition = query.getCondition();
+        req.multi = true;
+        requests.add(req);
+        return this;
+    }
+    
+    /**
+     * Max count of operations sent in one batch.
+     * If not set, default value is 1000.
+     * @param batchSize
+     * @return 
+     */
+    public BuguBulk<T> batchSize(int batchSize){
+        if(batchSize < 1){
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * @return count of operations not executed yet
+     */
+    public int size(){
+        return requests.size();
+    }
+    
+    /**
+     * Execute all the operations, batch by batch. The bulk is empty after executed.
+     * @return the summary of all batches
+     */
+    public BuguBulkResult execute(){
+        BuguBulkResult result = new BuguBulkResult();
+        try{
+            int total = requests.size();
+            for(int from=0; from<total; from+=batchSize){
+                int to = Math.min(from + batchSize, total);
+                executeBatch(requests.subList(from, to), result);
+            }
+        }finally{
+            requests.clear();
+        }
+        return result;
+    }
+    
+    private void executeBatch(List<Request> batch, BuguBulkResult result){
+        DBCollection coll = dao.getCollection();
+        Class<T> clazz = dao.getEntityClass();
+        boolean listened = !dao.listenerList.isEmpty();
+        //the removed entities and updated ids are read before the batch, for the listeners
+        List<T> removedList = new ArrayList<>();
+        List<Object> updatedIds = new ArrayList<>();
+        if(listened){
+            prepareListened(batch, removedList, updatedIds);
+        }
+        BulkWriteOperation bulk = ordered ? coll.initializeOrderedBulkOperation() : coll.initializeUnorderedBulkOperation();
+        for(Request req : batch){
+            req.addTo(bulk);
+        }
+        BulkWriteResult bwr = null;
+        try{
+            bwr = bulk.execute();
+        }finally{
+            //some operations may be done even if the batch fails
+            invalidate(batch);
+            refreshTracked(batch, bwr != null);
+        }
+        result.add(bwr);
+        for(Request req : batch){
+            if(req.type == RequestType.INSERT){
+                req.entity.setId(req.document.get(Operator.ID).toString());
+            }
+        }
+        if(!listened){
+            return;
+        }
+        Set<Integer> upserted = new HashSet<>();
+        if(bwr.isAcknowledged() && dao.hasCustomListener){
+            for(BulkWriteUpsert upsert : bwr.getUpserts()){
+                upserted.add(upsert.getIndex());
+                //the replaced entity is notified below
+                if(batch.get(upsert.getIndex()).type == RequestType.UPDATE){
+                    updatedIds.add(upsert.getId());
+                }
+            }
+        }
+        int index = 0;
+        for(Request req : batch){
+            if(req.type == RequestType.INSERT && dao.hasCustomListener){
+                dao.notifyInserted(req.entity);
+            }
+            else if(req.type == RequestType.REPLACE && dao.hasCustomListener){
+                if(upserted.contains(index)){
+                    dao.notifyInserted(req.entity);
+                }else{
+                    dao.notifyUpdated(req.entity);
+                }
+            }
+            index++;
+        }
+        if(!updatedIds.isEmpty()){
+            DBObject in = new BasicDBObject(Operator.IN, updatedIds);
+            List<T> list = MapperUtil.toList(clazz, coll.find(new BasicDBObject(Operator.ID, in)));
+            for(T t : list){
+                dao.notifyUpdated((BuguEntity)t);
+            }
+        }
+        for(T t : removedList){
+            dao.notifyDeleted((BuguEntity)t);
+        }
+    }
+    
+    /**
+     * Take the written documents as the snapshots of tracked entities. 
+     * If the batch fails, the snapshots are cleared, then the next save() replaces the whole document.
+     */
+    private void refreshTracked(List<Request> batch, boolean done){
+        for(Request req : batch){
+            if((req.type == RequestType.INSERT || req.type == RequestType.REPLACE) && req.entity instanceof TrackedEntity){
+                ((TrackedEntity)req.entity).setSnapshot(done ? new TrackedEntity.Snapshot(req.document) : null);
+            }
+        }
+    }
+    
+    private void prepareListened(List<Request> batch, List<T> removedList, List<Object> updatedIds){
+        DBCollection coll = dao.getCollection();
+        Class<T> clazz = dao.getEntityClass();
+        List<Object> removedIds = new ArrayList<>();
+        for(Request req : batch){
+            if(req.type == RequestType.REMOVE){
+                if(req.id != null){
+                    removedIds.add(req.condition.get(Operator.ID));
+                }else{
+                    removedList.addAll(MapperUtil.toList(clazz, coll.find(req.condition)));
+                }
+            }
+            else if(req.type == RequestType.UPDATE && dao.hasCustomListener){
+                if(req.id != null){
+                    updatedIds.add(req.condition.get(Operator.ID));
+                }else{
+                    updatedIds.addAll(coll.distinct(Operator.ID, req.condition));
+                }
+            }
+        }
+        if(!removedIds.isEmpty()){
+            DBObject in = new BasicDBObject(Operator.IN, removedIds);
+            removedList.addAll(MapperUtil.toList(clazz, coll.find(new BasicDBObject(Operator.ID, in))));
+        }
+    }
+    
+    private void invalidate(List<Request> batch){
+        boolean byQuery = false;
+        List<String> ids = new ArrayList<>();
+        for(Request req : batch){
+            if(req.type == RequestType.INSERT){
+                ids.add(req.document.get(Operator.ID).toString());
+            }
+            else if(req.id != null){
+                ids.add(req.id);
+            }
+            else{
+                byQuery = true;
+            }
+        }
+        if(byQuery){
+            dao.invalidateCache();
+            dao.bulkChanged();
+        }else{
+            dao.invalidateCache(ids);
+        }
+    }
+    
+    private DBObject idCondition(String id){
+        return new BasicDBObject(Operator.ID, IdUtil.toDbId(dao.getEntityClass(), id));
+    }
+    
+    private enum RequestType {
+        INSERT,
+        REPLACE,
+        UPDATE,
+        REMOVE
+    }
+    
+    private static class Request {
+        final RequestType type;
+        BuguEntity entity;
+        String id;  //null if by query
+        DBObject condition;
+        DBObject document;
+        boolean upsert;
+        boolean multi;
+        
+        Request(RequestType type){
+            this.type = type;
+        }
+        
+        void addTo(BulkWriteOperation bulk){
+            if(type == RequestType.INSERT){
+                bulk.insert(document);
+                return;
+            }
+            BulkWriteRequestBuilder builder = bulk.find(condition);
+            switch(type){
+                case REPLACE:
+                    builder.upsert().replaceOne(document);
+                    break;
+                case UPDATE:
+                    if(upsert){
+                        if(multi){
+                            builder.upsert().update(document);
+                        }else{
+                            builder.upsert().updateOne(document);
+                        }
+                    }else if(multi){
+                        builder.update(document);
+                    }else{
+                        builder.updateOne(document);
+                    }
+                    break;
+                case REMOVE:
+                    if(multi){
+                        builder.remove();
+                    }else{
+                        builder.removeOne();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+}
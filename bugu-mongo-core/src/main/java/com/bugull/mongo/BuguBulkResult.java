@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The summary of BuguBulk execution, per operation type. 
+ * 
+ * <p>If the write concern is unacknowledged, all the counts are zero.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class BuguBulkResult {
+    
+    private boolean acknowledged = true;
+    private int insertedCount;
+    private int matchedCount;
+    private int modifiedCount;
+    private int removedCount;
+    private final List<String> upsertedIds = new ArrayList<>();
+    
+    void add(BulkWriteResult bwr){
+        if(!bwr.isAcknowledged()){
+            acknowledged = false;
+            return;
+        }
+        insertedCount += bwr.getInsertedCount();
+        matchedCount += bwr.getMatchedCount();
+        removedCount += bwr.getRemovedCount();
+        if(bwr.isModifiedCountAvailable()){
+            modifiedCount += bwr.getModifiedCount();
+        }
+        for(BulkWriteUpsert upsert : bwr.getUpserts()){
+            upsertedIds.add(upsert.getId().toString());
+        }
+    }
+
+    public boolean isAcknowledged() {
+        return acknowledged;
+    }
+
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+
+    /**
+     * @return count of documents matched by updates and replaces
+     */
+    public int getMatchedCount() {
+        return matchedCount;
+    }
+
+    public int getModifiedCount() {
+        return modifiedCount;
+    }
+
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    public int getUpsertedCount() {
+        return upsertedIds.size();
+    }
+
+    public List<String> getUpsertedIds() {
+        return upsertedIds;
+    }
+    
+    @Override
+    public String toString(){
+        return "inserted:" + insertedCount + " matched:" + matchedCount + " modified:" + modifiedCount 
+                + " removed:" + removedCount + " upserted:" + upsertedIds.size();
+    }
+    
+}
@@ -16,12 +16,16 @@
 
 package com.bugull.mongo;
 
+import com.bugull.mongo.codec.EntityCodecProvider;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
 import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
 import java.util.List;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 
 /**
  * The connection to MongoDB.
@@ -60,6 +64,18 @@ public interface BuguConnection {
     
     public DB getDB();
     
+    /**
+     * Get the database of the new API, whose codec registry contains the codec of entity classes.
+     * <p>The default implementation wraps the database of getMongoClient() every time it's called, 
+     * so the implementations written before this method was added still work. It can be overridden to return a cached one.</p>
+     * @return 
+     */
+    public default MongoDatabase getMongoDatabase(){
+        MongoDatabase database = getMongoClient().getDatabase(getDB().getName());
+        CodecRegistry registry = CodecRegistries.fromRegistries(database.getCodecRegistry(), CodecRegistries.fromProviders(new EntityCodecProvider()));
+        return database.withCodecRegistry(registry);
+    }
+    
     public MongoClient getMongoClient();
     
 }
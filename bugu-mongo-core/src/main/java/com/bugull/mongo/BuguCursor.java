@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.mapper.RefBatch;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy iterator over the results of a query, maps one document at a time.
+ * 
+ * <p>If a window is set, documents are mapped a window at a time, and the cascade references of the window are loaded in batch.</p>
+ * 
+ * <p>The server cursor is closed automatically when all documents have been iterated. 
+ * If you stop early, you must call close(), or use it in try-with-resources:</p>
+ * 
+ * <pre>
+ * try(BuguCursor&lt;Order&gt; cursor = dao.query().batchSize(500).iterate()){
+ *     while(cursor.hasNext()){
+ *         Order order = cursor.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class BuguCursor<T> implements Iterator<T>, Closeable {
+    
+    /**
+     * The default number of documents mapped together.
+     */
+    public static final int DEFAULT_WINDOW = 100;
+    
+    private final Iterator<?> cursor;
+    private final Closeable closeable;
+    private final int window;
+    private final List<T> buffer;
+    private int position;
+    private boolean closed;
+    
+    /**
+     * @param cursor the cursor of driver, such as DBCursor, Cursor, MongoCursor.
+     * @param closeable the same object as cursor
+     */
+    protected BuguCursor(Iterator<?> cursor, Closeable closeable){
+        this(cursor, closeable, 1);
+    }
+    
+    /**
+     * @param cursor the cursor of driver, such as DBCursor, Cursor, MongoCursor.
+     * @param closeable the same object as cursor
+     * @param window how many documents are mapped together
+     */
+    protected BuguCursor(Iterator<?> cursor, Closeable closeable, int window){
+        this.cursor = cursor;
+        this.closeable = closeable;
+        this.window = window > 1 ? window : 1;
+        this.buffer = new ArrayList<>(this.window);
+    }
+    
+    /**
+     * Convert the document from the driver cursor to the result.
+     * @param obj
+     * @return 
+     */
+    protected abstract T convert(Object obj);
+
+    @Override
+    public boolean hasNext() {
+        if(closed){
+            return false;
+        }
+        if(position < buffer.size()){
+            return true;
+        }
+        fill();
+        if(buffer.isEmpty()){
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if(!hasNext()){
+            throw new NoSuchElementException(closed ? "The cursor has been closed" : "No more document");
+        }
+        return buffer.get(position++);
+    }
+    
+    private void fill(){
+        buffer.clear();
+        position = 0;
+        if(window == 1){
+            if(cursor.hasNext()){
+                buffer.add(convert(cursor.next()));
+            }
+        }else{
+            RefBatch batch = RefBatch.open();
+            try{
+                while(buffer.size() < window && cursor.hasNext()){
+                    buffer.add(convert(cursor.next()));
+                }
+            }finally{
+                batch.close();
+            }
+            batch.flush();
+        }
+        if(!buffer.isEmpty()){
+            windowMapped(buffer);
+        }
+    }
+    
+    /**
+     * Called after a window of documents are mapped. 
+     * @param window the mapped results, do not modify it
+     */
+    protected void windowMapped(List<T> window){
+        //do nothing by default
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported by BuguCursor");
+    }
+
+    @Override
+    public void close() {
+        if(closed){
+            return;
+        }
+        closed = true;
+        buffer.clear();
+        try{
+            closeable.close();
+        }catch(IOException ex){
+            //driver cursor does not throw IOException
+        }
+    }
+    
+    public boolean isClosed(){
+        return closed;
+    }
+    
+    /**
+     * Convert to a sequential Stream. Closing the stream closes the cursor.
+     * @return 
+     */
+    public Stream<T> stream(){
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable(){
+            @Override
+            public void run(){
+                close();
+            }
+        });
+    }
+    
+}
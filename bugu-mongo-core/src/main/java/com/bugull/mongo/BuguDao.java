@@ -25,12 +25,24 @@ import com.bugull.mongo.annotations.Id;
 import com.bugull.mongo.annotations.IdType;
 import com.bugull.mongo.annotations.SplitType;
 import com.bugull.mongo.bitwise.BitwiseQuery;
+import com.bugull.mongo.cache.CodecPlanCache;
+import com.bugull.mongo.cache.EntityCache;
+import com.bugull.mongo.cache.EntityCacheRegistry;
 import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.cache.QueryCache;
+import com.bugull.mongo.cache.SequenceCache;
+import com.bugull.mongo.codec.EntityCodec;
 import com.bugull.mongo.geo.GeoQuery;
+import com.bugull.mongo.listener.BatchDeleteListener;
 import com.bugull.mongo.listener.CascadeDeleteListener;
+import com.bugull.mongo.listener.EntityEventBus;
 import com.bugull.mongo.listener.EntityListener;
+import com.bugull.mongo.mapper.IdFieldPlan;
+import com.bugull.mongo.mapper.RefBatch;
 import com.bugull.mongo.misc.DBIndex;
 import com.bugull.mongo.misc.IndexUtil;
+import com.bugull.mongo.utils.BsonUtil;
+import com.bugull.mongo.utils.ChunkUtil;
 import com.bugull.mongo.utils.FieldUtil;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
@@ -38,21 +50,39 @@ import com.bugull.mongo.utils.Operator;
 import com.bugull.mongo.utils.ReferenceUtil;
 import com.bugull.mongo.utils.SortUtil;
 import com.bugull.mongo.utils.StringUtil;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.ReadConcern;
 import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.result.UpdateResult;
 import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 
 /**
  * The basic Dao class.
@@ -68,11 +98,31 @@ public class BuguDao<T> extends AbstractDao {
     protected boolean hasCustomListener = false;
     
     //Listener for update, delete
-    protected final List<EntityListener> listenerList = new ArrayList<>();
+    protected final List<EntityListener> listenerList = new CopyOnWriteArrayList<>();
+    
+    //immutable copy of listenerList, which is posted with events and iterated by the lane threads of EntityEventBus
+    private volatile List<EntityListener> postedListeners = Collections.emptyList();
     
     //Index done or not
     protected CopyOnWriteArraySet<String> indexedSet = new CopyOnWriteArraySet<>();
     
+    //read and write entity by EntityCodec, without DBObject
+    protected boolean nativeCodec = false;
+    
+    //max number of ids in one $in query of the multi-id operations
+    protected int idChunkSize = RefBatch.CHUNK_SIZE;
+    
+    //max number of new API collections kept for split collection, the least recently used one is removed
+    private static final int MAX_MONGO_COLLECTIONS = 16;
+    
+    //collections of the new API, built once per DBCollection (more than one for split collection)
+    private final Map<DBCollection, NewApiCollection> mongoCollMap = new LinkedHashMap<DBCollection, NewApiCollection>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DBCollection, NewApiCollection> eldest) {
+            return size() > MAX_MONGO_COLLECTIONS;
+        }
+    };
+    
     public BuguDao(Class<T> clazz){
         this.clazz = clazz;
         
@@ -208,56 +258,221 @@ public class BuguDao<T> extends AbstractDao {
         getCollection().setReadPreference(readPreference);
     }
     
+    /**
+     * Read and write entities with the native BSON codec(EntityCodec), instead of converting to/from DBObject.
+     * <p>It works on insert, save, findOne, findAll, the results of BuguQuery, and BuguAggregation.results(Class).</p>
+     * @param nativeCodec 
+     */
+    protected void setNativeCodec(boolean nativeCodec){
+        this.nativeCodec = nativeCodec;
+    }
+
+    public boolean isNativeCodec() {
+        return nativeCodec;
+    }
+    
+    /**
+     * Set the max number of ids in one $in query of findByIds(), existsMany(), updateByIds() and removeByIds(). 
+     * <p>The default is 1000. The chunks are run concurrently. 
+     * It's also the batch size of removing with listeners.</p>
+     * @param idChunkSize 
+     */
+    protected void setIdChunkSize(int idChunkSize){
+        if(idChunkSize <= 0){
+            throw new IllegalArgumentException("idChunkSize must be positive");
+        }
+        this.idChunkSize = idChunkSize;
+    }
+    
+    /**
+     * Get the collection of the new API, whose documents are decoded to entity by EntityCodec.
+     * @return 
+     */
+    public MongoCollection<T> getMongoCollection(){
+        return getMongoCollection(false);
+    }
+    
+    /**
+     * Get the collection of the new API, whose documents are decoded to entity by EntityCodec.
+     * @param withoutCascade if true, the cascade @Ref and @RefList fields are not read
+     * @return 
+     */
+    public MongoCollection<T> getMongoCollection(boolean withoutCascade){
+        DBCollection coll = getCollection();
+        NewApiCollection nac;
+        synchronized(mongoCollMap){
+            nac = mongoCollMap.get(coll);
+            //rebuild it if the write concern or read preference is changed
+            if(nac == null || !nac.isSameSetting(coll)){
+                nac = new NewApiCollection(coll);
+                mongoCollMap.put(coll, nac);
+            }
+        }
+        return withoutCascade ? nac.withoutCascade : nac.withCascade;
+    }
+    
+    /**
+     * Only user-defined id can be used again after the document is removed, generated id is never cached before insert.
+     */
+    private void invalidateInserted(List<T> list){
+        collectionChanged();
+        EntityCache ec = getEntityCache();
+        if(ec == null){
+            return;
+        }
+        IdFieldPlan fp = (IdFieldPlan)CodecPlanCache.getInstance().get(clazz).getIdField();
+        if(fp.getIdType() == IdType.USER_DEFINE){
+            List<String> ids = new ArrayList<>(list.size());
+            for(T t : list){
+                ids.add(((BuguEntity)t).getId());
+            }
+            ec.invalidate(ids);
+        }
+    }
+    
+    private WriteResult toWriteResult(MongoCollection<T> mongoColl, int n, boolean updateOfExisting, Object upsertedId){
+        if(!mongoColl.getWriteConcern().isAcknowledged()){
+            return WriteResult.unacknowledged();
+        }
+        return new WriteResult(n, updateOfExisting, upsertedId);
+    }
+    
     protected void addEntityListener(EntityListener listener){
         hasCustomListener = true;
         listenerList.add(listener);
     }
     
+    /**
+     * Get the copy of listenerList to post, a new copy is made after listenerList is changed.
+     */
+    private List<EntityListener> getPostedListeners(){
+        List<EntityListener> posted = postedListeners;
+        if(!posted.equals(listenerList)){
+            posted = Collections.unmodifiableList(new ArrayList<>(listenerList));
+            postedListeners = posted;
+        }
+        return posted;
+    }
+    
+    /**
+     * Set the second-level cache for findOne(id), exists(id) and cascade @Ref reads. 
+     * <p>All DAOs of the entity class share the same cache. Split collection is not cached.</p>
+     * @param entityCache 
+     */
+    protected void setEntityCache(EntityCache entityCache){
+        EntityCacheRegistry.getInstance().put(clazz, entityCache);
+    }
+    
+    /**
+     * Get the second-level cache of the entity class.
+     * @return null if not set, or the collection is split
+     */
+    public EntityCache getEntityCache(){
+        if(split){
+            return null;
+        }
+        return EntityCacheRegistry.getInstance().get(clazz);
+    }
+    
+    /**
+     * Called after many documents are changed at once, by drop(), remove by condition, or multi update. 
+     * removeByIds() and updateByIds() don't call it, as the changed ids are known.
+     * <p>The listeners are still notified of every entity. Sub class can override it, e.g. to reload all data once.</p>
+     */
+    protected void bulkChanged(){
+        //do nothing by default
+    }
+    
+    /**
+     * Called after documents of the collection are written. The cached query results of the collection become invalid.
+     */
+    protected void collectionChanged(){
+        QueryCache.getInstance().invalidate(getCollection().getFullName());
+    }
+    
+    protected void invalidateCache(String id){
+        collectionChanged();
+        EntityCache ec = getEntityCache();
+        if(ec != null && id != null){
+            ec.invalidate(id);
+        }
+    }
+    
+    protected void invalidateCache(List<String> ids){
+        collectionChanged();
+        EntityCache ec = getEntityCache();
+        if(ec != null && !ids.isEmpty()){
+            ec.invalidate(ids);
+        }
+    }
+    
+    protected void invalidateCache(){
+        collectionChanged();
+        EntityCache ec = getEntityCache();
+        if(ec != null){
+            ec.invalidateAll();
+        }
+    }
+    
     /**
      * notify all listeners after an entity is inserted.
-     * the listeners' process code is executed asynchronized.
+     * the listeners' process code is executed asynchronized, by the EntityEventBus.
      * @param entity the entity contains all fields' value.
      */
-    public void notifyInserted(final BuguEntity entity){
-        for(final EntityListener listener : listenerList){
-            BuguFramework.getInstance().getExecutor().execute(new Runnable(){
-                @Override
-                public void run(){
-                    listener.entityInserted(entity);
-                }
-            });
+    public void notifyInserted(BuguEntity entity){
+        if(!listenerList.isEmpty()){
+            BuguFramework.getInstance().getEventBus().postInserted(getPostedListeners(), entity);
         }
     }
     
     /**
      * notify all listeners after an entity is updated.
-     * the listeners' process code is executed asynchronized.
+     * the listeners' process code is executed asynchronized, by the EntityEventBus.
      * @param entity the entity contains all fields' value.
      */
-    public void notifyUpdated(final BuguEntity entity){
-        for(final EntityListener listener : listenerList){
-            BuguFramework.getInstance().getExecutor().execute(new Runnable(){
-                @Override
-                public void run(){
-                    listener.entityUpdated(entity);
-                }
-            });
+    public void notifyUpdated(BuguEntity entity){
+        if(!listenerList.isEmpty()){
+            BuguFramework.getInstance().getEventBus().postUpdated(getPostedListeners(), entity);
         }
     }
     
     /**
      * notify all listeners after an entity is deleted.
-     * the listeners' process code is executed asynchronized.
+     * the listeners' process code is executed asynchronized, by the EntityEventBus.
      * @param entity the entity contains all fields' value.
      */
-    public void notifyDeleted(final BuguEntity entity){
-        for(final EntityListener listener : listenerList){
-            BuguFramework.getInstance().getExecutor().execute(new Runnable(){
-                @Override
-                public void run(){
-                    listener.entityDeleted(entity);
+    public void notifyDeleted(BuguEntity entity){
+        if(!listenerList.isEmpty()){
+            BuguFramework.getInstance().getEventBus().postDeleted(getPostedListeners(), entity);
+        }
+    }
+    
+    /**
+     * notify all listeners after a batch of entities are deleted. 
+     * BatchDeleteListener receives the continuous deleted entities of a lane together.
+     * @param entities 
+     */
+    public void notifyDeleted(List<BuguEntity> entities){
+        notifyDeleted(entities, false);
+    }
+    
+    private void notifyDeleted(List<BuguEntity> entities, boolean withoutCascade){
+        List<EntityListener> listeners = getPostedListeners();
+        if(withoutCascade){
+            List<EntityListener> all = listeners;
+            listeners = new ArrayList<>(all.size());
+            for(EntityListener listener : all){
+                if(!(listener instanceof CascadeDeleteListener)){
+                    listeners.add(listener);
                 }
-            });
+            }
+        }
+        if(listeners.isEmpty()){
+            return;
+        }
+        EntityEventBus bus = BuguFramework.getInstance().getEventBus();
+        for(BuguEntity entity : entities){
+            bus.postDeleted(listeners, entity);
         }
     }
     
@@ -267,11 +482,21 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public WriteResult insert(T t){
-        DBObject dbo = MapperUtil.toDBObject(t);
-        WriteResult wr = getCollection().insert(dbo);
-        String id = dbo.get(Operator.ID).toString();
+        WriteResult wr;
         BuguEntity ent = (BuguEntity)t;
-        ent.setId(id);
+        if(nativeCodec){
+            //the id is generated and set to entity by EntityCodec
+            MongoCollection<T> mongoColl = getMongoCollection();
+            mongoColl.insertOne(t);
+            wr = toWriteResult(mongoColl, 0, false, null);
+        }else{
+            DBObject dbo = MapperUtil.toDBObject(t);
+            wr = getCollection().insert(dbo);
+            String id = dbo.get(Operator.ID).toString();
+            ent.setId(id);
+        }
+        invalidateInserted(Collections.singletonList(t));
+        markClean(Collections.singletonList(t));
         if(hasCustomListener){
             notifyInserted(ent);
         }
@@ -290,10 +515,19 @@ public class BuguDao<T> extends AbstractDao {
         Field idField = FieldsCache.getInstance().getIdField(clazz);
         Id idAnnotation = idField.getAnnotation(Id.class);
         if(idAnnotation.type()==IdType.AUTO_INCREASE){
-            for(T t : list){
-                save(t);
+            reserveIds(list);
+        }
+        if(nativeCodec){
+            MongoCollection<T> mongoColl = getMongoCollection();
+            mongoColl.insertMany(list);
+            invalidateInserted(list);
+            markClean(list);
+            if(hasCustomListener){
+                for(T t : list){
+                    notifyInserted((BuguEntity)t);
+                }
             }
-            return new WriteResult(list.size(), false, null);
+            return toWriteResult(mongoColl, 0, false, null);
         }
         else{
             List<DBObject> dboList = new ArrayList<>();
@@ -307,6 +541,8 @@ public class BuguDao<T> extends AbstractDao {
                 BuguEntity ent = (BuguEntity)(list.get(i));
                 ent.setId(id);
             }
+            invalidateInserted(list);
+            markClean(list);
             if(hasCustomListener){
                 for(T t : list){
                     notifyInserted((BuguEntity)t);
@@ -316,10 +552,30 @@ public class BuguDao<T> extends AbstractDao {
         }
     }
     
+    /**
+     * Set AUTO_INCREASE ids to the entities without id, reserved by one call.
+     */
+    private void reserveIds(List<T> list){
+        List<BuguEntity> noIdList = new ArrayList<>();
+        for(T t : list){
+            BuguEntity ent = (BuguEntity)t;
+            if(StringUtil.isEmpty(ent.getId())){
+                noIdList.add(ent);
+            }
+        }
+        if(noIdList.isEmpty()){
+            return;
+        }
+        long id = SequenceCache.getInstance().reserve(clazz, noIdList.size());
+        for(BuguEntity ent : noIdList){
+            ent.setId(String.valueOf(id++));
+        }
+    }
+    
     /**
      * Save an entity to mongoDB. 
      * If no id in it, then insert the entity.
-     * Else, check the id type, to confirm do save or insert.
+     * Else, replace the document by id, or insert it if not exists, in one round trip.
      * @param t 
      * @return 
      */
@@ -332,28 +588,122 @@ public class BuguDao<T> extends AbstractDao {
         else{
             Field idField = FieldsCache.getInstance().getIdField(clazz);
             Id idAnnotation = idField.getAnnotation(Id.class);
-            if(idAnnotation.type()==IdType.USER_DEFINE){
-                if(this.exists(Operator.ID, ent.getId())){
-                    wr = doSave(ent);
+            if(idAnnotation.type()==IdType.USER_DEFINE && !getCollection().getWriteConcern().isAcknowledged()){
+                //inserted or updated can't be known from unacknowledged write result
+                if(existsId(ent.getId())){
+                    wr = doSave(ent, false);
                 }else{
                     wr = insert(t);
                 }
             }
             else{
-                wr = doSave(ent);
+                wr = doSave(ent, idAnnotation.type()==IdType.USER_DEFINE);
+            }
+        }
+        return wr;
+    }
+    
+    /**
+     * Save entities with unordered bulk write. The entities with id are replaced or inserted, the others are inserted.
+     * @param list
+     * @return 
+     */
+    public WriteResult save(List<T> list){
+        if(list==null || list.isEmpty()){
+            return null;
+        }
+        BuguBulkResult result = bulk(false).save(list).execute();
+        if(!result.isAcknowledged()){
+            return WriteResult.unacknowledged();
+        }
+        int n = result.getInsertedCount() + result.getMatchedCount() + result.getUpsertedCount();
+        return new WriteResult(n, result.getMatchedCount() > 0, null);
+    }
+    
+    private boolean existsId(String id){
+        DBObject query = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, id));
+        return getCollection().findOne(query, new BasicDBObject(Operator.ID, 1)) != null;
+    }
+    
+    /**
+     * @param mayInsert if the document may not exist, listeners are notified by the write result
+     */
+    private WriteResult doSave(BuguEntity ent, boolean mayInsert){
+        if(ent instanceof TrackedEntity && ((TrackedEntity)ent).isTracked()){
+            WriteResult wr = saveChanges((TrackedEntity)ent);
+            if(wr != null){
+                return wr;
+            }
+        }
+        //the lazy fields not returned by query should not be overwritten with null
+        if(ent instanceof LazyEntity){
+            ((LazyEntity)ent).loadLazy();
+        }
+        WriteResult wr;
+        if(nativeCodec){
+            //the same as DBCollection.save(): replace by id, or insert if not exists
+            MongoCollection<T> mongoColl = getMongoCollection();
+            DBObject filter = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, ent.getId()));
+            UpdateResult ur = mongoColl.replaceOne(BsonUtil.toBson(filter), (T)ent, new ReplaceOptions().upsert(true));
+            if(ur.wasAcknowledged()){
+                boolean updated = ur.getMatchedCount() > 0;
+                wr = new WriteResult(1, updated, ur.getUpsertedId());
+            }else{
+                wr = WriteResult.unacknowledged();
+            }
+        }else{
+            wr = getCollection().save(MapperUtil.toDBObject(ent));
+        }
+        markClean(Collections.singletonList((T)ent));
+        boolean inserted = mayInsert && wr.wasAcknowledged() && !wr.isUpdateOfExisting();
+        if(inserted){
+            invalidateInserted(Collections.singletonList((T)ent));
+        }else{
+            invalidateCache(ent.getId());
+        }
+        if(hasCustomListener){
+            if(inserted){
+                notifyInserted(ent);
+            }else{
+                notifyUpdated(ent);
             }
         }
         return wr;
     }
     
-    private WriteResult doSave(BuguEntity ent){
-        WriteResult wr = getCollection().save(MapperUtil.toDBObject(ent));
+    /**
+     * Save the changed fields of a tracked entity, with $set, $unset, $push and $pullAll.
+     * @return null if the document doesn't exist, then it should be saved with full document
+     */
+    private WriteResult saveChanges(TrackedEntity ent){
+        DBObject dbo = MapperUtil.toDBObject(ent);
+        TrackedEntity.Snapshot snapshot = new TrackedEntity.Snapshot(dbo);
+        DBObject modifier = ent.getModifier(dbo, snapshot);
+        if(modifier.keySet().isEmpty()){
+            //nothing changed, no need to write
+            return new WriteResult(1, true, null);
+        }
+        DBObject query = new BasicDBObject(Operator.ID, dbo.get(Operator.ID));
+        WriteResult wr = getCollection().update(query, modifier);
+        if(wr.wasAcknowledged() && wr.getN() == 0){
+            return null;
+        }
+        ent.setSnapshot(snapshot);
+        invalidateCache(ent.getId());
         if(hasCustomListener){
             notifyUpdated(ent);
         }
         return wr;
     }
     
+    protected void markClean(List<T> list){
+        for(T t : list){
+            if(t instanceof TrackedEntity){
+                ((TrackedEntity)t).markClean();
+            }
+        }
+    }
+    
     /**
      * Drop the collection. 
      * It will automatically drop all indexes from this collection.
@@ -368,6 +718,8 @@ public class BuguDao<T> extends AbstractDao {
         //drop the collection and index anyway.
         getCollection().drop();
         getCollection().dropIndexes();
+        invalidateCache();
+        bulkChanged();
     }
     
     /**
@@ -392,6 +744,7 @@ public class BuguDao<T> extends AbstractDao {
         }
         DBObject query = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, id));
         WriteResult wr = getCollection().remove(query);
+        invalidateCache(id);
         if(!listenerList.isEmpty() && entity!=null){
             notifyDeleted(entity);
         }
@@ -402,15 +755,113 @@ public class BuguDao<T> extends AbstractDao {
      * Batch remove by id.
      * @param idList
      * @return 
+     * @see #removeByIds(java.util.Collection) 
      */
     public WriteResult remove(List<String> idList){
-        int len = idList.size();
-        Object[] arr = new Object[len];
-        for(int i=0; i<len; i++){
-            arr[i] = IdUtil.toDbId(clazz, idList.get(i));
+        return removeByIds(idList);
+    }
+    
+    /**
+     * Remove entities by ids, with chunked $in queries which are run concurrently.
+     * <p>If the DAO has listeners, every chunk is removed and notified batch by batch, as remove by condition.</p>
+     * @param ids
+     * @return the sum of the chunks' results
+     */
+    public WriteResult removeByIds(Collection<String> ids){
+        return removeByIds(ids, false);
+    }
+    
+    /**
+     * Remove entities by ids.
+     * @param ids
+     * @param withoutCascade if true, CascadeDeleteListener is not notified, the caller removes the references itself
+     * @return 
+     */
+    protected WriteResult removeByIds(Collection<String> ids, final boolean withoutCascade){
+        Set<String> idSet = new LinkedHashSet<>(ids);
+        if(idSet.isEmpty()){
+            return new WriteResult(0, false, null);
+        }
+        final DBCollection coll = getCollection();
+        final boolean streaming = hasDeleteListener(withoutCascade);
+        List<Callable<WriteResult>> tasks = new ArrayList<>();
+        for(final List<String> chunk : ChunkUtil.split(idSet, idChunkSize)){
+            tasks.add(new Callable<WriteResult>(){
+                @Override
+                public WriteResult call(){
+                    return streaming ? removeStreaming(coll, idIn(chunk), withoutCascade) : coll.remove(idIn(chunk));
+                }
+            });
+        }
+        List<WriteResult> results;
+        try{
+            results = ChunkUtil.runAll(tasks);
+        }finally{
+            //some chunks may be removed even if others fail
+            invalidateCache(new ArrayList<>(idSet));
+        }
+        //the ids are known, the listeners are notified of each entity instead of bulkChanged()
+        return sumResults(results);
+    }
+    
+    /**
+     * Apply the updater to entities by ids, with chunked $in queries which are run concurrently.
+     * <p>The upsert option of the updater is ignored. If the DAO has custom listeners, 
+     * the updated entities are read by findByIds() and notified.</p>
+     * @param ids
+     * @param updater
+     * @return the sum of the chunks' results
+     */
+    public WriteResult updateByIds(Collection<String> ids, BuguUpdater<T> updater){
+        Set<String> idSet = new LinkedHashSet<>(ids);
+        if(idSet.isEmpty()){
+            return new WriteResult(0, false, null);
+        }
+        final DBCollection coll = getCollection();
+        final DBObject modifier = updater.getModifier();
+        List<Callable<WriteResult>> tasks = new ArrayList<>();
+        for(final List<String> chunk : ChunkUtil.split(idSet, idChunkSize)){
+            tasks.add(new Callable<WriteResult>(){
+                @Override
+                public WriteResult call(){
+                    return coll.update(idIn(chunk), modifier, false, true);
+                }
+            });
         }
-        DBObject in = new BasicDBObject(Operator.IN, arr);
-        return removeMulti(new BasicDBObject(Operator.ID, in));
+        List<WriteResult> results;
+        try{
+            results = ChunkUtil.runAll(tasks);
+        }finally{
+            invalidateCache(new ArrayList<>(idSet));
+        }
+        //the ids are known, the listeners are notified of each entity instead of bulkChanged()
+        if(hasCustomListener){
+            for(T t : findByIds(idSet).values()){
+                notifyUpdated((BuguEntity)t);
+            }
+        }
+        return sumResults(results);
+    }
+    
+    private DBObject idIn(List<String> ids){
+        List<Object> dbIds = new ArrayList<>(ids.size());
+        for(String id : ids){
+            dbIds.add(IdUtil.toDbId(clazz, id));
+        }
+        return new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, dbIds));
+    }
+    
+    private WriteResult sumResults(List<WriteResult> results){
+        int n = 0;
+        boolean updateOfExisting = false;
+        for(WriteResult wr : results){
+            if(!wr.wasAcknowledged()){
+                return WriteResult.unacknowledged();
+            }
+            n += wr.getN();
+            updateOfExisting = updateOfExisting || wr.isUpdateOfExisting();
+        }
+        return new WriteResult(n, updateOfExisting, null);
     }
     
     /**
@@ -434,20 +885,114 @@ public class BuguDao<T> extends AbstractDao {
     }
     
     private WriteResult removeMulti(DBObject condition){
-        List<T> list = null;
-        if(!listenerList.isEmpty()){
-            DBCursor cursor = getCollection().find(condition);
-            list = MapperUtil.toList(clazz, cursor);
+        if(listenerList.isEmpty()){
+            WriteResult wr = getCollection().remove(condition);
+            invalidateCache();
+            bulkChanged();
+            return wr;
         }
-        WriteResult wr = getCollection().remove(condition);
-        if(!listenerList.isEmpty() && list!=null){
-            for(T t : list){
-                notifyDeleted((BuguEntity)t);
+        WriteResult wr;
+        try{
+            wr = removeStreaming(getCollection(), condition, false);
+        }finally{
+            invalidateCache();
+        }
+        bulkChanged();
+        return wr;
+    }
+    
+    /**
+     * Read the matched documents with a cursor, remove and notify them batch by batch. 
+     * <p>Only the fields which the listeners need are read. 
+     * The document which matches the condition after the cursor passes it is not removed, as it's not notified.</p>
+     */
+    private WriteResult removeStreaming(DBCollection coll, DBObject condition, boolean withoutCascade){
+        DBObject fields = getDeleteFields(withoutCascade);
+        //the @Ref and @RefList fields of the projected entity only contain ids
+        boolean projected = fields != null;
+        DBCursor cursor = fields == null ? coll.find(condition) : coll.find(condition, fields);
+        cursor.batchSize(idChunkSize);
+        List<WriteResult> results = new ArrayList<>();
+        List<DBObject> docs = new ArrayList<>();
+        try{
+            while(cursor.hasNext()){
+                docs.add(cursor.next());
+                if(docs.size() == idChunkSize){
+                    results.add(removeBatch(coll, condition, docs, projected, withoutCascade));
+                    docs.clear();
+                }
+            }
+            if(!docs.isEmpty()){
+                results.add(removeBatch(coll, condition, docs, projected, withoutCascade));
             }
+        }finally{
+            cursor.close();
         }
+        if(results.isEmpty()){
+            return coll.getWriteConcern().isAcknowledged() ? new WriteResult(0, false, null) : WriteResult.unacknowledged();
+        }
+        return sumResults(results);
+    }
+    
+    private WriteResult removeBatch(DBCollection coll, DBObject condition, List<DBObject> docs, boolean projected, boolean withoutCascade){
+        List<Object> dbIds = new ArrayList<>(docs.size());
+        List<String> ids = new ArrayList<>(docs.size());
+        List<BuguEntity> entities = new ArrayList<>(docs.size());
+        RefBatch batch = RefBatch.open();
+        try{
+            for(DBObject dbo : docs){
+                Object dbId = dbo.get(Operator.ID);
+                dbIds.add(dbId);
+                ids.add(dbId.toString());
+                entities.add((BuguEntity)MapperUtil.fromDBObject(clazz, dbo, projected));
+            }
+        }finally{
+            batch.close();
+        }
+        batch.flush();
+        //the document may be changed after it's read
+        BasicDBList and = new BasicDBList();
+        and.add(condition);
+        and.add(new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, dbIds)));
+        WriteResult wr = coll.remove(new BasicDBObject(Operator.AND, and));
+        invalidateCache(ids);
+        notifyDeleted(entities, withoutCascade);
         return wr;
     }
     
+    private boolean hasDeleteListener(boolean withoutCascade){
+        for(EntityListener listener : listenerList){
+            if(!withoutCascade || !(listener instanceof CascadeDeleteListener)){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * The union of the fields the listeners need on delete.
+     * @return null if any listener needs the whole entity
+     */
+    private DBObject getDeleteFields(boolean withoutCascade){
+        DBObject fields = new BasicDBObject(Operator.ID, 1);
+        for(EntityListener listener : listenerList){
+            if(withoutCascade && listener instanceof CascadeDeleteListener){
+                continue;
+            }
+            if(!(listener instanceof BatchDeleteListener)){
+                return null;
+            }
+            String[] names = ((BatchDeleteListener)listener).getDeleteFields();
+            if(names == null){
+                return null;
+            }
+            for(String name : names){
+                fields.put(name, 1);
+            }
+        }
+        return fields;
+    }
+    
     private Object checkSpecialValue(String key, Object value){
         Object result = value;
         if(value instanceof BuguEntity){
@@ -466,11 +1011,32 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public boolean exists(String id){
+        EntityCache ec = getEntityCache();
+        if(ec != null){
+            return findCachedDocument(ec, id) != null;
+        }
         DBObject query = new BasicDBObject();
         query.put(Operator.ID, IdUtil.toDbId(clazz, id));
         return getCollection().findOne(query) != null;
     }
     
+    /**
+     * Check which of the ids exist, with chunked $in queries which only return _id. The chunks are run concurrently.
+     * <p>The ids in the entity cache are not queried again.</p>
+     * @param ids
+     * @return the existing ids, in the order of the ids
+     */
+    public Set<String> existsMany(Collection<String> ids){
+        Map<String, DBObject> found = findDocuments(ids, new BasicDBObject(Operator.ID, 1));
+        Set<String> result = new LinkedHashSet<>();
+        for(String id : ids){
+            if(found.containsKey(id)){
+                result.add(id);
+            }
+        }
+        return result;
+    }
+    
     /**
      * Check if any entity match the condition.
      * @param key the condition field
@@ -488,8 +1054,24 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public T findOne(){
-        DBObject result = getCollection().findOne();
-        return MapperUtil.fromDBObject(clazz, result);
+        return findOneByCondition(new BasicDBObject(), null);
+    }
+    
+    private T findOneByCondition(DBObject query, DBObject fields){
+        if(nativeCodec){
+            FindIterable<T> iterable = getMongoCollection().find(BsonUtil.toBson(query));
+            if(fields != null){
+                iterable.projection(BsonUtil.toBson(fields));
+            }
+            return iterable.first();
+        }
+        DBObject dbo;
+        if(fields != null){
+            dbo = getCollection().findOne(query, fields);
+        }else{
+            dbo = getCollection().findOne(query);
+        }
+        return MapperUtil.fromDBObject(clazz, dbo);
     }
     
     /**
@@ -498,10 +1080,107 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public T findOne(String id){
+        EntityCache ec = getEntityCache();
+        if(ec != null){
+            return MapperUtil.fromDBObject(clazz, findCachedDocument(ec, id));
+        }
         DBObject query = new BasicDBObject();
         query.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        DBObject result = getCollection().findOne(query);
-        return MapperUtil.fromDBObject(clazz, result);
+        return findOneByCondition(query, null);
+    }
+    
+    /**
+     * Get the whole document from cache, or read it from mongoDB and put it into cache.
+     */
+    private DBObject findCachedDocument(EntityCache ec, String id){
+        DBObject dbo = ec.get(id);
+        if(dbo == null){
+            long token = ec.getToken(id);
+            DBObject query = new BasicDBObject();
+            query.put(Operator.ID, IdUtil.toDbId(clazz, id));
+            dbo = getCollection().findOne(query);
+            if(dbo != null){
+                ec.putIfNotInvalidatedSince(id, token, dbo);
+            }
+        }
+        return dbo;
+    }
+    
+    /**
+     * Find entities by ids, with chunked $in queries which are run concurrently.
+     * <p>The entities in the entity cache are not queried again, and the read documents are put into the cache. 
+     * The cascade references of all the entities are loaded in batch.</p>
+     * @param ids
+     * @return id to entity, in the order of the ids. The ids which do not exist are not contained.
+     */
+    public Map<String, T> findByIds(Collection<String> ids){
+        Map<String, DBObject> found = findDocuments(ids, null);
+        Map<String, T> result = new LinkedHashMap<>();
+        RefBatch batch = RefBatch.open();
+        try{
+            for(String id : ids){
+                DBObject dbo = found.get(id);
+                if(dbo != null && !result.containsKey(id)){
+                    result.put(id, MapperUtil.fromDBObject(clazz, dbo));
+                }
+            }
+        }finally{
+            batch.close();
+        }
+        batch.flush();
+        return result;
+    }
+    
+    /**
+     * Read the documents of the ids from the entity cache, and the missed ones from mongoDB.
+     * @param fields the returned fields, null for the whole document, which is put into the cache
+     * @return id to document
+     */
+    private Map<String, DBObject> findDocuments(Collection<String> ids, final DBObject fields){
+        Map<String, DBObject> found = new HashMap<>();
+        EntityCache ec = getEntityCache();
+        Set<String> missed = new LinkedHashSet<>();
+        Map<String, Long> tokens = new HashMap<>();
+        for(String id : ids){
+            DBObject dbo = ec == null ? null : ec.get(id);
+            if(dbo != null){
+                found.put(id, dbo);
+            }else{
+                missed.add(id);
+                if(ec != null && fields == null){
+                    tokens.put(id, ec.getToken(id));
+                }
+            }
+        }
+        if(missed.isEmpty()){
+            return found;
+        }
+        final DBCollection coll = getCollection();
+        List<Callable<List<DBObject>>> tasks = new ArrayList<>();
+        for(final List<String> chunk : ChunkUtil.split(missed, idChunkSize)){
+            tasks.add(new Callable<List<DBObject>>(){
+                @Override
+                public List<DBObject> call(){
+                    DBCursor cursor = fields == null ? coll.find(idIn(chunk)) : coll.find(idIn(chunk), fields);
+                    try{
+                        return cursor.toArray();
+                    }finally{
+                        cursor.close();
+                    }
+                }
+            });
+        }
+        for(List<DBObject> list : ChunkUtil.runAll(tasks)){
+            for(DBObject dbo : list){
+                String id = dbo.get(Operator.ID).toString();
+                Long token = tokens.get(id);
+                if(token != null){
+                    ec.putIfNotInvalidatedSince(id, token, dbo);
+                }
+                found.put(id, dbo);
+            }
+        }
+        return found;
     }
     
     /**
@@ -513,8 +1192,7 @@ public class BuguDao<T> extends AbstractDao {
     public T findOne(String key, Object value){
         value = checkSpecialValue(key, value);
         DBObject query = new BasicDBObject(key, value);
-        DBObject dbo = getCollection().findOne(query);
-        return MapperUtil.fromDBObject(clazz, dbo);
+        return findOneByCondition(query, null);
     }
     
     /**
@@ -527,8 +1205,7 @@ public class BuguDao<T> extends AbstractDao {
         DBObject returnFields = getReturnFields(keys);
         DBObject query = new BasicDBObject();
         query.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        DBObject result = getCollection().findOne(query, returnFields);
-        return MapperUtil.fromDBObject(clazz, result);
+        return findOneByCondition(query, returnFields);
     }
     
     /**
@@ -542,8 +1219,7 @@ public class BuguDao<T> extends AbstractDao {
         DBObject returnFields = getReturnFields(keys);
         value = checkSpecialValue(key, value);
         DBObject query = new BasicDBObject(key, value);
-        DBObject dbo = getCollection().findOne(query, returnFields);
-        return MapperUtil.fromDBObject(clazz, dbo);
+        return findOneByCondition(query, returnFields);
     }
     
     /**
@@ -556,8 +1232,7 @@ public class BuguDao<T> extends AbstractDao {
         DBObject notReturnFields = getNotReturnFields(keys);
         DBObject query = new BasicDBObject();
         query.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        DBObject result = getCollection().findOne(query, notReturnFields);
-        return MapperUtil.fromDBObject(clazz, result);
+        return findOneByCondition(query, notReturnFields);
     }
     
     /**
@@ -571,8 +1246,7 @@ public class BuguDao<T> extends AbstractDao {
         DBObject notReturnFields = getNotReturnFields(keys);
         value = checkSpecialValue(key, value);
         DBObject query = new BasicDBObject(key, value);
-        DBObject dbo = getCollection().findOne(query, notReturnFields);
-        return MapperUtil.fromDBObject(clazz, dbo);
+        return findOneByCondition(query, notReturnFields);
     }
 
     /**
@@ -580,8 +1254,48 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public List<T> findAll(){
+        return findAllByPage(null, 0, 0);
+    }
+    
+    private List<T> findAllByPage(DBObject orderBy, int pageNum, int pageSize){
+        if(nativeCodec){
+            FindIterable<T> iterable = getMongoCollection().find().projection(BsonUtil.toBson(keys));
+            if(orderBy != null){
+                iterable.sort(BsonUtil.toBson(orderBy));
+            }
+            if(pageSize > 0){
+                iterable.skip((pageNum-1)*pageSize).limit(pageSize);
+            }
+            RefBatch batch = RefBatch.open();
+            List<T> list;
+            try{
+                list = iterable.into(new ArrayList<T>());
+            }finally{
+                batch.close();
+            }
+            batch.flush();
+            LazyGroup.attach(list);
+            return list;
+        }
         DBCursor cursor = getCollection().find(new BasicDBObject(), keys);
-        return MapperUtil.toList(clazz, cursor);
+        if(orderBy != null){
+            cursor.sort(orderBy);
+        }
+        if(pageSize > 0){
+            cursor.skip((pageNum-1)*pageSize).limit(pageSize);
+        }
+        List<T> list = MapperUtil.toList(clazz, cursor);
+        LazyGroup.attach(list);
+        return list;
+    }
+    
+    /**
+     * Lazily iterate all documents by natural order, without loading them into memory at once.
+     * <p>For batch size, sorting and other options, use query().iterate().</p>
+     * @return 
+     */
+    public BuguCursor<T> iterateAll(){
+        return query().iterate();
     }
     
     /**
@@ -590,9 +1304,7 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public List<T> findAll(String orderBy){
-        DBObject dbo = SortUtil.getSort(orderBy);
-        DBCursor cursor = getCollection().find(new BasicDBObject(), keys).sort(dbo);
-        return MapperUtil.toList(clazz, cursor);
+        return findAllByPage(SortUtil.getSort(orderBy), 0, 0);
     }
 
     /**
@@ -602,8 +1314,7 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public List<T> findAll(int pageNum, int pageSize){
-        DBCursor cursor = getCollection().find(new BasicDBObject(), keys).skip((pageNum-1)*pageSize).limit(pageSize);
-        return MapperUtil.toList(clazz, cursor);
+        return findAllByPage(null, pageNum, pageSize);
     }
     
     /**
@@ -614,9 +1325,7 @@ public class BuguDao<T> extends AbstractDao {
      * @return 
      */
     public List<T> findAll(String orderBy, int pageNum, int pageSize){
-        DBObject dbo = SortUtil.getSort(orderBy);
-        DBCursor cursor = getCollection().find(new BasicDBObject(), keys).sort(dbo).skip((pageNum-1)*pageSize).limit(pageSize);
-        return MapperUtil.toList(clazz, cursor);
+        return findAllByPage(SortUtil.getSort(orderBy), pageNum, pageSize);
     }
     
     /**
@@ -640,6 +1349,7 @@ public class BuguDao<T> extends AbstractDao {
         DBObject query = new BasicDBObject();
         query.put(Operator.ID, IdUtil.toDbId(clazz, id));
         DBObject result = getCollection().findAndModify(query, null, null, false, updater.getModifier(), returnNew, false);
+        invalidateCache(result);
         T t = MapperUtil.fromDBObject(clazz, result);
         if(hasCustomListener){
             if(returnNew){
@@ -675,6 +1385,7 @@ public class BuguDao<T> extends AbstractDao {
         value = checkSpecialValue(key, value);
         DBObject query = new BasicDBObject(key, value);
         DBObject result = getCollection().findAndModify(query, null, null, false, updater.getModifier(), returnNew, false);
+        invalidateCache(result);
         T t = MapperUtil.fromDBObject(clazz, result);
         if(hasCustomListener){
             if(returnNew){
@@ -706,6 +1417,7 @@ public class BuguDao<T> extends AbstractDao {
      */
     public T findAndModify(BuguQuery query, BuguUpdater updater, boolean returnNew){
         DBObject result = getCollection().findAndModify(query.getCondition(), null, query.getSort(), false, updater.getModifier(), returnNew, false);
+        invalidateCache(result);
         T t = MapperUtil.fromDBObject(clazz, result);
         if(hasCustomListener){
             if(returnNew){
@@ -750,8 +1462,15 @@ public class BuguDao<T> extends AbstractDao {
         return findAndRemove(query.getCondition());
     }
     
+    private void invalidateCache(DBObject result){
+        if(result != null){
+            invalidateCache(result.get(Operator.ID).toString());
+        }
+    }
+    
     private T findAndRemove(DBObject dbo){
         DBObject result = getCollection().findAndModify(dbo, null, null, true, null, false, false);
+        invalidateCache(result);
         T t = MapperUtil.fromDBObject(clazz, result);
         if(!listenerList.isEmpty()){
             notifyDeleted((BuguEntity)t);
@@ -1092,12 +1811,78 @@ public class BuguDao<T> extends AbstractDao {
         return new BuguUpdater(this);
     }
     
+    /**
+     * Create an ordered bulk write.
+     * @return a new BuguBulk object
+     */
+    public BuguBulk<T> bulk(){
+        return new BuguBulk<T>(this, true);
+    }
+    
+    /**
+     * Create a bulk write.
+     * @param ordered if false, the operations may be executed in any order, and an error doesn't stop the remain operations of the batch.
+     * @return a new BuguBulk object
+     */
+    public BuguBulk<T> bulk(boolean ordered){
+        return new BuguBulk<T>(this, ordered);
+    }
+    
+    /**
+     * Create a write-behind buffer with default options.
+     * @return a new BuguWriteBehind object
+     */
+    public BuguWriteBehind<T> writeBehind(){
+        return new BuguWriteBehind<T>(this, new WriteBehindConfig());
+    }
+    
+    /**
+     * Create a write-behind buffer. It should be closed when not used, or it's closed by BuguFramework.destroy().
+     * @param config
+     * @return a new BuguWriteBehind object
+     */
+    public BuguWriteBehind<T> writeBehind(WriteBehindConfig config){
+        return new BuguWriteBehind<T>(this, config);
+    }
+    
     /**
      * Create an aggregation.
      * @return a new BuguQuery object
      */
     public BuguAggregation<T> aggregate(){
-        return new BuguAggregation<T>(getCollection());
+        return new BuguAggregation<T>(getCollection(), getMongoCollection());
+    }
+    
+    /**
+     * The collection of the new API, with the settings of the DBCollection.
+     */
+    private class NewApiCollection {
+        final WriteConcern writeConcern;
+        final ReadPreference readPreference;
+        final ReadConcern readConcern;
+        final MongoCollection<T> withCascade;
+        final MongoCollection<T> withoutCascade;
+        
+        NewApiCollection(DBCollection coll){
+            writeConcern = coll.getWriteConcern();
+            readPreference = coll.getReadPreference();
+            readConcern = coll.getReadConcern();
+            Entity entity = clazz.getAnnotation(Entity.class);
+            MongoDatabase db = BuguFramework.getInstance().getConnection(entity.connection()).getMongoDatabase();
+            withCascade = db.getCollection(coll.getName(), clazz)
+                    .withWriteConcern(writeConcern)
+                    .withReadPreference(readPreference)
+                    .withReadConcern(readConcern);
+            CodecRegistry registry = withCascade.getCodecRegistry();
+            EntityCodec<T> codec = new EntityCodec<>(clazz, registry, true);
+            withoutCascade = withCascade.withCodecRegistry(CodecRegistries.fromRegistries(CodecRegistries.fromCodecs(codec), registry));
+        }
+        
+        boolean isSameSetting(DBCollection coll){
+            return writeConcern.equals(coll.getWriteConcern())
+                    && readPreference.equals(coll.getReadPreference())
+                    && readConcern.equals(coll.getReadConcern());
+        }
     }
     
 }
@@ -17,11 +17,14 @@
 package com.bugull.mongo;
 
 import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.listener.EntityEventBus;
+import com.bugull.mongo.listener.EventBusConfig;
 import com.bugull.mongo.utils.ThreadUtil;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -34,10 +37,18 @@ public class BuguFramework {
     
     private final Map<String, BuguConnection> map = new ConcurrentHashMap<>();
     
+    private final Set<BuguWriteBehind<?>> writeBehinds = new CopyOnWriteArraySet<>();
+    
     private ExecutorService executor;
     
     private int threadPoolSize;
     
+    private int cascadeDeleteDepth = 8;
+    
+    private EventBusConfig eventBusConfig = new EventBusConfig();
+    
+    private volatile EntityEventBus eventBus;
+    
     private BuguFramework(){
         if(threadPoolSize == 0){
             //default thread pool size: 2 * cpu + 1
@@ -83,10 +94,75 @@ public class BuguFramework {
         this.threadPoolSize = threadPoolSize;
     }
     
+    /**
+     * Get the event bus which notifies EntityListeners. It's created on first use.
+     * @return 
+     */
+    public EntityEventBus getEventBus() {
+        EntityEventBus bus = eventBus;
+        if(bus == null){
+            synchronized(this){
+                if(eventBus == null){
+                    eventBus = new EntityEventBus(eventBusConfig);
+                }
+                bus = eventBus;
+            }
+        }
+        return bus;
+    }
+    
+    /**
+     * Set the options of the event bus which notifies EntityListeners. 
+     * If the event bus is already in use, it's closed after its queued events are delivered, and a new one is used.
+     * @param eventBusConfig 
+     */
+    public void setEventBusConfig(EventBusConfig eventBusConfig) {
+        EntityEventBus old;
+        synchronized(this){
+            this.eventBusConfig = eventBusConfig;
+            old = eventBus;
+            eventBus = null;
+        }
+        if(old != null){
+            old.close();
+        }
+    }
+    
+    public int getCascadeDeleteDepth() {
+        return cascadeDeleteDepth;
+    }
+    
+    /**
+     * Set the max levels of references which cascade delete goes through. The default is 8.
+     * @param cascadeDeleteDepth 
+     */
+    public void setCascadeDeleteDepth(int cascadeDeleteDepth) {
+        this.cascadeDeleteDepth = cascadeDeleteDepth;
+    }
+    
+    void addWriteBehind(BuguWriteBehind<?> writeBehind){
+        writeBehinds.add(writeBehind);
+    }
+    
+    void removeWriteBehind(BuguWriteBehind<?> writeBehind){
+        writeBehinds.remove(writeBehind);
+    }
+    
     /**
      * destroy the framework, release all resource.
      */
     public void destroy(){
+        //write the buffered data before the connection is closed
+        for(BuguWriteBehind<?> writeBehind : writeBehinds){
+            writeBehind.close();
+        }
+        
+        //deliver the queued events of listeners
+        EntityEventBus bus = eventBus;
+        if(bus != null){
+            bus.close();
+        }
+        
         //close the thread pool
         ThreadUtil.safeClose(executor);
         
@@ -16,31 +16,33 @@
 
 package com.bugull.mongo;
 
-import com.bugull.mongo.annotations.Default;
-import com.bugull.mongo.annotations.Ref;
-import com.bugull.mongo.annotations.RefList;
+import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.cache.CodecPlanCache;
 import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.cache.FieldsCache;
-import com.bugull.mongo.utils.DataType;
-import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.exception.FieldException;
+import com.bugull.mongo.mapper.FieldKind;
+import com.bugull.mongo.mapper.FieldPlan;
+import com.bugull.mongo.mapper.RefBatch;
+import com.bugull.mongo.mapper.RefFieldPlan;
+import com.bugull.mongo.mapper.RefListFieldPlan;
+import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.Operator;
 import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.GenericArrayType;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * The utility class for ODM(Object Document Mapping), mainly fetch lazy and cascade data.
@@ -70,17 +72,25 @@ public final class BuguMapper {
     }
     
     /**
-     * Fetch out the lazy @Property, @Embed, @EmbedList field of a list
+     * Fetch out the lazy @Property, @Embed, @EmbedList field of a list.
+     * <p>Only the lazy fields are queried, with one $in query for each entity class.</p>
      * @param list the list needs to operate on
      */
     public static void fetchLazy(List list){
+        Map<Class<?>, List<BuguEntity>> classMap = new LinkedHashMap<>();
         for(Object o : list){
             if(o != null){
-                BuguEntity obj = (BuguEntity)o;
-                BuguEntity newObj = (BuguEntity)DaoCache.getInstance().get(obj.getClass()).findOne(obj.getId());
-                FieldUtil.copy(newObj, obj);
+                List<BuguEntity> entities = classMap.get(o.getClass());
+                if(entities == null){
+                    entities = new ArrayList<>();
+                    classMap.put(o.getClass(), entities);
+                }
+                entities.add((BuguEntity)o);
             }
         }
+        for(Entry<Class<?>, List<BuguEntity>> entry : classMap.entrySet()){
+            fetchLazy(entry.getKey(), entry.getValue());
+        }
     }
     
     /**
@@ -89,8 +99,73 @@ public final class BuguMapper {
      * @param obj the entity needs to operate on
      */
     public static void fetchLazy(BuguEntity obj){
-        BuguEntity newObj = (BuguEntity)DaoCache.getInstance().get(obj.getClass()).findOne(obj.getId());
-        FieldUtil.copy(newObj, obj);
+        if(obj != null){
+            fetchLazy(Collections.singletonList(obj));
+        }
+    }
+    
+    private static void fetchLazy(Class<?> clazz, List<BuguEntity> entities){
+        FieldPlan[] lazyFields = CodecPlanCache.getInstance().get(clazz).getLazyFields();
+        if(lazyFields.length == 0){
+            return;
+        }
+        DBObject keys = new BasicDBObject();
+        for(FieldPlan fp : lazyFields){
+            keys.put(fp.getColumnName(), 1);
+        }
+        //the same id may appear more than once in the list
+        Map<String, List<BuguEntity>> idMap = new LinkedHashMap<>();
+        for(BuguEntity ent : entities){
+            if(ent.getId() == null){
+                continue;
+            }
+            List<BuguEntity> sameId = idMap.get(ent.getId());
+            if(sameId == null){
+                sameId = new ArrayList<>(1);
+                idMap.put(ent.getId(), sameId);
+            }
+            sameId.add(ent);
+        }
+        if(idMap.isEmpty()){
+            return;
+        }
+        InternalDao dao = DaoCache.getInstance().get(clazz);
+        List<Object> chunk = new ArrayList<>();
+        for(String id : idMap.keySet()){
+            chunk.add(IdUtil.toDbId(clazz, id));
+            if(chunk.size() == RefBatch.CHUNK_SIZE){
+                fetchLazyChunk(dao, chunk, keys, lazyFields, idMap);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()){
+            fetchLazyChunk(dao, chunk, keys, lazyFields, idMap);
+        }
+    }
+    
+    private static void fetchLazyChunk(InternalDao dao, List<Object> chunk, DBObject keys, FieldPlan[] lazyFields, Map<String, List<BuguEntity>> idMap){
+        DBObject query = new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, chunk));
+        DBCursor cursor = dao.getCollection().find(query, keys);
+        try{
+            while(cursor.hasNext()){
+                DBObject dbo = cursor.next();
+                List<BuguEntity> sameId = idMap.get(dbo.get(Operator.ID).toString());
+                if(sameId == null){
+                    continue;
+                }
+                //only the fetched fields are set
+                for(BuguEntity ent : sameId){
+                    for(FieldPlan fp : lazyFields){
+                        fp.decode(ent, dbo, false);
+                    }
+                    if(ent instanceof TrackedEntity){
+                        ((TrackedEntity)ent).markLazyClean(lazyFields);
+                    }
+                }
+            }
+        }finally{
+            cursor.close();
+        }
     }
     
     /**
@@ -100,248 +175,106 @@ public final class BuguMapper {
      */
     public static void fetchCascade(BuguEntity obj, String... names){
         if(obj != null){
-            for(String name : names){
-                String remainder = null;
-                int index = name.indexOf(".");
-                if(index > 0){
-                    remainder = name.substring(index+1);
-                    name = name.substring(0, index);
-                }
-                fetchOneLevel(obj, name);
-                if(remainder != null){
-                    fetchRemainder(obj, name, remainder);
-                }
-            }
+            fetchCascade(Collections.singletonList(obj), names);
         }
     }
     
     /**
      * Fetch out the cascade @Ref or @RefList entity.
+     * <p>The dotted name, such as "orders.product", is fetched level by level. 
+     * For each level, the referenced entities of the whole list are loaded together, with one $in query for each class.</p>
      * @param list the list needs to operate on
      * @param names the fields' names
      */
     public static void fetchCascade(List list, String... names){
-        for(Object o : list){
-            if(o != null){
-                BuguEntity obj = (BuguEntity)o;
-                fetchCascade(obj, names);
-            }
+        for(String name : names){
+            fetchCascade(list, name);
         }
     }
     
-    private static void fetchOneLevel(BuguEntity obj, String fieldName){
-        Field field = FieldsCache.getInstance().getField(obj.getClass(), fieldName);
-        if(field.getAnnotation(Ref.class) != null){
-            fetchRef(obj, field);
-        }else if(field.getAnnotation(RefList.class) != null){
-            fetchRefList(obj, field);
+    private static void fetchCascade(Collection<?> entities, String name){
+        String remainder = null;
+        int index = name.indexOf(".");
+        if(index > 0){
+            remainder = name.substring(index+1);
+            name = name.substring(0, index);
         }
-    }
-    
-    private static void fetchRemainder(BuguEntity obj, String fieldName, String remainder){
-        Field field = FieldsCache.getInstance().getField(obj.getClass(), fieldName);
-        Object value = FieldUtil.get(obj, field);
-        if(value == null){
-            return;
+        RefBatch batch = new RefBatch(false);
+        List<Object> objList = new ArrayList<>();
+        List<FieldPlan> planList = new ArrayList<>();
+        for(Object o : entities){
+            if(o == null){
+                continue;
+            }
+            FieldPlan fp = getFieldPlan((BuguEntity)o, name);
+            if(fp == null){
+                continue;
+            }
+            if(fp.getKind() == FieldKind.REF){
+                ((RefFieldPlan)fp).prepareFetch(o, batch);
+            }else if(fp.getKind() == FieldKind.REF_LIST){
+                ((RefListFieldPlan)fp).prepareFetch(o, batch);
+            }else{
+                continue;
+            }
+            objList.add(o);
+            planList.add(fp);
         }
-        if(field.getAnnotation(Ref.class) != null){
-            BuguEntity entity = (BuguEntity)value;
-            fetchCascade(entity, remainder);
-        }else if(field.getAnnotation(RefList.class) != null){
-            Class type = field.getType();
-            if(DataType.isMapType(type)){
-                //To-do:
-                //this is not strictly correct. It won't works in some situation
-                Map<Object, BuguEntity> map = (Map<Object, BuguEntity>)value;
-                for(Entry<Object, BuguEntity> entry : map.entrySet()){
-                    fetchCascade(entry.getValue(), remainder);
-                }
+        batch.flush();
+        //the loaded entities may be shared by many entities, so the next level uses identity set
+        Set<Object> nextLevel = remainder == null ? null : Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for(int i=0; i<objList.size(); i++){
+            Object o = objList.get(i);
+            FieldPlan fp = planList.get(i);
+            if(fp.getKind() == FieldKind.REF){
+                ((RefFieldPlan)fp).fetch(o, batch);
+            }else{
+                ((RefListFieldPlan)fp).fetch(o, batch);
             }
-            else{
-                Collection<BuguEntity> collection = (Collection<BuguEntity>)value;
-                for(BuguEntity entity : collection){
-                    fetchCascade(entity, remainder);
-                }
+            if(nextLevel != null){
+                addEntities(fp.getAccessor().get(o), nextLevel);
             }
         }
-    }
-    
-    private static void fetchRef(BuguEntity obj, Field field){
-        Object val = FieldUtil.get(obj, field);
-        if( val == null){
-            return;
+        if(nextLevel != null && !nextLevel.isEmpty()){
+            fetchCascade(nextLevel, remainder);
         }
-        BuguEntity refObj = (BuguEntity)val;
-        String id = refObj.getId();
-        Class cls = FieldUtil.getRealType(field);
-        InternalDao dao = DaoCache.getInstance().get(cls);
-        Object value = dao.findOne(id);
-        FieldUtil.set(obj, field, value);
     }
     
-    private static void fetchRefList(BuguEntity obj, Field field){
-        Object val = FieldUtil.get(obj, field);
-        if(val == null){
+    /**
+     * Add the entities in the value of @Ref or @RefList field.
+     */
+    private static void addEntities(Object value, Set<Object> set){
+        if(value == null){
             return;
         }
-        Class<?> type = field.getType();
-        if(type.isArray()){
-            Object arr = fetchArrayValue(val, field, type.getComponentType());
-            FieldUtil.set(obj, field, arr);
-        }else{
-            ParameterizedType paramType = (ParameterizedType)field.getGenericType();
-            Type[] types = paramType.getActualTypeArguments();
-            int len = types.length;
-            if(len == 1){
-                //for Collection
-                List list = fetchCollectionValue(val, field, (Class)types[0]);
-                if(DataType.isListType(type)){
-                    FieldUtil.set(obj, field, list);
-                }
-                else if(DataType.isSetType(type)){
-                    FieldUtil.set(obj, field, new HashSet(list));
-                }
-                else if(DataType.isQueueType(type)){
-                    FieldUtil.set(obj, field, new LinkedList(list));
-                }
-            }else if(len == 2){
-                //for Map
-                Map map = fetchMapValue(val, field);
-                FieldUtil.set(obj, field, map);
-            }
-        }
-    }
-    
-    private static Object fetchArrayValue(Object val, Field field, Class elementClass) {
-        int len = Array.getLength(val);
-        if(len == 0){
-            return null;
+        if(value instanceof BuguEntity){
+            set.add(value);
         }
-        elementClass = FieldUtil.getRealType(elementClass, field);
-        Object arr = Array.newInstance(elementClass, len);
-        List<String> idList = new ArrayList<>();
-        for(int i=0; i<len; i++){
-            Object item = Array.get(val, i);
-            if(item != null){
-                BuguEntity ent = (BuguEntity)item;
-                idList.add(ent.getId());
+        else if(value instanceof Collection){
+            for(Object o : (Collection)value){
+                addEntities(o, set);
             }
         }
-        RefList refList = field.getAnnotation(RefList.class);
-        String sort = refList.sort();
-        InternalDao dao = DaoCache.getInstance().get(elementClass);
-        BuguQuery query = dao.query().in(Operator.ID, idList);
-        List<BuguEntity> entityList;
-        if(sort.equals(Default.SORT)){
-            entityList = query.results();
-        }else{
-            entityList = query.sort(sort).results();
-        }
-        if(entityList.size() != len){
-            len = entityList.size();
-            arr = Array.newInstance(elementClass, len);
-        }
-        for(int i=0; i<len; i++){
-            Array.set(arr, i, entityList.get(i));
-        }
-        return arr;
-    }
-    
-    private static List fetchCollectionValue(Object val, Field field, Class elementClass){
-        Collection<BuguEntity> collection = (Collection<BuguEntity>)val;
-        if(collection.isEmpty()){
-            return null;
-        }
-        List<String> idList = new ArrayList<>();
-        for(BuguEntity ent : collection){
-            if(ent != null){
-                idList.add(ent.getId());
+        else if(value instanceof Map){
+            for(Object o : ((Map)value).values()){
+                addEntities(o, set);
             }
         }
-        RefList refList = field.getAnnotation(RefList.class);
-        String sort = refList.sort();
-        elementClass = FieldUtil.getRealType(elementClass, field);
-        InternalDao dao = DaoCache.getInstance().get(elementClass);
-        BuguQuery query = dao.query().in(Operator.ID, idList);
-        List result;
-        if(sort.equals(Default.SORT)){
-            result = query.results();
-        }else{
-            result = query.sort(sort).results();
+        else if(value.getClass().isArray()){
+            int len = Array.getLength(value);
+            for(int i=0; i<len; i++){
+                addEntities(Array.get(value, i), set);
+            }
         }
-        return result;
     }
     
-    private static Map fetchMapValue(Object val, Field field) {
-        Map map = (Map)val;
-        if(map.isEmpty()){
-            return null;
-        }
-        
-        //for Map<K,V>, first to check the type of V
-        ParameterizedType paramType = (ParameterizedType)field.getGenericType();
-        Type[] types = paramType.getActualTypeArguments();
-        boolean isArray = false;
-        boolean isCollection = false;
-        boolean isSingle = false;
-        Class vType = null;
-        Class elementType = null;
-        if(types[1] instanceof GenericArrayType){
-            isArray = true;
-            GenericArrayType g = (GenericArrayType)types[1];
-            elementType = (Class)g.getGenericComponentType();
-        }else if(types[1] instanceof ParameterizedType){
-            isCollection = true;
-            ParameterizedType p = (ParameterizedType)types[1];
-            vType = (Class)p.getRawType();
-            elementType = (Class)p.getActualTypeArguments()[0];
-        }else{
-            //in JDK8, type[1] of array, is a class, not array
-            Class<?> actualType = FieldUtil.getClassOfType(types[1]);
-            if(actualType.isArray()){
-                isArray = true;
-                elementType = actualType.getComponentType();
-            }else{
-                isSingle = true;
-            }
-        }
-        
-        //get value by different type of V
-        Map result = new HashMap();
-        Class<?> cls  = null;
-        InternalDao dao = null;
-        if(isSingle){
-            cls = FieldUtil.getRealType((Class)types[1], field);
-            dao = DaoCache.getInstance().get(cls);
-        }
-        for(Object key : map.keySet()){
-            Object entryValue = map.get(key);
-            if(entryValue == null){
-                result.put(key, null);
-                continue;
-            }
-            if(isSingle){
-                BuguEntity refObj = (BuguEntity)entryValue;
-                String id = refObj.getId();
-                Object value = dao.findOne(id);
-                result.put(key, value);
-            }else if(isArray){
-                Object arr = fetchArrayValue(entryValue, field, elementType);
-                result.put(key, arr);
-            }else if(isCollection){
-                List list = fetchCollectionValue(entryValue, field, elementType);
-                if(DataType.isListType(vType)){
-                    result.put(key, list);
-                }
-                else if(DataType.isSetType(vType)){
-                    result.put(key, new HashSet(list));
-                }
-                else if(DataType.isQueueType(vType)){
-                    result.put(key, new LinkedList(list));
-                }
-            }
+    private static FieldPlan getFieldPlan(BuguEntity obj, String fieldName){
+        //FieldsCache throws FieldException on an unknown field, as the baseline fetchCascade() did
+        Field field = FieldsCache.getInstance().getField(obj.getClass(), fieldName);
+        if(field == null){
+            throw new FieldException("Field '" + fieldName + "' does not exists!");
         }
-        return result;
+        return CodecPlanCache.getInstance().get(obj.getClass()).getField(field.getName());
     }
     
 }
@@ -18,8 +18,11 @@ package com.bugull.mongo;
 
 import com.bugull.mongo.annotations.Id;
 import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.cache.QueryCache;
 import com.bugull.mongo.exception.DBQueryException;
+import com.bugull.mongo.mapper.RefBatch;
 import com.bugull.mongo.parallel.Parallelable;
+import com.bugull.mongo.utils.BsonUtil;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.Operator;
@@ -29,13 +32,17 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.DBCollectionFindOptions;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Convenient class for creating queries.
@@ -59,8 +66,13 @@ public class BuguQuery<T> implements Parallelable {
     
     protected long maxTimeMS;
     
+    protected int batchSize;  //default value is zero, use the driver's default
+    protected boolean noCursorTimeout;
+    
     protected boolean withoutCascade;
     
+    protected long cacheTTL;  //default value is zero, not cached
+    
     public BuguQuery(BuguDao<T> dao){
         this.dao = dao;
     }
@@ -465,6 +477,27 @@ public class BuguQuery<T> implements Parallelable {
         return this;
     }
     
+    /**
+     * The number of documents to return per batch of the cursor.
+     * @param batchSize
+     * @return 
+     */
+    public BuguQuery<T> batchSize(int batchSize){
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * Prevent the server cursor from timing out after 10 minutes of inactivity, used for long time iteration.
+     * <p>Note: the cursor must be closed, otherwise it will stay on the server.</p>
+     * @param noCursorTimeout
+     * @return 
+     */
+    public BuguQuery<T> noCursorTimeout(boolean noCursorTimeout){
+        this.noCursorTimeout = noCursorTimeout;
+        return this;
+    }
+    
     /**
      * 
      * @param orderBy JSON string to sort. 
@@ -505,10 +538,37 @@ public class BuguQuery<T> implements Parallelable {
         return this;
     }
     
+    /**
+     * Cache the result of result(), results() and count() for a while. 
+     * <p>The cached result is invalid once the collection is written through any DAO, or by the cluster invalidation channel. 
+     * The entities in cached result are shared by callers, so don't modify them.</p>
+     * @param ttl time to live, in milliseconds
+     * @return 
+     */
+    public BuguQuery<T> cached(long ttl){
+        this.cacheTTL = ttl;
+        return this;
+    }
+    
     public T result(){
         if(orderBy!=null || pageNumber!=0 || pageSize!=0){
             throw new DBQueryException("You should use results() to get a list, when you use sorting or pagination");
         }
+        if(cacheTTL > 0){
+            return fromCache("result", new Callable<T>(){
+                @Override
+                public T call(){
+                    return doResult();
+                }
+            });
+        }
+        return doResult();
+    }
+    
+    private T doResult(){
+        if(dao.isNativeCodec()){
+            return nativeResult();
+        }
         DBCollection coll = dao.getCollection();
         DBObject dbo;
         if(fieldsSpecified){
@@ -521,17 +581,118 @@ public class BuguQuery<T> implements Parallelable {
         return MapperUtil.fromDBObject(dao.getEntityClass(), dbo, withoutCascade);
     }
     
+    private T nativeResult(){
+        FindIterable<T> iterable = dao.getMongoCollection(withoutCascade).find(BsonUtil.toBson(condition));
+        if(fieldsSpecified){
+            iterable.projection(BsonUtil.toBson(fields));
+        }else if(slices != null){
+            iterable.projection(BsonUtil.toBson(slices));
+        }
+        //the cascade references are loaded after the document is decoded by the driver
+        RefBatch batch = RefBatch.open();
+        T result;
+        try{
+            result = iterable.first();
+        }finally{
+            batch.close();
+        }
+        batch.flush();
+        return result;
+    }
+    
     @Override
     public List<T> results(){
-        DBObject projection;
+        if(cacheTTL > 0){
+            List<T> list = fromCache("results", new Callable<List<T>>(){
+                @Override
+                public List<T> call(){
+                    return doResults();
+                }
+            });
+            //the caller may change the list
+            return new ArrayList<>(list);
+        }
+        return doResults();
+    }
+    
+    private List<T> doResults(){
+        List<T> list;
+        if(dao.isNativeCodec()){
+            RefBatch batch = RefBatch.open();
+            try{
+                list = nativeFind().into(new ArrayList<T>());
+            }finally{
+                batch.close();
+            }
+            batch.flush();
+        }else{
+            list = MapperUtil.toList(dao.getEntityClass(), find(), withoutCascade);
+        }
+        if(!fieldsSpecified){
+            LazyGroup.attach(list);
+        }
+        return list;
+    }
+    
+    /**
+     * Lazily iterate the results, documents are mapped to entities one window at a time. 
+     * <p>The window is the batchSize, or BuguCursor.DEFAULT_WINDOW if batchSize is not set. 
+     * Cascade references in a window are loaded in batch.</p>
+     * <p>Use it for large result, and close the cursor if you stop early.</p>
+     * @return 
+     */
+    public BuguCursor<T> iterate(){
+        int window = batchSize > 0 ? batchSize : BuguCursor.DEFAULT_WINDOW;
+        if(dao.isNativeCodec()){
+            MongoCursor<T> cursor = nativeFind().iterator();
+            return new BuguCursor<T>(cursor, cursor, window){
+                @Override
+                protected T convert(Object obj){
+                    return (T)obj;
+                }
+                @Override
+                protected void windowMapped(List<T> window){
+                    if(!fieldsSpecified){
+                        LazyGroup.attach(window);
+                    }
+                }
+            };
+        }
+        DBCursor cursor = find();
+        final Class<T> clazz = dao.getEntityClass();
+        return new BuguCursor<T>(cursor, cursor, window){
+            @Override
+            protected T convert(Object obj){
+                return MapperUtil.fromDBObject(clazz, (DBObject)obj, withoutCascade);
+            }
+            @Override
+            protected void windowMapped(List<T> window){
+                if(!fieldsSpecified){
+                    LazyGroup.attach(window);
+                }
+            }
+        };
+    }
+    
+    /**
+     * Lazily stream the results. The stream should be closed, if it's not consumed completely.
+     * @return 
+     */
+    public Stream<T> stream(){
+        return iterate().stream();
+    }
+    
+    private DBObject getProjection(){
         if(fieldsSpecified){
-            projection = fields;
+            return fields;
         }else{
-            projection = dao.getKeyFields();
+            return dao.getKeyFields();
         }
-        
+    }
+    
+    private DBCursor find(){
         DBCollectionFindOptions options = new DBCollectionFindOptions();
-        options.projection(projection);
+        options.projection(getProjection());
         if(maxTimeMS > 0){
             options.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
         }
@@ -542,10 +703,35 @@ public class BuguQuery<T> implements Parallelable {
             options.skip((pageNumber-1) * pageSize);
             options.limit(pageSize);
         }
-        
+        if(batchSize > 0){
+            options.batchSize(batchSize);
+        }
+        if(noCursorTimeout){
+            options.noCursorTimeout(true);
+        }
         DBCollection coll = dao.getCollection();
-        DBCursor cursor = coll.find(condition, options);
-        return MapperUtil.toList(dao.getEntityClass(), cursor, withoutCascade);
+        return coll.find(condition, options);
+    }
+    
+    private FindIterable<T> nativeFind(){
+        FindIterable<T> iterable = dao.getMongoCollection(withoutCascade).find(BsonUtil.toBson(condition)).projection(BsonUtil.toBson(getProjection()));
+        if(maxTimeMS > 0){
+            iterable.maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        }
+        if(orderBy != null){
+            iterable.sort(BsonUtil.toBson(SortUtil.getSort(orderBy)));
+        }
+        if(pageNumber>0 && pageSize>0){
+            iterable.skip((pageNumber-1) * pageSize);
+            iterable.limit(pageSize);
+        }
+        if(batchSize > 0){
+            iterable.batchSize(batchSize);
+        }
+        if(noCursorTimeout){
+            iterable.noCursorTimeout(true);
+        }
+        return iterable;
     }
     
     /**
@@ -553,9 +739,47 @@ public class BuguQuery<T> implements Parallelable {
      * @return 
      */
     public long count(){
+        if(cacheTTL > 0){
+            return fromCache("count", new Callable<Long>(){
+                @Override
+                public Long call(){
+                    return dao.getCollection().count(condition);
+                }
+            });
+        }
         return dao.getCollection().count(condition);
     }
     
+    private <V> V fromCache(String operation, Callable<V> loader){
+        String collection = dao.getCollection().getFullName();
+        return QueryCache.getInstance().get(collection, dao.getEntityClass(), getCacheKey(operation), cacheTTL, loader);
+    }
+    
+    /**
+     * The key of cached result: the operation, normalized condition, projection, sort, pagination and withoutCascade.
+     */
+    private String getCacheKey(String operation){
+        StringBuilder sb = new StringBuilder();
+        sb.append(operation);
+        sb.append('|').append(QueryCache.normalize(condition));
+        if(!operation.equals("count")){
+            if(fieldsSpecified){
+                sb.append("|fields:").append(QueryCache.normalize(fields));
+            }else if(slices != null){
+                sb.append("|slices:").append(QueryCache.normalize(slices));
+            }
+            if(orderBy != null){
+                //order of sort keys matters
+                sb.append("|sort:").append(SortUtil.getSort(orderBy).toString());
+            }
+            if(pageNumber>0 && pageSize>0){
+                sb.append("|page:").append(pageNumber).append(',').append(pageSize);
+            }
+            sb.append("|withoutCascade:").append(withoutCascade);
+        }
+        return sb.toString();
+    }
+    
     /**
      * If collection is very large, count() will be slow, you should use countFast().
      * @since mongoDB 3.4
@@ -616,6 +840,14 @@ public class BuguQuery<T> implements Parallelable {
         return SortUtil.getSort(orderBy);
     }
 
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
     public void setWithoutCascade(boolean withoutCascade) {
         this.withoutCascade = withoutCascade;
     }
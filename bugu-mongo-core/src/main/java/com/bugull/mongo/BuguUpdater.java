@@ -16,6 +16,7 @@
 package com.bugull.mongo;
 
 import com.bugull.mongo.bitwise.Bitwise;
+import com.bugull.mongo.cache.EntityCache;
 import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
@@ -133,6 +134,7 @@ public class BuguUpdater<T> {
         Class<T> clazz = dao.getEntityClass();
         DBObject condition = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, id));
         WriteResult wr = dao.getCollection().update(condition, modifier, upsert, false); //update one
+        dao.invalidateCache(id);
         if(dao.hasCustomListener){
             BuguEntity entity = (BuguEntity)dao.findOne(id);
             dao.notifyUpdated(entity);
@@ -159,13 +161,34 @@ public class BuguUpdater<T> {
     
     private WriteResult execute(DBObject condition){
         List ids = null;
-        if(dao.hasCustomListener){
+        EntityCache ec = dao.getEntityCache();
+        //a multi update may match too many ids, the entity cache is cleared instead
+        boolean invalidateAll = ec != null && multi && !dao.hasCustomListener;
+        if(dao.hasCustomListener || (ec != null && !invalidateAll)){
             ids = dao.getCollection().distinct(Operator.ID, condition);
         }
         if(isolated){
             condition.put(Operator.ISOLATED, 1);
         }
         WriteResult wr = dao.getCollection().update(condition, modifier, upsert, multi);
+        dao.collectionChanged();
+        if(invalidateAll){
+            ec.invalidateAll();
+        }
+        else if(ec != null){
+            //upsert may insert a document with user-defined id, the id is unknown if unacknowledged
+            if(upsert && wr.wasAcknowledged() && wr.getUpsertedId() != null){
+                ec.invalidate(wr.getUpsertedId().toString());
+            }
+            List<String> idList = new ArrayList<>(ids.size());
+            for(Object id : ids){
+                idList.add(id.toString());
+            }
+            ec.invalidate(idList);
+        }
+        if(multi){
+            dao.bulkChanged();
+        }
         if(dao.hasCustomListener && ids != null){
             DBObject in = new BasicDBObject(Operator.IN, ids);
             DBCursor cursor = dao.getCollection().find(new BasicDBObject(Operator.ID, in));
@@ -477,5 +500,12 @@ public class BuguUpdater<T> {
         return this;
     }
     
+    public boolean isUpsert() {
+        return upsert;
+    }
+
+    public boolean isMulti() {
+        return multi;
+    }
     
 }
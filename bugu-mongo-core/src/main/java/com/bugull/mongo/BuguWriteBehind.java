@@ -0,0 +1,578 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.exception.BuguException;
+import com.bugull.mongo.utils.BsonUtil;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoSocketOpenException;
+import com.mongodb.MongoTimeoutException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffer inserts and simple updates, and write them to mongoDB in background, with unordered bulk writes.
+ * 
+ * <p>A batch is flushed when it reaches batchSize or batchBytes, or its first operation waits longer than linger. 
+ * When the queue is full, the writing thread is blocked. 
+ * Updates of the same entity in a batch are merged into one. 
+ * A batch failed by transient error is retried; an update with $inc is retried only if it's not sent to server.</p>
+ * 
+ * <p>All the buffers are flushed and closed by BuguFramework.destroy().</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class BuguWriteBehind<T> {
+    
+    private static final Logger LOGGER = Logger.getLogger("com.bugull.mongo");
+    
+    private final static int DUPLICATE_KEY = 11000;
+    
+    private final BuguDao<T> dao;
+    private final WriteBehindConfig config;
+    
+    private final BlockingQueue<Op> queue;
+    private final Thread flusher;
+    private volatile boolean closed;
+    
+    //adding to queue holds the read lock, closing holds the write lock, so nothing is added after the last flush
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushTime = new AtomicLong();
+    private volatile long lastFlushTime;
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    
+    public BuguWriteBehind(BuguDao<T> dao, WriteBehindConfig config){
+        this.dao = dao;
+        this.config = config;
+        this.queue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+        this.flusher = new Thread(new Runnable(){
+            @Override
+            public void run(){
+                flushLoop();
+            }
+        }, "bugu-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        BuguFramework.getInstance().addWriteBehind(this);
+    }
+    
+    /**
+     * Buffer an entity to insert. 
+     * The entity is converted to DBObject in the calling thread, so don't change it after this call.
+     * @param t 
+     */
+    public void insert(T t){
+        Op op = new Op(OpType.INSERT);
+        op.entity = t;
+        op.document = MapperUtil.toDBObject(t);
+        op.bytes = BsonUtil.estimateSize(op.document);
+        enqueue(op);
+    }
+    
+    /**
+     * Buffer an update: increase the field of an entity.
+     * @param id
+     * @param key
+     * @param value 
+     */
+    public void inc(String id, String key, Number value){
+        Op op = new Op(OpType.INC);
+        op.id = id;
+        op.key = key;
+        op.value = value;
+        op.bytes = id.length() + key.length() + 16;
+        enqueue(op);
+    }
+    
+    /**
+     * Buffer an update: set the field of an entity.
+     * @param id
+     * @param key
+     * @param value 
+     */
+    public void set(String id, String key, Object value){
+        Op op = new Op(OpType.SET);
+        op.id = id;
+        op.key = key;
+        op.value = value;
+        op.bytes = id.length() + key.length() + BsonUtil.estimateSize(value);
+        enqueue(op);
+    }
+    
+    private void enqueue(Op op){
+        closeLock.readLock().lock();
+        try{
+            if(closed){
+                throw new BuguException("The write-behind buffer is closed");
+            }
+            addToQueue(op);
+        }finally{
+            closeLock.readLock().unlock();
+        }
+    }
+    
+    private void addToQueue(Op op){
+        boolean added;
+        try{
+            long maxBlockTime = config.getMaxBlockTime();
+            if(maxBlockTime < 0){
+                queue.put(op);
+                added = true;
+            }else{
+                added = queue.offer(op, maxBlockTime, TimeUnit.MILLISECONDS);
+            }
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new BuguException("Interrupted when waiting for the write-behind queue");
+        }
+        if(!added){
+            throw new BuguException("The write-behind queue is full");
+        }
+    }
+    
+    /**
+     * Write all the buffered operations, and wait until they are done.
+     */
+    public void flush(){
+        Op op = new Op(OpType.FLUSH);
+        closeLock.readLock().lock();
+        try{
+            //close() has flushed all
+            if(closed){
+                return;
+            }
+            addToQueue(op);
+        }finally{
+            closeLock.readLock().unlock();
+        }
+        await(op);
+    }
+    
+    /**
+     * Flush the buffered operations, and stop the background thread. The buffer can't be used any more.
+     */
+    public void close(){
+        //wait for the adding operations, the queue is consumed meanwhile
+        closeLock.writeLock().lock();
+        try{
+            if(closed){
+                return;
+            }
+            closed = true;
+        }finally{
+            closeLock.writeLock().unlock();
+        }
+        Op op = new Op(OpType.FLUSH);
+        op.last = true;
+        boolean interrupted = false;
+        while(true){
+            try{
+                queue.put(op);
+                break;
+            }catch(InterruptedException ex){
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        await(op);
+        BuguFramework.getInstance().removeWriteBehind(this);
+    }
+    
+    private void await(Op op){
+        try{
+            op.done.await();
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void flushLoop(){
+        List<Op> batch = new ArrayList<>();
+        while(true){
+            Op first;
+            try{
+                first = queue.take();
+            }catch(InterruptedException ex){
+                continue;
+            }
+            long deadline = System.currentTimeMillis() + config.getLinger();
+            long bytes = 0;
+            Op op = first;
+            while(op != null){
+                if(op.type == OpType.FLUSH){
+                    writeBatch(batch);
+                    op.done.countDown();
+                    //the flush of close() is the last one in queue
+                    if(op.last){
+                        return;
+                    }
+                    break;
+                }
+                batch.add(op);
+                bytes += op.bytes;
+                if(batch.size() >= config.getBatchSize() || bytes >= config.getBatchBytes()){
+                    writeBatch(batch);
+                    break;
+                }
+                op = queue.poll();
+                if(op == null){
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait > 0){
+                        try{
+                            op = queue.poll(wait, TimeUnit.MILLISECONDS);
+                        }catch(InterruptedException ex){
+                            op = null;
+                        }
+                    }
+                }
+                if(op == null){
+                    writeBatch(batch);
+                }
+            }
+        }
+    }
+    
+    private void writeBatch(List<Op> batch){
+        if(batch.isEmpty()){
+            return;
+        }
+        try{
+            doWriteBatch(batch);
+        }catch(RuntimeException ex){
+            failed(batch.size(), ex);
+        }finally{
+            batch.clear();
+        }
+    }
+    
+    private void doWriteBatch(List<Op> batch){
+        long begin = System.currentTimeMillis();
+        List<Op> inserts = new ArrayList<>();
+        Map<String, Merged> updates = new LinkedHashMap<>();
+        for(Op op : batch){
+            if(op.type == OpType.INSERT){
+                inserts.add(op);
+            }else{
+                Merged merged = updates.get(op.id);
+                if(merged == null){
+                    merged = new Merged();
+                    updates.put(op.id, merged);
+                }
+                merged.add(op);
+            }
+        }
+        //inserts first, the updates may be on the inserted entities
+        if(!inserts.isEmpty()){
+            writeInserts(inserts);
+        }
+        if(!updates.isEmpty()){
+            writeUpdates(updates);
+        }
+        long time = System.currentTimeMillis() - begin;
+        lastFlushTime = time;
+        flushTime.addAndGet(time);
+        flushCount.incrementAndGet();
+    }
+    
+    private void writeInserts(List<Op> inserts){
+        for(int i=0; ; i++){
+            BuguBulk<T> bulk = dao.bulk(false);
+            for(Op op : inserts){
+                bulk.insert((T)op.entity, op.document);
+            }
+            try{
+                bulk.execute();
+                writtenCount.addAndGet(inserts.size());
+                return;
+            }catch(MongoException ex){
+                //the documents inserted before the retry are duplicated
+                if(i > 0 && isAllDuplicated(ex)){
+                    writtenCount.addAndGet(inserts.size());
+                    return;
+                }
+                if(!canRetry(ex, i, true)){
+                    failed(inserts.size(), ex);
+                    return;
+                }
+            }
+        }
+    }
+    
+    private void writeUpdates(Map<String, Merged> updates){
+        //the n-th steps of all the entities are written in the n-th round, to keep the order of each entity
+        for(int round=0; ; round++){
+            Map<String, Step> steps = new LinkedHashMap<>();
+            for(Map.Entry<String, Merged> entry : updates.entrySet()){
+                List<Step> list = entry.getValue().steps;
+                if(round < list.size()){
+                    steps.put(entry.getKey(), list.get(round));
+                }
+            }
+            if(steps.isEmpty()){
+                return;
+            }
+            if(!writeSteps(steps)){
+                //the later steps depend on the failed one
+                int remain = 0;
+                for(Merged merged : updates.values()){
+                    if(round + 1 < merged.steps.size()){
+                        remain++;
+                    }
+                }
+                if(remain > 0){
+                    failed(remain, new BuguException("The previous update failed"));
+                }
+                return;
+            }
+        }
+    }
+    
+    private boolean writeSteps(Map<String, Step> steps){
+        boolean idempotent = true;
+        for(Step step : steps.values()){
+            if(!step.inc.isEmpty()){
+                idempotent = false;
+                break;
+            }
+        }
+        for(int i=0; ; i++){
+            BuguBulk<T> bulk = dao.bulk(false);
+            for(Map.Entry<String, Step> entry : steps.entrySet()){
+                bulk.update(entry.getKey(), entry.getValue().toUpdater());
+            }
+            try{
+                bulk.execute();
+                writtenCount.addAndGet(steps.size());
+                return true;
+            }catch(MongoException ex){
+                if(!canRetry(ex, i, idempotent)){
+                    failed(steps.size(), ex);
+                    return false;
+                }
+            }
+        }
+    }
+    
+    private boolean canRetry(MongoException ex, int retried, boolean idempotent){
+        if(retried >= config.getMaxRetries() || closed && retried > 0){
+            return false;
+        }
+        boolean transientError;
+        if(idempotent){
+            transientError = ex instanceof MongoSocketException || ex instanceof MongoTimeoutException
+                    || ex instanceof MongoNotPrimaryException || ex instanceof MongoNodeIsRecoveringException;
+        }else{
+            //the request is not sent to server
+            transientError = ex instanceof MongoSocketOpenException || ex instanceof MongoTimeoutException;
+        }
+        if(!transientError){
+            return false;
+        }
+        retryCount.incrementAndGet();
+        try{
+            Thread.sleep(config.getRetryInterval() << retried);
+        }catch(InterruptedException ex1){
+            return false;
+        }
+        return true;
+    }
+    
+    private boolean isAllDuplicated(MongoException ex){
+        if(!(ex instanceof BulkWriteException)){
+            return false;
+        }
+        BulkWriteException bwe = (BulkWriteException)ex;
+        if(bwe.getWriteConcernError() != null){
+            return false;
+        }
+        for(BulkWriteError error : bwe.getWriteErrors()){
+            if(error.getCode() != DUPLICATE_KEY){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void failed(int count, RuntimeException ex){
+        failedCount.addAndGet(count);
+        LOGGER.log(Level.SEVERE, "Write-behind of " + dao.getEntityClass().getName() + " failed, " + count + " operations are lost", ex);
+    }
+    
+    /**
+     * @return count of operations waiting in queue
+     */
+    public int getQueueDepth(){
+        return queue.size();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return total time of all flushes, in milliseconds
+     */
+    public long getFlushTime() {
+        return flushTime.get();
+    }
+
+    /**
+     * @return time of the last flush, in milliseconds
+     */
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    /**
+     * @return count of inserted entities and updated entities. Updates of the same entity in a batch count once.
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+    
+    private enum OpType {
+        INSERT,
+        INC,
+        SET,
+        FLUSH
+    }
+    
+    private static class Op {
+        final OpType type;
+        Object entity;
+        DBObject document;
+        String id;
+        String key;
+        Object value;
+        long bytes;
+        CountDownLatch done;
+        boolean last;
+        
+        Op(OpType type){
+            this.type = type;
+            if(type == OpType.FLUSH){
+                done = new CountDownLatch(1);
+            }
+        }
+    }
+    
+    /**
+     * The updates of one entity in a batch.
+     */
+    private class Merged {
+        final List<Step> steps = new ArrayList<>();
+        
+        void add(Op op){
+            Step last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+            if(last == null || !last.add(op)){
+                Step step = new Step();
+                step.add(op);
+                steps.add(step);
+            }
+        }
+    }
+    
+    /**
+     * The merged operations which can be written in one update.
+     */
+    private class Step {
+        final Map<String, Number> inc = new LinkedHashMap<>();
+        final Map<String, Object> set = new LinkedHashMap<>();
+        
+        boolean add(Op op){
+            if(op.type == OpType.SET){
+                //set after increase: the value is set
+                inc.remove(op.key);
+                set.put(op.key, op.value);
+                return true;
+            }
+            if(set.containsKey(op.key)){
+                Object current = set.get(op.key);
+                if(!(current instanceof Number)){
+                    //increase after a non-numeric set: write the set first, let the server decide
+                    return false;
+                }
+                //increase after set: the increased value is set
+                set.put(op.key, add((Number)current, (Number)op.value));
+                return true;
+            }
+            Number n = inc.get(op.key);
+            inc.put(op.key, n == null ? (Number)op.value : add(n, (Number)op.value));
+            return true;
+        }
+        
+        Number add(Number a, Number b){
+            if(a instanceof BigDecimal || b instanceof BigDecimal){
+                return new BigDecimal(a.toString()).add(new BigDecimal(b.toString()));
+            }
+            if(a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float){
+                return a.doubleValue() + b.doubleValue();
+            }
+            long sum = a.longValue() + b.longValue();
+            if(a instanceof Long || b instanceof Long || sum != (int)sum){
+                return sum;
+            }
+            return (int)sum;
+        }
+        
+        BuguUpdater<T> toUpdater(){
+            BuguUpdater<T> updater = dao.update();
+            for(Map.Entry<String, Number> entry : inc.entrySet()){
+                updater.inc(entry.getKey(), entry.getValue());
+            }
+            for(Map.Entry<String, Object> entry : set.entrySet()){
+                updater.set(entry.getKey(), entry.getValue());
+            }
+            return updater;
+        }
+    }
+    
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.annotations.Ignore;
+
+/**
+ * Entity whose lazy fields are loaded automatically, when they are accessed the first time.
+ * 
+ * <p>Call loadLazy() at the beginning of the getter of lazy @Property, @Embed and @EmbedList field:</p>
+ * 
+ * <pre>
+ * public String getDescription(){
+ *     loadLazy();
+ *     return description;
+ * }
+ * </pre>
+ * 
+ * <p>When the entities are returned by a query without the lazy fields, 
+ * the first access loads the lazy fields of all the entities from the same result batch, in one $in query. 
+ * So there is no need to call BuguMapper.fetchLazy().</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class LazyEntity extends SimpleEntity {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @Ignore
+    private transient volatile LazyGroup lazyGroup;
+    
+    /**
+     * Load the lazy fields, if they were not returned by the query. 
+     * <p>It does nothing when the lazy fields are already loaded.</p>
+     */
+    public void loadLazy(){
+        LazyGroup group = lazyGroup;
+        if(group != null){
+            group.load();
+        }
+    }
+    
+    /**
+     * Check if the lazy fields are loaded, or returned by the query.
+     * @return 
+     */
+    public boolean isLazyLoaded(){
+        return lazyGroup == null;
+    }
+    
+    void setLazyGroup(LazyGroup lazyGroup){
+        this.lazyGroup = lazyGroup;
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.cache.CodecPlanCache;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entities returned together without lazy fields. 
+ * 
+ * <p>When one of them accesses a lazy field, the lazy fields of all the entities are loaded together. 
+ * Entities are held by weak reference, so a group does not keep the unused entities in memory.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class LazyGroup {
+    
+    private List<WeakReference<LazyEntity>> entities;
+    
+    private LazyGroup(List<WeakReference<LazyEntity>> entities){
+        this.entities = entities;
+    }
+    
+    /**
+     * Attach a group to the entities returned by a query without lazy fields.
+     * <p>It does nothing if the entity is not LazyEntity, or has no lazy field.</p>
+     * @param list 
+     */
+    static void attach(List<?> list){
+        if(list.isEmpty()){
+            return;
+        }
+        Object first = list.get(0);
+        if(!(first instanceof LazyEntity) || CodecPlanCache.getInstance().get(first.getClass()).getLazyFields().length == 0){
+            return;
+        }
+        List<WeakReference<LazyEntity>> refs = new ArrayList<>(list.size());
+        for(Object o : list){
+            if(o instanceof LazyEntity){
+                refs.add(new WeakReference<>((LazyEntity)o));
+            }
+        }
+        LazyGroup group = new LazyGroup(refs);
+        for(Object o : list){
+            if(o instanceof LazyEntity){
+                ((LazyEntity)o).setLazyGroup(group);
+            }
+        }
+    }
+    
+    synchronized void load(){
+        if(entities == null){
+            return;
+        }
+        List<LazyEntity> list = new ArrayList<>(entities.size());
+        for(WeakReference<LazyEntity> ref : entities){
+            LazyEntity ent = ref.get();
+            if(ent != null){
+                list.add(ent);
+            }
+        }
+        BuguMapper.fetchLazy(list);
+        entities = null;
+        for(LazyEntity ent : list){
+            ent.setLazyGroup(null);
+        }
+    }
+    
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.annotations.Ignore;
+import com.bugull.mongo.mapper.FieldPlan;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entity whose changes are tracked, so that BuguDao.save() only sends the changed fields, with $set and $unset.
+ * 
+ * <p>When the entity is loaded by query, inserted or saved, a hash of every field's value is kept in memory. 
+ * On save(), the fields whose hash is changed are set, and the fields not existing any more are unset. 
+ * A new entity, or an entity created by application, is saved with full document replace.</p>
+ * 
+ * <p>For array fields, e.g. @EmbedList and @RefList, the hash of every element is kept too. 
+ * Elements appended at the end are sent with $push and $each, removed elements are sent with $pullAll. 
+ * Other changes, e.g. reorder, set the whole array.</p>
+ * 
+ * <p>The fields not loaded, e.g. lazy fields before loadLazy() or fields not returned by query, have no value in memory. 
+ * save() sets them if they are given a non-null value, but never unsets them. 
+ * When the lazy fields are loaded, their values are tracked as other fields.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public abstract class TrackedEntity extends LazyEntity {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+    private final static long FNV_PRIME = 0x100000001b3L;
+    
+    @Ignore
+    private transient volatile Snapshot snapshot;
+    
+    /**
+     * Take the current values as the values in database. It's called by framework after the entity is loaded or saved.
+     */
+    public void markClean(){
+        //without cascade, encoding must not save the referenced entities
+        snapshot = new Snapshot(MapperUtil.toDBObject(this, true));
+    }
+    
+    /**
+     * Check if the values in database are known, then save() can send only the changes.
+     * @return 
+     */
+    public boolean isTracked(){
+        return snapshot != null;
+    }
+    
+    /**
+     * Add the values of the lazy fields, which are just loaded, to the values in database.
+     * @param lazyFields 
+     */
+    void markLazyClean(FieldPlan[] lazyFields){
+        Snapshot old = snapshot;
+        if(old == null){
+            return;
+        }
+        DBObject dbo = MapperUtil.toDBObject(this, true);
+        Set<String> keys = new HashSet<>();
+        DBObject loaded = new BasicDBObject();
+        for(FieldPlan fp : lazyFields){
+            String key = fp.getColumnName();
+            keys.add(key);
+            if(dbo.containsField(key)){
+                loaded.put(key, dbo.get(key));
+            }
+        }
+        snapshot = new Snapshot(old, keys, new Snapshot(loaded));
+    }
+    
+    void setSnapshot(Snapshot snapshot){
+        this.snapshot = snapshot;
+    }
+    
+    /**
+     * Get the modifier of changes, comparing the current snapshot with the old one.
+     * @param dbo the current document
+     * @param current snapshot of the current document
+     * @return empty if nothing changed
+     */
+    DBObject getModifier(DBObject dbo, Snapshot current){
+        Snapshot old = snapshot;
+        DBObject set = new BasicDBObject();
+        DBObject unset = new BasicDBObject();
+        DBObject push = new BasicDBObject();
+        DBObject pullAll = new BasicDBObject();
+        for(Map.Entry<String, Long> entry : current.fields.entrySet()){
+            String key = entry.getKey();
+            if(entry.getValue().equals(old.fields.get(key))){
+                continue;
+            }
+            long[] oldElements = old.elements.get(key);
+            long[] newElements = current.elements.get(key);
+            if(oldElements != null && newElements != null){
+                if(isAppended(oldElements, newElements)){
+                    BasicDBList each = new BasicDBList();
+                    each.addAll(((List<Object>)dbo.get(key)).subList(oldElements.length, newElements.length));
+                    push.put(key, new BasicDBObject(Operator.EACH, each));
+                    continue;
+                }
+                List<Object> removed = getRemoved(oldElements, newElements, old.lists.get(key));
+                if(removed != null){
+                    pullAll.put(key, removed);
+                    continue;
+                }
+            }
+            set.put(key, dbo.get(key));
+        }
+        for(String key : old.fields.keySet()){
+            if(!current.fields.containsKey(key)){
+                unset.put(key, "");
+            }
+        }
+        DBObject modifier = new BasicDBObject();
+        putIfNotEmpty(modifier, Operator.SET, set);
+        putIfNotEmpty(modifier, Operator.UNSET, unset);
+        putIfNotEmpty(modifier, Operator.PUSH, push);
+        putIfNotEmpty(modifier, Operator.PULL_ALL, pullAll);
+        return modifier;
+    }
+    
+    private void putIfNotEmpty(DBObject modifier, String op, DBObject dbo){
+        if(!dbo.keySet().isEmpty()){
+            modifier.put(op, dbo);
+        }
+    }
+    
+    private static boolean isAppended(long[] oldElements, long[] newElements){
+        if(newElements.length <= oldElements.length){
+            return false;
+        }
+        for(int i=0; i<oldElements.length; i++){
+            if(oldElements[i] != newElements[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Check if the new array is the old one with some elements removed. 
+     * $pullAll removes all the equal elements, so none of the removed elements can be kept.
+     * @return the removed elements, or null if it's not remove-only
+     */
+    private static List<Object> getRemoved(long[] oldElements, long[] newElements, List<Object> oldList){
+        if(newElements.length >= oldElements.length){
+            return null;
+        }
+        Set<Long> kept = new HashSet<>();
+        for(long h : newElements){
+            kept.add(h);
+        }
+        BasicDBList removed = new BasicDBList();
+        Set<Long> removedHashes = new HashSet<>();
+        int j = 0;
+        for(int i=0; i<oldElements.length; i++){
+            if(j < newElements.length && oldElements[i] == newElements[j]){
+                j++;
+            }
+            else if(kept.contains(oldElements[i])){
+                return null;
+            }
+            else if(removedHashes.add(oldElements[i])){
+                removed.add(oldList.get(i));
+            }
+        }
+        return j == newElements.length ? removed : null;
+    }
+    
+    /**
+     * Hashes of the document, and the elements of arrays, which are used by $pullAll. The hash of BSON is 64-bit FNV-1a.
+     */
+    static class Snapshot {
+        final Map<String, Long> fields = new HashMap<>();
+        final Map<String, long[]> elements = new HashMap<>();
+        final Map<String, List<Object>> lists = new HashMap<>();
+        
+        /**
+         * Replace the hashes of some fields in the base snapshot.
+         * @param base
+         * @param keys the replaced fields
+         * @param loaded the new hashes of the replaced fields, the fields not in it have no value
+         */
+        Snapshot(Snapshot base, Set<String> keys, Snapshot loaded){
+            fields.putAll(base.fields);
+            elements.putAll(base.elements);
+            lists.putAll(base.lists);
+            fields.keySet().removeAll(keys);
+            elements.keySet().removeAll(keys);
+            lists.keySet().removeAll(keys);
+            fields.putAll(loaded.fields);
+            elements.putAll(loaded.elements);
+            lists.putAll(loaded.lists);
+        }
+        
+        Snapshot(DBObject dbo){
+            DefaultDBEncoder encoder = new DefaultDBEncoder();
+            for(String key : dbo.keySet()){
+                if(key.equals(Operator.ID)){
+                    continue;
+                }
+                Object value = dbo.get(key);
+                if(value instanceof List){
+                    List<Object> list = (List<Object>)value;
+                    long[] hashes = new long[list.size()];
+                    long hash = FNV_OFFSET;
+                    for(int i=0; i<hashes.length; i++){
+                        hashes[i] = hash(encoder, list.get(i));
+                        hash = (hash ^ hashes[i]) * FNV_PRIME;
+                    }
+                    elements.put(key, hashes);
+                    //the list may be the same object in entity, which is changed later
+                    lists.put(key, new ArrayList<>(list));
+                    fields.put(key, hash);
+                }else{
+                    fields.put(key, hash(encoder, value));
+                }
+            }
+        }
+        
+        private static long hash(DefaultDBEncoder encoder, Object value){
+            byte[] bytes = encoder.encode(new BasicDBObject("v", value));
+            long hash = FNV_OFFSET;
+            for(byte b : bytes){
+                hash ^= (b & 0xff);
+                hash *= FNV_PRIME;
+            }
+            return hash;
+        }
+    }
+    
+}
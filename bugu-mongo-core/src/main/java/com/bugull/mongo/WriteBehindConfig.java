@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+/**
+ * Options of BuguWriteBehind.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class WriteBehindConfig {
+    
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+    public final static long DEFAULT_BATCH_BYTES = 4L * 1024 * 1024;
+    public final static long DEFAULT_LINGER = 100L;
+    public final static int DEFAULT_QUEUE_CAPACITY = 10000;
+    public final static int DEFAULT_MAX_RETRIES = 3;
+    public final static long DEFAULT_RETRY_INTERVAL = 200L;
+    
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long batchBytes = DEFAULT_BATCH_BYTES;
+    private long linger = DEFAULT_LINGER;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long maxBlockTime = -1L;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Flush when so many operations are buffered. Default value is 1000.
+     * @param batchSize
+     * @return 
+     */
+    public WriteBehindConfig setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * Flush when the estimated size of buffered operations reaches it. Default value is 4MB.
+     * @param batchBytes
+     * @return 
+     */
+    public WriteBehindConfig setBatchBytes(long batchBytes) {
+        this.batchBytes = batchBytes;
+        return this;
+    }
+
+    public long getLinger() {
+        return linger;
+    }
+
+    /**
+     * Flush when the first buffered operation waits so long, in milliseconds. Default value is 100.
+     * @param linger
+     * @return 
+     */
+    public WriteBehindConfig setLinger(long linger) {
+        this.linger = linger;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Max count of operations waiting in queue. When the queue is full, the writing thread is blocked. Default value is 10000.
+     * @param queueCapacity
+     * @return 
+     */
+    public WriteBehindConfig setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public long getMaxBlockTime() {
+        return maxBlockTime;
+    }
+
+    /**
+     * Max time the writing thread is blocked by a full queue, in milliseconds, then a BuguException is thrown. 
+     * Default value is -1, blocked until there is room.
+     * @param maxBlockTime
+     * @return 
+     */
+    public WriteBehindConfig setMaxBlockTime(long maxBlockTime) {
+        this.maxBlockTime = maxBlockTime;
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Max times to retry a batch failed by transient error, e.g. network error or primary step down. Default value is 3.
+     * @param maxRetries
+     * @return 
+     */
+    public WriteBehindConfig setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    /**
+     * Wait time before the first retry, in milliseconds, doubled for every next retry. Default value is 200.
+     * @param retryInterval
+     * @return 
+     */
+    public WriteBehindConfig setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+        return this;
+    }
+    
+}
@@ -21,6 +21,8 @@ import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.BuguDao;
 import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.LazyEntity;
+import com.bugull.mongo.TrackedEntity;
 import com.bugull.mongo.annotations.Id;
 import com.bugull.mongo.annotations.IdType;
 import com.bugull.mongo.cache.FieldsCache;
@@ -29,6 +31,8 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
 import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * The dao used in bugu-mongo framework itself. Do not use this in your application.
@@ -62,6 +66,15 @@ public final class InternalDao<T> extends BuguDao<T> {
         return MapperUtil.fromDBObject(clazz, result, withoutCascade);
     }
     
+    /**
+     * Remove entities by ids, used by CascadeDeleteListener, which removes the references of them itself.
+     * @param ids
+     * @return 
+     */
+    public WriteResult removeWithoutCascade(Collection<String> ids){
+        return removeByIds(ids, true);
+    }
+    
     public WriteResult saveWithoutCascade(T t, boolean withoutCascade){
         WriteResult wr;
         BuguEntity ent = (BuguEntity)t;
@@ -71,33 +84,52 @@ public final class InternalDao<T> extends BuguDao<T> {
         else{
             Field idField = FieldsCache.getInstance().getIdField(clazz);
             Id idAnnotation = idField.getAnnotation(Id.class);
-            if(idAnnotation.type()==IdType.USER_DEFINE){
+            if(idAnnotation.type()==IdType.USER_DEFINE && !getCollection().getWriteConcern().isAcknowledged()){
+                //inserted or updated can't be known from unacknowledged write result
                 if(this.exists(Operator.ID, ent.getId())){
-                    wr = doSaveWithoutCascade(ent, withoutCascade);
+                    wr = doSaveWithoutCascade(ent, withoutCascade, false);
                 }else{
                     wr = doInsertWithoutCascade(t, withoutCascade);
                 }
             }
             else{
-                wr = doSaveWithoutCascade(ent, withoutCascade);
+                wr = doSaveWithoutCascade(ent, withoutCascade, idAnnotation.type()==IdType.USER_DEFINE);
             }
         }
         return wr;
     }
     
-    private WriteResult doSaveWithoutCascade(BuguEntity ent, boolean withoutCascade){
+    /**
+     * Replace the document by id, or insert it if not exists, in one round trip.
+     * @param mayInsert if the document may not exist, listeners are notified by the write result
+     */
+    private WriteResult doSaveWithoutCascade(BuguEntity ent, boolean withoutCascade, boolean mayInsert){
+        if(ent instanceof LazyEntity){
+            ((LazyEntity)ent).loadLazy();
+        }
+        WriteResult wr = getCollection().save(MapperUtil.toDBObject(ent, withoutCascade));
+        invalidateCache(ent.getId());
+        if(ent instanceof TrackedEntity){
+            ((TrackedEntity)ent).markClean();
+        }
         if(hasCustomListener){
-            notifyUpdated(ent);
+            if(mayInsert && wr.wasAcknowledged() && !wr.isUpdateOfExisting()){
+                notifyInserted(ent);
+            }else{
+                notifyUpdated(ent);
+            }
         }
-        return getCollection().save(MapperUtil.toDBObject(ent, withoutCascade));
+        return wr;
     }
     
     private WriteResult doInsertWithoutCascade(T t, boolean withoutCascade){
         DBObject dbo = MapperUtil.toDBObject(t, withoutCascade);
         WriteResult wr = getCollection().insert(dbo);
+        collectionChanged();
         String id = dbo.get(Operator.ID).toString();
         BuguEntity ent = (BuguEntity)t;
         ent.setId(id);
+        markClean(Collections.singletonList(t));
         if(hasCustomListener){
             notifyInserted(ent);
         }
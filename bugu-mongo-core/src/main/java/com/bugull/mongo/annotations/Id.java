@@ -30,4 +30,8 @@ import java.lang.annotation.Target;
 public @interface Id {
     public IdType type() default IdType.AUTO_GENERATE;
     public long start() default 1L;
+    /**
+     * Count of AUTO_INCREASE ids reserved by one database call.
+     */
+    public int block() default 100;
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.mapper.EntityAccessor;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache(Map) holds the field accessors of each entity class.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class AccessorCache {
+    
+    private final ConcurrentMap<String, SoftReference<EntityAccessor>> cache = new ConcurrentHashMap<>();
+    
+    private AccessorCache(){
+        
+    }
+    
+    private static class Holder {
+        final static AccessorCache instance = new AccessorCache();
+    } 
+    
+    public static AccessorCache getInstance(){
+        return Holder.instance;
+    }
+    
+    public EntityAccessor get(Class<?> clazz){
+        String name = clazz.getName();
+        EntityAccessor accessor;
+        boolean recycled = false;
+        SoftReference<EntityAccessor> sr = cache.get(name);
+        if(sr != null){
+            accessor = sr.get();
+            if(accessor == null){
+                recycled = true;
+            }else{
+                return accessor;
+            }
+        }
+        //if not exists
+        accessor = new EntityAccessor(clazz);
+        sr = new SoftReference<>(accessor);
+        if(recycled){
+            cache.put(name, sr);
+            return accessor;
+        }else{
+            SoftReference<EntityAccessor> temp = cache.putIfAbsent(name, sr);
+            if(temp != null){
+                return temp.get();
+            }else{
+                return sr.get();
+            }
+        }
+    }
+    
+}
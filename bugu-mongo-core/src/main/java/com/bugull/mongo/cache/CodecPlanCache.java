@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.mapper.EntityCodecPlan;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache(Map) holds the mapping plan of each entity class.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CodecPlanCache {
+    
+    private final ConcurrentMap<String, SoftReference<EntityCodecPlan>> cache = new ConcurrentHashMap<>();
+    
+    private CodecPlanCache(){
+        
+    }
+    
+    private static class Holder {
+        final static CodecPlanCache instance = new CodecPlanCache();
+    } 
+    
+    public static CodecPlanCache getInstance(){
+        return Holder.instance;
+    }
+    
+    public EntityCodecPlan get(Class<?> clazz){
+        String name = clazz.getName();
+        EntityCodecPlan plan;
+        boolean recycled = false;
+        SoftReference<EntityCodecPlan> sr = cache.get(name);
+        if(sr != null){
+            plan = sr.get();
+            if(plan == null){
+                recycled = true;
+            }else{
+                return plan;
+            }
+        }
+        //if not exists
+        plan = new EntityCodecPlan(clazz);
+        sr = new SoftReference<>(plan);
+        if(recycled){
+            cache.put(name, sr);
+            return plan;
+        }else{
+            SoftReference<EntityCodecPlan> temp = cache.putIfAbsent(name, sr);
+            if(temp != null){
+                return temp.get();
+            }else{
+                return sr.get();
+            }
+        }
+    }
+    
+}
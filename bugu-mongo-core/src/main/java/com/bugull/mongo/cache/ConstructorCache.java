@@ -20,11 +20,15 @@ import com.bugull.mongo.exception.ConstructorException;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 /**
  * Cache(Map) holds entity classes' constructor, for performance purporse.
  * 
+ * <p>The cached Constructor is used directly: the JDK generates an accessor for a frequently called constructor, 
+ * which is faster than a MethodHandle held in a map, because such a MethodHandle is not a JIT constant.</p>
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 @SuppressWarnings("unchecked")
@@ -58,12 +62,7 @@ public class ConstructorCache {
             }
         }
         //if not exists
-        Class<T>[] types = null;
-        try {
-            cons = clazz.getConstructor(types);
-        } catch (NoSuchMethodException | SecurityException ex) {
-            throw new ConstructorException(ex.getMessage());
-        }
+        cons = createConstructor(clazz);
         sr = new SoftReference<>(cons);
         if(recycled){
             cache.put(name, sr);
@@ -78,6 +77,28 @@ public class ConstructorCache {
         }
     }
     
+    private <T> Constructor<T> createConstructor(Class<T> clazz){
+        if(Modifier.isAbstract(clazz.getModifiers())){
+            throw new ConstructorException("Can not create instance of abstract class " + clazz.getName());
+        }
+        Class<T>[] types = null;
+        Constructor<T> cons = null;
+        try {
+            cons = clazz.getConstructor(types);
+        } catch (NoSuchMethodException | SecurityException ex) {
+            throw new ConstructorException(ex.getMessage());
+        }
+        if(!Modifier.isPublic(clazz.getModifiers())){
+            //the class is not public, make the public constructor accessible
+            try{
+                cons.setAccessible(true);
+            }catch(RuntimeException ex){
+                throw new ConstructorException(ex.getMessage());
+            }
+        }
+        return cons;
+    }
+    
     public <T> T create(Class<T> clazz){
         T obj = null;
         Constructor<T> cons = get(clazz);
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.mongodb.DBObject;
+import java.util.Collection;
+
+/**
+ * Second-level cache of documents by id, for one entity class. 
+ * 
+ * <p>It holds the whole document as it's read from mongoDB, so every read creates a new entity, 
+ * and the cached data can't be changed by application. 
+ * BuguDao uses it for findOne(id), exists(id) and cascade @Ref reads, and invalidates the changed ids on write.</p>
+ * 
+ * <p>Implementation must be thread-safe.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface EntityCache {
+    
+    /**
+     * Get the cached document.
+     * @param id
+     * @return null if not cached, or expired
+     */
+    public DBObject get(String id);
+    
+    /**
+     * Cache the whole document, which is just read from mongoDB.
+     * @param id
+     * @param dbo 
+     */
+    public void put(String id, DBObject dbo);
+    
+    /**
+     * Get the invalidation token of the id. Call it before reading the document from mongoDB.
+     * @param id
+     * @return the token used by putIfNotInvalidatedSince()
+     */
+    public default long getToken(String id){
+        return 0L;
+    }
+    
+    /**
+     * Cache the whole document which is just read from mongoDB, unless the id is invalidated after the token is got. 
+     * <p>So a document read before a write is not put back after the write invalidates it. 
+     * The default implementation calls put() without the check.</p>
+     * @param id
+     * @param token got by getToken() before reading
+     * @param dbo 
+     */
+    public default void putIfNotInvalidatedSince(String id, long token, DBObject dbo){
+        put(id, dbo);
+    }
+    
+    /**
+     * Remove the document which has been changed.
+     * @param id 
+     */
+    public void invalidate(String id);
+    
+    /**
+     * Remove the documents which have been changed.
+     * @param ids 
+     */
+    public void invalidate(Collection<String> ids);
+    
+    /**
+     * Remove all the documents, when the changed ids are unknown.
+     */
+    public void invalidateAll();
+    
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache(Map) holds the EntityCache of every entity class.
+ * 
+ * <p>The DAOs of the same entity class share one EntityCache, including the internal DAO for cascade read.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EntityCacheRegistry {
+    
+    //EntityCache is set by application, so it's held by strong reference
+    private final ConcurrentMap<String, EntityCache> cache = new ConcurrentHashMap<>();
+    
+    private EntityCacheRegistry(){
+        
+    }
+    
+    private static class Holder {
+        final static EntityCacheRegistry instance = new EntityCacheRegistry();
+    } 
+    
+    public static EntityCacheRegistry getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Get the EntityCache of entity class.
+     * @param clazz
+     * @return null if not set
+     */
+    public EntityCache get(Class<?> clazz){
+        if(cache.isEmpty()){
+            return null;
+        }
+        return cache.get(clazz.getName());
+    }
+    
+    public void put(Class<?> clazz, EntityCache entityCache){
+        cache.put(clazz.getName(), entityCache);
+    }
+    
+    public void remove(Class<?> clazz){
+        cache.remove(clazz.getName());
+    }
+    
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.exception.DBQueryException;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache(Map) holds the results of queries which use BuguQuery.cached(ttl).
+ * 
+ * <p>Every collection, named by its full name with database, has a version, which is bumped on any write through the DAO, or by the cluster invalidation channel. 
+ * A cached result is valid only when it's not expired and the version of its collection is not changed. 
+ * Concurrent misses of the same query share one database call.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class QueryCache {
+    
+    public final static int DEFAULT_MAX_ENTRIES = 10000;
+    
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, FutureTask<Object>> loading = new ConcurrentHashMap<>();
+    
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+    
+    private QueryCache(){
+        
+    }
+    
+    private static class Holder {
+        final static QueryCache instance = new QueryCache();
+    } 
+    
+    public static QueryCache getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Get the cached result of a query, or load it if absent.
+     * @param <V>
+     * @param collection full name of the collection the query reads, with database name
+     * @param clazz the entity class of the result, classes mapped to the same collection do not share results
+     * @param query the normalized query, unique in the collection
+     * @param ttl time to live, in milliseconds
+     * @param loader
+     * @return 
+     */
+    public <V> V get(String collection, Class<?> clazz, String query, long ttl, Callable<V> loader){
+        String key = collection + '|' + clazz.getName() + '|' + query;
+        long version = getVersion(collection);
+        Entry entry = cache.get(key);
+        if(entry != null){
+            if(entry.version == version && entry.expireAt > System.currentTimeMillis()){
+                hitCount.incrementAndGet();
+                return (V)entry.value;
+            }
+            cache.remove(key, entry);
+        }
+        missCount.incrementAndGet();
+        //callers that miss after a write must not share the load started before it
+        String loadingKey = key + '#' + version;
+        FutureTask<Object> task = new FutureTask<>((Callable<Object>)loader);
+        FutureTask<Object> running = loading.putIfAbsent(loadingKey, task);
+        if(running != null){
+            sharedCount.incrementAndGet();
+            return (V)waitFor(running);
+        }
+        try{
+            task.run();
+            Object value = waitFor(task);
+            //the result is dropped if the collection is changed while loading
+            if(getVersion(collection) == version){
+                cache.put(key, new Entry(version, System.currentTimeMillis() + ttl, value));
+                if(cache.size() > maxEntries){
+                    trim();
+                }
+            }
+            return (V)value;
+        }finally{
+            loading.remove(loadingKey, task);
+        }
+    }
+    
+    private Object waitFor(FutureTask<Object> task){
+        try{
+            return task.get();
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new DBQueryException(ex.getMessage());
+        }catch(ExecutionException ex){
+            Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error){
+                throw (Error)cause;
+            }
+            throw new DBQueryException(cause.getMessage());
+        }
+    }
+    
+    private void trim(){
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = cache.values().iterator();
+        while(it.hasNext()){
+            if(it.next().expireAt <= now){
+                it.remove();
+            }
+        }
+        //still full: remove arbitrary entries, down to 90% of the max
+        int target = maxEntries - maxEntries / 10;
+        it = cache.values().iterator();
+        while(cache.size() > target && it.hasNext()){
+            it.next();
+            it.remove();
+        }
+    }
+    
+    public long getVersion(String collection){
+        AtomicLong version = versions.get(collection);
+        return version == null ? 0 : version.get();
+    }
+    
+    /**
+     * Mark the collection as changed. All the cached results of it become invalid.
+     * @param collection full name of the collection, with database name
+     */
+    public void invalidate(String collection){
+        AtomicLong version = versions.get(collection);
+        if(version == null){
+            AtomicLong temp = versions.putIfAbsent(collection, new AtomicLong());
+            version = temp != null ? temp : versions.get(collection);
+        }
+        version.incrementAndGet();
+    }
+    
+    public void clear(){
+        cache.clear();
+    }
+    
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+    
+    public int size(){
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return count of misses which waited for the same query loading by another thread, without database call.
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+    
+    /**
+     * Convert a query document to string, with keys in stable order. 
+     * <p>Keys of the query level and of operator documents are sorted, because their order does not change the query. 
+     * Keys of an embedded document compared by equality keep their order.</p>
+     * @param dbo
+     * @return 
+     */
+    public static String normalize(DBObject dbo){
+        if(dbo == null){
+            return "";
+        }
+        return normalizeValue(dbo, true).toString();
+    }
+    
+    private static Object normalizeValue(Object value, boolean sortKeys){
+        if(value instanceof List){
+            BasicDBList list = new BasicDBList();
+            for(Object o : (List<Object>)value){
+                //elements of $and, $or, $nor are query documents too
+                list.add(normalizeValue(o, sortKeys));
+            }
+            return list;
+        }
+        if(!(value instanceof Map) && !(value instanceof DBObject)){
+            return value;
+        }
+        Map<String, Object> map = value instanceof Map ? (Map<String, Object>)value : ((DBObject)value).toMap();
+        List<String> keys = new ArrayList<>(map.keySet());
+        boolean operators = !keys.isEmpty();
+        for(String key : keys){
+            if(!key.startsWith("$")){
+                operators = false;
+                break;
+            }
+        }
+        if(sortKeys || operators){
+            Collections.sort(keys);
+        }
+        BasicDBObject result = new BasicDBObject();
+        for(String key : keys){
+            //value of a field key is compared by equality, unless it's an operator document
+            result.put(key, normalizeValue(map.get(key), isQueryOperator(key)));
+        }
+        return result;
+    }
+    
+    private static boolean isQueryOperator(String key){
+        return key.equals("$and") || key.equals("$or") || key.equals("$nor") || key.equals("$elemMatch");
+    }
+    
+    private static class Entry {
+        final long version;
+        final long expireAt;
+        final Object value;
+        
+        Entry(long version, long expireAt, Object value){
+            this.version = version;
+            this.expireAt = expireAt;
+            this.value = value;
+        }
+    }
+    
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.exception.IdException;
+import com.bugull.mongo.mapper.IdFieldPlan;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cache(Map) holds the id sequence of every collection, for IdType.AUTO_INCREASE.
+ * 
+ * <p>The sequence is stored in the counters collection, one document per collection. 
+ * Every JVM reserves a block of ids with one findAndModify($inc), and hands them out from memory. 
+ * So the ids are unique across JVMs, but not continuous.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class SequenceCache {
+    
+    public final static String COUNTERS = "_bugu_counters";
+    
+    private final static String SEQ = "seq";
+    
+    private final ConcurrentMap<String, Sequence> cache = new ConcurrentHashMap<>();
+    
+    private SequenceCache(){
+        
+    }
+    
+    private static class Holder {
+        final static SequenceCache instance = new SequenceCache();
+    } 
+    
+    public static SequenceCache getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Get the next id of the entity class.
+     * @param clazz
+     * @return 
+     */
+    public long next(Class<?> clazz){
+        return getSequence(clazz).next();
+    }
+    
+    /**
+     * Reserve continuous ids of the entity class.
+     * @param clazz
+     * @param count
+     * @return the first id, the others are the following numbers
+     */
+    public long reserve(Class<?> clazz, int count){
+        return getSequence(clazz).reserve(count);
+    }
+    
+    private Sequence getSequence(Class<?> clazz){
+        InternalDao<?> dao = DaoCache.getInstance().get(clazz);
+        //split collections have their own sequence
+        DBCollection coll = dao.getCollection();
+        String key = coll.getDB().getName() + "." + coll.getName();
+        Sequence seq = cache.get(key);
+        if(seq == null){
+            IdFieldPlan fp = (IdFieldPlan)CodecPlanCache.getInstance().get(clazz).getIdField();
+            seq = new Sequence(dao, coll, fp.getStart(), fp.getBlock());
+            Sequence temp = cache.putIfAbsent(key, seq);
+            if(temp != null){
+                seq = temp;
+            }
+        }
+        return seq;
+    }
+    
+    private static class Block {
+        final AtomicLong next;
+        final long hi;
+        
+        Block(long lo, long hi){
+            this.next = new AtomicLong(lo);
+            this.hi = hi;
+        }
+    }
+    
+    private static class Sequence {
+        final InternalDao<?> dao;
+        final DBCollection coll;
+        final DBCollection counters;
+        final long start;
+        final int blockSize;
+        //the empty block is replaced at the first call
+        final AtomicReference<Block> current = new AtomicReference<>(new Block(1, 0));
+        
+        Sequence(InternalDao<?> dao, DBCollection coll, long start, int blockSize){
+            this.dao = dao;
+            this.coll = coll;
+            this.counters = coll.getDB().getCollection(COUNTERS);
+            this.start = start;
+            this.blockSize = blockSize;
+        }
+        
+        long next(){
+            while(true){
+                Block block = current.get();
+                long id = block.next.getAndIncrement();
+                if(id <= block.hi){
+                    return id;
+                }
+                refill(block);
+            }
+        }
+        
+        long reserve(int count){
+            Block block = current.get();
+            long first = block.next.getAndAdd(count);
+            if(first + count - 1 <= block.hi){
+                return first;
+            }
+            //the rest of current block is wasted, it's not a problem for the sequence
+            return allocate(count);
+        }
+        
+        synchronized void refill(Block used){
+            //other thread may have refilled it
+            if(current.get() == used){
+                long hi = allocate(blockSize) + blockSize - 1;
+                current.set(new Block(hi - blockSize + 1, hi));
+            }
+        }
+        
+        /**
+         * @return the first id of the allocated block
+         */
+        long allocate(int count){
+            DBObject query = new BasicDBObject(Operator.ID, coll.getName());
+            DBObject inc = new BasicDBObject(Operator.INC, new BasicDBObject(SEQ, count));
+            DBObject result = counters.findAndModify(query, null, null, false, inc, true, false);
+            if(result == null){
+                init();
+                result = counters.findAndModify(query, null, null, false, inc, true, false);
+                if(result == null){
+                    throw new IdException("Can not allocate id from " + COUNTERS + " for " + coll.getName());
+                }
+            }
+            long hi = ((Number)result.get(SEQ)).longValue();
+            return hi - count + 1;
+        }
+        
+        /**
+         * Create the counter, from the max id of existing documents.
+         */
+        void init(){
+            long base = Math.max(dao.getMaxId(), start - 1);
+            try{
+                counters.insert(new BasicDBObject(Operator.ID, coll.getName()).append(SEQ, base));
+            }catch(DuplicateKeyException ex){
+                //created by other JVM
+            }
+        }
+    }
+    
+}
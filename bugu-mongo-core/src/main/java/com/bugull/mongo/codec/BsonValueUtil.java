@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.codec;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+import org.bson.BsonBinary;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+
+/**
+ * Read and write the value of a field with BsonReader/BsonWriter.
+ * 
+ * <p>The values read are the same as those in the DBObject returned by the legacy API, 
+ * so they can be converted by the FieldPlan.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+final class BsonValueUtil {
+    
+    private static final String REF = "$ref";
+    private static final String REF_ID = "$id";
+    private static final String REF_DB = "$db";
+    
+    //the same java types as DBObject, for the rarely used BSON types
+    private static final BsonTypeClassMap TYPE_CLASS_MAP;
+    
+    static{
+        Map<BsonType, Class<?>> replacements = new HashMap<>();
+        replacements.put(BsonType.TIMESTAMP, BSONTimestamp.class);
+        replacements.put(BsonType.REGULAR_EXPRESSION, Pattern.class);
+        TYPE_CLASS_MAP = new BsonTypeClassMap(replacements);
+    }
+    
+    private BsonValueUtil(){
+        
+    }
+    
+    /**
+     * Read the current value. The current BsonType must have been read.
+     * @param reader
+     * @param context
+     * @param registry
+     * @return 
+     */
+    static Object readValue(BsonReader reader, DecoderContext context, CodecRegistry registry){
+        switch(reader.getCurrentBsonType()){
+            case STRING:
+                return reader.readString();
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DOUBLE:
+                return reader.readDouble();
+            case BOOLEAN:
+                return reader.readBoolean();
+            case DATE_TIME:
+                return new Date(reader.readDateTime());
+            case OBJECT_ID:
+                return reader.readObjectId();
+            case DECIMAL128:
+                return reader.readDecimal128();
+            case NULL:
+                reader.readNull();
+                return null;
+            case DOCUMENT:
+                return readDocument(reader, context, registry);
+            case ARRAY:
+                return readArray(reader, context, registry);
+            case BINARY:
+                return readBinary(reader);
+            default:
+                Codec<?> codec = registry.get(TYPE_CLASS_MAP.get(reader.getCurrentBsonType()));
+                return codec.decode(reader, context);
+        }
+    }
+    
+    /**
+     * Read a document as DBObject, DBRef is recognized.
+     */
+    static Object readDocument(BsonReader reader, DecoderContext context, CodecRegistry registry){
+        DBObject dbo = new BasicDBObject();
+        reader.readStartDocument();
+        while(reader.readBsonType() != BsonType.END_OF_DOCUMENT){
+            String name = reader.readName();
+            dbo.put(name, readValue(reader, context, registry));
+        }
+        reader.readEndDocument();
+        if(dbo.containsField(REF) && dbo.containsField(REF_ID)){
+            return new DBRef((String)dbo.get(REF_DB), (String)dbo.get(REF), dbo.get(REF_ID));
+        }
+        return dbo;
+    }
+    
+    private static BasicDBList readArray(BsonReader reader, DecoderContext context, CodecRegistry registry){
+        BasicDBList list = new BasicDBList();
+        reader.readStartArray();
+        while(reader.readBsonType() != BsonType.END_OF_DOCUMENT){
+            list.add(readValue(reader, context, registry));
+        }
+        reader.readEndArray();
+        return list;
+    }
+    
+    private static Object readBinary(BsonReader reader){
+        BsonBinary binary = reader.readBinaryData();
+        byte type = binary.getType();
+        if(type==BsonBinarySubType.BINARY.getValue() || type==BsonBinarySubType.OLD_BINARY.getValue()){
+            return binary.getData();
+        }
+        return new Binary(type, binary.getData());
+    }
+    
+    /**
+     * Write the value converted by FieldPlan. The name must have been written.
+     * @param writer
+     * @param value
+     * @param context
+     * @param registry 
+     */
+    static void writeValue(BsonWriter writer, Object value, EncoderContext context, CodecRegistry registry){
+        if(value == null){
+            writer.writeNull();
+        }
+        else if(value instanceof String){
+            writer.writeString((String)value);
+        }
+        else if(value instanceof Integer){
+            writer.writeInt32((Integer)value);
+        }
+        else if(value instanceof Long){
+            writer.writeInt64((Long)value);
+        }
+        else if(value instanceof Double){
+            writer.writeDouble((Double)value);
+        }
+        else if(value instanceof Boolean){
+            writer.writeBoolean((Boolean)value);
+        }
+        else if(value instanceof Date){
+            //including java.sql.Timestamp
+            writer.writeDateTime(((Date)value).getTime());
+        }
+        else if(value instanceof Float || value instanceof Short || value instanceof Byte){
+            Number n = (Number)value;
+            if(value instanceof Float){
+                writer.writeDouble(n.doubleValue());
+            }else{
+                writer.writeInt32(n.intValue());
+            }
+        }
+        else if(value instanceof Character){
+            writer.writeString(value.toString());
+        }
+        else if(value instanceof BigDecimal){
+            writer.writeDecimal128(new Decimal128((BigDecimal)value));
+        }
+        else if(value instanceof byte[]){
+            writer.writeBinaryData(new BsonBinary((byte[])value));
+        }
+        else if(value instanceof Iterable){
+            //BasicDBList is a DBObject too, so check Iterable first
+            writer.writeStartArray();
+            for(Object o : (Iterable)value){
+                writeValue(writer, o, context, registry);
+            }
+            writer.writeEndArray();
+        }
+        else if(value.getClass().isArray()){
+            writer.writeStartArray();
+            int len = Array.getLength(value);
+            for(int i=0; i<len; i++){
+                writeValue(writer, Array.get(value, i), context, registry);
+            }
+            writer.writeEndArray();
+        }
+        else if(value instanceof Map && !(value instanceof DBObject)){
+            writer.writeStartDocument();
+            for(Entry entry : ((Map<Object, Object>)value).entrySet()){
+                writer.writeName(entry.getKey().toString());
+                writeValue(writer, entry.getValue(), context, registry);
+            }
+            writer.writeEndDocument();
+        }
+        else{
+            //DBObject, DBRef, ObjectId and others
+            Codec codec = registry.get(value.getClass());
+            context.encodeWithChildContext(codec, writer, value);
+        }
+    }
+    
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.codec;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.TrackedEntity;
+import com.bugull.mongo.cache.CodecPlanCache;
+import com.bugull.mongo.cache.ConstructorCache;
+import com.bugull.mongo.exception.AnnotationException;
+import com.bugull.mongo.exception.IdException;
+import com.bugull.mongo.mapper.EmbedFieldPlan;
+import com.bugull.mongo.mapper.EmbedListFieldPlan;
+import com.bugull.mongo.mapper.EntityCodecPlan;
+import com.bugull.mongo.mapper.FieldAccessor;
+import com.bugull.mongo.mapper.FieldPlan;
+import com.bugull.mongo.mapper.IdFieldPlan;
+import com.bugull.mongo.mapper.PropertyFieldPlan;
+import com.bugull.mongo.mapper.RefBatch;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+/**
+ * Codec that reads and writes entity with BsonReader/BsonWriter directly, without creating DBObject for the document.
+ * 
+ * <p>It follows the EntityCodecPlan of the class, so the document is the same as MapperUtil.toDBObject(). 
+ * @Embed objects and the elements of @EmbedList array or collection are streamed too. 
+ * These values are still converted to DBObject or List by their FieldPlan first, then written: 
+ * @EmbedList of Map, so the keys keep the order of MapperUtil.toDBObject(); 
+ * @Ref and @RefList, whose FieldPlan does the cascade save, and the values are only ids or DBRefs; 
+ * and @CustomCodec fields, whose encoder writes to DBObject. 
+ * Entity with @CustomCodec field is read as DBObject first, because the custom decoder works on the whole DBObject.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class EntityCodec<T> implements CollectibleCodec<T> {
+    
+    private final Class<T> clazz;
+    private final CodecRegistry registry;
+    private final boolean withoutCascade;
+    
+    public EntityCodec(Class<T> clazz, CodecRegistry registry){
+        this(clazz, registry, false);
+    }
+    
+    public EntityCodec(Class<T> clazz, CodecRegistry registry, boolean withoutCascade){
+        this.clazz = clazz;
+        this.registry = registry;
+        this.withoutCascade = withoutCascade;
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return clazz;
+    }
+    
+    @Override
+    public void encode(BsonWriter writer, T value, EncoderContext context) {
+        encodeEntity(writer, value, context);
+    }
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext context) {
+        T obj = (T)decodeEntity(reader, clazz, context);
+        //entity with @CustomCodec field is already marked by MapperUtil
+        if(obj instanceof TrackedEntity && !((TrackedEntity)obj).isTracked()){
+            RefBatch.markClean((TrackedEntity)obj);
+        }
+        return obj;
+    }
+    
+    private void encodeEntity(BsonWriter writer, Object obj, EncoderContext context){
+        writer.writeStartDocument();
+        FieldPlan[] fields = CodecPlanCache.getInstance().get(obj.getClass()).getFields();
+        for(FieldPlan fp : fields){
+            switch(fp.getKind()){
+                case ID:
+                    writer.writeName(fp.getColumnName());
+                    Object id = ((IdFieldPlan)fp).toDbId(fp.getAccessor().get(obj));
+                    BsonValueUtil.writeValue(writer, id, context, registry);
+                    break;
+                case PROPERTY:
+                    encodeProperty(writer, obj, (PropertyFieldPlan)fp, context);
+                    break;
+                case EMBED:
+                    encodeEmbed(writer, obj, (EmbedFieldPlan)fp, context);
+                    break;
+                case EMBED_LIST:
+                    encodeEmbedList(writer, obj, (EmbedListFieldPlan)fp, context);
+                    break;
+                case CUSTOM:
+                    DBObject dbo = new BasicDBObject();
+                    fp.encode(obj, dbo, withoutCascade);
+                    for(String key : dbo.keySet()){
+                        writer.writeName(key);
+                        BsonValueUtil.writeValue(writer, dbo.get(key), context, registry);
+                    }
+                    break;
+                default:
+                    Object value = fp.getAccessor().get(obj);
+                    if(value != null){
+                        writer.writeName(fp.getColumnName());
+                        BsonValueUtil.writeValue(writer, fp.encodeValue(value, withoutCascade), context, registry);
+                    }
+                    break;
+            }
+        }
+        writer.writeEndDocument();
+    }
+    
+    private void encodeProperty(BsonWriter writer, Object obj, PropertyFieldPlan fp, EncoderContext context){
+        Class<?> type = fp.getType();
+        FieldAccessor accessor = fp.getAccessor();
+        String name = fp.getColumnName();
+        if(!type.isPrimitive()){
+            Object value = accessor.get(obj);
+            if(value != null){
+                writer.writeName(name);
+                BsonValueUtil.writeValue(writer, fp.encodeValue(value, withoutCascade), context, registry);
+            }
+        }
+        else if(type == int.class){
+            writer.writeInt32(name, accessor.getInt(obj));
+        }
+        else if(type == long.class){
+            writer.writeInt64(name, accessor.getLong(obj));
+        }
+        else if(type == double.class){
+            writer.writeDouble(name, accessor.getDouble(obj));
+        }
+        else if(type == boolean.class){
+            writer.writeBoolean(name, accessor.getBoolean(obj));
+        }
+        else if(type == float.class){
+            writer.writeDouble(name, accessor.getFloat(obj));
+        }
+        else if(type == short.class){
+            writer.writeInt32(name, accessor.getShort(obj));
+        }
+        else if(type == byte.class){
+            writer.writeInt32(name, accessor.getByte(obj));
+        }
+        else if(type == char.class){
+            writer.writeString(name, String.valueOf(accessor.getChar(obj)));
+        }
+    }
+    
+    private void encodeEmbed(BsonWriter writer, Object obj, EmbedFieldPlan fp, EncoderContext context){
+        Object value = fp.getAccessor().get(obj);
+        if(value == null){
+            return;
+        }
+        writer.writeName(fp.getColumnName());
+        if(fp.isEnum()){
+            writer.writeString(value.toString());
+        }else{
+            //tip for wrong use of @Embed
+            if(value instanceof BuguEntity){
+                throw new AnnotationException("The Embed object should not be BuguEntity!");
+            }
+            encodeEntity(writer, value, context);
+        }
+    }
+    
+    private void encodeEmbedList(BsonWriter writer, Object obj, EmbedListFieldPlan fp, EncoderContext context){
+        Object value = fp.getAccessor().get(obj);
+        if(value == null){
+            return;
+        }
+        writer.writeName(fp.getColumnName());
+        if(fp.isMap()){
+            //converted by the FieldPlan, so the keys are in the same order as MapperUtil.toDBObject()
+            BsonValueUtil.writeValue(writer, fp.encodeValue(value, withoutCascade), context, registry);
+            return;
+        }
+        writer.writeStartArray();
+        if(fp.isArray()){
+            int len = Array.getLength(value);
+            for(int i=0; i<len; i++){
+                encodeEmbedItem(writer, fp, Array.get(value, i), context);
+            }
+        }else{
+            for(Object item : (Collection)value){
+                encodeEmbedItem(writer, fp, item, context);
+            }
+        }
+        writer.writeEndArray();
+    }
+    
+    private void encodeEmbedItem(BsonWriter writer, EmbedListFieldPlan fp, Object item, EncoderContext context){
+        //null element is not saved, the same as EmbedListFieldPlan
+        if(item == null){
+            return;
+        }
+        if(fp.isEnum()){
+            writer.writeString(item.toString());
+        }else{
+            encodeEntity(writer, item, context);
+        }
+    }
+    
+    private Object decodeEntity(BsonReader reader, Class<?> type, DecoderContext context){
+        EntityCodecPlan plan = CodecPlanCache.getInstance().get(type);
+        if(plan.hasCustomField()){
+            DBObject dbo = (DBObject)BsonValueUtil.readDocument(reader, context, registry);
+            return MapperUtil.fromDBObject(type, dbo, withoutCascade);
+        }
+        Object obj = ConstructorCache.getInstance().create(type);
+        reader.readStartDocument();
+        while(reader.readBsonType() != BsonType.END_OF_DOCUMENT){
+            FieldPlan fp = plan.getFieldByColumn(reader.readName());
+            if(fp == null){
+                reader.skipValue();
+            }
+            else if(reader.getCurrentBsonType() == BsonType.NULL){
+                //the same as DBObject: null value is not set to field
+                reader.readNull();
+            }
+            else{
+                switch(fp.getKind()){
+                    case PROPERTY:
+                        decodeProperty(reader, obj, (PropertyFieldPlan)fp, context);
+                        break;
+                    case EMBED:
+                        decodeEmbed(reader, obj, (EmbedFieldPlan)fp, context);
+                        break;
+                    default:
+                        Object value = BsonValueUtil.readValue(reader, context, registry);
+                        fp.decodeTo(obj, value, withoutCascade);
+                        break;
+                }
+            }
+        }
+        reader.readEndDocument();
+        return obj;
+    }
+    
+    private void decodeProperty(BsonReader reader, Object obj, PropertyFieldPlan fp, DecoderContext context){
+        Class<?> type = fp.getType();
+        BsonType bsonType = reader.getCurrentBsonType();
+        FieldAccessor accessor = fp.getAccessor();
+        //the most common types are set without boxing
+        if(type==int.class && bsonType==BsonType.INT32){
+            accessor.setInt(obj, reader.readInt32());
+        }
+        else if(type==long.class && bsonType==BsonType.INT64){
+            accessor.setLong(obj, reader.readInt64());
+        }
+        else if(type==double.class && bsonType==BsonType.DOUBLE){
+            accessor.setDouble(obj, reader.readDouble());
+        }
+        else if(type==boolean.class && bsonType==BsonType.BOOLEAN){
+            accessor.setBoolean(obj, reader.readBoolean());
+        }
+        else if(type==String.class && bsonType==BsonType.STRING){
+            accessor.set(obj, reader.readString());
+        }
+        else if(type.isPrimitive()){
+            //number of other BSON type, converted by the FieldPlan
+            Object value = BsonValueUtil.readValue(reader, context, registry);
+            fp.decode(obj, new BasicDBObject(fp.getColumnName(), value), withoutCascade);
+        }
+        else{
+            Object value = BsonValueUtil.readValue(reader, context, registry);
+            accessor.set(obj, fp.decodeValue(value, withoutCascade));
+        }
+    }
+    
+    private void decodeEmbed(BsonReader reader, Object obj, EmbedFieldPlan fp, DecoderContext context){
+        if(fp.isEnum() || reader.getCurrentBsonType() != BsonType.DOCUMENT){
+            Object value = BsonValueUtil.readValue(reader, context, registry);
+            fp.getAccessor().set(obj, fp.decodeValue(value, withoutCascade));
+            return;
+        }
+        Object value = decodeEntity(reader, fp.getType(), context);
+        //tip for wrong use of @Embed
+        if(value instanceof BuguEntity){
+            throw new AnnotationException("The Embed object should not be BuguEntity!");
+        }
+        fp.getAccessor().set(obj, value);
+    }
+
+    @Override
+    public T generateIdIfAbsentFromDocument(T document) {
+        IdFieldPlan fp = getIdFieldPlan();
+        if(fp != null){
+            FieldAccessor accessor = fp.getAccessor();
+            if(accessor.get(document) == null){
+                accessor.set(document, fp.toDbId(null).toString());
+            }
+        }
+        return document;
+    }
+
+    @Override
+    public boolean documentHasId(T document) {
+        IdFieldPlan fp = getIdFieldPlan();
+        return fp != null && fp.getAccessor().get(document) != null;
+    }
+
+    @Override
+    public BsonValue getDocumentId(T document) {
+        IdFieldPlan fp = getIdFieldPlan();
+        if(fp == null){
+            throw new IdException("The document does not contain an _id");
+        }
+        Object value = fp.getAccessor().get(document);
+        if(value == null){
+            throw new IdException("The document does not contain an _id");
+        }
+        Object id = fp.toDbId(value);
+        if(id instanceof ObjectId){
+            return new BsonObjectId((ObjectId)id);
+        }
+        else if(id instanceof Long){
+            return new BsonInt64((Long)id);
+        }
+        else{
+            return new BsonString(id.toString());
+        }
+    }
+    
+    private IdFieldPlan getIdFieldPlan(){
+        return (IdFieldPlan)CodecPlanCache.getInstance().get(clazz).getIdField();
+    }
+    
+}
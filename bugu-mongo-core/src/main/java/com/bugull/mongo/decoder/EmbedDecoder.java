@@ -1,61 +0,0 @@
-/*
- * Copyright (c) www.bugull.com
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.bugull.mongo.decoder;
-
-import com.bugull.mongo.BuguEntity;
-import com.bugull.mongo.annotations.Default;
-import com.bugull.mongo.annotations.Embed;
-import com.bugull.mongo.exception.AnnotationException;
-import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.utils.MapperUtil;
-import com.mongodb.DBObject;
-import java.lang.reflect.Field;
-
-/**
- *
- * @author Frank Wen(xbwen@hotmail.com)
- */
-public class EmbedDecoder extends AbstractDecoder{
-        
-    public EmbedDecoder(Field field, DBObject dbo){
-        super(field);
-        String fieldName = field.getName();
-        Embed embed = field.getAnnotation(Embed.class);
-        String name = embed.name();
-        if(!name.equals(Default.NAME)){
-            fieldName = name;
-        }
-        value = dbo.get(fieldName);
-    }
-    
-    @Override
-    public void decode(Object obj){
-        Class<?> type = field.getType();
-        if(type.isEnum()){
-            FieldUtil.set(obj, field, Enum.valueOf((Class<Enum>)type, (String)value));
-            return;
-        }
-        Object o = MapperUtil.fromDBObject(field.getType(), (DBObject)value);
-        FieldUtil.set(obj, field, o);
-        
-        //tip for wrong use of @Embed
-        if(o instanceof BuguEntity){
-            throw new AnnotationException("The Embed object should not be BuguEntity!");
-        }
-    }
-    
-}
@@ -1,56 +0,0 @@
-/*
- * Copyright (c) www.bugull.com
- * 
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.bugull.mongo.encoder;
-
-import com.bugull.mongo.annotations.Default;
-import com.bugull.mongo.annotations.Property;
-import java.lang.reflect.Field;
-
-/**
- *
- * @author Frank Wen(xbwen@hotmail.com)
- */
-public class PropertyEncoder extends AbstractEncoder{
-    
-    public PropertyEncoder(Object obj, Field field){
-        super(obj, field);
-    }
-    
-    @Override
-    public String getFieldName(){
-        String fieldName = field.getName();
-        Property property = field.getAnnotation(Property.class);
-        if(property != null){
-            String name = property.name();
-            if(!name.equals(Default.NAME)){
-                fieldName = name;
-            }
-        }
-        return fieldName;
-    }
-    
-    @Override
-    public Object encode(){
-        //if the field is enum type, save as String
-        Class<?> type = field.getType();
-        if(type.isEnum()){
-            return value.toString();
-        }
-        return value;
-    }
-    
-}
@@ -16,6 +16,7 @@
 package com.bugull.mongo.join;
 
 import com.bugull.mongo.BuguAggregation;
+import com.bugull.mongo.BuguCursor;
 import com.bugull.mongo.BuguDao;
 import com.bugull.mongo.BuguQuery;
 import com.bugull.mongo.agg.Lookup;
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Join query on two collection. It's based on aggregation, but easy to use.
@@ -120,6 +122,48 @@ public class JoinQuery<L, R> implements Parallelable {
     
     @Override
     public List<JoinResult<L, R>> results(){
+        List<JoinResult<L, R>> list = new ArrayList<>();
+        BuguCursor<JoinResult<L, R>> cursor = iterate();
+        try{
+            while(cursor.hasNext()){
+                list.add(cursor.next());
+            }
+        }finally{
+            cursor.close();
+        }
+        return list;
+    }
+    
+    /**
+     * Lazily iterate the join results, only one document is mapped at a time.
+     * @return 
+     */
+    public BuguCursor<JoinResult<L, R>> iterate(){
+        final String as = getAsField();
+        BuguCursor<DBObject> cursor = createAggregation(as).iterate();
+        return new BuguCursor<JoinResult<L, R>>(cursor, cursor, BuguCursor.DEFAULT_WINDOW){
+            @Override
+            protected JoinResult<L, R> convert(Object obj){
+                return toJoinResult((DBObject)obj, as);
+            }
+        };
+    }
+    
+    /**
+     * Lazily stream the join results. The stream should be closed, if it's not consumed completely.
+     * @return 
+     */
+    public Stream<JoinResult<L, R>> stream(){
+        return iterate().stream();
+    }
+    
+    private String getAsField(){
+        String leftCollName = MapperUtil.getEntityName(dao.getEntityClass());
+        String rightCollName = MapperUtil.getEntityName(rightColl);
+        return leftCollName + "_" + leftCollName.length() + "_" + rightCollName + "_" + rightCollName.length();  //make sure the as field does not exists
+    }
+    
+    private BuguAggregation<L> createAggregation(String as){
         BuguAggregation<L> agg = dao.aggregate();
         
         //match the left
@@ -145,11 +189,8 @@ public class JoinQuery<L, R> implements Parallelable {
             }
         }
         
-        //the as field
         Class<L> leftColl = dao.getEntityClass();
-        String leftCollName = MapperUtil.getEntityName(leftColl);
         String rightCollName = MapperUtil.getEntityName(rightColl);
-        String as = leftCollName + "_" + leftCollName.length() + "_" + rightCollName + "_" + rightCollName.length();  //make sure the as field does not exists
 
         //lookup
         agg.lookup(new Lookup(rightCollName, leftKey, rightKey, as));
@@ -251,23 +292,20 @@ public class JoinQuery<L, R> implements Parallelable {
             agg.skip((pageNumber-1)*pageSize).limit(pageSize);
         }
         
-        //return JoinResult
-        List<JoinResult<L, R>> list = new ArrayList<>();
-        Iterable<DBObject> it = agg.results();
-        for(DBObject dbo : it){
-            JoinResult<L, R> result = new JoinResult<>();
-            DBObject _id = (DBObject)dbo.get("_id");
-            L leftEntity = MapperUtil.fromDBObject(leftColl, _id);
-            result.setLeftEntity(leftEntity);
-            Object asArr = dbo.get(as);
-            if(asArr != null){
-                Object arr = decodeArray(asArr);
-                result.setRightEntity((R[])arr);
-            }
-            list.add(result);
+        return agg;
+    }
+    
+    private JoinResult<L, R> toJoinResult(DBObject dbo, String as){
+        JoinResult<L, R> result = new JoinResult<>();
+        DBObject _id = (DBObject)dbo.get("_id");
+        L leftEntity = MapperUtil.fromDBObject(dao.getEntityClass(), _id);
+        result.setLeftEntity(leftEntity);
+        Object asArr = dbo.get(as);
+        if(asArr != null){
+            Object arr = decodeArray(asArr);
+            result.setRightEntity((R[])arr);
         }
-        return list;
-
+        return result;
     }
     
     private Object decodeArray(Object val){
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.listener;
+
+import com.bugull.mongo.BuguEntity;
+import java.util.List;
+
+/**
+ * <code>EntityListener</code> which receives the entities removed by condition in batch, and only reads the fields it needs.
+ * 
+ * <p>When every listener of a DAO is a BatchDeleteListener, remove by condition or by ids streams the matched documents, 
+ * only returns the declared fields, and removes them batch by batch. 
+ * The notifications are aggregated again by the event bus: entitiesDeleted() receives the continuous deleted events 
+ * taken at once by a lane, and the lanes are chosen by the hash of the id, 
+ * so a call doesn't match a delete batch of the DAO. 
+ * The entities are decoded without cascade reading, so a @Ref or @RefList field only contains the ids.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface BatchDeleteListener extends EntityListener {
+    
+    /**
+     * The column names in document which entitiesDeleted() reads. The _id is always returned.
+     * @return empty array for _id only, or null for the whole entity
+     */
+    public String[] getDeleteFields();
+    
+    /**
+     * Notified that a batch of entities has been deleted.
+     * @param entities the deleted objects, only contains the id and the delete fields
+     */
+    public void entitiesDeleted(List<BuguEntity> entities);
+    
+}
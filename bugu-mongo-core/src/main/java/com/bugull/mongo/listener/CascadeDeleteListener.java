@@ -18,13 +18,17 @@
 package com.bugull.mongo.listener;
 
 import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.BuguFramework;
 import com.bugull.mongo.BuguQuery;
 import com.bugull.mongo.annotations.Default;
-import com.bugull.mongo.annotations.Ref;
-import com.bugull.mongo.annotations.RefList;
+import com.bugull.mongo.cache.CodecPlanCache;
 import com.bugull.mongo.cache.DaoCache;
-import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.mapper.FieldPlan;
+import com.bugull.mongo.mapper.RefBatch;
+import com.bugull.mongo.mapper.RefFieldPlan;
+import com.bugull.mongo.mapper.RefListFieldPlan;
+import com.bugull.mongo.utils.ChunkUtil;
 import com.bugull.mongo.utils.FieldUtil;
 import com.bugull.mongo.utils.Operator;
 import java.lang.reflect.Array;
@@ -33,56 +37,176 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- *
+ * Remove the entities referenced by the @Ref and @RefList fields with cascade delete.
+ * 
+ * <p>On remove by condition, only the cascade delete columns of the removed documents are read. 
+ * The references of the entities in one call of entitiesDeleted() are removed together: 
+ * the ids are grouped by class and removed with chunked $in, 
+ * level by level, up to BuguFramework.getCascadeDeleteDepth() levels. 
+ * An entity referenced again in a cycle is not removed twice.</p>
+ * 
+ * <p>The batch is the one taken by an event bus lane, not the delete batch of the DAO. 
+ * The lanes are chosen by the hash of the id, so the entities removed in one delete batch are spread across the lanes, 
+ * and one lane batch may contain the entities of several delete batches.</p>
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 @SuppressWarnings("unchecked")
-public class CascadeDeleteListener implements EntityListener {
+public class CascadeDeleteListener implements BatchDeleteListener {
     
-    private final List<Field> refFields = new ArrayList<>();
-    private final List<Field> refListFields = new ArrayList<>();
+    private static final Logger LOGGER = Logger.getLogger("com.bugull.mongo");
+    
+    private final Class<?> clazz;
+    private final List<FieldPlan> refFields = new ArrayList<>();
+    private final List<FieldPlan> refListFields = new ArrayList<>();
 
     public CascadeDeleteListener(Class<?> clazz) {
-        Field[] fields = FieldsCache.getInstance().get(clazz);
-        for(Field f : fields){
-            Ref ref = f.getAnnotation(Ref.class);
-            if(ref!=null && ref.cascade().toUpperCase().indexOf(Default.CASCADE_DELETE)!=-1){
-                refFields.add(f);
-                continue;
+        this.clazz = clazz;
+        FieldPlan[] fields = CodecPlanCache.getInstance().get(clazz).getFields();
+        for(FieldPlan fp : fields){
+            if(fp instanceof RefFieldPlan){
+                RefFieldPlan rfp = (RefFieldPlan)fp;
+                if(rfp.getRef().cascade().toUpperCase().indexOf(Default.CASCADE_DELETE)!=-1){
+                    refFields.add(fp);
+                }
             }
-            RefList refList = f.getAnnotation(RefList.class);
-            if(refList!=null && refList.cascade().toUpperCase().indexOf(Default.CASCADE_DELETE)!=-1){
-                refListFields.add(f);
-                continue;
+            else if(fp instanceof RefListFieldPlan){
+                RefListFieldPlan rlfp = (RefListFieldPlan)fp;
+                if(rlfp.getRefList().cascade().toUpperCase().indexOf(Default.CASCADE_DELETE)!=-1){
+                    refListFields.add(fp);
+                }
             }
         }
     }
 
+    @Override
+    public String[] getDeleteFields() {
+        String[] fields = new String[refFields.size() + refListFields.size()];
+        int i = 0;
+        for(FieldPlan fp : refFields){
+            fields[i++] = fp.getColumnName();
+        }
+        for(FieldPlan fp : refListFields){
+            fields[i++] = fp.getColumnName();
+        }
+        return fields;
+    }
+
+    @Override
+    public void entitiesDeleted(List<BuguEntity> entities) {
+        Map<Class<?>, Set<String>> targets = new LinkedHashMap<>();
+        Set<String> visited = new HashSet<>();
+        for(BuguEntity entity : entities){
+            collectTargets(entity, targets);
+            visited.add(visitKey(clazz, entity.getId()));
+        }
+        cascade(targets, visited);
+    }
+
     @Override
     public void entityDeleted(BuguEntity entity) {
-        for(Field f : refFields){
-            processRef(entity, f);
+        entitiesDeleted(Collections.singletonList(entity));
+    }
+    
+    /**
+     * Remove the references level by level. Every level removes the ids of each class with chunked $in, 
+     * after reading the references of them for the next level.
+     * @param targets class to referenced ids
+     * @param visited the removed entities, an entity referenced again in a cycle is not removed twice
+     */
+    private static void cascade(Map<Class<?>, Set<String>> targets, Set<String> visited){
+        int maxDepth = BuguFramework.getInstance().getCascadeDeleteDepth();
+        int depth = 0;
+        while(!targets.isEmpty()){
+            if(++depth > maxDepth){
+                LOGGER.log(Level.WARNING, "Cascade delete stops at depth " + maxDepth + ", the references in " + targets.keySet() + " are not removed");
+                return;
+            }
+            Map<Class<?>, Set<String>> next = new LinkedHashMap<>();
+            for(Map.Entry<Class<?>, Set<String>> entry : targets.entrySet()){
+                Class<?> type = entry.getKey();
+                List<String> ids = new ArrayList<>();
+                for(String id : entry.getValue()){
+                    if(visited.add(visitKey(type, id))){
+                        ids.add(id);
+                    }
+                }
+                if(ids.isEmpty()){
+                    continue;
+                }
+                InternalDao dao = DaoCache.getInstance().get(type);
+                if(FieldUtil.hasCascadeDelete(type)){
+                    CascadeDeleteListener child = new CascadeDeleteListener(type);
+                    for(BuguEntity ent : child.findDeleteFields(dao, ids)){
+                        child.collectTargets(ent, next);
+                    }
+                }
+                dao.removeWithoutCascade(ids);
+            }
+            targets = next;
         }
-        for(Field f : refListFields){
-            processRefList(entity, f);
+    }
+    
+    private static String visitKey(Class<?> type, String id){
+        return type.getName() + "#" + id;
+    }
+    
+    /**
+     * Read the cascade delete columns of the entities, without cascade reading.
+     */
+    private List<BuguEntity> findDeleteFields(InternalDao dao, List<String> ids){
+        List<BuguEntity> list = new ArrayList<>(ids.size());
+        for(List<String> chunk : ChunkUtil.split(ids, RefBatch.CHUNK_SIZE)){
+            BuguQuery query = dao.query().in(Operator.ID, chunk).returnFields(getDeleteFields());
+            query.setWithoutCascade(true);
+            list.addAll(query.results());
         }
+        return list;
     }
     
-    private void processRef(BuguEntity entity, Field f){
-        Object value = FieldUtil.get(entity, f);
+    private void collectTargets(BuguEntity entity, Map<Class<?>, Set<String>> targets){
+        for(FieldPlan fp : refFields){
+            collectRef(entity, fp, targets);
+        }
+        for(FieldPlan fp : refListFields){
+            collectRefList(entity, fp, targets);
+        }
+    }
+    
+    private static void addTargets(Map<Class<?>, Set<String>> targets, Class<?> type, List<String> ids){
+        Set<String> set = targets.get(type);
+        if(set == null){
+            set = new LinkedHashSet<>();
+            targets.put(type, set);
+        }
+        set.addAll(ids);
+    }
+    
+    private void collectRef(BuguEntity entity, FieldPlan fp, Map<Class<?>, Set<String>> targets){
+        Object value = fp.getAccessor().get(entity);
+        Field f = fp.getField();
         if(value != null){
-            Class<?> type = f.getType();
-            InternalDao dao = DaoCache.getInstance().get(type);
-            dao.remove(value);
+            String id = ((BuguEntity)value).getId();
+            if(id != null){
+                addTargets(targets, f.getType(), Collections.singletonList(id));
+            }
         }
     }
     
-    private void processRefList(BuguEntity entity, Field f){
-        Object value = FieldUtil.get(entity, f);
+    private void collectRefList(BuguEntity entity, FieldPlan fp, Map<Class<?>, Set<String>> targets){
+        Object value = fp.getAccessor().get(entity);
+        Field f = fp.getField();
         if(value == null){
             return;
         }
@@ -108,9 +232,7 @@ public class CascadeDeleteListener implements EntityListener {
             return;
         }
         if(idList != null && !idList.isEmpty()){
-            InternalDao dao = DaoCache.getInstance().get(clazz);
-            BuguQuery query = dao.query().in(Operator.ID, idList);
-            dao.remove(query);
+            addTargets(targets, clazz, idList);
         }
     }
     
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.listener;
+
+import com.bugull.mongo.BuguEntity;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deliver the inserted, updated and deleted events of entities to EntityListeners, in background threads.
+ * 
+ * <p>Events are put into lanes by the hash of entity id. Each lane has a bounded queue and a daemon thread, 
+ * so the events of the same entity are delivered in order, and never run at the same time. 
+ * When a queue is full, the OverflowPolicy of EventBusConfig decides what to do. 
+ * CALLER_RUNS gives up the order: the event runs on the posting thread, before the queued events of the same entity. 
+ * A lane thread takes up to batchSize events at once, and continuous deleted events for the same listeners 
+ * are delivered to BatchDeleteListener in one call.</p>
+ * 
+ * <p>An event posted by a listener never blocks on a full queue: it's queued beyond the capacity, 
+ * so a lane never waits for itself, and the order is kept. 
+ * After close(), the queued events are delivered, and the events posted later are delivered by the posting thread.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EntityEventBus {
+    
+    private static final Logger LOGGER = Logger.getLogger("com.bugull.mongo");
+    
+    private final static int INSERTED = 1;
+    private final static int UPDATED = 2;
+    private final static int DELETED = 3;
+    
+    //put into every lane on close
+    private final static Event STOP = new Event(null, 0, null);
+    
+    private final EventBusConfig config;
+    private final Lane[] lanes;
+    private volatile boolean closed;
+    
+    //count of posts which may still put event into a lane
+    private final AtomicInteger posting = new AtomicInteger();
+    
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    
+    public EntityEventBus(EventBusConfig config){
+        this.config = config;
+        int count = Math.max(1, config.getLanes());
+        this.lanes = new Lane[count];
+        for(int i=0; i<count; i++){
+            lanes[i] = new Lane(i);
+        }
+    }
+    
+    public void postInserted(List<EntityListener> listeners, BuguEntity entity){
+        post(new Event(listeners, INSERTED, entity));
+    }
+    
+    public void postUpdated(List<EntityListener> listeners, BuguEntity entity){
+        post(new Event(listeners, UPDATED, entity));
+    }
+    
+    public void postDeleted(List<EntityListener> listeners, BuguEntity entity){
+        post(new Event(listeners, DELETED, entity));
+    }
+    
+    private void post(Event event){
+        if(event.listeners.isEmpty() || event.entity == null){
+            return;
+        }
+        postedCount.incrementAndGet();
+        posting.incrementAndGet();
+        try{
+            //checked after counted, so close() waits for this post if it sees the bus open
+            if(closed){
+                runByCaller(event);
+                return;
+            }
+            Lane lane = laneOf(event.entity);
+            //a listener waiting for a full lane may wait for itself
+            if(isLaneThread()){
+                lane.queue.add(event);
+                return;
+            }
+            if(lane.permits.tryAcquire()){
+                event.permit = true;
+                lane.queue.add(event);
+                return;
+            }
+            switch(config.getOverflowPolicy()){
+                case CALLER_RUNS:
+                    runByCaller(event);
+                    break;
+                case DROP:
+                    drop(event);
+                    break;
+                default:
+                    enqueueBlocking(lane, event);
+                    break;
+            }
+        }finally{
+            posting.decrementAndGet();
+        }
+    }
+    
+    private void enqueueBlocking(Lane lane, Event event){
+        boolean acquired;
+        try{
+            long maxBlockTime = config.getMaxBlockTime();
+            if(maxBlockTime < 0){
+                lane.permits.acquire();
+                acquired = true;
+            }else{
+                acquired = lane.permits.tryAcquire(maxBlockTime, TimeUnit.MILLISECONDS);
+            }
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if(acquired){
+            event.permit = true;
+            lane.queue.add(event);
+        }else{
+            drop(event);
+        }
+    }
+    
+    private Lane laneOf(BuguEntity entity){
+        String id = entity.getId();
+        if(id == null){
+            return lanes[0];
+        }
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return lanes[(h & 0x7fffffff) % lanes.length];
+    }
+    
+    private boolean isLaneThread(){
+        Thread current = Thread.currentThread();
+        for(Lane lane : lanes){
+            if(lane.thread == current){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void runByCaller(Event event){
+        callerRunsCount.incrementAndGet();
+        deliver(Collections.singletonList(event));
+    }
+    
+    private void drop(Event event){
+        long dropped = droppedCount.incrementAndGet();
+        //log the first one, and then one for every 10000
+        if(dropped % 10000 == 1){
+            LOGGER.log(Level.WARNING, "The event queue is full, " + dropped + " events are dropped, the last one is of " + event.entity.getClass().getName());
+        }
+    }
+    
+    private void deliver(List<Event> batch){
+        long now = System.nanoTime();
+        for(Event event : batch){
+            long latency = now - event.time;
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while(latency > max && !maxLatency.compareAndSet(max, latency)){
+                max = maxLatency.get();
+            }
+        }
+        int size = batch.size();
+        int i = 0;
+        while(i < size){
+            Event event = batch.get(i);
+            if(event.type != DELETED){
+                for(EntityListener listener : event.listeners){
+                    deliver(listener, event);
+                }
+                i++;
+                continue;
+            }
+            int j = i + 1;
+            while(j < size && batch.get(j).type == DELETED && batch.get(j).listeners.equals(event.listeners)){
+                j++;
+            }
+            List<BuguEntity> entities = new ArrayList<>(j - i);
+            for(int k=i; k<j; k++){
+                entities.add(batch.get(k).entity);
+            }
+            for(EntityListener listener : event.listeners){
+                deliverDeleted(listener, entities);
+            }
+            i = j;
+        }
+        deliveredCount.addAndGet(size);
+    }
+    
+    private void deliver(EntityListener listener, Event event){
+        try{
+            if(event.type == INSERTED){
+                listener.entityInserted(event.entity);
+            }else{
+                listener.entityUpdated(event.entity);
+            }
+        }catch(Throwable ex){
+            failed(listener, ex);
+        }
+    }
+    
+    private void deliverDeleted(EntityListener listener, List<BuguEntity> entities){
+        if(listener instanceof BatchDeleteListener){
+            try{
+                ((BatchDeleteListener)listener).entitiesDeleted(entities);
+            }catch(Throwable ex){
+                failed(listener, ex);
+            }
+            return;
+        }
+        for(BuguEntity entity : entities){
+            try{
+                listener.entityDeleted(entity);
+            }catch(Throwable ex){
+                failed(listener, ex);
+            }
+        }
+    }
+    
+    private void failed(EntityListener listener, Throwable ex){
+        failedCount.incrementAndGet();
+        LOGGER.log(Level.SEVERE, "EntityListener " + listener.getClass().getName() + " failed", ex);
+    }
+    
+    /**
+     * Deliver all the queued events, and stop the lane threads. 
+     * <p>New posts are rejected first, and delivered by the posting thread.</p>
+     */
+    public void close(){
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            closed = true;
+        }
+        //the posts which have seen the bus open, the lanes are still running for them
+        while(posting.get() > 0){
+            try{
+                Thread.sleep(1L);
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for(Lane lane : lanes){
+            lane.queue.add(STOP);
+        }
+        for(Lane lane : lanes){
+            if(lane.thread == Thread.currentThread()){
+                continue;
+            }
+            try{
+                lane.thread.join();
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return count of events waiting in all the lanes
+     */
+    public int getQueueDepth(){
+        int depth = 0;
+        for(Lane lane : lanes){
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+    
+    /**
+     * @param lane index of the lane
+     * @return count of events waiting in the lane
+     */
+    public int getQueueDepth(int lane){
+        return lanes[lane].queue.size();
+    }
+    
+    public int getLaneCount(){
+        return lanes.length;
+    }
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return count of events delivered by the posting thread, because the lane is full or the bus is closed
+     */
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    /**
+     * @return count of listener calls which throw exception
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+    
+    /**
+     * @return average time from posting an event to delivering it, in milliseconds
+     */
+    public double getAverageLatency(){
+        long delivered = deliveredCount.get();
+        return delivered == 0 ? 0 : totalLatency.get() / 1000000.0 / delivered;
+    }
+    
+    /**
+     * @return max time from posting an event to delivering it, in milliseconds
+     */
+    public long getMaxLatency(){
+        return TimeUnit.NANOSECONDS.toMillis(maxLatency.get());
+    }
+    
+    private class Lane implements Runnable {
+        
+        //the capacity is kept by permits, events posted by lane threads do not take permit
+        final BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+        final Semaphore permits = new Semaphore(Math.max(1, config.getQueueCapacity()));
+        final Thread thread;
+        
+        Lane(int index){
+            thread = new Thread(this, "bugu-event-bus-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        @Override
+        public void run(){
+            int batchSize = Math.max(1, config.getBatchSize());
+            List<Event> batch = new ArrayList<>(batchSize);
+            boolean stopped = false;
+            while(!stopped){
+                try{
+                    batch.add(queue.take());
+                }catch(InterruptedException ex){
+                    continue;
+                }
+                queue.drainTo(batch, batchSize - 1);
+                //nothing is queued after STOP, as the posts are finished before it
+                stopped = batch.remove(STOP);
+                int taken = 0;
+                for(Event event : batch){
+                    if(event.permit){
+                        taken++;
+                    }
+                }
+                permits.release(taken);
+                deliver(batch);
+                batch.clear();
+            }
+        }
+        
+    }
+    
+    private static class Event {
+        
+        //iterated by the lane thread, so the poster must not change it later, e.g. post a copy
+        final List<EntityListener> listeners;
+        final int type;
+        final BuguEntity entity;
+        final long time = System.nanoTime();
+        //if it takes a room of the lane's capacity
+        boolean permit;
+        
+        Event(List<EntityListener> listeners, int type, BuguEntity entity){
+            this.listeners = listeners;
+            this.type = type;
+            this.entity = entity;
+        }
+        
+    }
+    
+}
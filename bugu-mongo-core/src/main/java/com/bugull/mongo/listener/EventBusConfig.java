@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.listener;
+
+/**
+ * Options of EntityEventBus.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EventBusConfig {
+    
+    public final static int DEFAULT_QUEUE_CAPACITY = 10000;
+    public final static int DEFAULT_BATCH_SIZE = 100;
+    
+    private int lanes = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private long maxBlockTime = -1L;
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Count of lanes, each lane has its own queue and thread. 
+     * The events of the same entity id are always in the same lane, and delivered in order. Default value is count of cpu.
+     * @param lanes
+     * @return 
+     */
+    public EventBusConfig setLanes(int lanes) {
+        this.lanes = lanes;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Max count of events waiting in the queue of a lane. Default value is 10000.
+     * @param queueCapacity
+     * @return 
+     */
+    public EventBusConfig setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Max count of events taken from the queue at once. Continuous deleted events in it are delivered to BatchDeleteListener together. 
+     * Default value is 100.
+     * @param batchSize
+     * @return 
+     */
+    public EventBusConfig setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * What to do when the queue of a lane is full. Default value is BLOCK. 
+     * CALLER_RUNS does not keep the order of the events of the same entity.
+     * @param overflowPolicy
+     * @return 
+     */
+    public EventBusConfig setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public long getMaxBlockTime() {
+        return maxBlockTime;
+    }
+
+    /**
+     * Max time the writing thread is blocked by a full queue with BLOCK policy, in milliseconds, then the event is dropped. 
+     * Default value is -1, blocked until there is room.
+     * @param maxBlockTime
+     * @return 
+     */
+    public EventBusConfig setMaxBlockTime(long maxBlockTime) {
+        this.maxBlockTime = maxBlockTime;
+        return this;
+    }
+    
+}
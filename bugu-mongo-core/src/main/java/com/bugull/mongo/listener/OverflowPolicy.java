@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.listener;
+
+/**
+ * What EntityEventBus does when the lane of an event is full.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public enum OverflowPolicy {
+    
+    /**
+     * The writing thread waits until there is room, or the max block time passes and the event is dropped.
+     */
+    BLOCK,
+    
+    /**
+     * The event is dropped, and counted in EntityEventBus.getDroppedCount().
+     */
+    DROP,
+    
+    /**
+     * The writing thread notifies the listeners itself. It gives up the per-entity order:
+     * the event may run before, or at the same time as, the queued events of the same entity.
+     */
+    CALLER_RUNS
+    
+}
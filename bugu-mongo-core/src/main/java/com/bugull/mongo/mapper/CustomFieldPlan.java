@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.annotations.CustomCodec;
+import com.bugull.mongo.decoder.Decoder;
+import com.bugull.mongo.encoder.Encoder;
+import com.bugull.mongo.exception.ConstructorException;
+import com.mongodb.DBObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Plan for field with @CustomCodec. 
+ * 
+ * <p>The custom Decoder and Encoder hold the value of one document, so they are still created for every document, 
+ * but their constructors are resolved only once.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CustomFieldPlan extends FieldPlan {
+    
+    private final Constructor<?> decoderCons;
+    private final Constructor<?> encoderCons;
+    
+    public CustomFieldPlan(Field field){
+        super(field, field.getName(), FieldKind.CUSTOM);
+        CustomCodec codec = field.getAnnotation(CustomCodec.class);
+        try{
+            decoderCons = codec.decoder().getConstructor(Field.class, DBObject.class);
+            encoderCons = codec.encoder().getConstructor(Object.class, Field.class);
+        } catch (NoSuchMethodException | SecurityException ex) {
+            throw new ConstructorException(ex.getMessage());
+        }
+    }
+    
+    @Override
+    public void decode(Object obj, DBObject dbo, boolean withoutCascade){
+        Decoder decoder = (Decoder)newInstance(decoderCons, field, dbo);
+        if(decoder!=null && !decoder.isNullField()){
+            decoder.setWithoutCascade(withoutCascade);
+            decoder.decode(obj);
+        }
+    }
+    
+    @Override
+    public void encode(Object obj, DBObject dbo, boolean withoutCascade){
+        Encoder encoder = (Encoder)newInstance(encoderCons, obj, field);
+        if(encoder!=null && !encoder.isNullField()){
+            encoder.setWithoutCascade(withoutCascade);
+            dbo.put(encoder.getFieldName(), encoder.encode());
+        }
+    }
+    
+    /**
+     * Custom codec works on the whole DBObject, decode the value alone is not supported.
+     */
+    @Override
+    public Object decodeValue(Object value, boolean withoutCascade){
+        throw new UnsupportedOperationException("@CustomCodec field can only be decoded from DBObject");
+    }
+    
+    /**
+     * Custom codec works on the whole entity, encode the value alone is not supported.
+     */
+    @Override
+    public Object encodeValue(Object value, boolean withoutCascade){
+        throw new UnsupportedOperationException("@CustomCodec field can only be encoded from entity");
+    }
+    
+    private static Object newInstance(Constructor<?> cons, Object arg1, Object arg2){
+        try{
+            return cons.newInstance(arg1, arg2);
+        } catch (IllegalAccessException | IllegalArgumentException | InstantiationException | InvocationTargetException ex) {
+            throw new ConstructorException(ex.getMessage());
+        }
+    }
+    
+}
@@ -14,49 +14,68 @@
  * limitations under the License.
  */
 
-package com.bugull.mongo.encoder;
+package com.bugull.mongo.mapper;
 
 import com.bugull.mongo.BuguEntity;
 import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.annotations.Embed;
 import com.bugull.mongo.exception.AnnotationException;
 import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DBObject;
 import java.lang.reflect.Field;
 
 /**
  *
  * @author Frank Wen(xbwen@hotmail.com)
  */
-public class EmbedEncoder extends AbstractEncoder {
+@SuppressWarnings("unchecked")
+public class EmbedFieldPlan extends FieldPlan {
     
-    public EmbedEncoder(Object obj, Field field){
-        super(obj, field);
+    private final Class<?> type;
+    private final boolean isEnum;
+    
+    public EmbedFieldPlan(Field field){
+        super(field, columnName(field), FieldKind.EMBED);
+        this.type = field.getType();
+        this.isEnum = type.isEnum();
+    }
+    
+    private static String columnName(Field field){
+        String name = field.getAnnotation(Embed.class).name();
+        return name.equals(Default.NAME) ? field.getName() : name;
     }
     
     @Override
-    public String getFieldName(){
-        String fieldName = field.getName();
-        Embed embed = field.getAnnotation(Embed.class);
-        String name = embed.name();
-        if(!name.equals(Default.NAME)){
-            fieldName = name;
+    public Object decodeValue(Object value, boolean withoutCascade){
+        if(isEnum){
+            return Enum.valueOf((Class<Enum>)type, (String)value);
+        }
+        Object o = MapperUtil.fromDBObject(type, (DBObject)value);
+        //tip for wrong use of @Embed
+        if(o instanceof BuguEntity){
+            throw new AnnotationException("The Embed object should not be BuguEntity!");
         }
-        return fieldName;
+        return o;
     }
     
     @Override
-    public Object encode(){
-        Class<?> type = field.getType();
-        if(type.isEnum()){
+    public Object encodeValue(Object value, boolean withoutCascade){
+        if(isEnum){
             return value.toString();
         }
-        
         //tip for wrong use of @Embed
         if(value instanceof BuguEntity){
             throw new AnnotationException("The Embed object should not be BuguEntity!");
         }
-        
         return MapperUtil.toDBObject(value);
     }
     
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isEnum() {
+        return isEnum;
+    }
+    
 }
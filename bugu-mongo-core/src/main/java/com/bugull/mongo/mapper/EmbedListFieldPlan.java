@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.EmbedList;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DBObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class EmbedListFieldPlan extends FieldPlan {
+    
+    private final boolean isArray;
+    private final boolean isMap;
+    private final Class<?> elementType;  //element of array or collection
+    private final boolean isEnum;
+    private final int container;
+    private final GenericInfo valueInfo;  //the V of Map<K,V>
+    
+    public EmbedListFieldPlan(Field field){
+        super(field, columnName(field), FieldKind.EMBED_LIST);
+        Class<?> type = field.getType();
+        if(type.isArray()){
+            isArray = true;
+            isMap = false;
+            elementType = type.getComponentType();
+            container = GenericInfo.CONTAINER_NONE;
+            valueInfo = null;
+        }else{
+            isArray = false;
+            ParameterizedType paramType = (ParameterizedType)field.getGenericType();
+            Type[] types = paramType.getActualTypeArguments();
+            if(types.length == 1){
+                isMap = false;
+                elementType = (Class)types[0];
+                container = GenericInfo.containerOf(type);
+                valueInfo = null;
+            }else{
+                isMap = true;
+                elementType = null;
+                container = GenericInfo.CONTAINER_NONE;
+                valueInfo = GenericInfo.of(types[1]);
+            }
+        }
+        isEnum = elementType != null && elementType.isEnum();
+    }
+    
+    private static String columnName(Field field){
+        String name = field.getAnnotation(EmbedList.class).name();
+        return name.equals(Default.NAME) ? field.getName() : name;
+    }
+    
+    @Override
+    public void decode(Object obj, DBObject dbo, boolean withoutCascade){
+        //unsupported collection type is ignored
+        if(!isArray && !isMap && container == GenericInfo.CONTAINER_NONE){
+            return;
+        }
+        super.decode(obj, dbo, withoutCascade);
+    }
+    
+    @Override
+    public Object decodeValue(Object value, boolean withoutCascade){
+        if(isArray){
+            return isEnum ? decodeEnumArray(value, elementType) : decodeArray(value, elementType);
+        }
+        if(isMap){
+            return decodeMap(value);
+        }
+        List list = isEnum ? decodeEnumCollection(value, elementType) : decodeCollection(value, elementType);
+        return GenericInfo.toContainer(container, list);
+    }
+    
+    @Override
+    public Object encodeValue(Object value, boolean withoutCascade){
+        if(isArray){
+            return isEnum ? encodeEnumArray(value) : encodeArray(value);
+        }
+        if(isMap){
+            return encodeMap(value);
+        }
+        return isEnum ? encodeEnumCollection(value) : encodeCollection(value);
+    }
+    
+    private Object decodeEnumArray(Object val, Class elementClass){
+        List list = (List)val;
+        int size = list.size();
+        Object arr = Array.newInstance(elementClass, size);
+        for(int i=0; i<size; i++){
+            Object item = list.get(i);
+            if(item != null){
+                Array.set(arr, i, Enum.valueOf((Class<Enum>)elementClass, (String)item));
+            }
+        }
+        return arr;
+    }
+    
+    private Object decodeArray(Object val, Class elementClass){
+        List list = (List)val;
+        int size = list.size();
+        Object arr = Array.newInstance(elementClass, size);
+        for(int i=0; i<size; i++){
+            Object item = list.get(i);
+            if(item != null){
+                Array.set(arr, i, MapperUtil.fromDBObject(elementClass, (DBObject)item));
+            }
+        }
+        return arr;
+    }
+    
+    private List decodeEnumCollection(Object val, Class elementClass){
+        List list = (List)val;
+        List result = new ArrayList(list.size());
+        for(Object item : list){
+            if(item != null){
+                result.add(Enum.valueOf((Class<Enum>)elementClass, (String)item));
+            }
+        }
+        return result;
+    }
+    
+    private List decodeCollection(Object val, Class elementClass){
+        List list = (List)val;
+        List result = new ArrayList(list.size());
+        for(Object item : list){
+            if(item != null){
+                result.add(MapperUtil.fromDBObject(elementClass, (DBObject)item));
+            }
+        }
+        return result;
+    }
+    
+    private Map decodeMap(Object value){
+        Map map = (Map)value;
+        Map result = new HashMap();
+        Class elementClass = valueInfo.getElementType();
+        int shape = valueInfo.getShape();
+        for(Object key : map.keySet()){
+            Object entryValue = map.get(key);
+            if(entryValue == null){
+                result.put(key, null);
+                continue;
+            }
+            if(shape == GenericInfo.SINGLE){
+                result.put(key, MapperUtil.fromDBObject(elementClass, (DBObject)entryValue));
+            }else if(shape == GenericInfo.ARRAY){
+                result.put(key, decodeArray(entryValue, elementClass));
+            }else{
+                List list = decodeCollection(entryValue, elementClass);
+                Object coll = GenericInfo.toContainer(valueInfo.getContainer(), list);
+                if(coll != null){
+                    result.put(key, coll);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeEnumArray(Object arr){
+        int len = Array.getLength(arr);
+        List<String> result = new ArrayList<>(len);
+        for(int i=0; i<len; i++){
+            Object o = Array.get(arr, i);
+            if(o != null){
+                result.add(o.toString());
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeArray(Object arr){
+        int len = Array.getLength(arr);
+        List<DBObject> result = new ArrayList<>(len);
+        for(int i=0; i<len; i++){
+            Object o = Array.get(arr, i);
+            if(o != null){
+                result.add(MapperUtil.toDBObject(o));
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeEnumCollection(Object coll){
+        Collection collection = (Collection)coll;
+        List<String> result = new ArrayList<>(collection.size());
+        for(Object o : collection){
+            if(o != null){
+                result.add(o.toString());
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeCollection(Object coll){
+        Collection collection = (Collection)coll;
+        List<DBObject> result = new ArrayList<>(collection.size());
+        for(Object o : collection){
+            if(o != null){
+                result.add(MapperUtil.toDBObject(o));
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeMap(Object value){
+        Map map = (Map)value;
+        Map result = new HashMap();
+        int shape = valueInfo.getShape();
+        for(Object key : map.keySet()){
+            Object entryValue = map.get(key);
+            if(entryValue == null){
+                result.put(key, null);
+                continue;
+            }
+            if(shape == GenericInfo.SINGLE){
+                result.put(key, MapperUtil.toDBObject(entryValue));
+            }else if(shape == GenericInfo.ARRAY){
+                result.put(key, encodeArray(entryValue));
+            }else{
+                result.put(key, encodeCollection(entryValue));
+            }
+        }
+        return result;
+    }
+
+    public boolean isArray() {
+        return isArray;
+    }
+
+    public boolean isMap() {
+        return isMap;
+    }
+
+    public Class<?> getElementType() {
+        return elementType;
+    }
+
+    public boolean isEnum() {
+        return isEnum;
+    }
+    
+    public GenericInfo getValueInfo() {
+        return valueInfo;
+    }
+    
+}
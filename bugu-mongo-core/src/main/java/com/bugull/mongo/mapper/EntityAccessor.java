@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.cache.FieldsCache;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accessors of all the fields of a class, including the @Ignore and inherited fields.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class EntityAccessor {
+    
+    private final Class<?> clazz;
+    private final FieldAccessor[] accessors;
+    private final Map<String, FieldAccessor> accessorMap;
+    
+    public EntityAccessor(Class<?> clazz){
+        this.clazz = clazz;
+        Field[] fields = FieldsCache.getInstance().get(clazz);
+        accessors = new FieldAccessor[fields.length];
+        accessorMap = new HashMap<>();
+        for(int i=0; i<fields.length; i++){
+            accessors[i] = FieldAccessor.create(fields[i]);
+            //the field declared in sub class hides the one in super class
+            String name = fields[i].getName();
+            if(!accessorMap.containsKey(name)){
+                accessorMap.put(name, accessors[i]);
+            }
+        }
+    }
+
+    public Class<?> getEntityClass() {
+        return clazz;
+    }
+
+    /**
+     * <p>Note: do not modify the returned array.</p>
+     * @return 
+     */
+    public FieldAccessor[] getAccessors() {
+        return accessors;
+    }
+    
+    /**
+     * Get accessor by java field name.
+     * @param fieldName
+     * @return null if the field does not exist
+     */
+    public FieldAccessor getAccessor(String fieldName){
+        return accessorMap.get(fieldName);
+    }
+    
+    /**
+     * Get accessor of a field of this class or its super class.
+     * @param field
+     * @return null if the field does not belong to this class
+     */
+    public FieldAccessor getAccessor(Field field){
+        FieldAccessor accessor = accessorMap.get(field.getName());
+        if(accessor!=null && accessor.getField().equals(field)){
+            return accessor;
+        }
+        //the field is hidden by a sub class field with the same name
+        for(FieldAccessor fa : accessors){
+            if(fa.getField().equals(field)){
+                return fa;
+            }
+        }
+        return null;
+    }
+    
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.annotations.CustomCodec;
+import com.bugull.mongo.annotations.Embed;
+import com.bugull.mongo.annotations.EmbedList;
+import com.bugull.mongo.annotations.Id;
+import com.bugull.mongo.annotations.Ignore;
+import com.bugull.mongo.annotations.Property;
+import com.bugull.mongo.annotations.Ref;
+import com.bugull.mongo.annotations.RefList;
+import com.bugull.mongo.cache.FieldsCache;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable mapping plan of an entity class, built once per class.
+ * 
+ * <p>It contains a FieldPlan for each mapped field. Converting between DBObject and entity is just a loop over the plan.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class EntityCodecPlan {
+    
+    private final Class<?> clazz;
+    private final FieldPlan[] fields;
+    private final FieldPlan idField;
+    private final FieldPlan[] lazyFields;
+    private final Map<String, FieldPlan> fieldMap;
+    private final Map<String, FieldPlan> columnMap;
+    private final boolean hasCustomField;
+    
+    public EntityCodecPlan(Class<?> clazz){
+        this.clazz = clazz;
+        List<FieldPlan> list = new ArrayList<>();
+        List<FieldPlan> lazyList = new ArrayList<>();
+        Map<String, FieldPlan> map = new HashMap<>();
+        Map<String, FieldPlan> columns = new HashMap<>();
+        FieldPlan id = null;
+        boolean custom = false;
+        for(Field field : FieldsCache.getInstance().get(clazz)){
+            FieldPlan fp = create(clazz, field);
+            if(fp == null){
+                continue;
+            }
+            if(fp.getKind() == FieldKind.ID){
+                id = fp;
+            }
+            else if(fp.getKind() == FieldKind.CUSTOM){
+                custom = true;
+            }
+            list.add(fp);
+            if(isLazy(field)){
+                lazyList.add(fp);
+            }
+            if(!columns.containsKey(fp.getColumnName())){
+                columns.put(fp.getColumnName(), fp);
+            }
+            //the field declared in sub class hides the one in super class
+            if(!map.containsKey(field.getName())){
+                map.put(field.getName(), fp);
+            }
+        }
+        this.fields = list.toArray(new FieldPlan[list.size()]);
+        this.idField = id;
+        this.lazyFields = lazyList.toArray(new FieldPlan[lazyList.size()]);
+        this.fieldMap = Collections.unmodifiableMap(map);
+        this.columnMap = Collections.unmodifiableMap(columns);
+        this.hasCustomField = custom;
+    }
+    
+    private static FieldPlan create(Class<?> clazz, Field field){
+        FieldPlan fp;
+        if(field.getAnnotation(Id.class) != null){
+            fp = new IdFieldPlan(clazz, field);
+        }
+        else if(field.getAnnotation(Embed.class) != null){
+            fp = new EmbedFieldPlan(field);
+        }
+        else if(field.getAnnotation(EmbedList.class) != null){
+            fp = new EmbedListFieldPlan(field);
+        }
+        else if(field.getAnnotation(Ref.class) != null){
+            fp = new RefFieldPlan(field);
+        }
+        else if(field.getAnnotation(RefList.class) != null){
+            fp = new RefListFieldPlan(field);
+        }
+        else if(field.getAnnotation(Ignore.class) != null){
+            fp = null;
+        }
+        else if(field.getAnnotation(CustomCodec.class) != null){
+            fp = new CustomFieldPlan(field);
+        }
+        else{
+            fp = new PropertyFieldPlan(field);  //no mapping annotation or @Property
+        }
+        return fp;
+    }
+
+    private static boolean isLazy(Field field){
+        Property property = field.getAnnotation(Property.class);
+        if(property != null){
+            return property.lazy();
+        }
+        Embed embed = field.getAnnotation(Embed.class);
+        if(embed != null){
+            return embed.lazy();
+        }
+        EmbedList embedList = field.getAnnotation(EmbedList.class);
+        if(embedList != null){
+            return embedList.lazy();
+        }
+        return false;
+    }
+
+    public Class<?> getEntityClass() {
+        return clazz;
+    }
+
+    /**
+     * All the mapped fields, @Ignore fields are not included.
+     * <p>Note: do not modify the returned array.</p>
+     * @return 
+     */
+    public FieldPlan[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Get the plan of @Id field.
+     * @return null if the class has no @Id field, such as embed object.
+     */
+    public FieldPlan getIdField() {
+        return idField;
+    }
+    
+    /**
+     * The lazy @Property, @Embed and @EmbedList fields, which are not returned by default.
+     * <p>Note: do not modify the returned array.</p>
+     * @return 
+     */
+    public FieldPlan[] getLazyFields() {
+        return lazyFields;
+    }
+    
+    /**
+     * Get the plan of field by java field name.
+     * @param fieldName
+     * @return null if not exists, or the field is @Ignore
+     */
+    public FieldPlan getField(String fieldName) {
+        return fieldMap.get(fieldName);
+    }
+    
+    /**
+     * Get the plan of field by the column name in mongoDB.
+     * @param columnName
+     * @return null if no field is mapped to the column
+     */
+    public FieldPlan getFieldByColumn(String columnName) {
+        return columnMap.get(columnName);
+    }
+    
+    /**
+     * Check if any field has @CustomCodec. 
+     * <p>Custom decoder works on the whole DBObject, so the document has to be read as DBObject first.</p>
+     * @return 
+     */
+    public boolean hasCustomField() {
+        return hasCustomField;
+    }
+    
+}
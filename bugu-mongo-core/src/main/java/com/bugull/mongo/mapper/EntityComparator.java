@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.cache.CodecPlanCache;
+import com.bugull.mongo.utils.SortUtil;
+import com.mongodb.DBObject;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+
+/**
+ * Sort the loaded entities in memory, the same as the sort string of @RefList. 
+ * 
+ * <p>Referenced entities of many documents are loaded in one query, so they can't be sorted by mongoDB for each document. 
+ * It's also used to keep the order of cached data.</p>
+ * 
+ * <p>Values are compared in the BSON comparison order of mongoDB: null (or missing) &lt; numbers &lt; strings &lt; objects &lt; arrays 
+ * &lt; binary data &lt; ObjectId &lt; boolean &lt; date &lt; timestamp &lt; regular expression. 
+ * Numbers of different types are compared by their exact value, and NaN is less than any other number. 
+ * Strings are compared by unicode code point, the same as mongoDB without collation, 
+ * so the order is different from a collection with collation. 
+ * Objects and arrays are compared by their string value, which is not the same as mongoDB does.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public final class EntityComparator implements Comparator<Object> {
+    
+    //the BSON comparison order
+    private static final int MIN_KEY = 0;
+    private static final int NULL = 1;
+    private static final int NUMBER = 2;
+    private static final int STRING = 3;
+    private static final int OBJECT = 4;
+    private static final int ARRAY = 5;
+    private static final int BINARY = 6;
+    private static final int OBJECT_ID = 7;
+    private static final int BOOLEAN = 8;
+    private static final int DATE = 9;
+    private static final int TIMESTAMP = 10;
+    private static final int REGEX = 11;
+    private static final int MAX_KEY = 12;
+    
+    private final String[][] paths;
+    private final int[] orders;
+    
+    public EntityComparator(String orderBy){
+        this(SortUtil.getSort(orderBy));
+    }
+    
+    /**
+     * @param sort such as {name:1, age:-1}
+     */
+    public EntityComparator(DBObject sort){
+        Set<String> keys = sort.keySet();
+        paths = new String[keys.size()][];
+        orders = new int[keys.size()];
+        int i = 0;
+        for(String key : keys){
+            paths[i] = key.split("\\.");
+            Object order = sort.get(key);
+            orders[i] = (order instanceof Number && ((Number)order).intValue() < 0) ? -1 : 1;
+            i++;
+        }
+    }
+
+    @Override
+    public int compare(Object o1, Object o2) {
+        for(int i=0; i<paths.length; i++){
+            int result = compareValue(getValue(o1, paths[i]), getValue(o2, paths[i]));
+            if(result != 0){
+                return result * orders[i];
+            }
+        }
+        return 0;
+    }
+    
+    private static Object getValue(Object obj, String[] path){
+        Object value = obj;
+        for(String name : path){
+            if(value == null){
+                return null;
+            }
+            EntityCodecPlan plan = CodecPlanCache.getInstance().get(value.getClass());
+            FieldPlan fp = plan.getFieldByColumn(name);
+            if(fp == null){
+                fp = plan.getField(name);
+            }
+            if(fp == null){
+                return null;
+            }
+            value = fp.getAccessor().get(value);
+            //compare the id as it's saved in mongoDB, e.g. the auto increased id is a number
+            if(value != null && fp.getKind() == FieldKind.ID){
+                value = ((IdFieldPlan)fp).toDbId(value);
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Compare two field values, in the BSON comparison order. Null is the smallest. Enums are compared by name.
+     * @param v1
+     * @param v2
+     * @return 
+     */
+    public static int compareValue(Object v1, Object v2){
+        int t1 = typeOrder(v1);
+        int t2 = typeOrder(v2);
+        if(t1 != t2){
+            return t1 < t2 ? -1 : 1;
+        }
+        switch(t1){
+            case NULL:
+            case MIN_KEY:
+            case MAX_KEY:
+                return 0;
+            case NUMBER:
+                return compareNumber(v1, v2);
+            case STRING:
+                return compareString(toStringValue(v1), toStringValue(v2));
+            case OBJECT_ID:
+                return ((ObjectId)v1).compareTo((ObjectId)v2);
+            case BOOLEAN:
+                return Boolean.compare((Boolean)v1, (Boolean)v2);
+            case DATE:
+                return Long.compare(((Date)v1).getTime(), ((Date)v2).getTime());
+            case TIMESTAMP:
+                return ((BSONTimestamp)v1).compareTo((BSONTimestamp)v2);
+            default:
+                if(v1 instanceof Comparable && v1.getClass() == v2.getClass()){
+                    return ((Comparable)v1).compareTo(v2);
+                }
+                return compareString(v1.toString(), v2.toString());
+        }
+    }
+    
+    private static int typeOrder(Object value){
+        if(value == null){
+            return NULL;
+        }
+        if(value instanceof Number || value instanceof Decimal128){
+            return NUMBER;
+        }
+        //enum and char are saved as string
+        if(value instanceof String || value instanceof Enum || value instanceof Character){
+            return STRING;
+        }
+        if(value instanceof ObjectId){
+            return OBJECT_ID;
+        }
+        if(value instanceof Boolean){
+            return BOOLEAN;
+        }
+        if(value instanceof Date){
+            return DATE;
+        }
+        if(value instanceof BSONTimestamp){
+            return TIMESTAMP;
+        }
+        if(value instanceof byte[] || value instanceof Binary){
+            return BINARY;
+        }
+        if(value instanceof Collection || value.getClass().isArray()){
+            return ARRAY;
+        }
+        if(value instanceof Pattern){
+            return REGEX;
+        }
+        if(value instanceof MinKey){
+            return MIN_KEY;
+        }
+        if(value instanceof MaxKey){
+            return MAX_KEY;
+        }
+        //Map, DBObject and embedded entity
+        return OBJECT;
+    }
+    
+    private static String toStringValue(Object value){
+        return value instanceof Enum ? ((Enum)value).name() : value.toString();
+    }
+    
+    private static int compareNumber(Object n1, Object n2){
+        boolean nan1 = isNaN(n1);
+        boolean nan2 = isNaN(n2);
+        if(nan1 || nan2){
+            //NaN is less than any other number
+            return nan1 == nan2 ? 0 : (nan1 ? -1 : 1);
+        }
+        if(isIntegral(n1) && isIntegral(n2)){
+            return Long.compare(((Number)n1).longValue(), ((Number)n2).longValue());
+        }
+        if(isFloating(n1) && isFloating(n2)){
+            double d1 = ((Number)n1).doubleValue();
+            double d2 = ((Number)n2).doubleValue();
+            //0.0 and -0.0 are equal
+            return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+        }
+        //mixed types, e.g. long and double, compare the exact value
+        int inf1 = infinity(n1);
+        int inf2 = infinity(n2);
+        if(inf1 != 0 || inf2 != 0){
+            return Integer.compare(inf1, inf2);
+        }
+        return toBigDecimal(n1).compareTo(toBigDecimal(n2));
+    }
+    
+    private static boolean isIntegral(Object n){
+        return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte 
+                || n instanceof AtomicInteger || n instanceof AtomicLong;
+    }
+    
+    private static boolean isFloating(Object n){
+        return n instanceof Double || n instanceof Float;
+    }
+    
+    private static boolean isNaN(Object n){
+        if(n instanceof Decimal128){
+            return ((Decimal128)n).isNaN();
+        }
+        return isFloating(n) && Double.isNaN(((Number)n).doubleValue());
+    }
+    
+    /**
+     * @return 1 for positive infinity, -1 for negative infinity, otherwise 0
+     */
+    private static int infinity(Object n){
+        if(n instanceof Decimal128){
+            Decimal128 d = (Decimal128)n;
+            return d.isInfinite() ? (d.isNegative() ? -1 : 1) : 0;
+        }
+        if(isFloating(n)){
+            double d = ((Number)n).doubleValue();
+            if(Double.isInfinite(d)){
+                return d > 0 ? 1 : -1;
+            }
+        }
+        return 0;
+    }
+    
+    private static BigDecimal toBigDecimal(Object n){
+        if(n instanceof BigDecimal){
+            return (BigDecimal)n;
+        }
+        if(n instanceof Decimal128){
+            try{
+                return ((Decimal128)n).bigDecimalValue();
+            }catch(ArithmeticException ex){
+                //negative zero
+                return BigDecimal.ZERO;
+            }
+        }
+        if(n instanceof BigInteger){
+            return new BigDecimal((BigInteger)n);
+        }
+        Number num = (Number)n;
+        if(isIntegral(num)){
+            return BigDecimal.valueOf(num.longValue());
+        }
+        return new BigDecimal(num.doubleValue());
+    }
+    
+    /**
+     * Compare by unicode code point, which is the byte order of UTF-8, as mongoDB does without collation.
+     */
+    private static int compareString(String s1, String s2){
+        int len1 = s1.length();
+        int len2 = s2.length();
+        int i = 0;
+        while(i < len1 && i < len2){
+            int c1 = s1.codePointAt(i);
+            int c2 = s2.codePointAt(i);
+            if(c1 != c2){
+                return c1 < c2 ? -1 : 1;
+            }
+            i += Character.charCount(c1);
+        }
+        if(i < len1){
+            return 1;
+        }
+        return i < len2 ? -1 : 0;
+    }
+    
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import java.lang.reflect.Field;
+
+/**
+ * Fast accessor of an entity field, created once per field.
+ * 
+ * <p>The implementation is based on reflection. A MethodHandle held in an accessor object is not a JIT constant, 
+ * so it is not inlined, and it is not faster than Field.get() and Field.set(). See FieldAccessorPerformanceTest.</p>
+ * 
+ * <p>The typed methods, such as getInt() and setInt(), read and write primitive fields without boxing. 
+ * They can only be used on the field of the exact primitive type.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class FieldAccessor {
+    
+    protected final Field field;
+    
+    protected FieldAccessor(Field field){
+        this.field = field;
+    }
+    
+    /**
+     * Create accessor for a field. The field must be accessible.
+     * @param field
+     * @return 
+     */
+    public static FieldAccessor create(Field field){
+        return new ReflectFieldAccessor(field);
+    }
+    
+    public Field getField(){
+        return field;
+    }
+    
+    public abstract Object get(Object obj);
+    
+    public abstract void set(Object obj, Object value);
+    
+    /**
+     * Copy the field value from src to target, without boxing if the field is primitive.
+     * @param src
+     * @param target 
+     */
+    public abstract void copy(Object src, Object target);
+    
+    public abstract int getInt(Object obj);
+    
+    public abstract void setInt(Object obj, int value);
+    
+    public abstract long getLong(Object obj);
+    
+    public abstract void setLong(Object obj, long value);
+    
+    public abstract double getDouble(Object obj);
+    
+    public abstract void setDouble(Object obj, double value);
+    
+    public abstract float getFloat(Object obj);
+    
+    public abstract void setFloat(Object obj, float value);
+    
+    public abstract short getShort(Object obj);
+    
+    public abstract void setShort(Object obj, short value);
+    
+    public abstract byte getByte(Object obj);
+    
+    public abstract void setByte(Object obj, byte value);
+    
+    public abstract boolean getBoolean(Object obj);
+    
+    public abstract void setBoolean(Object obj, boolean value);
+    
+    public abstract char getChar(Object obj);
+    
+    public abstract void setChar(Object obj, char value);
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.cache.AccessorCache;
+import com.mongodb.DBObject;
+import java.lang.reflect.Field;
+
+/**
+ * Precompiled mapping of a single entity field. 
+ * 
+ * <p>A FieldPlan is created once per field, and holds everything resolved from the annotations, 
+ * so that converting documents needs no annotation lookup and no per-field allocation.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class FieldPlan {
+    
+    protected final Field field;
+    protected final String columnName;
+    protected final FieldKind kind;
+    protected final FieldAccessor accessor;
+    
+    protected FieldPlan(Field field, String columnName, FieldKind kind){
+        this.field = field;
+        this.columnName = columnName;
+        this.kind = kind;
+        this.accessor = AccessorCache.getInstance().get(field.getDeclaringClass()).getAccessor(field);
+    }
+    
+    /**
+     * Convert the value from mongoDB to the java value of this field.
+     * @param value not null
+     * @param withoutCascade
+     * @return 
+     */
+    public abstract Object decodeValue(Object value, boolean withoutCascade);
+    
+    /**
+     * Convert the java value of this field to the value saved in mongoDB.
+     * @param value not null
+     * @param withoutCascade
+     * @return 
+     */
+    public abstract Object encodeValue(Object value, boolean withoutCascade);
+    
+    /**
+     * Read the column from DBObject, and set the decoded value to the entity.
+     * @param obj
+     * @param dbo
+     * @param withoutCascade 
+     */
+    public void decode(Object obj, DBObject dbo, boolean withoutCascade){
+        Object value = dbo.get(columnName);
+        if(value != null){
+            decodeTo(obj, value, withoutCascade);
+        }
+    }
+    
+    /**
+     * Set the decoded value to the entity.
+     * <p>Reference fields override it, to load the referenced entities in batch.</p>
+     * @param obj
+     * @param value not null
+     * @param withoutCascade 
+     */
+    public void decodeTo(Object obj, Object value, boolean withoutCascade){
+        accessor.set(obj, decodeValue(value, withoutCascade));
+    }
+    
+    /**
+     * Read the field of the entity, and put the encoded value to DBObject.
+     * @param obj
+     * @param dbo
+     * @param withoutCascade 
+     */
+    public void encode(Object obj, DBObject dbo, boolean withoutCascade){
+        Object value = accessor.get(obj);
+        if(value != null){
+            dbo.put(columnName, encodeValue(value, withoutCascade));
+        }
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public FieldKind getKind() {
+        return kind;
+    }
+
+    public FieldAccessor getAccessor() {
+        return accessor;
+    }
+    
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.utils.DataType;
+import com.bugull.mongo.utils.FieldUtil;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Resolved generic type information of an element, such as the T of List&lt;T&gt; or the V of Map&lt;K,V&gt;.
+ * 
+ * <p>The element may be an array, a collection, or a single object.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public final class GenericInfo {
+    
+    public static final int SINGLE = 0;
+    public static final int ARRAY = 1;
+    public static final int COLLECTION = 2;
+    
+    public static final int CONTAINER_NONE = 0;
+    public static final int CONTAINER_LIST = 1;
+    public static final int CONTAINER_SET = 2;
+    public static final int CONTAINER_QUEUE = 3;
+    
+    private final int shape;
+    private final Class<?> containerType;
+    private final int container;
+    private final Class<?> elementType;
+    
+    private GenericInfo(int shape, Class<?> containerType, Class<?> elementType){
+        this.shape = shape;
+        this.containerType = containerType;
+        this.container = containerType == null ? CONTAINER_NONE : containerOf(containerType);
+        this.elementType = elementType;
+    }
+    
+    public static GenericInfo of(Type type){
+        //in JDK6, array type is instanceof GenericArrayType
+        if(type instanceof GenericArrayType){
+            GenericArrayType g = (GenericArrayType)type;
+            return new GenericInfo(ARRAY, null, (Class)g.getGenericComponentType());
+        }
+        if(type instanceof ParameterizedType){
+            ParameterizedType p = (ParameterizedType)type;
+            return new GenericInfo(COLLECTION, (Class)p.getRawType(), (Class)p.getActualTypeArguments()[0]);
+        }
+        //in JDK8, array type is a class, not GenericArrayType
+        Class<?> actualType = (type instanceof Class) ? (Class)type : FieldUtil.getClassOfType(type);
+        if(actualType.isArray()){
+            return new GenericInfo(ARRAY, null, actualType.getComponentType());
+        }
+        return new GenericInfo(SINGLE, null, actualType);
+    }
+    
+    /**
+     * Check which kind of collection should be created for the type.
+     * @param type
+     * @return 
+     */
+    public static int containerOf(Class<?> type){
+        if(DataType.isListType(type) || DataType.isCollectionType(type)){
+            return CONTAINER_LIST;
+        }
+        if(DataType.isSetType(type)){
+            return CONTAINER_SET;
+        }
+        if(DataType.isQueueType(type)){
+            return CONTAINER_QUEUE;
+        }
+        return CONTAINER_NONE;
+    }
+    
+    /**
+     * Convert a decoded list to the collection type of the field.
+     * @param container
+     * @param list
+     * @return null if the container type is not supported
+     */
+    public static Object toContainer(int container, List list){
+        if(list == null){
+            return null;
+        }
+        switch(container){
+            case CONTAINER_LIST:
+                return list;
+            case CONTAINER_SET:
+                return new HashSet(list);
+            case CONTAINER_QUEUE:
+                return new LinkedList(list);
+            default:
+                return null;
+        }
+    }
+
+    public int getShape() {
+        return shape;
+    }
+
+    public Class<?> getContainerType() {
+        return containerType;
+    }
+
+    public int getContainer() {
+        return container;
+    }
+
+    public Class<?> getElementType() {
+        return elementType;
+    }
+    
+}
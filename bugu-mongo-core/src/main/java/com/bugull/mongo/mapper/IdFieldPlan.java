@@ -14,13 +14,14 @@
  * limitations under the License.
  */
 
-package com.bugull.mongo.encoder;
+package com.bugull.mongo.mapper;
 
 import com.bugull.mongo.annotations.Id;
-import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.annotations.IdType;
+import com.bugull.mongo.cache.SequenceCache;
 import com.bugull.mongo.exception.IdException;
-import com.bugull.mongo.access.InternalDao;
 import com.bugull.mongo.utils.Operator;
+import com.mongodb.DBObject;
 import java.lang.reflect.Field;
 import org.bson.types.ObjectId;
 
@@ -28,29 +29,50 @@ import org.bson.types.ObjectId;
  *
  * @author Frank Wen(xbwen@hotmail.com)
  */
-public class IdEncoder extends AbstractEncoder {
+public class IdFieldPlan extends FieldPlan {
     
-    private final Id id;
+    private final Class<?> clazz;
+    private final IdType idType;
+    private final long start;
+    private final int block;
     
-    public IdEncoder(Object obj, Field field){
-        super(obj, field);
-        id = field.getAnnotation(Id.class);
+    public IdFieldPlan(Class<?> clazz, Field field){
+        super(field, Operator.ID, FieldKind.ID);
+        this.clazz = clazz;
+        Id id = field.getAnnotation(Id.class);
+        this.idType = id.type();
+        this.start = id.start();
+        this.block = id.block();
     }
     
     @Override
-    public boolean isNullField(){
-        return false;
+    public Object decodeValue(Object value, boolean withoutCascade){
+        return value.toString();
     }
     
     @Override
-    public String getFieldName(){
-        return Operator.ID;
+    public Object encodeValue(Object value, boolean withoutCascade){
+        return toDbId(value);
     }
     
+    /**
+     * The id is always encoded, even if it's null.
+     */
     @Override
-    public Object encode() {
+    public void encode(Object obj, DBObject dbo, boolean withoutCascade){
+        Object value = accessor.get(obj);
+        dbo.put(Operator.ID, toDbId(value));
+    }
+    
+    /**
+     * Convert the id of entity to the value saved in mongoDB.
+     * <p>If the id is null, a new id is generated for AUTO_GENERATE and AUTO_INCREASE.</p>
+     * @param value
+     * @return ObjectId, Long or String, depends on the IdType
+     */
+    public Object toDbId(Object value){
         Object result = null;
-        switch(id.type()){
+        switch(idType){
             case AUTO_GENERATE:
                 if(value == null){
                     result = new ObjectId();
@@ -60,13 +82,7 @@ public class IdEncoder extends AbstractEncoder {
                 break;
             case AUTO_INCREASE:
                 if(value == null){
-                    InternalDao dao = DaoCache.getInstance().get(clazz);
-                    long max = dao.getMaxId();
-                    if(max == 0){
-                        result = id.start();
-                    }else{
-                        result = max + 1L;
-                    }
+                    result = SequenceCache.getInstance().next(clazz);
                 }else{
                     result = Long.parseLong(value.toString());
                 }
@@ -81,5 +97,17 @@ public class IdEncoder extends AbstractEncoder {
         }
         return result;
     }
+
+    public IdType getIdType() {
+        return idType;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public int getBlock() {
+        return block;
+    }
     
 }
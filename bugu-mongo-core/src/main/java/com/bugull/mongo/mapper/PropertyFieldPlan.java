@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.Property;
+import com.bugull.mongo.utils.DataType;
+import com.mongodb.DBObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.bson.types.Decimal128;
+
+/**
+ * Plan for field without mapping annotation, or with @Property.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class PropertyFieldPlan extends FieldPlan {
+    
+    //how to convert the value from mongoDB, resolved once from the field type
+    static final int OTHER = 0;
+    static final int BYTES = 1;
+    static final int ARRAY = 2;
+    static final int ENUM = 3;
+    static final int FLOAT = 4;
+    static final int SHORT = 5;
+    static final int BYTE = 6;
+    static final int COLLECTION = 7;
+    static final int MAP = 8;
+    static final int CHAR = 9;
+    static final int TIMESTAMP = 10;
+    static final int BIG_DECIMAL = 11;
+    
+    private final Class<?> type;
+    private final int convert;
+    private final int container;
+    private final GenericInfo elementInfo;  //the T of Collection<T>, or the V of Map<K,V>
+    
+    public PropertyFieldPlan(Field field){
+        super(field, columnName(field), FieldKind.PROPERTY);
+        type = field.getType();
+        container = GenericInfo.containerOf(type);
+        if(type.isArray()){
+            convert = DataType.isByte(type.getComponentType()) ? BYTES : ARRAY;
+            elementInfo = null;
+        }
+        else if(type.isEnum()){
+            convert = ENUM;
+            elementInfo = null;
+        }
+        else if(DataType.isFloat(type) || DataType.isFloatObject(type)){
+            convert = FLOAT;
+            elementInfo = null;
+        }
+        else if(DataType.isShort(type) || DataType.isShortObject(type)){
+            convert = SHORT;
+            elementInfo = null;
+        }
+        else if(DataType.isByte(type) || DataType.isByteObject(type)){
+            convert = BYTE;
+            elementInfo = null;
+        }
+        else if(container != GenericInfo.CONTAINER_NONE){
+            convert = COLLECTION;
+            elementInfo = GenericInfo.of(actualTypeArguments(field)[0]);
+        }
+        else if(DataType.isMapType(type)){
+            convert = MAP;
+            elementInfo = GenericInfo.of(actualTypeArguments(field)[1]);
+        }
+        else if(DataType.isChar(type)){
+            convert = CHAR;
+            elementInfo = null;
+        }
+        else if(DataType.isTimestamp(type)){
+            convert = TIMESTAMP;
+            elementInfo = null;
+        }
+        else if(DataType.isBigDecimal(type)){
+            convert = BIG_DECIMAL;
+            elementInfo = null;
+        }
+        else{
+            //for others: String, int/Integer, long/Long, double/Double, boolean/Boolean and Date
+            convert = OTHER;
+            elementInfo = null;
+        }
+    }
+    
+    private static String columnName(Field field){
+        Property property = field.getAnnotation(Property.class);
+        if(property != null && !property.name().equals(Default.NAME)){
+            return property.name();
+        }
+        return field.getName();
+    }
+    
+    private static Type[] actualTypeArguments(Field field){
+        ParameterizedType paramType = (ParameterizedType)field.getGenericType();
+        return paramType.getActualTypeArguments();
+    }
+    
+    /**
+     * Primitive fields are set by the typed accessor, without boxing the converted value again.
+     */
+    @Override
+    public void decode(Object obj, DBObject dbo, boolean withoutCascade){
+        if(!type.isPrimitive()){
+            super.decode(obj, dbo, withoutCascade);
+            return;
+        }
+        Object value = dbo.get(columnName);
+        if(value == null){
+            return;
+        }
+        if(type == int.class){
+            accessor.setInt(obj, number(value).intValue());
+        }
+        else if(type == long.class){
+            accessor.setLong(obj, number(value).longValue());
+        }
+        else if(type == double.class){
+            accessor.setDouble(obj, number(value).doubleValue());
+        }
+        else if(type == boolean.class){
+            accessor.setBoolean(obj, Boolean.parseBoolean(value.toString()));
+        }
+        else if(type == float.class){
+            accessor.setFloat(obj, number(value).floatValue());
+        }
+        else if(type == short.class){
+            accessor.setShort(obj, number(value).shortValue());
+        }
+        else if(type == byte.class){
+            accessor.setByte(obj, number(value).byteValue());
+        }
+        else if(type == char.class){
+            accessor.setChar(obj, value.toString().charAt(0));
+        }
+    }
+    
+    @Override
+    public Object decodeValue(Object value, boolean withoutCascade){
+        //When value is number, it's default to Double and Integer, must cast to Float, Short and byte.
+        //It's OK to set integer value to long field.
+        switch(convert){
+            case BYTES:
+                return (byte[])value;
+            case ARRAY:
+                return convertToArrayValue(type.getComponentType(), (List)value);
+            case ENUM:
+                return Enum.valueOf((Class<Enum>)type, (String)value);
+            case FLOAT:
+                return number(value).floatValue();
+            case SHORT:
+                return number(value).shortValue();
+            case BYTE:
+                return number(value).byteValue();
+            case COLLECTION:
+                return decodeCollection((List)value);
+            case MAP:
+                return decodeMap((Map)value);
+            case CHAR:
+                //default type is String "X"
+                return value.toString().charAt(0);
+            case TIMESTAMP:
+                //default type is Date
+                return new Timestamp(((Date)value).getTime());
+            case BIG_DECIMAL:
+                //defualt type is Decimal128
+                return ((Decimal128)value).bigDecimalValue();
+            default:
+                return value;
+        }
+    }
+    
+    @Override
+    public Object encodeValue(Object value, boolean withoutCascade){
+        //if the field is enum type, save as String
+        if(convert == ENUM){
+            return value.toString();
+        }
+        return value;
+    }
+    
+    private Object decodeCollection(List src){
+        //default type is com.mongodb.BasicDBList(extends ArrayList)
+        Collection target;
+        switch(container){
+            case GenericInfo.CONTAINER_SET:
+                target = new HashSet();
+                break;
+            case GenericInfo.CONTAINER_QUEUE:
+                target = new LinkedList();
+                break;
+            default:
+                target = new ArrayList(src.size());
+                break;
+        }
+        Class elementType = elementInfo.getElementType();
+        switch(elementInfo.getShape()){
+            case GenericInfo.ARRAY:
+                //each element of collection is array
+                for(Object o : src){
+                    target.add(convertToArrayValue(elementType, (List)o));
+                }
+                break;
+            case GenericInfo.COLLECTION:
+                //each element of collection is still a collection
+                int tContainer = elementInfo.getContainer();
+                for(Object o : src){
+                    target.add(newCollection(tContainer, elementType, (List)o));
+                }
+                break;
+            default:
+                //each element of collection is primitive
+                moveCollectionElement(elementType, src, target);
+                break;
+        }
+        return target;
+    }
+    
+    private Map decodeMap(Map src){
+        Class elementType = elementInfo.getElementType();
+        Set<Entry> entrySet = src.entrySet();
+        switch(elementInfo.getShape()){
+            case GenericInfo.ARRAY:{
+                Map map = new HashMap();
+                for(Entry entry : entrySet){
+                    map.put(entry.getKey(), convertToArrayValue(elementType, (List)entry.getValue()));
+                }
+                return map;
+            }
+            case GenericInfo.COLLECTION:{
+                Map map = new HashMap();
+                int vContainer = elementInfo.getContainer();
+                for(Entry entry : entrySet){
+                    map.put(entry.getKey(), newCollection(vContainer, elementType, (List)entry.getValue()));
+                }
+                return map;
+            }
+            default:
+                //if the V is privitive, the map has no need to convert.
+                //whatever the V is Short, Float, BigDecimal or others.
+                return src;
+        }
+    }
+    
+    private Collection newCollection(int container, Class elementType, List src){
+        Collection target;
+        switch(container){
+            case GenericInfo.CONTAINER_SET:
+                target = new HashSet();
+                break;
+            case GenericInfo.CONTAINER_QUEUE:
+                target = new LinkedList();
+                break;
+            default:
+                target = new ArrayList(src.size());
+                break;
+        }
+        moveCollectionElement(elementType, src, target);
+        return target;
+    }
+    
+    private Object convertToArrayValue(Class comType, List val){
+        int size = val.size();
+        if(comType.isArray()){
+            //if each element is still an arry
+            Object arr = Array.newInstance(comType, size);
+            Class subType = comType.getComponentType();
+            for(int i=0; i<size; i++){
+                Array.set(arr, i, convertToArrayValue(subType, (List)val.get(i)));
+            }
+            return arr;
+        }
+        else if(DataType.isString(comType)){
+            String[] arr = new String[size];
+            for(int i=0; i<size; i++){
+                arr[i] = val.get(i).toString();
+            }
+            return arr;
+        }
+        else if(DataType.isInteger(comType)){
+            int[] arr = new int[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).intValue();
+            }
+            return arr;
+        }
+        else if(DataType.isIntegerObject(comType)){
+            Integer[] arr = new Integer[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).intValue();
+            }
+            return arr;
+        }
+        else if(DataType.isLong(comType)){
+            long[] arr = new long[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).longValue();
+            }
+            return arr;
+        }
+        else if(DataType.isLongObject(comType)){
+            Long[] arr = new Long[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).longValue();
+            }
+            return arr;
+        }
+        else if(DataType.isShort(comType)){
+            short[] arr = new short[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).shortValue();
+            }
+            return arr;
+        }
+        else if(DataType.isShortObject(comType)){
+            Short[] arr = new Short[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).shortValue();
+            }
+            return arr;
+        }
+        else if(DataType.isByteObject(comType)){
+            Byte[] arr = new Byte[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).byteValue();
+            }
+            return arr;
+        }
+        else if(DataType.isFloat(comType)){
+            float[] arr = new float[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).floatValue();
+            }
+            return arr;
+        }
+        else if(DataType.isFloatObject(comType)){
+            Float[] arr = new Float[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).floatValue();
+            }
+            return arr;
+        }
+        else if(DataType.isDouble(comType)){
+            double[] arr = new double[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).doubleValue();
+            }
+            return arr;
+        }
+        else if(DataType.isDoubleObject(comType)){
+            Double[] arr = new Double[size];
+            for(int i=0; i<size; i++){
+                arr[i] = number(val.get(i)).doubleValue();
+            }
+            return arr;
+        }
+        else if(DataType.isBoolean(comType)){
+            boolean[] arr = new boolean[size];
+            for(int i=0; i<size; i++){
+                arr[i] = Boolean.valueOf(val.get(i).toString());
+            }
+            return arr;
+        }
+        else if(DataType.isBooleanObject(comType)){
+            Boolean[] arr = new Boolean[size];
+            for(int i=0; i<size; i++){
+                arr[i] = Boolean.valueOf(val.get(i).toString());
+            }
+            return arr;
+        }
+        else if(DataType.isChar(comType)){
+            char[] arr = new char[size];
+            for(int i=0; i<size; i++){
+                arr[i] = val.get(i).toString().charAt(0);
+            }
+            return arr;
+        }
+        else if(DataType.isCharObject(comType)){
+            Character[] arr = new Character[size];
+            for(int i=0; i<size; i++){
+                arr[i] = val.get(i).toString().charAt(0);
+            }
+            return arr;
+        }
+        else if(DataType.isDate(comType)){
+            Date[] arr = new Date[size];
+            for(int i=0; i<size; i++){
+                arr[i] = (Date)val.get(i);
+            }
+            return arr;
+        }
+        else if(DataType.isTimestamp(comType)){
+            Timestamp[] arr = new Timestamp[size];
+            for(int i=0; i<size; i++){
+                Date date = (Date)val.get(i);
+                arr[i] = date == null ? null : new Timestamp(date.getTime());
+            }
+            return arr;
+        }
+        else if(DataType.isBigDecimal(comType)){
+            BigDecimal[] arr = new BigDecimal[size];
+            for(int i=0; i<size; i++){
+                Decimal128 decimal = (Decimal128)val.get(i);
+                arr[i] = decimal.bigDecimalValue();
+            }
+            return arr;
+        }
+        else{
+            return null;
+        }
+    }
+    
+    private void moveCollectionElement(Class actualType, List src, Collection target){
+        if(DataType.isShortObject(actualType)){
+            for(Object o : src){
+                target.add(number(o).shortValue());
+            }
+        }
+        else if(DataType.isByteObject(actualType)){
+            for(Object o : src){
+                target.add(number(o).byteValue());
+            }
+        }
+        else if(DataType.isFloatObject(actualType)){
+            for(Object o : src){
+                target.add(number(o).floatValue());
+            }
+        }
+        else if(DataType.isCharObject(actualType)){
+            for(Object o : src){
+                target.add(o.toString().charAt(0));
+            }
+        }
+        else if(DataType.isBigDecimal(actualType)){
+            for(Object o : src){
+                target.add(((Decimal128)o).bigDecimalValue());
+            }
+        }
+        else{
+            target.addAll(src);
+        }
+    }
+
+    private static Number number(Object o){
+        if(o instanceof Number){
+            return (Number)o;
+        }
+        return new BigDecimal(o.toString());
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+    
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.BuguQuery;
+import com.bugull.mongo.TrackedEntity;
+import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.cache.EntityCache;
+import com.bugull.mongo.utils.IdUtil;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collect the cascade-read references of a batch of documents, and load them together.
+ * 
+ * <p>While a batch is opened on current thread, @Ref and @RefList fields with cascade read only record the referenced ids. 
+ * When the batch is flushed, every referenced class is loaded with chunked $in query, 
+ * and the same entity instance is set for the same id.</p>
+ * 
+ * <p>Usage:</p>
+ * <pre>
+ * RefBatch batch = RefBatch.open();
+ * try{
+ *     //convert documents to entities
+ * }finally{
+ *     batch.close();
+ * }
+ * batch.flush();
+ * </pre>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public final class RefBatch {
+    
+    /**
+     * Max number of ids in one $in query.
+     */
+    public static final int CHUNK_SIZE = 1000;
+    
+    private static final ThreadLocal<RefBatch> current = new ThreadLocal<>();
+    
+    //returned when a batch is already opened, the outer batch does all the work
+    private static final RefBatch NESTED = new RefBatch(false, true, false);
+    
+    private final boolean owner;
+    private final boolean withoutCascade;
+    //load the lazy fields too, as BuguMapper.fetchCascade() did with findOne()
+    private final boolean wholeDocument;
+    
+    private final Map<Class<?>, Set<String>> idMap = new HashMap<>();
+    private final Map<Class<?>, Map<String, BuguEntity>> entityMap = new HashMap<>();
+    private final List<Pending> pendingList = new ArrayList<>();
+    private final List<TrackedEntity> trackedList = new ArrayList<>();
+    
+    RefBatch(){
+        this(true, true, false);
+    }
+    
+    /**
+     * Create a batch which is not opened on current thread, used to fetch the references of loaded entities.
+     * <p>The referenced entities are loaded with the whole document, including the lazy fields.</p>
+     * @param withoutCascade if the loaded entities read their own cascade references
+     */
+    public RefBatch(boolean withoutCascade){
+        this(true, withoutCascade, true);
+    }
+    
+    private RefBatch(boolean owner, boolean withoutCascade, boolean wholeDocument){
+        this.owner = owner;
+        this.withoutCascade = withoutCascade;
+        this.wholeDocument = wholeDocument;
+    }
+    
+    /**
+     * Open a batch on current thread. 
+     * <p>If a batch is already opened, the returned batch does nothing, and the references are loaded by the outer one.</p>
+     * @return 
+     */
+    public static RefBatch open(){
+        if(current.get() != null){
+            return NESTED;
+        }
+        RefBatch batch = new RefBatch();
+        current.set(batch);
+        return batch;
+    }
+    
+    /**
+     * Get the batch opened on current thread.
+     * @return null if no batch is opened
+     */
+    static RefBatch current(){
+        return current.get();
+    }
+    
+    /**
+     * Mark the loaded entity clean when its cascade references are set. 
+     * <p>If a batch is opened on current thread, it's done after the batch is flushed, otherwise it's done at once.</p>
+     * @param entity 
+     */
+    public static void markClean(TrackedEntity entity){
+        RefBatch batch = current.get();
+        if(batch == null){
+            entity.markClean();
+        }else{
+            batch.trackedList.add(entity);
+        }
+    }
+    
+    /**
+     * Stop collecting references on current thread. It does not load the references.
+     */
+    public void close(){
+        if(owner && current.get() == this){
+            current.remove();
+        }
+    }
+    
+    /**
+     * Load all the collected references, and set them to the entities. 
+     * <p>It should be called after close().</p>
+     */
+    public void flush(){
+        if(!owner){
+            return;
+        }
+        for(Map.Entry<Class<?>, Set<String>> entry : idMap.entrySet()){
+            load(entry.getKey(), entry.getValue());
+        }
+        idMap.clear();
+        for(Pending p : pendingList){
+            if(p.plan.getKind() == FieldKind.REF){
+                ((RefFieldPlan)p.plan).resolve(p.obj, p.value, this);
+            }else{
+                ((RefListFieldPlan)p.plan).resolve(p.obj, p.value, this);
+            }
+        }
+        pendingList.clear();
+        for(TrackedEntity entity : trackedList){
+            entity.markClean();
+        }
+        trackedList.clear();
+    }
+    
+    void addId(Class<?> clazz, String id){
+        Set<String> ids = idMap.get(clazz);
+        if(ids == null){
+            ids = new LinkedHashSet<>();
+            idMap.put(clazz, ids);
+        }
+        ids.add(id);
+    }
+    
+    void defer(FieldPlan plan, Object obj, Object value){
+        pendingList.add(new Pending(plan, obj, value));
+    }
+    
+    /**
+     * Get the loaded entity.
+     * @param clazz
+     * @param id
+     * @return null if the entity does not exist
+     */
+    BuguEntity get(Class<?> clazz, String id){
+        Map<String, BuguEntity> entities = entityMap.get(clazz);
+        return entities == null ? null : entities.get(id);
+    }
+    
+    private void load(Class<?> clazz, Set<String> ids){
+        Map<String, BuguEntity> entities = entityMap.get(clazz);
+        if(entities == null){
+            entities = new HashMap<>();
+            entityMap.put(clazz, entities);
+        }
+        InternalDao dao = DaoCache.getInstance().get(clazz);
+        EntityCache ec = dao.getEntityCache();
+        List<String> chunk = new ArrayList<>(Math.min(ids.size(), CHUNK_SIZE));
+        for(String id : ids){
+            if(entities.containsKey(id)){
+                continue;
+            }
+            if(ec != null){
+                DBObject dbo = ec.get(id);
+                if(dbo != null){
+                    entities.put(id, (BuguEntity)MapperUtil.fromDBObject(clazz, dbo, withoutCascade));
+                    continue;
+                }
+            }
+            chunk.add(id);
+            if(chunk.size() == CHUNK_SIZE){
+                loadChunk(dao, ec, chunk, entities);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()){
+            loadChunk(dao, ec, chunk, entities);
+        }
+    }
+    
+    private void loadChunk(InternalDao dao, EntityCache ec, List<String> chunk, Map<String, BuguEntity> entities){
+        if(ec == null && !wholeDocument){
+            BuguQuery query = dao.query().in(Operator.ID, chunk);
+            query.setWithoutCascade(withoutCascade);
+            List<BuguEntity> list = query.results();
+            for(BuguEntity ent : list){
+                entities.put(ent.getId(), ent);
+            }
+            return;
+        }
+        //read DBObject, in order to put it into cache, or to read the whole document
+        Class<?> clazz = dao.getEntityClass();
+        List<Object> dbIds = new ArrayList<>(chunk.size());
+        Map<String, Long> tokens = new HashMap<>();
+        for(String id : chunk){
+            dbIds.add(IdUtil.toDbId(clazz, id));
+            if(ec != null){
+                tokens.put(id, ec.getToken(id));
+            }
+        }
+        DBObject keys = wholeDocument ? new BasicDBObject() : dao.getKeys();
+        //only the whole document can be cached
+        boolean whole = keys.keySet().isEmpty();
+        DBCursor cursor = dao.getCollection().find(new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, dbIds)), keys);
+        RefBatch batch = RefBatch.open();
+        try{
+            while(cursor.hasNext()){
+                DBObject dbo = cursor.next();
+                String id = dbo.get(Operator.ID).toString();
+                Long token = tokens.get(id);
+                if(whole && token != null){
+                    ec.putIfNotInvalidatedSince(id, token, dbo);
+                }
+                entities.put(id, (BuguEntity)MapperUtil.fromDBObject(clazz, dbo, withoutCascade));
+            }
+        }finally{
+            batch.close();
+            cursor.close();
+        }
+        batch.flush();
+    }
+    
+    private static class Pending {
+        
+        final FieldPlan plan;
+        final Object obj;
+        final Object value;
+        
+        Pending(FieldPlan plan, Object obj, Object value){
+            this.plan = plan;
+            this.obj = obj;
+            this.value = value;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.Ref;
+import com.bugull.mongo.cache.ConstructorCache;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.utils.FieldUtil;
+import com.bugull.mongo.utils.ReferenceUtil;
+import java.lang.reflect.Field;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class RefFieldPlan extends FieldPlan {
+    
+    private final Ref ref;
+    private final Class<?> realType;
+    private final boolean cascadeRead;
+    private final boolean cascadeCreateOrUpdate;
+    
+    public RefFieldPlan(Field field){
+        super(field, columnName(field), FieldKind.REF);
+        ref = field.getAnnotation(Ref.class);
+        realType = FieldUtil.getRealType(field);
+        String cascade = ref.cascade().toUpperCase();
+        cascadeRead = cascade.indexOf(Default.CASCADE_READ) != -1;
+        cascadeCreateOrUpdate = cascade.indexOf(Default.CASCADE_CREATE) != -1 || cascade.indexOf(Default.CASCADE_UPDATE) != -1;
+    }
+    
+    private static String columnName(Field field){
+        String name = field.getAnnotation(Ref.class).name();
+        return name.equals(Default.NAME) ? field.getName() : name;
+    }
+    
+    @Override
+    public Object decodeValue(Object value, boolean withoutCascade){
+        String refId = ReferenceUtil.fromDbReference(ref, value);
+        if(!cascadeRead || withoutCascade){
+            BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(realType);
+            refObj.setId(refId);
+            return refObj;
+        }
+        RefBatch batch = new RefBatch();
+        batch.addId(realType, refId);
+        batch.flush();
+        return batch.get(realType, refId);
+    }
+    
+    /**
+     * When a RefBatch is opened, the referenced entity is loaded later, together with other documents.
+     */
+    @Override
+    public void decodeTo(Object obj, Object value, boolean withoutCascade){
+        RefBatch batch = RefBatch.current();
+        if(batch == null || !cascadeRead || withoutCascade){
+            super.decodeTo(obj, value, withoutCascade);
+            return;
+        }
+        batch.addId(realType, ReferenceUtil.fromDbReference(ref, value));
+        batch.defer(this, obj, value);
+    }
+    
+    void resolve(Object obj, Object value, RefBatch batch){
+        accessor.set(obj, batch.get(realType, ReferenceUtil.fromDbReference(ref, value)));
+    }
+    
+    /**
+     * Add the id of the referenced entity in the field to the batch.
+     * @param obj the entity which has this field
+     * @param batch 
+     */
+    public void prepareFetch(Object obj, RefBatch batch){
+        BuguEntity refObj = (BuguEntity)accessor.get(obj);
+        if(refObj != null && refObj.getId() != null){
+            batch.addId(realType, refObj.getId());
+        }
+    }
+    
+    /**
+     * Replace the referenced entity in the field with the one loaded by the batch.
+     * @param obj the entity which has this field
+     * @param batch 
+     */
+    public void fetch(Object obj, RefBatch batch){
+        BuguEntity refObj = (BuguEntity)accessor.get(obj);
+        if(refObj != null && refObj.getId() != null){
+            accessor.set(obj, batch.get(realType, refObj.getId()));
+        }
+    }
+    
+    @Override
+    public Object encodeValue(Object value, boolean withoutCascade){
+        BuguEntity entity = (BuguEntity)value;
+        if(!withoutCascade && cascadeCreateOrUpdate){
+            InternalDao dao = DaoCache.getInstance().get(realType);
+            dao.saveWithoutCascade(entity, true);
+        }
+        return ReferenceUtil.toDbReference(ref, entity.getClass(), entity.getId());
+    }
+
+    public Ref getRef() {
+        return ref;
+    }
+
+    public Class<?> getRealType() {
+        return realType;
+    }
+
+    public boolean isCascadeRead() {
+        return cascadeRead;
+    }
+    
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.access.InternalDao;
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.RefList;
+import com.bugull.mongo.cache.ConstructorCache;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.utils.FieldUtil;
+import com.bugull.mongo.utils.ReferenceUtil;
+import com.mongodb.DBObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class RefListFieldPlan extends FieldPlan {
+    
+    private final RefList refList;
+    private final boolean isArray;
+    private final boolean isMap;
+    private final int container;
+    private final Class<?> realType;  //the real type of the referenced entity
+    private final GenericInfo valueInfo;  //the V of Map<K,V>
+    private final boolean cascadeRead;
+    private final boolean cascadeCreateOrUpdate;
+    private final String sort;
+    private final EntityComparator comparator;  //null if no sort
+    
+    public RefListFieldPlan(Field field){
+        super(field, columnName(field), FieldKind.REF_LIST);
+        refList = field.getAnnotation(RefList.class);
+        Class<?> type = field.getType();
+        Class<?> elementType;
+        if(type.isArray()){
+            isArray = true;
+            isMap = false;
+            container = GenericInfo.CONTAINER_NONE;
+            elementType = type.getComponentType();
+            valueInfo = null;
+        }else{
+            isArray = false;
+            ParameterizedType paramType = (ParameterizedType)field.getGenericType();
+            Type[] types = paramType.getActualTypeArguments();
+            if(types.length == 1){
+                isMap = false;
+                container = GenericInfo.containerOf(type);
+                elementType = (Class)types[0];
+                valueInfo = null;
+            }else{
+                isMap = true;
+                container = GenericInfo.CONTAINER_NONE;
+                valueInfo = GenericInfo.of(types[1]);
+                elementType = valueInfo.getElementType();
+            }
+        }
+        realType = FieldUtil.getRealType(elementType, field);
+        String cascade = refList.cascade().toUpperCase();
+        cascadeRead = cascade.indexOf(Default.CASCADE_READ) != -1;
+        cascadeCreateOrUpdate = cascade.indexOf(Default.CASCADE_CREATE) != -1 || cascade.indexOf(Default.CASCADE_UPDATE) != -1;
+        sort = refList.sort();
+        comparator = sort.equals(Default.SORT) ? null : new EntityComparator(sort);
+    }
+    
+    private static String columnName(Field field){
+        String name = field.getAnnotation(RefList.class).name();
+        return name.equals(Default.NAME) ? field.getName() : name;
+    }
+    
+    @Override
+    public void decode(Object obj, DBObject dbo, boolean withoutCascade){
+        //unsupported collection type is ignored
+        if(!isArray && !isMap && container == GenericInfo.CONTAINER_NONE){
+            return;
+        }
+        super.decode(obj, dbo, withoutCascade);
+    }
+    
+    @Override
+    public Object decodeValue(Object value, boolean withoutCascade){
+        RefBatch batch = null;
+        if(cascadeRead && !withoutCascade){
+            batch = new RefBatch();
+            collectIds(value, batch);
+            batch.flush();
+        }
+        return decodeValue(value, batch);
+    }
+    
+    /**
+     * When a RefBatch is opened, the referenced entities are loaded later, together with other documents.
+     */
+    @Override
+    public void decodeTo(Object obj, Object value, boolean withoutCascade){
+        RefBatch batch = RefBatch.current();
+        if(batch == null || !cascadeRead || withoutCascade){
+            super.decodeTo(obj, value, withoutCascade);
+            return;
+        }
+        collectIds(value, batch);
+        batch.defer(this, obj, value);
+    }
+    
+    void resolve(Object obj, Object value, RefBatch batch){
+        accessor.set(obj, decodeValue(value, batch));
+    }
+    
+    /**
+     * Add the ids of the referenced entities in the field to the batch.
+     * @param obj the entity which has this field
+     * @param batch 
+     */
+    public void prepareFetch(Object obj, RefBatch batch){
+        Object value = accessor.get(obj);
+        if(value == null || (!isArray && !isMap && container == GenericInfo.CONTAINER_NONE)){
+            return;
+        }
+        collectIds(toRawValue(value), batch);
+    }
+    
+    /**
+     * Replace the referenced entities in the field with the ones loaded by the batch.
+     * @param obj the entity which has this field
+     * @param batch 
+     */
+    public void fetch(Object obj, RefBatch batch){
+        Object value = accessor.get(obj);
+        if(value == null || (!isArray && !isMap && container == GenericInfo.CONTAINER_NONE)){
+            return;
+        }
+        accessor.set(obj, decodeValue(toRawValue(value), batch));
+    }
+    
+    /**
+     * Convert the arrays in the field value to lists, the same shape as the value saved in mongoDB.
+     */
+    private Object toRawValue(Object value){
+        if(isArray){
+            return toList(value);
+        }
+        if(isMap && valueInfo.getShape() == GenericInfo.ARRAY){
+            Map map = (Map)value;
+            Map result = new HashMap();
+            for(Object key : map.keySet()){
+                Object entryValue = map.get(key);
+                result.put(key, entryValue == null ? null : toList(entryValue));
+            }
+            return result;
+        }
+        return value;
+    }
+    
+    private static List toList(Object arr){
+        int len = Array.getLength(arr);
+        List list = new ArrayList(len);
+        for(int i=0; i<len; i++){
+            list.add(Array.get(arr, i));
+        }
+        return list;
+    }
+    
+    /**
+     * The item is the reference saved in mongoDB, or the entity when fetching.
+     */
+    private String refId(Object item){
+        if(item instanceof BuguEntity){
+            return ((BuguEntity)item).getId();
+        }
+        return ReferenceUtil.fromDbReference(refList, item);
+    }
+    
+    @Override
+    public Object encodeValue(Object value, boolean withoutCascade){
+        if(isArray){
+            return encodeArray(value, withoutCascade);
+        }
+        if(isMap){
+            return encodeMap(value, withoutCascade);
+        }
+        return encodeCollection(value, withoutCascade);
+    }
+    
+    private BuguEntity createRefObject(Object item){
+        BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(realType);
+        refObj.setId(ReferenceUtil.fromDbReference(refList, item));
+        return refObj;
+    }
+    
+    private void collectIds(Object value, RefBatch batch){
+        if(isMap){
+            boolean single = valueInfo.getShape() == GenericInfo.SINGLE;
+            for(Object entryValue : ((Map)value).values()){
+                if(entryValue == null){
+                    continue;
+                }
+                if(single){
+                    batch.addId(realType, refId(entryValue));
+                }else{
+                    collectIds((Collection)entryValue, batch);
+                }
+            }
+        }else{
+            collectIds((Collection)value, batch);
+        }
+    }
+    
+    private void collectIds(Collection collection, RefBatch batch){
+        for(Object item : collection){
+            if(item != null){
+                batch.addId(realType, refId(item));
+            }
+        }
+    }
+    
+    /**
+     * Get the loaded entities, in the saved order, or sorted by @RefList(sort). 
+     * <p>Not existing and duplicated ids are skipped, the same as $in query.</p>
+     */
+    private List<BuguEntity> findRefObjects(Collection collection, RefBatch batch){
+        Set<String> idSet = new LinkedHashSet<>();
+        for(Object item : collection){
+            if(item != null){
+                idSet.add(refId(item));
+            }
+        }
+        List<BuguEntity> result = new ArrayList<>(idSet.size());
+        for(String id : idSet){
+            BuguEntity ent = batch.get(realType, id);
+            if(ent != null){
+                result.add(ent);
+            }
+        }
+        if(comparator != null && result.size() > 1){
+            Collections.sort(result, comparator);
+        }
+        return result;
+    }
+    
+    /**
+     * @param batch the loaded references, null if the references are created with id only.
+     */
+    private Object decodeValue(Object value, RefBatch batch){
+        if(isArray){
+            return decodeArray(value, batch);
+        }
+        if(isMap){
+            return decodeMap(value, batch);
+        }
+        return GenericInfo.toContainer(container, decodeCollection(value, batch));
+    }
+    
+    private Object decodeArray(Object val, RefBatch batch){
+        List list = (List)val;
+        if(list.isEmpty()){
+            return null;
+        }
+        int size = list.size();
+        Object arr;
+        if(batch == null){
+            arr = Array.newInstance(realType, size);
+            for(int i=0; i<size; i++){
+                Object item = list.get(i);
+                if(item != null){
+                    Array.set(arr, i, createRefObject(item));
+                }
+            }
+        }else{
+            //some references maybe not exist
+            List<BuguEntity> entityList = findRefObjects(list, batch);
+            size = entityList.size();
+            arr = Array.newInstance(realType, size);
+            for(int i=0; i<size; i++){
+                Array.set(arr, i, entityList.get(i));
+            }
+        }
+        return arr;
+    }
+    
+    private List decodeCollection(Object val, RefBatch batch){
+        Collection collection = (Collection)val;
+        if(collection.isEmpty()){
+            return null;
+        }
+        if(batch == null){
+            List<BuguEntity> result = new ArrayList<>(collection.size());
+            for(Object item : collection){
+                if(item != null){
+                    result.add(createRefObject(item));
+                }
+            }
+            return result;
+        }else{
+            return findRefObjects(collection, batch);
+        }
+    }
+    
+    private Map decodeMap(Object value, RefBatch batch){
+        Map map = (Map)value;
+        if(map.isEmpty()){
+            return null;
+        }
+        Map result = new HashMap();
+        int shape = valueInfo.getShape();
+        for(Object key : map.keySet()){
+            Object entryValue = map.get(key);
+            if(entryValue == null){
+                result.put(key, null);
+                continue;
+            }
+            if(shape == GenericInfo.SINGLE){
+                if(batch != null){
+                    result.put(key, batch.get(realType, refId(entryValue)));
+                }else{
+                    result.put(key, createRefObject(entryValue));
+                }
+            }else if(shape == GenericInfo.ARRAY){
+                result.put(key, decodeArray(entryValue, batch));
+            }else{
+                List list = decodeCollection(entryValue, batch);
+                int vContainer = valueInfo.getContainer();
+                if(vContainer != GenericInfo.CONTAINER_NONE){
+                    result.put(key, GenericInfo.toContainer(vContainer, list));
+                }
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeEntity(BuguEntity entity, boolean withoutCascade){
+        if(!withoutCascade && cascadeCreateOrUpdate){
+            InternalDao dao = DaoCache.getInstance().get(realType);
+            dao.saveWithoutCascade(entity, true);
+        }
+        return ReferenceUtil.toDbReference(refList, entity.getClass(), entity.getId());
+    }
+    
+    private Object encodeArray(Object val, boolean withoutCascade){
+        int len = Array.getLength(val);
+        List<Object> result = new ArrayList<>(len);
+        for(int i=0; i<len; i++){
+            BuguEntity entity = (BuguEntity)Array.get(val, i);
+            if(entity != null){
+                result.add(encodeEntity(entity, withoutCascade));
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeCollection(Object val, boolean withoutCascade){
+        Collection<BuguEntity> collection = (Collection<BuguEntity>)val;
+        List<Object> result = new ArrayList<>(collection.size());
+        for(BuguEntity entity : collection){
+            if(entity != null){
+                result.add(encodeEntity(entity, withoutCascade));
+            }
+        }
+        return result;
+    }
+    
+    private Object encodeMap(Object value, boolean withoutCascade){
+        Map map = (Map)value;
+        Map result = new HashMap();
+        int shape = valueInfo.getShape();
+        for(Object key : map.keySet()){
+            Object entryValue = map.get(key);
+            if(shape == GenericInfo.SINGLE){
+                BuguEntity entity = (BuguEntity)entryValue;
+                result.put(key, entity == null ? null : encodeEntity(entity, withoutCascade));
+            }else if(entryValue != null){
+                if(shape == GenericInfo.ARRAY){
+                    result.put(key, encodeArray(entryValue, withoutCascade));
+                }else{
+                    result.put(key, encodeCollection(entryValue, withoutCascade));
+                }
+            }
+        }
+        return result;
+    }
+
+    public RefList getRefList() {
+        return refList;
+    }
+
+    public boolean isArray() {
+        return isArray;
+    }
+
+    public boolean isMap() {
+        return isMap;
+    }
+
+    public int getContainer() {
+        return container;
+    }
+
+    public Class<?> getRealType() {
+        return realType;
+    }
+
+    public GenericInfo getValueInfo() {
+        return valueInfo;
+    }
+
+    public boolean isCascadeRead() {
+        return cascadeRead;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+    
+}
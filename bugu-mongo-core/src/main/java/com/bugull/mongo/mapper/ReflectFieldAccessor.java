@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.mapper;
+
+import com.bugull.mongo.exception.FieldException;
+import java.lang.reflect.Field;
+
+/**
+ * Field accessor based on reflection.
+ * 
+ * <p>The JDK reads and writes an accessible field with an unsafe-based accessor, 
+ * and the typed methods, such as Field.getInt(), do not box the primitive value.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class ReflectFieldAccessor extends FieldAccessor {
+    
+    private final Class<?> type;
+    
+    ReflectFieldAccessor(Field field){
+        super(field);
+        this.type = field.getType();
+    }
+
+    @Override
+    public Object get(Object obj) {
+        try{
+            return field.get(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void set(Object obj, Object value) {
+        try{
+            field.set(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void copy(Object src, Object target) {
+        if(!type.isPrimitive()){
+            set(target, get(src));
+        }
+        else if(type == int.class){
+            setInt(target, getInt(src));
+        }
+        else if(type == long.class){
+            setLong(target, getLong(src));
+        }
+        else if(type == double.class){
+            setDouble(target, getDouble(src));
+        }
+        else if(type == float.class){
+            setFloat(target, getFloat(src));
+        }
+        else if(type == short.class){
+            setShort(target, getShort(src));
+        }
+        else if(type == byte.class){
+            setByte(target, getByte(src));
+        }
+        else if(type == boolean.class){
+            setBoolean(target, getBoolean(src));
+        }
+        else{
+            setChar(target, getChar(src));
+        }
+    }
+
+    @Override
+    public int getInt(Object obj) {
+        try{
+            return field.getInt(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setInt(Object obj, int value) {
+        try{
+            field.setInt(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public long getLong(Object obj) {
+        try{
+            return field.getLong(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setLong(Object obj, long value) {
+        try{
+            field.setLong(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public double getDouble(Object obj) {
+        try{
+            return field.getDouble(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setDouble(Object obj, double value) {
+        try{
+            field.setDouble(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public float getFloat(Object obj) {
+        try{
+            return field.getFloat(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setFloat(Object obj, float value) {
+        try{
+            field.setFloat(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public short getShort(Object obj) {
+        try{
+            return field.getShort(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setShort(Object obj, short value) {
+        try{
+            field.setShort(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public byte getByte(Object obj) {
+        try{
+            return field.getByte(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setByte(Object obj, byte value) {
+        try{
+            field.setByte(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public boolean getBoolean(Object obj) {
+        try{
+            return field.getBoolean(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setBoolean(Object obj, boolean value) {
+        try{
+            field.setBoolean(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public char getChar(Object obj) {
+        try{
+            return field.getChar(obj);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setChar(Object obj, char value) {
+        try{
+            field.setChar(obj, value);
+        }catch(IllegalAccessException | IllegalArgumentException ex){
+            throw new FieldException(ex.getMessage());
+        }
+    }
+    
+}
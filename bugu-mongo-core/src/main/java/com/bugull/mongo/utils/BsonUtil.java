@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.utils;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+/**
+ * Utility class for using DBObject in the new API, which requires Bson.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public final class BsonUtil {
+    
+    public static Bson toBson(DBObject dbo){
+        if(dbo == null){
+            return null;
+        }
+        if(dbo instanceof Bson){
+            return (Bson)dbo;
+        }
+        return new BasicDBObject(dbo.toMap());
+    }
+    
+    public static List<Bson> toBsonList(List<DBObject> list){
+        List<Bson> result = new ArrayList<>(list.size());
+        for(DBObject dbo : list){
+            result.add(toBson(dbo));
+        }
+        return result;
+    }
+    
+    /**
+     * Estimate the BSON size of a value, without encoding it.
+     * @param value
+     * @return approximate bytes
+     */
+    public static int estimateSize(Object value){
+        if(value == null || value instanceof Boolean){
+            return 1;
+        }
+        if(value instanceof String){
+            return ((String)value).length() + 5;
+        }
+        if(value instanceof Number || value instanceof Date){
+            return 8;
+        }
+        if(value instanceof ObjectId){
+            return 12;
+        }
+        if(value instanceof byte[]){
+            return ((byte[])value).length + 5;
+        }
+        if(value instanceof Map || value instanceof DBObject){
+            Map<String, Object> map = value instanceof Map ? (Map<String, Object>)value : ((DBObject)value).toMap();
+            int size = 5;
+            for(Map.Entry<String, Object> entry : map.entrySet()){
+                size += entry.getKey().length() + 2 + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if(value instanceof Collection){
+            int size = 5;
+            for(Object o : (Collection)value){
+                size += 4 + estimateSize(o);
+            }
+            return size;
+        }
+        return 16;
+    }
+    
+}
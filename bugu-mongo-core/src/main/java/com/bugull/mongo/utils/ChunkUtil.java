@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.utils;
+
+import com.bugull.mongo.BuguFramework;
+import com.bugull.mongo.exception.BuguException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Split a large collection into chunks, and run the chunks concurrently.
+ * 
+ * <p>The chunks are run on the thread pool of BuguFramework, and the calling thread runs the chunks which are not started yet. 
+ * So it never waits for a busy pool, and it's safe to call it from an EntityListener.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class ChunkUtil {
+    
+    /**
+     * Split the elements into lists of chunkSize, in iteration order.
+     * @param <E>
+     * @param elements
+     * @param chunkSize
+     * @return 
+     */
+    public static <E> List<List<E>> split(Collection<E> elements, int chunkSize){
+        List<List<E>> chunks = new ArrayList<>();
+        List<E> chunk = new ArrayList<>(Math.min(elements.size(), chunkSize));
+        for(E e : elements){
+            chunk.add(e);
+            if(chunk.size() == chunkSize){
+                chunks.add(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if(!chunk.isEmpty()){
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+    
+    /**
+     * Run all the tasks and get their results, in the order of the tasks.
+     * @param <R>
+     * @param tasks
+     * @return 
+     */
+    public static <R> List<R> runAll(List<Callable<R>> tasks){
+        int len = tasks.size();
+        List<FutureTask<R>> futures = new ArrayList<>(len);
+        for(Callable<R> task : tasks){
+            futures.add(new FutureTask<>(task));
+        }
+        //the first task is always run by the calling thread
+        for(int i=1; i<len; i++){
+            try{
+                BuguFramework.getInstance().getExecutor().execute(futures.get(i));
+            }catch(RejectedExecutionException ex){
+                //run by the calling thread
+                break;
+            }
+        }
+        List<R> results = new ArrayList<>(len);
+        BuguException error = null;
+        for(FutureTask<R> future : futures){
+            //it does nothing if the task is already started by the pool
+            future.run();
+            try{
+                results.add(future.get());
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new BuguException(ex);
+            }catch(ExecutionException ex){
+                //wait for other chunks before throwing, they may be writing
+                if(error == null){
+                    Throwable cause = ex.getCause();
+                    error = cause instanceof BuguException ? (BuguException)cause : new BuguException(cause.getMessage(), cause);
+                }
+                results.add(null);
+            }
+        }
+        if(error != null){
+            throw error;
+        }
+        return results;
+    }
+    
+}
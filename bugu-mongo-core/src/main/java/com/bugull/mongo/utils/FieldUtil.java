@@ -22,9 +22,10 @@ import com.bugull.mongo.annotations.EmbedList;
 import com.bugull.mongo.annotations.Property;
 import com.bugull.mongo.annotations.Ref;
 import com.bugull.mongo.annotations.RefList;
+import com.bugull.mongo.cache.AccessorCache;
 import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.exception.BuguException;
-import com.bugull.mongo.exception.FieldException;
+import com.bugull.mongo.mapper.FieldAccessor;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import java.lang.reflect.Field;
@@ -41,21 +42,25 @@ public final class FieldUtil {
     private static final String TYPE_NAME_PREFIX = "class ";
     
     public static Object get(Object obj, Field f){
-        Object value = null;
-        try {
-            value = f.get(obj);
-        } catch (IllegalAccessException | IllegalArgumentException ex) {
-            throw new FieldException(ex.getMessage());
-        }
-        return value;
+        return getAccessor(f).get(obj);
     }
     
     public static void set(Object obj, Field f, Object value){
-        try{
-            f.set(obj, value);
-        }catch(IllegalAccessException | IllegalArgumentException ex){
-            throw new FieldException(ex.getMessage());
+        getAccessor(f).set(obj, value);
+    }
+    
+    /**
+     * Get the cached accessor of a field.
+     * @param f
+     * @return 
+     */
+    public static FieldAccessor getAccessor(Field f){
+        FieldAccessor accessor = AccessorCache.getInstance().get(f.getDeclaringClass()).getAccessor(f);
+        if(accessor == null){
+            //static field, not cached
+            accessor = FieldAccessor.create(f);
         }
+        return accessor;
     }
     
     /**
@@ -68,10 +73,9 @@ public final class FieldUtil {
         if(src==null || target==null){
             return;
         }
-        Field[] fields = FieldsCache.getInstance().get(src.getClass());
-        for(Field f : fields){
-            Object value = get(src, f);
-            set(target, f, value);
+        FieldAccessor[] accessors = AccessorCache.getInstance().get(src.getClass()).getAccessors();
+        for(FieldAccessor accessor : accessors){
+            accessor.copy(src, target);
         }
     }
     
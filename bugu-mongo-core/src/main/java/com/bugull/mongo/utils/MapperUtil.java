@@ -16,18 +16,16 @@
 
 package com.bugull.mongo.utils;
 
+import com.bugull.mongo.TrackedEntity;
 import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.cache.CodecPlanCache;
 import com.bugull.mongo.cache.ConstructorCache;
-import com.bugull.mongo.cache.FieldsCache;
-import com.bugull.mongo.decoder.Decoder;
-import com.bugull.mongo.decoder.DecoderFactory;
-import com.bugull.mongo.encoder.Encoder;
-import com.bugull.mongo.encoder.EncoderFactory;
+import com.bugull.mongo.mapper.FieldPlan;
+import com.bugull.mongo.mapper.RefBatch;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,14 +51,30 @@ public final class MapperUtil {
         if(dbo == null){
             return null;
         }
+        if(withoutCascade){
+            return decode(clazz, dbo, true);
+        }
+        //all the cascade references of the document are loaded together
+        RefBatch batch = RefBatch.open();
+        T obj;
+        try{
+            obj = decode(clazz, dbo, false);
+        }finally{
+            batch.close();
+        }
+        batch.flush();
+        return obj;
+    }
+    
+    private static <T> T decode(Class<T> clazz, DBObject dbo, boolean withoutCascade){
         T obj = ConstructorCache.getInstance().create(clazz);
-        Field[] fields = FieldsCache.getInstance().get(clazz);
-        for(Field field : fields){
-            Decoder decoder = DecoderFactory.create(field, dbo);
-            if(decoder!=null && !decoder.isNullField()){
-                decoder.setWithoutCascade(withoutCascade);
-                decoder.decode(obj);
-            }
+        FieldPlan[] fields = CodecPlanCache.getInstance().get(clazz).getFields();
+        for(FieldPlan fp : fields){
+            fp.decode(obj, dbo, withoutCascade);
+        }
+        if(obj instanceof TrackedEntity){
+            //the snapshot is taken after the cascade references are loaded
+            RefBatch.markClean((TrackedEntity)obj);
         }
         return obj;
     }
@@ -79,15 +93,10 @@ public final class MapperUtil {
         if(obj == null){
             return null;
         }
-        Class<?> clazz = obj.getClass();
-        Field[] fields = FieldsCache.getInstance().get(clazz);
+        FieldPlan[] fields = CodecPlanCache.getInstance().get(obj.getClass()).getFields();
         DBObject dbo = new BasicDBObject();
-        for(Field field : fields){
-            Encoder encoder = EncoderFactory.create(obj, field);
-            if(encoder!=null && !encoder.isNullField()){
-                encoder.setWithoutCascade(withoutCascade);
-                dbo.put(encoder.getFieldName(), encoder.encode());
-            }
+        for(FieldPlan fp : fields){
+            fp.encode(obj, dbo, withoutCascade);
         }
         return dbo;
     }
@@ -96,16 +105,28 @@ public final class MapperUtil {
         return toList(clazz, cursor, false);
     }
     
+    /**
+     * Convert all the documents of the cursor to entities, and close the cursor. 
+     * <p>The cascade references of all the documents are loaded in batch, one query per referenced class.</p>
+     * @param <T>
+     * @param clazz
+     * @param cursor
+     * @param withoutCascade
+     * @return 
+     */
     public static <T> List<T> toList(Class<T> clazz, DBCursor cursor, boolean withoutCascade){
         List<T> list = new ArrayList<>();
+        RefBatch batch = RefBatch.open();
         try {
             while(cursor.hasNext()){
                 DBObject dbo = cursor.next();
                 list.add(fromDBObject(clazz, dbo, withoutCascade));
             }
         } finally {
+            batch.close();
             cursor.close();
         }
+        batch.flush();
         return list;
     }
     
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.entity.Device;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * The devices have no id, so loading the group doesn't need a database.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class LazyGroupTest {
+    
+    private List<Device> createDevices(int count){
+        List<Device> list = new ArrayList<>();
+        for(int i=0; i<count; i++){
+            Device device = new Device();
+            device.setName("device" + i);
+            list.add(device);
+        }
+        return list;
+    }
+    
+    @Test
+    public void testAttach(){
+        List<Device> list = createDevices(3);
+        LazyGroup.attach(list);
+        for(Device device : list){
+            assertFalse(device.isLazyLoaded());
+        }
+        //accessing one of them loads the whole group
+        list.get(1).loadLazy();
+        for(Device device : list){
+            assertTrue(device.isLazyLoaded());
+        }
+        //already loaded, nothing to do
+        list.get(0).loadLazy();
+        assertTrue(list.get(0).isLazyLoaded());
+    }
+    
+    @Test
+    public void testWeakReference() throws InterruptedException {
+        List<Device> list = createDevices(2);
+        LazyGroup.attach(list);
+        Device kept = list.get(0);
+        WeakReference<Device> dropped = new WeakReference<>(list.get(1));
+        list = null;
+        for(int i=0; i<50 && dropped.get()!=null; i++){
+            System.gc();
+            Thread.sleep(20);
+        }
+        //the group held by the kept device doesn't keep the other one in memory
+        assertNull(dropped.get());
+        assertFalse(kept.isLazyLoaded());
+        kept.loadLazy();
+        assertTrue(kept.isLazyLoaded());
+    }
+    
+    @Test
+    public void testConcurrentLoad() throws InterruptedException {
+        final int threads = 8;
+        for(int round=0; round<20; round++){
+            final List<Device> list = createDevices(threads);
+            LazyGroup.attach(list);
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final CountDownLatch done = new CountDownLatch(threads);
+            final AtomicReference<Throwable> error = new AtomicReference<>();
+            for(int i=0; i<threads; i++){
+                final Device device = list.get(i);
+                new Thread(new Runnable(){
+                    @Override
+                    public void run(){
+                        try{
+                            barrier.await();
+                            device.loadLazy();
+                            device.loadLazy();
+                        }catch(Throwable t){
+                            error.compareAndSet(null, t);
+                        }finally{
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            done.await();
+            assertNull(error.get());
+            for(Device device : list){
+                assertTrue(device.isLazyLoaded());
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.cache.CodecPlanCache;
+import com.bugull.mongo.entity.Device;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.DBObject;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class TrackedEntityTest {
+    
+    private DBObject getModifier(Device device){
+        DBObject dbo = MapperUtil.toDBObject(device, true);
+        return ((TrackedEntity)device).getModifier(dbo, new TrackedEntity.Snapshot(dbo));
+    }
+    
+    /**
+     * Load the device without the lazy field, then load the lazy field.
+     */
+    private Device loadLazy(){
+        Device device = new Device();
+        device.setId(new ObjectId().toString());
+        device.setName("lamp");
+        device.markClean();
+        device.setNote("note");
+        ((TrackedEntity)device).markLazyClean(CodecPlanCache.getInstance().get(Device.class).getLazyFields());
+        return device;
+    }
+    
+    @Test
+    public void testLazyUnset(){
+        Device device = loadLazy();
+        device.setNote(null);
+        DBObject modifier = getModifier(device);
+        assertEquals(1, modifier.keySet().size());
+        assertTrue(((DBObject)modifier.get(Operator.UNSET)).containsField("note"));
+    }
+    
+    @Test
+    public void testLazyUnchanged(){
+        Device device = loadLazy();
+        assertTrue(getModifier(device).keySet().isEmpty());
+        device.setNote("new note");
+        assertEquals("new note", ((DBObject)getModifier(device).get(Operator.SET)).get("note"));
+    }
+    
+    @Test
+    public void testNotLoaded(){
+        Device device = new Device();
+        device.setId(new ObjectId().toString());
+        device.setName("lamp");
+        device.markClean();
+        //the lazy field is not loaded, null is not unset
+        assertTrue(getModifier(device).keySet().isEmpty());
+        device.setNote("note");
+        assertEquals("note", ((DBObject)getModifier(device).get(Operator.SET)).get("note"));
+    }
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cascade;
+
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.BuguFramework;
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.listener.CascadeDeleteListener;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Call the CascadeDeleteListener directly, so the result can be checked without waiting for the event bus.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CascadeDeleteTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testCycle(){
+        connectDB();
+        
+        BuguDao<LinkA> daoA = DaoCache.getInstance().get(LinkA.class);
+        BuguDao<LinkB> daoB = DaoCache.getInstance().get(LinkB.class);
+        
+        //a -> b -> a
+        LinkA a = new LinkA();
+        a.setName("cycle-a");
+        daoA.insert(a);
+        LinkB b = new LinkB();
+        b.setName("cycle-b");
+        b.setNext(a);
+        daoB.insert(b);
+        a.setNext(b);
+        daoA.save(a);
+        
+        new CascadeDeleteListener(LinkA.class).entityDeleted(daoA.findOne(a.getId()));
+        
+        assertFalse(daoB.exists(b.getId()));
+        //the root is visited, so the cycle doesn't come back to remove it
+        assertTrue(daoA.exists(a.getId()));
+        
+        daoA.remove(a);
+        
+        disconnectDB();
+    }
+    
+    //@Test
+    public void testDepth(){
+        connectDB();
+        
+        BuguDao<LinkA> daoA = DaoCache.getInstance().get(LinkA.class);
+        BuguDao<LinkB> daoB = DaoCache.getInstance().get(LinkB.class);
+        
+        //a1 -> b1 -> a2 -> b2 -> a3
+        LinkA a3 = new LinkA();
+        a3.setName("chain-a3");
+        daoA.insert(a3);
+        LinkB b2 = new LinkB();
+        b2.setName("chain-b2");
+        b2.setNext(a3);
+        daoB.insert(b2);
+        LinkA a2 = new LinkA();
+        a2.setName("chain-a2");
+        a2.setNext(b2);
+        daoA.insert(a2);
+        LinkB b1 = new LinkB();
+        b1.setName("chain-b1");
+        b1.setNext(a2);
+        daoB.insert(b1);
+        LinkA a1 = new LinkA();
+        a1.setName("chain-a1");
+        a1.setNext(b1);
+        daoA.insert(a1);
+        
+        BuguFramework framework = BuguFramework.getInstance();
+        int depth = framework.getCascadeDeleteDepth();
+        framework.setCascadeDeleteDepth(2);
+        try{
+            new CascadeDeleteListener(LinkA.class).entityDeleted(daoA.findOne(a1.getId()));
+        }finally{
+            framework.setCascadeDeleteDepth(depth);
+        }
+        
+        //the first 2 levels are removed
+        assertFalse(daoB.exists(b1.getId()));
+        assertFalse(daoA.exists(a2.getId()));
+        //the levels after the limit are kept
+        assertTrue(daoB.exists(b2.getId()));
+        assertTrue(daoA.exists(a3.getId()));
+        
+        daoA.remove(a1);
+        daoB.remove(b2);
+        daoA.remove(a3);
+        
+        disconnectDB();
+    }
+    
+}
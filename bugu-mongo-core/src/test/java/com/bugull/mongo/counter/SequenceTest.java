@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.counter;
+
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.cache.DaoCache;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class SequenceTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testInsert(){
+        connectDB();
+        
+        BuguDao<Ticket> dao = DaoCache.getInstance().get(Ticket.class);
+        
+        Ticket ticket = new Ticket();
+        ticket.setTitle("single");
+        dao.insert(ticket);
+        System.out.println("id: " + ticket.getId());
+        
+        //ids of the list are reserved by one call, and inserted by one insertMany
+        List<Ticket> list = new ArrayList<>();
+        for(int i=0; i<200; i++){
+            Ticket t = new Ticket();
+            t.setTitle("batch " + i);
+            list.add(t);
+        }
+        dao.insert(list);
+        System.out.println("first id: " + list.get(0).getId() + " last id: " + list.get(199).getId());
+        
+        disconnectDB();
+    }
+    
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.crud;
+
+import com.bugull.mongo.BuguBulkResult;
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.dao.ProductDao;
+import com.bugull.mongo.entity.Product;
+import com.mongodb.WriteResult;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class BulkTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testBulk(){
+        connectDB();
+        
+        ProductDao dao = new ProductDao();
+        Product p1 = new Product();
+        p1.setName("Bulk Phone 1");
+        p1.setPrice(1000F);
+        Product p2 = new Product();
+        p2.setName("Bulk Phone 2");
+        p2.setPrice(2000F);
+        
+        BuguBulkResult result = dao.bulk(false)
+                .insert(p1)
+                .insert(p2)
+                .update(dao.query().is("name", "Bulk Phone 1"), dao.update().inc("price", 100))
+                .remove(dao.query().is("name", "iPhone 5"))
+                .execute();
+        System.out.println(result);
+        System.out.println("p1 id: " + p1.getId());
+        
+        p2.setPrice(2500F);
+        result = dao.bulk().save(p2).remove(p1.getId()).execute();
+        System.out.println(result);
+        
+        disconnectDB();
+    }
+    
+    //@Test
+    public void testSaveList(){
+        connectDB();
+        
+        ProductDao dao = new ProductDao();
+        List<Product> list = new ArrayList<>();
+        for(int i=0; i<10; i++){
+            Product p = new Product();
+            p.setName("Saved Phone " + i);
+            p.setPrice(100F * i);
+            list.add(p);
+        }
+        dao.save(list);
+        for(Product p : list){
+            p.setPrice(p.getPrice() + 1);
+        }
+        WriteResult wr = dao.save(list);
+        System.out.println("saved: " + wr.getN() + " updated: " + wr.isUpdateOfExisting());
+        
+        disconnectDB();
+    }
+    
+}
@@ -15,18 +15,24 @@
  */
 package com.bugull.mongo.crud;
 
+import com.bugull.mongo.BuguDao;
 import com.bugull.mongo.BuguMapper;
 import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.dao.GroupProductDao;
 import com.bugull.mongo.dao.OrderDao;
 import com.bugull.mongo.dao.UserDao;
+import com.bugull.mongo.entity.Device;
+import com.bugull.mongo.entity.DeviceHolder;
 import com.bugull.mongo.entity.GroupProduct;
 import com.bugull.mongo.entity.Order;
 import com.bugull.mongo.entity.Product;
 import com.bugull.mongo.entity.User;
+import com.bugull.mongo.exception.FieldException;
 import com.bugull.mongo.utils.SortUtil;
 import java.util.List;
 import java.util.Map;
+import org.junit.Test;
 
 /**
  *
@@ -83,4 +89,58 @@ public class CascadeFetchTest extends ReplicaSetBaseTest {
         disconnectDB();
     }
     
+    //@Test
+    public void testBatchCascadeRead(){
+        connectDB();
+        
+        //productList is cascade read, the products of all the orders are loaded in one query
+        OrderDao orderDao = new OrderDao();
+        List<Order> orderList = orderDao.query().sort(SortUtil.desc("money")).results();
+        for(Order order : orderList){
+            System.out.println("total money: " + order.getMoney());
+            List<Product> productList = order.getProductList();
+            if(productList != null){
+                for(Product product : productList){
+                    System.out.println("product name: " + product.getName());
+                }
+            }
+        }
+        
+        disconnectDB();
+    }
+    
+    //@Test
+    public void testCascadeFetchLazy(){
+        connectDB();
+        
+        BuguDao<Device> deviceDao = DaoCache.getInstance().get(Device.class);
+        Device device = new Device();
+        device.setName("sensor");
+        device.setNote("lazy note");
+        deviceDao.save(device);
+        
+        BuguDao<DeviceHolder> holderDao = DaoCache.getInstance().get(DeviceHolder.class);
+        DeviceHolder holder = new DeviceHolder();
+        holder.setName("holder");
+        holder.setDevice(device);
+        holderDao.save(holder);
+        
+        //the referenced entity is fetched with the whole document, so the lazy field is already there
+        DeviceHolder loaded = holderDao.findOne(holder.getId());
+        BuguMapper.fetchCascade(loaded, "device");
+        System.out.println("lazy loaded: " + loaded.getDevice().isLazyLoaded());
+        System.out.println("note: " + loaded.getDevice().getNote());
+        
+        holderDao.remove(holder);
+        deviceDao.remove(device);
+        
+        disconnectDB();
+    }
+    
+    @Test(expected=FieldException.class)
+    public void testUnknownField(){
+        DeviceHolder holder = new DeviceHolder();
+        BuguMapper.fetchCascade(holder, "unknown");
+    }
+    
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.crud;
+
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.dao.ProductDao;
+import com.bugull.mongo.entity.Product;
+import com.mongodb.WriteResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MultiIdTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testMultiId(){
+        connectDB();
+        
+        ProductDao dao = new ProductDao();
+        List<String> ids = new ArrayList<>();
+        for(int i=0; i<10; i++){
+            Product p = new Product();
+            p.setName("Multi Phone " + i);
+            p.setPrice(100F * i);
+            dao.insert(p);
+            ids.add(p.getId());
+        }
+        ids.add("5a1b2c3d4e5f607182930a4b");
+        
+        Set<String> existing = dao.existsMany(ids);
+        System.out.println("exists: " + existing.size());
+        
+        WriteResult wr = dao.updateByIds(ids, dao.update().inc("price", 1));
+        System.out.println("updated: " + wr.getN());
+        
+        Map<String, Product> map = dao.findByIds(ids);
+        for(Product p : map.values()){
+            System.out.println(p.getName() + ": " + p.getPrice());
+        }
+        
+        wr = dao.removeByIds(ids);
+        System.out.println("removed: " + wr.getN());
+        
+        disconnectDB();
+    }
+    
+}
@@ -16,6 +16,7 @@
 
 package com.bugull.mongo.crud;
 
+import com.bugull.mongo.BuguCursor;
 import com.bugull.mongo.BuguMapper;
 import com.bugull.mongo.base.ReplicaSetBaseTest;
 import com.bugull.mongo.dao.GroupContactDao;
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.stream.Stream;
 import org.junit.Test;
 
 /**
@@ -170,5 +172,25 @@ public class QueryTest extends ReplicaSetBaseTest {
         
         disconnectDB();
     }
+    
+    //@Test
+    public void testIterate(){
+        connectDB();
+
+        ProductDao productDao = new ProductDao();
+        
+        try(BuguCursor<Product> cursor = productDao.query().batchSize(100).iterate()){
+            while(cursor.hasNext()){
+                Product p = cursor.next();
+                System.out.println("product name: " + p.getName());
+            }
+        }
+        
+        try(Stream<Product> stream = productDao.query().stream()){
+            System.out.println("count: " + stream.count());
+        }
+        
+        disconnectDB();
+    }
 
 }
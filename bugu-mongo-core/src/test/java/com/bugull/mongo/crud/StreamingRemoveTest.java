@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.crud;
+
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.BuguFramework;
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.entity.Product;
+import com.bugull.mongo.listener.BatchDeleteListener;
+import com.bugull.mongo.listener.EventBusConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Remove by condition and by ids, when every listener is a BatchDeleteListener. 
+ * The matched documents are read with a cursor, removed and notified chunk by chunk.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class StreamingRemoveTest extends ReplicaSetBaseTest {
+    
+    private static final int CHUNK_SIZE = 10;
+    private static final int COUNT = 25;
+    
+    //@Test
+    public void testRemoveByCondition(){
+        //one lane, and at most one chunk is taken at once, so every delivery is not larger than a chunk
+        BuguFramework.getInstance().setEventBusConfig(new EventBusConfig().setLanes(1).setBatchSize(CHUNK_SIZE));
+        connectDB();
+        
+        RecordListener listener = new RecordListener();
+        StreamingProductDao dao = new StreamingProductDao(listener);
+        dao.remove("name", "streaming");
+        insertProducts(dao);
+        dao.remove("name", "streaming");
+        assertEquals(0, dao.query().is("name", "streaming").count());
+        
+        disconnectDB();
+        
+        //the queued events are delivered on destroy
+        checkDelivered(listener);
+    }
+    
+    //@Test
+    public void testRemoveByIds(){
+        BuguFramework.getInstance().setEventBusConfig(new EventBusConfig().setLanes(1).setBatchSize(CHUNK_SIZE));
+        connectDB();
+        
+        RecordListener listener = new RecordListener();
+        StreamingProductDao dao = new StreamingProductDao(listener);
+        dao.remove("name", "streaming");
+        List<String> ids = insertProducts(dao);
+        listener.clear();
+        dao.removeByIds(ids);
+        assertEquals(0, dao.query().is("name", "streaming").count());
+        
+        disconnectDB();
+        
+        checkDelivered(listener);
+    }
+    
+    private List<String> insertProducts(BuguDao<Product> dao){
+        List<String> ids = new ArrayList<>();
+        for(int i=0; i<COUNT; i++){
+            Product p = new Product();
+            p.setName("streaming");
+            p.setDescription("streaming product " + i);
+            p.setPrice(1F * i);
+            dao.insert(p);
+            ids.add(p.getId());
+        }
+        return ids;
+    }
+    
+    private void checkDelivered(RecordListener listener){
+        List<List<BuguEntity>> batches = listener.getBatches();
+        int total = 0;
+        for(List<BuguEntity> batch : batches){
+            assertTrue(batch.size() <= CHUNK_SIZE);
+            total += batch.size();
+            for(BuguEntity ent : batch){
+                Product p = (Product)ent;
+                //only _id is projected
+                assertNotNull(p.getId());
+                assertNull(p.getName());
+                assertNull(p.getDescription());
+                assertNull(p.getPrice());
+            }
+        }
+        assertEquals(COUNT, total);
+        assertTrue(batches.size() >= (COUNT + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+    
+    private static class StreamingProductDao extends BuguDao<Product> {
+        
+        StreamingProductDao(BatchDeleteListener listener){
+            super(Product.class);
+            setIdChunkSize(CHUNK_SIZE);
+            addEntityListener(listener);
+        }
+        
+    }
+    
+    private static class RecordListener implements BatchDeleteListener {
+        
+        private final List<List<BuguEntity>> batches = Collections.synchronizedList(new ArrayList<List<BuguEntity>>());
+        
+        @Override
+        public String[] getDeleteFields(){
+            return new String[0];
+        }
+        
+        @Override
+        public void entitiesDeleted(List<BuguEntity> entities){
+            batches.add(new ArrayList<>(entities));
+        }
+        
+        @Override
+        public void entityInserted(BuguEntity entity){
+            
+        }
+        
+        @Override
+        public void entityUpdated(BuguEntity entity){
+            
+        }
+        
+        @Override
+        public void entityDeleted(BuguEntity entity){
+            batches.add(Collections.singletonList(entity));
+        }
+        
+        List<List<BuguEntity>> getBatches(){
+            synchronized(batches){
+                return new ArrayList<>(batches);
+            }
+        }
+        
+        void clear(){
+            batches.clear();
+        }
+        
+    }
+    
+}
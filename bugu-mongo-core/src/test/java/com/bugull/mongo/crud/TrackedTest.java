@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.crud;
+
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.entity.Device;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class TrackedTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testSaveChanges(){
+        connectDB();
+        
+        BuguDao<Device> dao = DaoCache.getInstance().get(Device.class);
+        Device device = new Device();
+        device.setName("sensor");
+        device.setTags(Arrays.asList("a", "b"));
+        dao.save(device);
+        
+        //only $set status and $unset tags are sent
+        Device loaded = dao.findOne(device.getId());
+        System.out.println("tracked: " + loaded.isTracked());
+        loaded.setStatus(1);
+        loaded.setTags(null);
+        dao.save(loaded);
+        
+        //nothing changed, nothing is sent
+        dao.save(loaded);
+        
+        disconnectDB();
+    }
+    
+    //@Test
+    public void testArrayChanges(){
+        connectDB();
+        
+        BuguDao<Device> dao = DaoCache.getInstance().get(Device.class);
+        Device device = new Device();
+        device.setName("gateway");
+        device.setTags(new ArrayList<>(Arrays.asList("a", "b", "c")));
+        dao.save(device);
+        
+        //$push with $each
+        device.getTags().add("d");
+        dao.save(device);
+        
+        //$pullAll
+        device.getTags().remove("b");
+        dao.save(device);
+        
+        //reorder: $set the whole array
+        Collections.reverse(device.getTags());
+        dao.save(device);
+        System.out.println("tags: " + dao.findOne(device.getId()).getTags());
+        
+        disconnectDB();
+    }
+    
+    //@Test
+    public void testLazyChanges(){
+        connectDB();
+        
+        BuguDao<Device> dao = DaoCache.getInstance().get(Device.class);
+        for(int i=0; i<2; i++){
+            Device device = new Device();
+            device.setName("lamp");
+            device.setNote("note " + i);
+            dao.save(device);
+        }
+        
+        //the note is not returned by findAll(), it's loaded by getNote()
+        Device loaded = dao.query().is("name", "lamp").results().get(0);
+        System.out.println("note: " + loaded.getNote());
+        //nothing changed, nothing is sent
+        dao.save(loaded);
+        //only $unset note is sent
+        loaded.setNote(null);
+        dao.save(loaded);
+        System.out.println("note: " + dao.findOne(loaded.getId()).getNote());
+        
+        disconnectDB();
+    }
+    
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.crud;
+
+import com.bugull.mongo.BuguWriteBehind;
+import com.bugull.mongo.WriteBehindConfig;
+import com.bugull.mongo.base.ReplicaSetBaseTest;
+import com.bugull.mongo.dao.ProductDao;
+import com.bugull.mongo.entity.Product;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class WriteBehindTest extends ReplicaSetBaseTest {
+    
+    //@Test
+    public void testWriteBehind(){
+        connectDB();
+        
+        ProductDao dao = new ProductDao();
+        BuguWriteBehind<Product> buffer = dao.writeBehind(new WriteBehindConfig().setBatchSize(500).setLinger(50));
+        for(int i=0; i<2000; i++){
+            Product p = new Product();
+            p.setName("Event " + i);
+            p.setPrice(1F);
+            buffer.insert(p);
+        }
+        buffer.flush();
+        
+        Product p = dao.findOne("name", "Event 0");
+        for(int i=0; i<100; i++){
+            buffer.inc(p.getId(), "price", 1);
+        }
+        buffer.set(p.getId(), "description", "updated by write-behind");
+        buffer.flush();
+        System.out.println("price: " + dao.findOne(p.getId()).getPrice());
+        System.out.println("flush count: " + buffer.getFlushCount() + " flush time: " + buffer.getFlushTime());
+        
+        //the buffer is closed by BuguFramework.destroy()
+        disconnectDB();
+    }
+    
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.entity;
+
+import com.bugull.mongo.TrackedEntity;
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.annotations.Property;
+import java.util.List;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity
+public class Device extends TrackedEntity {
+    
+    private String name;
+    private int status;
+    private List<String> tags;
+    @Property(lazy=true)
+    private String note;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+    
+    public String getNote() {
+        loadLazy();
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+    
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.entity.Product;
+import com.bugull.mongo.mapper.EntityComparator;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+/**
+ * The values are compared in the BSON comparison order of mongoDB.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EntityComparatorTest {
+    
+    @Test
+    public void testMixedNumbers(){
+        assertEquals(0, EntityComparator.compareValue(1, 1L));
+        assertEquals(0, EntityComparator.compareValue(1, 1.0D));
+        assertEquals(0, EntityComparator.compareValue(0.0D, -0.0D));
+        assertEquals(0, EntityComparator.compareValue(new Decimal128(2), 2L));
+        assertTrue(EntityComparator.compareValue(2, 1.5F) > 0);
+        assertTrue(EntityComparator.compareValue(new BigDecimal("1.1"), 1) > 0);
+        //not equal, although they are the same as double
+        assertTrue(EntityComparator.compareValue(Long.MAX_VALUE, Long.MAX_VALUE - 1) > 0);
+        assertTrue(EntityComparator.compareValue(Long.MAX_VALUE, (double)Long.MAX_VALUE) < 0);
+        //NaN is less than any other number
+        assertTrue(EntityComparator.compareValue(Double.NaN, Double.NEGATIVE_INFINITY) < 0);
+        assertTrue(EntityComparator.compareValue(Double.NaN, Long.MIN_VALUE) < 0);
+        assertEquals(0, EntityComparator.compareValue(Double.NaN, Float.NaN));
+        assertTrue(EntityComparator.compareValue(Double.POSITIVE_INFINITY, Long.MAX_VALUE) > 0);
+    }
+    
+    @Test
+    public void testTypeOrder(){
+        Object[] ordered = {null, Double.NaN, -1, 100L, "", "a", new ArrayList<String>(), new ObjectId(), false, true, new Date(0L)};
+        for(int i=0; i<ordered.length; i++){
+            for(int j=0; j<ordered.length; j++){
+                int result = EntityComparator.compareValue(ordered[i], ordered[j]);
+                assertEquals(Integer.signum(Integer.compare(i, j)), Integer.signum(result));
+            }
+        }
+        //number is less than string, even if the string looks like a bigger number
+        assertTrue(EntityComparator.compareValue(10, "1") < 0);
+    }
+    
+    @Test
+    public void testString(){
+        //by unicode code point, not by UTF-16 char
+        String supplementary = new String(Character.toChars(0x1F600));
+        assertTrue(EntityComparator.compareValue(supplementary, "\uFF01") > 0);
+        assertTrue("\uFF01".compareTo(supplementary) > 0);
+        //case sensitive, without collation
+        assertTrue(EntityComparator.compareValue("B", "a") < 0);
+        assertTrue(EntityComparator.compareValue("ab", "abc") < 0);
+        assertEquals(0, EntityComparator.compareValue("abc", "abc"));
+    }
+    
+    @Test
+    public void testSortEntities(){
+        List<Product> list = new ArrayList<>();
+        Float[] prices = {2.5F, null, 1F, 3F};
+        for(int i=0; i<prices.length; i++){
+            Product p = new Product();
+            p.setName("product" + i);
+            p.setPrice(prices[i]);
+            list.add(p);
+        }
+        Collections.sort(list, new EntityComparator("{price:1}"));
+        assertNull(list.get(0).getPrice());
+        assertEquals(1F, list.get(1).getPrice(), 0F);
+        assertEquals(3F, list.get(3).getPrice(), 0F);
+        
+        //missing value is the last one in descending order
+        Collections.sort(list, new EntityComparator("{price:-1}"));
+        assertEquals(3F, list.get(0).getPrice(), 0F);
+        assertNull(list.get(3).getPrice());
+    }
+    
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.listener.BatchDeleteListener;
+import com.bugull.mongo.listener.EntityEventBus;
+import com.bugull.mongo.listener.EntityListener;
+import com.bugull.mongo.listener.EventBusConfig;
+import com.bugull.mongo.listener.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class EventBusTest {
+    
+    @Test
+    public void testOrder(){
+        EntityEventBus bus = new EntityEventBus(new EventBusConfig().setLanes(4));
+        RecordListener listener = new RecordListener();
+        List<EntityListener> listeners = Collections.<EntityListener>singletonList(listener);
+        for(int i=0; i<1000; i++){
+            bus.postUpdated(listeners, new Item("a", i));
+        }
+        bus.close();
+        List<Integer> expected = new ArrayList<>();
+        for(int i=0; i<1000; i++){
+            expected.add(i);
+        }
+        assertEquals(expected, listener.versions);
+        assertEquals(1000, bus.getDeliveredCount());
+        assertEquals(0, bus.getQueueDepth());
+    }
+    
+    @Test
+    public void testBatchDelete(){
+        EntityEventBus bus = new EntityEventBus(new EventBusConfig().setLanes(1));
+        RecordListener listener = new RecordListener();
+        List<EntityListener> listeners = Collections.<EntityListener>singletonList(listener);
+        listener.block();
+        bus.postUpdated(listeners, new Item("x", 0));
+        for(int i=0; i<10; i++){
+            bus.postDeleted(listeners, new Item("d" + i, 0));
+        }
+        listener.release();
+        bus.close();
+        //the deleted events are taken together while the listener is blocked
+        assertEquals(1, listener.batches.size());
+        assertEquals(10, listener.batches.get(0).size());
+    }
+    
+    @Test
+    public void testListenerAdded(){
+        EntityEventBus bus = new EntityEventBus(new EventBusConfig().setLanes(1));
+        RecordListener listener = new RecordListener();
+        RecordListener added = new RecordListener();
+        List<EntityListener> listeners = new CopyOnWriteArrayList<>();
+        listeners.add(listener);
+        listener.block();
+        bus.postUpdated(new ArrayList<>(listeners), new Item("x", 0));
+        listener.awaitBlocked();
+        //every post has its own copy, as BuguDao does, the equal copies are still delivered together
+        for(int i=0; i<10; i++){
+            bus.postDeleted(new ArrayList<>(listeners), new Item("d" + i, 0));
+        }
+        //added while the events are in flight
+        listeners.add(added);
+        bus.postDeleted(new ArrayList<>(listeners), new Item("d10", 0));
+        listener.release();
+        bus.close();
+        assertEquals(0, bus.getFailedCount());
+        assertEquals(2, listener.batches.size());
+        assertEquals(10, listener.batches.get(0).size());
+        assertEquals(1, added.batches.size());
+        assertEquals(1, added.batches.get(0).size());
+    }
+    
+    @Test
+    public void testOverflow(){
+        EventBusConfig config = new EventBusConfig().setLanes(1).setQueueCapacity(2).setOverflowPolicy(OverflowPolicy.DROP);
+        EntityEventBus bus = new EntityEventBus(config);
+        RecordListener listener = new RecordListener();
+        List<EntityListener> listeners = Collections.<EntityListener>singletonList(listener);
+        listener.block();
+        bus.postUpdated(listeners, new Item("a", 0));
+        listener.awaitBlocked();
+        for(int i=1; i<=5; i++){
+            bus.postUpdated(listeners, new Item("a", i));
+        }
+        assertEquals(3, bus.getDroppedCount());
+        listener.release();
+        bus.close();
+        assertEquals(3, listener.versions.size());
+        
+        config.setOverflowPolicy(OverflowPolicy.CALLER_RUNS);
+        bus = new EntityEventBus(config);
+        listener = new RecordListener();
+        listeners = Collections.<EntityListener>singletonList(listener);
+        listener.block();
+        bus.postUpdated(listeners, new Item("b", 0));
+        listener.awaitBlocked();
+        bus.postUpdated(listeners, new Item("b", 1));
+        bus.postUpdated(listeners, new Item("b", 2));
+        //run by this thread, the listener is not blocked for it
+        bus.postUpdated(listeners, new Item("b", 3));
+        assertEquals(1, bus.getCallerRunsCount());
+        listener.release();
+        bus.close();
+        assertEquals(4, listener.versions.size());
+    }
+    
+    @Test
+    public void testRepostInOrder() throws Exception {
+        //capacity 1, the listener posts to its own full lane
+        EntityEventBus bus = new EntityEventBus(new EventBusConfig().setLanes(1).setQueueCapacity(1));
+        final RecordListener listener = new RecordListener();
+        final List<EntityListener> listeners = Collections.<EntityListener>singletonList(listener);
+        final EntityEventBus target = bus;
+        EntityListener repost = new RecordListener(){
+            @Override
+            public void entityInserted(BuguEntity entity) {
+                for(int i=0; i<10; i++){
+                    target.postUpdated(listeners, new Item(entity.getId(), i));
+                }
+            }
+        };
+        bus.postInserted(Collections.singletonList(repost), new Item("r", 0));
+        for(int i=0; i<500 && bus.getDeliveredCount() < 11; i++){
+            Thread.sleep(10);
+        }
+        bus.close();
+        List<Integer> expected = new ArrayList<>();
+        for(int i=0; i<10; i++){
+            expected.add(i);
+        }
+        assertEquals(expected, listener.versions);
+        assertEquals(0, bus.getCallerRunsCount());
+    }
+    
+    @Test
+    public void testCloseWhilePosting() throws Exception {
+        final EntityEventBus bus = new EntityEventBus(new EventBusConfig().setLanes(2).setQueueCapacity(10));
+        final RecordListener listener = new RecordListener();
+        final List<EntityListener> listeners = Collections.<EntityListener>singletonList(listener);
+        Thread[] threads = new Thread[4];
+        for(int t=0; t<threads.length; t++){
+            final String id = "p" + t;
+            threads[t] = new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    for(int i=0; i<2000; i++){
+                        bus.postUpdated(listeners, new Item(id, i));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        Thread.sleep(5);
+        bus.close();
+        for(Thread thread : threads){
+            thread.join();
+        }
+        //nothing is lost: queued events are delivered by lanes, later ones by the posting threads
+        assertEquals(8000, listener.versions.size());
+        assertEquals(0, bus.getDroppedCount());
+    }
+    
+    static class Item implements BuguEntity {
+        
+        String id;
+        int version;
+        
+        Item(String id, int version){
+            this.id = id;
+            this.version = version;
+        }
+
+        @Override
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+        
+    }
+    
+    static class RecordListener implements BatchDeleteListener {
+        
+        final List<Integer> versions = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<List<BuguEntity>> batches = Collections.synchronizedList(new ArrayList<List<BuguEntity>>());
+        volatile CountDownLatch gate;
+        final CountDownLatch blocked = new CountDownLatch(1);
+        
+        void block(){
+            gate = new CountDownLatch(1);
+        }
+        
+        void release(){
+            gate.countDown();
+        }
+        
+        void awaitBlocked(){
+            try{
+                assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            }catch(InterruptedException ex){
+                fail();
+            }
+        }
+        
+        private void pass(){
+            CountDownLatch g = gate;
+            //only the lane thread waits, the caller-runs thread passes
+            if(g != null && Thread.currentThread().getName().startsWith("bugu-event-bus")){
+                blocked.countDown();
+                try{
+                    g.await();
+                }catch(InterruptedException ex){
+                    //ignore
+                }
+            }
+        }
+
+        @Override
+        public void entityInserted(BuguEntity entity) {
+            pass();
+        }
+
+        @Override
+        public void entityUpdated(BuguEntity entity) {
+            pass();
+            versions.add(((Item)entity).version);
+        }
+
+        @Override
+        public void entityDeleted(BuguEntity entity) {
+            entitiesDeleted(Collections.singletonList(entity));
+        }
+
+        @Override
+        public String[] getDeleteFields() {
+            return new String[0];
+        }
+
+        @Override
+        public void entitiesDeleted(List<BuguEntity> entities) {
+            pass();
+            batches.add(entities);
+        }
+        
+    }
+    
+}
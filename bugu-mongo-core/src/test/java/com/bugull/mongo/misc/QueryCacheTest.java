@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.cache.QueryCache;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class QueryCacheTest {
+    
+    @Test
+    public void testNormalize(){
+        DBObject a = new BasicDBObject("name", "Frank").append("age", new BasicDBObject("$lt", 30).append("$gt", 20));
+        DBObject b = new BasicDBObject("age", new BasicDBObject("$gt", 20).append("$lt", 30)).append("name", "Frank");
+        assertEquals(QueryCache.normalize(a), QueryCache.normalize(b));
+        
+        //embedded document compared by equality keeps the key order
+        DBObject c = new BasicDBObject("address", new BasicDBObject("city", "X").append("street", "Y"));
+        DBObject d = new BasicDBObject("address", new BasicDBObject("street", "Y").append("city", "X"));
+        assertNotEquals(QueryCache.normalize(c), QueryCache.normalize(d));
+    }
+    
+    @Test
+    public void testVersion(){
+        QueryCache cache = QueryCache.getInstance();
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> loader = new Callable<Integer>(){
+            @Override
+            public Integer call(){
+                return calls.incrementAndGet();
+            }
+        };
+        assertEquals(1, (int)cache.get("test.version", String.class, "k", 60000L, loader));
+        assertEquals(1, (int)cache.get("test.version", String.class, "k", 60000L, loader));
+        cache.invalidate("test.version");
+        assertEquals(2, (int)cache.get("test.version", String.class, "k", 60000L, loader));
+    }
+    
+    @Test
+    public void testNamespace(){
+        QueryCache cache = QueryCache.getInstance();
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> loader = new Callable<Integer>(){
+            @Override
+            public Integer call(){
+                return calls.incrementAndGet();
+            }
+        };
+        assertEquals(1, (int)cache.get("db1.item", String.class, "k", 60000L, loader));
+        //same collection name in another database
+        assertEquals(2, (int)cache.get("db2.item", String.class, "k", 60000L, loader));
+        //another entity class mapped to the same collection
+        assertEquals(3, (int)cache.get("db1.item", Integer.class, "k", 60000L, loader));
+        cache.invalidate("db2.item");
+        assertEquals(1, (int)cache.get("db1.item", String.class, "k", 60000L, loader));
+    }
+    
+    @Test
+    public void testSingleFlight() throws Exception {
+        final QueryCache cache = QueryCache.getInstance();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Callable<Integer> loader = new Callable<Integer>(){
+            @Override
+            public Integer call() throws Exception {
+                calls.incrementAndGet();
+                Thread.sleep(200);
+                return 42;
+            }
+        };
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        for(int i=0; i<8; i++){
+            es.submit(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        start.await();
+                    }catch(InterruptedException ex){
+                        return;
+                    }
+                    assertEquals(42, (int)cache.get("test.flight", String.class, "k", 60000L, loader));
+                }
+            });
+        }
+        start.countDown();
+        es.shutdown();
+        es.awaitTermination(5, TimeUnit.SECONDS);
+        assertEquals(1, calls.get());
+    }
+
+}
@@ -16,7 +16,14 @@
 
 package com.bugull.mongo.misc;
 
+import com.bugull.mongo.exception.BuguException;
+import com.bugull.mongo.utils.ChunkUtil;
 import com.bugull.mongo.utils.StringUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import static org.junit.Assert.*;
 import org.junit.Test;
 
 /**
@@ -31,5 +38,40 @@ public class UtilTest {
         String md5 = StringUtil.encodeMD5(str);
         System.out.println("md5:" + md5);
     }
+    
+    @Test
+    public void testChunk(){
+        List<List<Integer>> chunks = ChunkUtil.split(Arrays.asList(1, 2, 3, 4, 5), 2);
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList(5), chunks.get(2));
+        
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for(final List<Integer> chunk : chunks){
+            tasks.add(new Callable<Integer>(){
+                @Override
+                public Integer call(){
+                    int sum = 0;
+                    for(int i : chunk){
+                        sum += i;
+                    }
+                    return sum;
+                }
+            });
+        }
+        assertEquals(Arrays.asList(3, 7, 5), ChunkUtil.runAll(tasks));
+        
+        tasks.add(new Callable<Integer>(){
+            @Override
+            public Integer call(){
+                throw new IllegalStateException("failed chunk");
+            }
+        });
+        try{
+            ChunkUtil.runAll(tasks);
+            fail();
+        }catch(BuguException ex){
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
 
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.performance;
+
+import com.bugull.mongo.codec.EntityCodec;
+import com.bugull.mongo.entity.Address;
+import com.bugull.mongo.entity.Contact;
+import com.bugull.mongo.entity.User;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DBObject;
+import com.mongodb.DBObjectCodec;
+import com.mongodb.MongoClient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Compare the EntityCodec with the DBObject path, both encode to and decode from BSON bytes.
+ * No database is needed.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CodecPerformanceTest {
+    
+    private static final int WARM_UP = 20000;
+    private static final int TIMES = 200000;
+    
+    private User createUser(){
+        User user = new User();
+        user.setId(new ObjectId().toString());
+        user.setUsername("Frank");
+        user.setAge(40);
+        user.setValid(true);
+        user.setRegisterTime(new Date());
+        Contact contact = new Contact();
+        contact.setEmail("xbwen@hotmail.com");
+        contact.setPhone("13800000000");
+        user.setContact(contact);
+        List<Address> addressList = new ArrayList<>();
+        for(int i=0; i<3; i++){
+            Address address = new Address();
+            address.setProvince("Zhejiang");
+            address.setCity("Hangzhou");
+            address.setDetailAddress("Street " + i);
+            addressList.add(address);
+        }
+        user.setAddressList(addressList);
+        Map<String, List<Integer>> permissions = new HashMap<>();
+        permissions.put("read", Arrays.asList(1, 2, 3));
+        user.setPermissions(permissions);
+        user.setScores(new float[]{90.5F, 85F, 77.5F});
+        return user;
+    }
+    
+    @Test
+    public void testEncodeAndDecode(){
+        CodecRegistry registry = MongoClient.getDefaultCodecRegistry();
+        DBObjectCodec dboCodec = new DBObjectCodec(registry);
+        EntityCodec<User> entityCodec = new EntityCodec<>(User.class, registry);
+        User user = createUser();
+        
+        //the same document
+        RawBsonDocument legacy = new RawBsonDocument(MapperUtil.toDBObject(user), dboCodec);
+        RawBsonDocument codec = new RawBsonDocument(user, entityCodec);
+        assertEquals(legacy, codec);
+        User decoded = codec.decode(entityCodec);
+        assertEquals(legacy, new RawBsonDocument(decoded, entityCodec));
+        
+        for(int i=0; i<WARM_UP; i++){
+            MapperUtil.fromDBObject(User.class, new RawBsonDocument(MapperUtil.toDBObject(user), dboCodec).decode(dboCodec));
+            new RawBsonDocument(user, entityCodec).decode(entityCodec);
+        }
+        
+        long begin1 = System.currentTimeMillis();
+        for(int i=0; i<TIMES; i++){
+            RawBsonDocument raw = new RawBsonDocument(MapperUtil.toDBObject(user), dboCodec);
+            DBObject dbo = raw.decode(dboCodec);
+            MapperUtil.fromDBObject(User.class, dbo);
+        }
+        long end1 = System.currentTimeMillis();
+        System.out.println("DBObject: " + (end1 - begin1));
+        
+        long begin2 = System.currentTimeMillis();
+        for(int i=0; i<TIMES; i++){
+            RawBsonDocument raw = new RawBsonDocument(user, entityCodec);
+            raw.decode(entityCodec);
+        }
+        long end2 = System.currentTimeMillis();
+        System.out.println("EntityCodec: " + (end2 - begin2));
+    }
+    
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.performance;
+
+import com.bugull.mongo.entity.User;
+import com.bugull.mongo.mapper.FieldAccessor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Compare the FieldAccessor with Field.get/set, and with MethodHandle held in an object, 
+ * on the int and String field of many entities. No database is needed.
+ * 
+ * <p>A MethodHandle which is not a static final constant is not inlined by JIT, so it is not faster than reflection, 
+ * that's why FieldAccessor is based on reflection.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class FieldAccessorPerformanceTest {
+    
+    private static final int SIZE = 1000;
+    private static final int WARM_UP = 20000;
+    private static final int TIMES = 20000;
+    
+    private User[] createUsers(){
+        User[] users = new User[SIZE];
+        for(int i=0; i<SIZE; i++){
+            users[i] = new User();
+            users[i].setUsername("user" + i);
+            users[i].setAge(i);
+        }
+        return users;
+    }
+    
+    private long readByField(User[] users, Field ageField, Field nameField) throws IllegalAccessException {
+        long sum = 0;
+        for(User user : users){
+            sum += ageField.getInt(user);
+            sum += ((String)nameField.get(user)).length();
+        }
+        return sum;
+    }
+    
+    private long readByAccessor(User[] users, FieldAccessor ageAccessor, FieldAccessor nameAccessor){
+        long sum = 0;
+        for(User user : users){
+            sum += ageAccessor.getInt(user);
+            sum += ((String)nameAccessor.get(user)).length();
+        }
+        return sum;
+    }
+    
+    private void writeByField(User[] users, Field ageField, Field nameField) throws IllegalAccessException {
+        for(User user : users){
+            ageField.setInt(user, ageField.getInt(user));
+            nameField.set(user, nameField.get(user));
+        }
+    }
+    
+    private void writeByAccessor(User[] users, FieldAccessor ageAccessor, FieldAccessor nameAccessor){
+        for(User user : users){
+            ageAccessor.setInt(user, ageAccessor.getInt(user));
+            nameAccessor.set(user, nameAccessor.get(user));
+        }
+    }
+    
+    private long readAndWriteByHandle(User[] users, Handles handles) throws Throwable {
+        long sum = 0;
+        for(User user : users){
+            int age = (int)handles.ageGetter.invokeExact((Object)user);
+            Object name = (Object)handles.nameGetter.invokeExact((Object)user);
+            sum += age;
+            sum += ((String)name).length();
+            handles.ageSetter.invokeExact((Object)user, age);
+            handles.nameSetter.invokeExact((Object)user, name);
+        }
+        return sum;
+    }
+    
+    private static class Handles {
+        
+        final MethodHandle ageGetter;
+        final MethodHandle ageSetter;
+        final MethodHandle nameGetter;
+        final MethodHandle nameSetter;
+        
+        Handles(Field ageField, Field nameField) throws IllegalAccessException {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ageGetter = lookup.unreflectGetter(ageField).asType(MethodType.methodType(int.class, Object.class));
+            ageSetter = lookup.unreflectSetter(ageField).asType(MethodType.methodType(void.class, Object.class, int.class));
+            nameGetter = lookup.unreflectGetter(nameField).asType(MethodType.methodType(Object.class, Object.class));
+            nameSetter = lookup.unreflectSetter(nameField).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+        
+    }
+    
+    @Test
+    public void testReadAndWrite() throws Throwable {
+        Field ageField = User.class.getDeclaredField("age");
+        Field nameField = User.class.getDeclaredField("username");
+        ageField.setAccessible(true);
+        nameField.setAccessible(true);
+        FieldAccessor ageAccessor = FieldAccessor.create(ageField);
+        FieldAccessor nameAccessor = FieldAccessor.create(nameField);
+        Handles handles = new Handles(ageField, nameField);
+        User[] users = createUsers();
+        
+        //the same values
+        assertEquals(readByField(users, ageField, nameField), readByAccessor(users, ageAccessor, nameAccessor));
+        assertEquals(readByField(users, ageField, nameField), readAndWriteByHandle(users, handles));
+        
+        long sum = 0;
+        for(int i=0; i<WARM_UP; i++){
+            sum += readByField(users, ageField, nameField);
+            sum += readByAccessor(users, ageAccessor, nameAccessor);
+            writeByField(users, ageField, nameField);
+            writeByAccessor(users, ageAccessor, nameAccessor);
+            sum += readAndWriteByHandle(users, handles);
+        }
+        
+        long begin1 = System.currentTimeMillis();
+        for(int i=0; i<TIMES; i++){
+            sum += readByField(users, ageField, nameField);
+            writeByField(users, ageField, nameField);
+        }
+        long end1 = System.currentTimeMillis();
+        System.out.println("Field: " + (end1 - begin1));
+        
+        long begin2 = System.currentTimeMillis();
+        for(int i=0; i<TIMES; i++){
+            sum += readByAccessor(users, ageAccessor, nameAccessor);
+            writeByAccessor(users, ageAccessor, nameAccessor);
+        }
+        long end2 = System.currentTimeMillis();
+        System.out.println("FieldAccessor: " + (end2 - begin2));
+        
+        long begin3 = System.currentTimeMillis();
+        for(int i=0; i<TIMES; i++){
+            sum += readAndWriteByHandle(users, handles);
+        }
+        long end3 = System.currentTimeMillis();
+        System.out.println("MethodHandle: " + (end3 - begin3));
+        
+        //keep the result used, so JIT does not remove the loops
+        System.out.println("checksum: " + sum);
+    }
+    
+}